@@ -0,0 +1,254 @@
+/*
+ * Open Source Physics software is free software as described near the bottom of this code file.
+ *
+ * For additional information and documentation on Open Source Physics please see:
+ * <http://www.opensourcephysics.org/>
+ */
+
+package org.opensourcephysics.stp.approach;
+import java.util.ArrayList;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * ApproachBatch runs many independent approach to equilibrium trajectories without a display and
+ * averages the number of particles in each region as a function of time.
+ *
+ * With boxes=2 every trajectory is an LJgas2box that starts in the left half of the cell, and with
+ * boxes=3 an LJgas that starts in the middle third. The counts are sampled every interval time
+ * units. The error of each mean is the standard deviation over trajectories divided by
+ * sqrt(trajectories-1). A trajectory whose positions become NaN, which happens rarely when a fast
+ * pair overshoots into the repulsive core, is discarded and run again, at most maximumRestarts
+ * times for each trajectory.
+ *
+ * Arguments are key=value pairs, for example
+ * <pre>
+ * java org.opensourcephysics.stp.approach.ApproachBatch boxes=2 N=270 rho=0.2 T=5 dt=0.01
+ *    time=20 interval=0.1 trajectories=200 threads=8
+ * </pre>
+ */
+public class ApproachBatch {
+  public int boxes = 2;
+  public int numberOfParticles = 270;
+  public double rho = 0.2;
+  public double temperature = 5.0;
+  public double dt = 0.01;
+  public double time = 20;
+  public double interval = 0.1;
+  public int trajectories = 100;
+  public int numberOfThreads = Runtime.getRuntime().availableProcessors();
+  public int maximumRestarts = 10; // runs of a trajectory that may diverge before the batch fails
+  public double[] t;         // sample times
+  public double[][] mean;    // mean[region][sample]
+  public double[][] error;   // error[region][sample]
+  public int discarded;      // trajectories that diverged and were run again
+  double[][] sum, sum2;
+
+  /**
+   * Runs all trajectories and computes the averages.
+   *
+   * @throws InterruptedException
+   */
+  public void run() throws InterruptedException {
+    final int stepsPerSample = Math.max(1, (int) Math.round(interval/dt));
+    final int samples = (int) (time/(stepsPerSample*dt))+1;
+    t = new double[samples];
+    for(int s = 0; s<samples; s++) {
+      t[s] = s*stepsPerSample*dt;
+    }
+    sum = new double[boxes][samples];
+    sum2 = new double[boxes][samples];
+    discarded = 0;
+    ExecutorService pool = Executors.newFixedThreadPool(Math.max(1, numberOfThreads));
+    ArrayList<Future<?>> futures = new ArrayList<Future<?>>();
+    for(int n = 0; n<trajectories; n++) {
+      futures.add(pool.submit(new Runnable() {
+        public void run() {
+          int[][] counts = trajectory(stepsPerSample, samples);
+          for(int restarts = 1; counts==null; restarts++) {
+            if(restarts>maximumRestarts) {
+              throw new IllegalStateException("A trajectory diverged "+restarts+" times; try a smaller dt.");
+            }
+            diverged();
+            counts = trajectory(stepsPerSample, samples);
+          }
+          accumulate(counts);
+        }
+
+      }));
+    }
+    try {
+      for(Future<?> f : futures) {
+        f.get();
+      }
+    } catch(ExecutionException ex) {
+      throw new RuntimeException(ex.getCause());
+    } finally {
+      pool.shutdown();
+    }
+    mean = new double[boxes][samples];
+    error = new double[boxes][samples];
+    for(int k = 0; k<boxes; k++) {
+      for(int s = 0; s<samples; s++) {
+        mean[k][s] = sum[k][s]/trajectories;
+        double variance = Math.max(0, sum2[k][s]/trajectories-mean[k][s]*mean[k][s]);
+        error[k][s] = (trajectories>1)
+                      ? Math.sqrt(variance/(trajectories-1))
+                      : 0;
+      }
+    }
+  }
+
+  /**
+   * Runs one trajectory and returns its counts, counts[region][sample], or null if it diverged.
+   */
+  int[][] trajectory(int stepsPerSample, int samples) {
+    int[][] counts = new int[boxes][samples];
+    if(boxes==2) {
+      LJgas2box gas = new LJgas2box();
+      gas.numberOfParticles = numberOfParticles;
+      gas.rho = rho;
+      gas.temperature = temperature;
+      gas.dt = dt;
+      gas.initialize();
+      for(int s = 0; s<samples; s++) {
+        if(s>0) {
+          for(int i = 0; i<stepsPerSample; i++) {
+            gas.step();
+          }
+        }
+        if(diverged(gas.x, gas.numberOfParticles)) {
+          return null;
+        }
+        counts[0][s] = gas.n0;
+        counts[1][s] = gas.n1;
+      }
+    } else {
+      LJgas gas = new LJgas();
+      gas.numberOfParticles = numberOfParticles;
+      gas.rho = rho;
+      gas.temperature = temperature;
+      gas.dt = dt;
+      gas.initialize();
+      for(int s = 0; s<samples; s++) {
+        if(s>0) {
+          for(int i = 0; i<stepsPerSample; i++) {
+            gas.step();
+          }
+        }
+        if(diverged(gas.x, gas.numberOfParticles)) {
+          return null;
+        }
+        counts[0][s] = gas.n0;
+        counts[1][s] = gas.n1;
+        counts[2][s] = gas.n2;
+      }
+    }
+    return counts;
+  }
+
+  static boolean diverged(double[] x, int N) {
+    for(int i = 0; i<N; i++) {
+      if(Double.isNaN(x[i])) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  synchronized void diverged() {
+    discarded++;
+  }
+
+  synchronized void accumulate(int[][] counts) {
+    for(int k = 0; k<boxes; k++) {
+      for(int s = 0; s<counts[k].length; s++) {
+        double n = counts[k][s];
+        sum[k][s] += n;
+        sum2[k][s] += n*n;
+      }
+    }
+  }
+
+  public static void main(String[] args) throws InterruptedException {
+    ApproachBatch batch = new ApproachBatch();
+    for(String arg : args) {
+      int eq = arg.indexOf('=');
+      if(eq<0) {
+        System.err.println("Ignoring argument "+arg);
+        continue;
+      }
+      String key = arg.substring(0, eq);
+      String value = arg.substring(eq+1);
+      if(key.equals("boxes")) {
+        batch.boxes = (Integer.parseInt(value)==3)
+                      ? 3
+                      : 2;
+      } else if(key.equals("N")) {
+        batch.numberOfParticles = Integer.parseInt(value);
+      } else if(key.equals("rho")) {
+        batch.rho = Double.parseDouble(value);
+      } else if(key.equals("T")) {
+        batch.temperature = Double.parseDouble(value);
+      } else if(key.equals("dt")) {
+        batch.dt = Double.parseDouble(value);
+      } else if(key.equals("time")) {
+        batch.time = Double.parseDouble(value);
+      } else if(key.equals("interval")) {
+        batch.interval = Double.parseDouble(value);
+      } else if(key.equals("trajectories")) {
+        batch.trajectories = Integer.parseInt(value);
+      } else if(key.equals("threads")) {
+        batch.numberOfThreads = Integer.parseInt(value);
+      } else if(key.equals("restarts")) {
+        batch.maximumRestarts = Integer.parseInt(value);
+      } else {
+        System.err.println("Unknown parameter "+key);
+      }
+    }
+    batch.run();
+    StringBuffer header = new StringBuffer("t");
+    for(int k = 0; k<batch.boxes; k++) {
+      header.append(",n"+k+",dn"+k);
+    }
+    System.out.println(header);
+    for(int s = 0; s<batch.t.length; s++) {
+      StringBuffer line = new StringBuffer(""+batch.t[s]);
+      for(int k = 0; k<batch.boxes; k++) {
+        line.append(","+batch.mean[k][s]+","+batch.error[k][s]);
+      }
+      System.out.println(line);
+    }
+    if(batch.discarded>0) {
+      System.out.println("# "+batch.discarded+" diverged trajectories were run again");
+    }
+  }
+
+}
+
+
+/*
+ * Open Source Physics software is free software; you can redistribute
+ * it and/or modify it under the terms of the GNU General Public License (GPL) as
+ * published by the Free Software Foundation; either version 2 of the License,
+ * or(at your option) any later version.
+
+ * Code that uses any portion of the code in the org.opensourcephysics package
+ * or any subpackage (subdirectory) of this package must must also be be released
+ * under the GNU GPL license.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston MA 02111-1307 USA
+ * or view the license online at http://www.gnu.org/copyleft/gpl.html
+ *
+ * Copyright (c) 2007  The Open Source Physics project
+ *                     http://www.opensourcephysics.org
+ */
@@ -15,6 +15,8 @@
  */
 package org.opensourcephysics.stp.approach;
 import org.opensourcephysics.display.*;
+import org.opensourcephysics.stp.util.LennardJones;
+import org.opensourcephysics.stp.util.RandomPlacement;
 import java.awt.*;
 
 public class LJgas implements Drawable {
@@ -26,9 +28,11 @@ public class LJgas implements Drawable {
   public double temperature = 5.0;
   public int steps = 0;
   public double dt = 0.01;
-  public int n0 = 0, n1 = 0, n2 = 0;
+  public int n0 = 0, n1 = 0, n2 = 0; // particles in the left, middle, and right regions
+  int[] region = new int[0];         // region of each particle, 0, 1, or 2
   double radius = 0.3;
   public double cut2 = 3.0*3.0;
+  LennardJones potential = new LennardJones(0, 0);
   public double t = 0;
 
   /**
@@ -46,6 +50,7 @@ public class LJgas implements Drawable {
     vy = new double[N];
     ax = new double[N];
     ay = new double[N];
+    region = new int[N];
   }
 
   public void initialize() {
@@ -53,31 +58,15 @@ public class LJgas implements Drawable {
     reset();
     setArrays();
     setPositions();
+    countRegions();
     setVelocities();
     accel();
   }
 
-  public void setPositions() {
-    boolean overlap;
+  public void setPositions() { // particles placed at random in the middle third, periodic in y
     double ds = cellLength/3.0;
     double s0 = cellLength/3.0;
-    for(int i = 0; i<numberOfParticles; ++i) {
-      do {
-        overlap = false;
-        x[i] = s0+ds*Math.random();
-        y[i] = 0+cellLength*Math.random();
-        int j = 0;
-        while((j<i)&&!overlap) {
-          double dx = x[i]-x[j];
-          double dy = y[i]-y[j];
-          dy = pbc(dy);
-          if(dx*dx+dy*dy<1.0) {
-            overlap = true;
-          }
-          j++;
-        }
-      } while(overlap);
-    }
+    RandomPlacement.place(x, y, numberOfParticles, s0, 0, ds, cellLength, 1.0, false, true);
   }
 
   public void setVelocities() {
@@ -114,64 +103,58 @@ public class LJgas implements Drawable {
   }
 
   public void zeroAverages() {
-    steps = 0;
+    steps = 0; // the region counts belong to the configuration and are kept
+  }
+
+  /**
+   * Finds the region of every particle and counts the particles in each region.
+   * Afterwards step updates the counts only when a particle crosses a boundary.
+   */
+  public void countRegions() {
     n0 = 0;
     n1 = 0;
     n2 = 0;
-  }
-
-  public void accel() {
-    double dx, dy, fx, fy, r2, fOverR, rm2, rm6;
     for(int i = 0; i<numberOfParticles; i++) {
-      ax[i] = 0;
-      ay[i] = 0;
+      region[i] = region(x[i]);
+      count(region[i], 1);
     }
-    for(int i = 0; i<numberOfParticles-1; i++) {
-      for(int j = i+1; j<numberOfParticles; j++) {
-        dx = pbc(x[i]-x[j]);
-        dy = pbc(y[i]-y[j]);
-        r2 = dx*dx+dy*dy;
-        if(r2<cut2) {
-          rm2 = 1.0/r2;
-          rm6 = rm2*rm2*rm2;
-          fOverR = 48.0*rm6*(rm6-0.5)*rm2;
-          fx = fOverR*dx;
-          fy = fOverR*dy;
-          ax[i] += fx;
-          ay[i] += fy;
-          ax[j] -= fx;
-          ay[j] -= fy;
-          //PEsum += 4*(rm6*rm6 - rm6);
-          //Vsum += dx*fx + dy*fy;     //virial calculation
-        }
-      }
+  }
+
+  int region(double s) {
+    return(s<x0)
+          ? 0
+          : (s<x1)
+            ? 1
+            : 2;
+  }
+
+  void count(int r, int change) {
+    if(r==0) {
+      n0 += change;
+    } else if(r==1) {
+      n1 += change;
+    } else {
+      n2 += change;
     }
   }
 
+  public void accel() {
+    potential.setBox(cellLength, cellLength);
+    potential.setCutoff(Math.sqrt(cut2), false);
+    potential.computeForces(x, y, numberOfParticles, ax, ay);
+  }
+
   private double pbc(double s) {
-    if(s>0.5*cellLength) {
-      s -= cellLength;
-    } else if(s<-0.5*cellLength) {
-      s += cellLength;
-    }
-    return s;
+    return LennardJones.separation(s, cellLength);
   }
 
   private double image(double s) {
-    if(s>cellLength) {
-      s -= cellLength;
-    } else if(s<0) {
-      s += cellLength;
-    }
-    return s;
+    return LennardJones.position(s, cellLength);
   }
 
   public void step() { // Velocity Verlet algorithm
     double dt2half = 0.5*dt*dt;
     double dthalf = 0.5*dt;
-    n0 = 0;
-    n1 = 0;
-    n2 = 0;
     for(int i = 0; i<numberOfParticles; i++) {
       x[i] += vx[i]*dt+ax[i]*dt2half;
       y[i] += vy[i]*dt+ay[i]*dt2half;
@@ -179,12 +162,11 @@ public class LJgas implements Drawable {
       y[i] = image(y[i]);
       vx[i] += ax[i]*dthalf;
       vy[i] += ay[i]*dthalf;
-      if(x[i]<x0) {
-        n0++;
-      } else if(x[i]<x1) {
-        n1++;
-      } else {
-        n2++;
+      int r = region(x[i]);
+      if(r!=region[i]) { // the particle crossed a boundary
+        count(region[i], -1);
+        count(r, 1);
+        region[i] = r;
       }
     }
     accel();
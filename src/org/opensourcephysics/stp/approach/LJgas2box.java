@@ -15,6 +15,8 @@
  */
 package org.opensourcephysics.stp.approach;
 import org.opensourcephysics.display.*;
+import org.opensourcephysics.stp.util.LennardJones;
+import org.opensourcephysics.stp.util.RandomPlacement;
 import java.awt.*;
 
 public class LJgas2box implements Drawable {
@@ -26,9 +28,11 @@ public class LJgas2box implements Drawable {
   public double temperature = 5.0;
   public int steps = 0;
   public double dt = 0.01;
-  public int n0 = 0, n1 = 0;
+  public int n0 = 0, n1 = 0;  // particles in the left and right boxes
+  boolean[] right = new boolean[0]; // true if the particle is in the right box
   double radius = 0.3;
   public double cut2 = 3.0*3.0;
+  LennardJones potential = new LennardJones(0, 0);
   public double t = 0;
 
   /**
@@ -46,6 +50,7 @@ public class LJgas2box implements Drawable {
     vy = new double[N];
     ax = new double[N];
     ay = new double[N];
+    right = new boolean[N];
   }
 
   public void initialize() {
@@ -53,30 +58,14 @@ public class LJgas2box implements Drawable {
     reset();
     setArrays();
     setPositions();
+    countBoxes();
     setVelocities();
     accel();
   }
 
-  public void setPositions() {
-    boolean overlap;
+  public void setPositions() { // particles placed at random in the left box, periodic in y
     double ds = cellLength/2.0;
-    for(int i = 0; i<numberOfParticles; ++i) {
-      do {
-        overlap = false;
-        x[i] = ds*Math.random();
-        y[i] = 0+cellLength*Math.random();
-        int j = 0;
-        while((j<i)&&!overlap) {
-          double dx = x[i]-x[j];
-          double dy = y[i]-y[j];
-          dy = pbc(dy);
-          if(dx*dx+dy*dy<1.0) {
-            overlap = true;
-          }
-          j++;
-        }
-      } while(overlap);
-    }
+    RandomPlacement.place(x, y, numberOfParticles, 0, 0, ds, cellLength, 1.0, false, true);
   }
 
   public void setVelocities() {
@@ -111,62 +100,39 @@ public class LJgas2box implements Drawable {
   }
 
   public void zeroAverages() {
-    steps = 0;
-    n0 = 0;
-    n1 = 0;
+    steps = 0; // the box counts belong to the configuration and are kept
   }
 
-  public void accel() {
-    double dx, dy, fx, fy, r2, fOverR, rm2, rm6;
+  /**
+   * Finds the box of every particle and counts the particles in each box.
+   * Afterwards step updates the counts only when a particle crosses a boundary.
+   */
+  public void countBoxes() {
+    n0 = 0;
+    n1 = 0;
     for(int i = 0; i<numberOfParticles; i++) {
-      ax[i] = 0;
-      ay[i] = 0;
-    }
-    for(int i = 0; i<numberOfParticles-1; i++) {
-      for(int j = i+1; j<numberOfParticles; j++) {
-        dx = pbc(x[i]-x[j]);
-        dy = pbc(y[i]-y[j]);
-        r2 = dx*dx+dy*dy;
-        if(r2<cut2) {
-          rm2 = 1.0/r2;
-          rm6 = rm2*rm2*rm2;
-          fOverR = 48.0*rm6*(rm6-0.5)*rm2;
-          fx = fOverR*dx;
-          fy = fOverR*dy;
-          ax[i] += fx;
-          ay[i] += fy;
-          ax[j] -= fx;
-          ay[j] -= fy;
-          //PEsum += 4*(rm6*rm6 - rm6);
-          //Vsum += dx*fx + dy*fy;     //virial calculation
-        }
+      right[i] = x[i]>=x0;
+      if(right[i]) {
+        n1++;
+      } else {
+        n0++;
       }
     }
   }
 
-  private double pbc(double s) {
-    if(s>0.5*cellLength) {
-      s -= cellLength;
-    } else if(s<-0.5*cellLength) {
-      s += cellLength;
-    }
-    return s;
+  public void accel() {
+    potential.setBox(cellLength, cellLength);
+    potential.setCutoff(Math.sqrt(cut2), false);
+    potential.computeForces(x, y, numberOfParticles, ax, ay);
   }
 
   private double image(double s) {
-    if(s>cellLength) {
-      s -= cellLength;
-    } else if(s<0) {
-      s += cellLength;
-    }
-    return s;
+    return LennardJones.position(s, cellLength);
   }
 
   public void step() { // Velocity Verlet algorithm
     double dt2half = 0.5*dt*dt;
     double dthalf = 0.5*dt;
-    n0 = 0;
-    n1 = 0;
     for(int i = 0; i<numberOfParticles; i++) {
       x[i] += vx[i]*dt+ax[i]*dt2half;
       y[i] += vy[i]*dt+ay[i]*dt2half;
@@ -174,10 +140,16 @@ public class LJgas2box implements Drawable {
       y[i] = image(y[i]);
       vx[i] += ax[i]*dthalf;
       vy[i] += ay[i]*dthalf;
-      if(x[i]<x0) {
-        n0++;
-      } else {
-        n1++;
+      boolean r = x[i]>=x0;
+      if(r!=right[i]) { // the particle crossed a boundary
+        right[i] = r;
+        if(r) {
+          n0--;
+          n1++;
+        } else {
+          n0++;
+          n1--;
+        }
       }
     }
     accel();
@@ -10,6 +10,10 @@ import java.awt.*;
 import org.opensourcephysics.display.*;
 import org.opensourcephysics.frames.*;
 import org.opensourcephysics.numerics.*;
+import org.opensourcephysics.stp.util.LennardJones;
+import org.opensourcephysics.stp.util.MeasurementPipeline;
+import org.opensourcephysics.stp.util.RandomPlacement;
+import org.opensourcephysics.stp.util.VelocityVerlet;
 
 /**
  * LJParticlesApp evolves a two-dimensional system of interacting particles
@@ -19,8 +23,10 @@ import org.opensourcephysics.numerics.*;
  * @version 1.0 revised 03/28/05
  */
 public class LJParticlesDemon implements Drawable, ODE {
-  public double state[];
-  public double ax[], ay[];
+  public double x[], y[];     // positions
+  public double vx[], vy[];   // velocities
+  public double ax[], ay[];   // accelerations
+  public double state[];      // x, vx, y, vy of particle i at 4*i, the view of the particles seen by the ODE solver
   public int N;               // number of particles, number per row, number per column
   public double L;
   public double rho = N/(L*L);
@@ -31,13 +37,25 @@ public class LJParticlesDemon implements Drawable, ODE {
   public double totalPotentialEnergyAccumulator;
   public double totalKineticEnergyAccumulator, totalKineticEnergySquaredAccumulator;
   public double virialAccumulator;
+  public double kineticEnergy, potentialEnergy, virial; // of the last step
   public String initialConfiguration;
   public double radius = 0.5; // radius of particles on screen
   public double demonEnergy = 0;
   public double demonEnergyAccumulator;
   public double dv = 0.5;
   public double demonP[];
+  public boolean velocityVerlet = false; // step the arrays in place instead of using the Verlet ODE solver
+  public MeasurementPipeline measurements; // if not null, receives the velocities and energies instead of the histogram
+  LennardJones potential = new LennardJones(0, 0);
   Verlet odeSolver = new Verlet(this);
+  VelocityVerlet integrator = new VelocityVerlet(new VelocityVerlet.Model() {
+    public void computeAcceleration() {
+      LJParticlesDemon.this.computeAcceleration();
+    }
+
+    public void stepDone(double kineticEnergy) {} // the kinetic energy is found after the demon move
+
+  });
 
   public void initialize() {
     demonEnergy = 0;
@@ -46,6 +64,10 @@ public class LJParticlesDemon implements Drawable, ODE {
     rho = N/(L*L);
     resetAverages();
     state = new double[1+4*N];
+    x = new double[N];
+    y = new double[N];
+    vx = new double[N];
+    vy = new double[N];
     ax = new double[N];
     ay = new double[N];
     if(initialConfiguration.equals("triangular")) {
@@ -56,6 +78,7 @@ public class LJParticlesDemon implements Drawable, ODE {
       setRandomPositions();
     }
     setVelocities();
+    packState();
     computeAcceleration();
     odeSolver.setStepSize(dt);
   }
@@ -63,25 +86,8 @@ public class LJParticlesDemon implements Drawable, ODE {
   // end break
   // start break
   // setRandomPositions
-  public void setRandomPositions() { // particles placed at random, but not closer than rMinimumSquared
-    double rMinimumSquared = Math.pow(2.0, 1.0/3.0);
-    boolean overlap;
-    for(int i = 0; i<N; ++i) {
-      do {
-        overlap = false;
-        state[4*i] = L*Math.random();   // x
-        state[4*i+2] = L*Math.random(); // y
-        int j = 0;
-        while((j<i)&&!overlap) {
-          double dx = state[4*i]-state[4*j];
-          double dy = state[4*i+2]-state[4*j+2];
-          if(dx*dx+dy*dy<rMinimumSquared) {
-            overlap = true;
-          }
-          j++;
-        }
-      } while(overlap);
-    }
+  public void setRandomPositions() { // particles placed at random, but not closer than 2^(1/6)
+    RandomPlacement.place(x, y, N, L, L, Math.pow(2.0, 1.0/6.0), true);
   }
 
   // end break
@@ -95,8 +101,8 @@ public class LJParticlesDemon implements Drawable, ODE {
     for(int ix = 0; ix<nx; ++ix) {   // loop through particles in a row
       for(int iy = 0; iy<ny; ++iy) { // loop through rows
         int i = ix+iy*ny;
-        state[4*i] = dx*(ix+0.5);
-        state[4*i+2] = dy*(iy+0.5);
+        x[i] = dx*(ix+0.5);
+        y[i] = dy*(iy+0.5);
       }
     }
   }
@@ -115,11 +121,11 @@ public class LJParticlesDemon implements Drawable, ODE {
     while(i<N) {
       for(int ix = 0; ix<ns; ++ix) {
         if(i<N) {
-          state[4*i+2] = ay*(iy+0.5);
+          y[i] = ay*(iy+0.5);
           if(iy%2==0) {
-            state[4*i] = ax*(ix+0.25);
+            x[i] = ax*(ix+0.25);
           } else {
-            state[4*i] = ax*(ix+0.75);
+            x[i] = ax*(ix+0.75);
           }
           i++;
         }
@@ -135,50 +141,48 @@ public class LJParticlesDemon implements Drawable, ODE {
     double vxSum = 0.0;
     double vySum = 0.0;
     for(int i = 0; i<N; ++i) {          // assign random initial velocities
-      state[4*i+1] = Math.random()-0.5; // vx
-      state[4*i+3] = Math.random()-0.5; // vy
-      vxSum += state[4*i+1];
-      vySum += state[4*i+3];
+      vx[i] = Math.random()-0.5;
+      vy[i] = Math.random()-0.5;
+      vxSum += vx[i];
+      vySum += vy[i];
     }
     // zero center of mass momentum
     double vxcm = vxSum/N; // center of mass momentum (velocity)
     double vycm = vySum/N;
     for(int i = 0; i<N; ++i) {
-      state[4*i+1] -= vxcm;
-      state[4*i+3] -= vycm;
+      vx[i] -= vxcm;
+      vy[i] -= vycm;
     }
     double v2sum = 0; // rescale velocities to obtain desired initial kinetic energy
     for(int i = 0; i<N; ++i) {
-      v2sum += state[4*i+1]*state[4*i+1]+state[4*i+3]*state[4*i+3];
+      v2sum += vx[i]*vx[i]+vy[i]*vy[i];
     }
     double kineticEnergyPerParticle = 0.5*v2sum/N;
     double rescale = Math.sqrt(initialKineticEnergy/kineticEnergyPerParticle);
     for(int i = 0; i<N; ++i) {
-      state[4*i+1] *= rescale;
-      state[4*i+3] *= rescale;
+      vx[i] *= rescale;
+      vy[i] *= rescale;
     }
   }
 
   public void demonMove() {
-    int ix1 = 1+4*((int) (Math.random()*N));
-    int iy1 = ix1+2;
-    int ix2 = 1+4*((int) (Math.random()*N));
-    int iy2 = ix2+2;
+    int i1 = (int) (Math.random()*N);
+    int i2 = (int) (Math.random()*N);
     double dvx = dv*(Math.random()-0.5);
     double dvy = dv*(Math.random()-0.5);
-    double vx1 = state[ix1]+dvx;
-    double vy1 = state[iy1]+dvy;
-    double vx2 = state[ix2]-dvx; // conserve momentum
-    double vy2 = state[iy2]-dvy;
-    double oldE = 0.5*(state[ix1]*state[ix1]+state[iy1]*state[iy1]+state[ix2]*state[ix2]+state[iy2]*state[iy2]);
+    double vx1 = vx[i1]+dvx;
+    double vy1 = vy[i1]+dvy;
+    double vx2 = vx[i2]-dvx; // conserve momentum
+    double vy2 = vy[i2]-dvy;
+    double oldE = 0.5*(vx[i1]*vx[i1]+vy[i1]*vy[i1]+vx[i2]*vx[i2]+vy[i2]*vy[i2]);
     double newE = 0.5*(vx1*vx1+vy1*vy1+vx2*vx2+vy2*vy2);
     double dE = newE-oldE;
     if(dE<demonEnergy) {
       demonEnergy -= dE;
-      state[ix1] = vx1;
-      state[iy1] = vy1;
-      state[ix2] = vx2;
-      state[iy2] = vy2;
+      vx[i1] = vx1;
+      vy[i1] = vy1;
+      vx[i2] = vx2;
+      vy[i2] = vy2;
     }
     demonP[(int) (demonEnergy)]++;
     demonEnergyAccumulator += demonEnergy;
@@ -220,66 +224,28 @@ public class LJParticlesDemon implements Drawable, ODE {
     demonEnergy = 0;
     demonP = new double[100];
     demonEnergyAccumulator = 0;
+    if(measurements!=null) {
+      measurements.clear();
+    }
   }
 
   // end break
   // start break
   // computeAcceleration
   public void computeAcceleration() {
-    for(int i = 0; i<N; i++) {
-      ax[i] = 0;
-      ay[i] = 0;
-    }
-    for(int i = 0; i<N-1; i++) {
-      for(int j = i+1; j<N; j++) {
-        double dx = pbcSeparation(state[4*i]-state[4*j], L);
-        double dy = pbcSeparation(state[4*i+2]-state[4*j+2], L);
-        double r2 = dx*dx+dy*dy;
-        double oneOverR2 = 1.0/r2;
-        double oneOverR6 = oneOverR2*oneOverR2*oneOverR2;
-        double fOverR = 48.0*oneOverR6*(oneOverR6-0.5)*oneOverR2;
-        double fx = fOverR*dx; // force in x-direction
-        double fy = fOverR*dy; // force in y-direction
-        ax[i] += fx;           // use Newton's third law
-        ay[i] += fy;
-        ax[j] -= fx;
-        ay[j] -= fy;
-        totalPotentialEnergyAccumulator += 4.0*(oneOverR6*oneOverR6-oneOverR6);
-        virialAccumulator += dx*fx+dy*fy;
-      }
-    }
-  }
-
-  // end break
-  // start break
-  // pbcSeparation
-  private double pbcSeparation(double ds, double L) {
-    if(ds>0) {
-      while(ds>0.5*L) {
-        ds -= L;
-      }
-    } else {
-      while(ds<-0.5*L) {
-        ds += L;
-      }
-    }
-    return ds;
+    potential.setBox(L, L);
+    potential.computeForces(x, y, N, ax, ay);
+    potentialEnergy = potential.potentialEnergy;
+    virial = potential.virial;
+    totalPotentialEnergyAccumulator += potentialEnergy;
+    virialAccumulator += virial;
   }
 
   // end break
   // start break
   // pbcPosition
   private double pbcPosition(double s, double L) {
-    if(s>0) {
-      while(s>L) {
-        s -= L;
-      }
-    } else {
-      while(s<0) {
-        s += L;
-      }
-    }
-    return s;
+    return LennardJones.position(s, L);
   }
 
   // end break
@@ -291,6 +257,10 @@ public class LJParticlesDemon implements Drawable, ODE {
     // new velocity is computed from previous and current acceleration.
     // Previous acceleration is saved in step method of Verlet.
     if(odeSolver.getRateCounter()==1) {
+      for(int i = 0; i<N; i++) { // new positions from the solver
+        x[i] = state[4*i];
+        y[i] = state[4*i+2];
+      }
       computeAcceleration();
     }
     for(int i = 0; i<N; i++) {
@@ -302,25 +272,85 @@ public class LJParticlesDemon implements Drawable, ODE {
     rate[4*N] = 1; // dt/dt = 1
   }
 
+  /**
+   * Gets the interleaved view of the particle arrays used by the ODE solver.
+   * The view is copied from the arrays at the start of every solver step and back at the end;
+   * it is not updated by steps of the velocityVerlet mode.
+   *
+   * @return double[]
+   */
   public double[] getState() {
     return state;
   }
 
+  /**
+   * Copies the particle arrays into the state view.
+   */
+  public void packState() {
+    for(int i = 0; i<N; i++) {
+      state[4*i] = x[i];
+      state[4*i+1] = vx[i];
+      state[4*i+2] = y[i];
+      state[4*i+3] = vy[i];
+    }
+  }
+
+  /**
+   * Copies the state view into the particle arrays, for example after a saved state was loaded.
+   */
+  public void unpackState() {
+    N = (state.length-1)/4;
+    if((x==null)||(x.length!=N)) {
+      x = new double[N];
+      y = new double[N];
+      vx = new double[N];
+      vy = new double[N];
+      ax = new double[N];
+      ay = new double[N];
+    }
+    for(int i = 0; i<N; i++) {
+      x[i] = state[4*i];
+      vx[i] = state[4*i+1];
+      y[i] = state[4*i+2];
+      vy[i] = state[4*i+3];
+    }
+  }
+
   public void step(HistogramFrame xVelocityHistogram) {
-    odeSolver.step();
+    if(velocityVerlet) {
+      integrator.dt = dt;
+      integrator.Lx = L;
+      integrator.Ly = L;
+      integrator.setArrays(x, y, vx, vy, ax, ay, N);
+      integrator.step();
+    } else {
+      packState();
+      odeSolver.step();
+      for(int i = 0; i<N; i++) {
+        vx[i] = state[4*i+1];
+        vy[i] = state[4*i+3];
+        x[i] = state[4*i] = pbcPosition(state[4*i], L);
+        y[i] = state[4*i+2] = pbcPosition(state[4*i+2], L);
+      }
+    }
     demonMove();
     double totalKineticEnergy = 0;
     for(int i = 0; i<N; i++) {
-      totalKineticEnergy += (state[4*i+1]*state[4*i+1]+state[4*i+3]*state[4*i+3]);
-      xVelocityHistogram.append(state[4*i+1]);
-      state[4*i] = pbcPosition(state[4*i], L);
-      state[4*i+2] = pbcPosition(state[4*i+2], L);
+      totalKineticEnergy += (vx[i]*vx[i]+vy[i]*vy[i]);
     }
     totalKineticEnergy *= 0.5;
+    kineticEnergy = totalKineticEnergy;
     steps++;
     totalKineticEnergyAccumulator += totalKineticEnergy;
     totalKineticEnergySquaredAccumulator += totalKineticEnergy*totalKineticEnergy;
     t += dt;
+    if(measurements!=null) { // binned on the consumer thread
+      measurements.offer(vx, N, kineticEnergy, potentialEnergy, virial);
+    } else {
+      for(int i = 0; i<N; i++) {
+        xVelocityHistogram.append(vx[i]);
+      }
+    }
   }
 
   // end break
@@ -334,8 +364,8 @@ public class LJParticlesDemon implements Drawable, ODE {
     int pyRadius = Math.abs(panel.yToPix(radius)-panel.yToPix(0));
     g.setColor(Color.red);
     for(int i = 0; i<N; i++) {
-      int xpix = panel.xToPix(state[4*i])-pxRadius;
-      int ypix = panel.yToPix(state[4*i+2])-pyRadius;
+      int xpix = panel.xToPix(x[i])-pxRadius;
+      int ypix = panel.yToPix(y[i])-pyRadius;
       g.fillOval(xpix, ypix, 2*pxRadius, 2*pyRadius);
     } // draw central cell boundary
     g.setColor(Color.black);
@@ -18,6 +18,7 @@ import org.opensourcephysics.display.DrawingPanel;
 import org.opensourcephysics.display.GUIUtils;
 import org.opensourcephysics.display.OSPFrame;
 import org.opensourcephysics.display.OSPRuntime;
+import org.opensourcephysics.stp.util.MeasurementPipeline;
 
 /**
  * LJParticlesApp simulates a two-dimensional system of interacting particles
@@ -60,6 +61,14 @@ public class LJParticlesDemonApp extends AbstractSimulation {
     md.L = control.getDouble("L");
     md.initialConfiguration = control.getString("initial configuration");
     md.dt = control.getDouble("\u0394t");
+    md.velocityVerlet = control.getString("integrator").equals("velocity Verlet");
+    stopMeasurements();
+    md.measurements = null;
+    if(control.getBoolean("binning thread")) {
+      // velocities are binned on a separate thread and shown once per display
+      double vmax = 10*Math.sqrt(2*md.initialKineticEnergy); // faster velocities are counted as overflow
+      md.measurements = new MeasurementPipeline(64*(md.N+4), 2*md.initialKineticEnergy/md.N, 0, -vmax, vmax);
+    }
     md.initialize();
     drawingPanel.addDrawable(md);
     drawingPanel.setPreferredMinMax(0, md.L, 0, md.L); // assumes vmax = 2*initalTemp and bin width = Vmax/N
@@ -95,6 +104,19 @@ public class LJParticlesDemonApp extends AbstractSimulation {
         }
       }
     }
+    if((md.steps%getStepsPerDisplay()==0)&&(md.measurements!=null)) {
+      md.measurements.publish(xVelocityHistogram);
+    }
+  }
+
+  /**
+   * Stops the binning thread, if any, after showing the velocities it has binned.
+   */
+  void stopMeasurements() {
+    if(md.measurements!=null) {
+      md.measurements.stop();
+      md.measurements.publish(xVelocityHistogram);
+    }
   }
 
   /**
@@ -104,6 +126,7 @@ public class LJParticlesDemonApp extends AbstractSimulation {
     if((control==null)||(md==null)) {
       return;
     }
+    stopMeasurements();
     control.println("Density = "+decimalFormat.format(md.rho));
     control.println("Number of time steps = "+md.steps);
     //control.println("Time step dt = "+decimalFormat.format(md.dt));
@@ -147,6 +170,11 @@ public class LJParticlesDemonApp extends AbstractSimulation {
     OSPCombo combo2 = new OSPCombo(new String[] {"rectangular", "triangular"}, 0); // second argument is default
     control.setValue("initial configuration", combo2);
     control.setValue("maximum change in velocity component", 0.2);
+    // velocity Verlet updates the particle arrays in place without the copies of the ODE solver
+    OSPCombo combo3 = new OSPCombo(new String[] {"Verlet ODE solver", "velocity Verlet"}, 0);
+    control.setValue("integrator", combo3);
+    control.setValue("binning thread", false); // bin velocities on a separate thread
+    stopMeasurements();
     enableStepsPerDisplay(true);
     super.setStepsPerDisplay(10);       // draw configurations every 10 steps
     drawingPanel.setSquareAspect(true); // so particles will appear as circular disks
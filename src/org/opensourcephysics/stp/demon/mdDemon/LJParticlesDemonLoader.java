@@ -35,6 +35,7 @@ public class LJParticlesDemonLoader implements XML.ObjectLoader {
   public void saveObject(XMLControl control, Object obj) {
     LJParticlesDemonApp model = (LJParticlesDemonApp) obj;
     control.setValue("initial_configuration", model.md.initialConfiguration);
+    model.md.packState();
     control.setValue("state", model.md.state);
   }
 
@@ -52,9 +53,7 @@ public class LJParticlesDemonLoader implements XML.ObjectLoader {
     model.md.initialConfiguration = control.getString("initial_configuration");
     model.md.state = (double[]) control.getObject("state");
     if(model.md.state!=null) {
-      int N = (model.md.state.length-1)/4;
-      model.md.ax = new double[N];
-      model.md.ay = new double[N];
+      model.md.unpackState();
       model.md.computeAcceleration();
       model.md.resetAverages();
     }
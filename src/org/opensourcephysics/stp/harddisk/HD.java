@@ -7,8 +7,12 @@
 
 package org.opensourcephysics.stp.harddisk;
 import java.awt.*;
+import java.io.IOException;
 import java.util.Random;
 import org.opensourcephysics.display.*;
+import org.opensourcephysics.stp.util.MeasurementPipeline;
+import org.opensourcephysics.stp.util.RandomPlacement;
+import org.opensourcephysics.stp.util.TrajectoryWriter;
 
 /**
  * Simulates hard disks.
@@ -47,6 +51,8 @@ public class HD implements Drawable {
   Random random;
   int steps;
   Histogram velocityHistogram = new Histogram();
+  public MeasurementPipeline measurements; // if not null, bins the velocities instead of velocityHistogram
+  public TrajectoryWriter trajectory;     // if not null, receives the configuration after every step
 
   /**
    * Constructor HD
@@ -111,24 +117,8 @@ public class HD implements Drawable {
   }
 
   public void setRandomPositions() {
-    // particles placed at random, but not closer than rMinimumSquared
-    boolean overlap;
-    for(int i = 0; i<N; ++i) {
-      do {
-        overlap = false;
-        positionX[i] = Lx*Math.random();
-        positionY[i] = Ly*Math.random();
-        int j = 0;
-        while((j<i)&&!overlap) {
-          double dx = seperation(positionX[i]-positionX[j], Lx);
-          double dy = seperation(positionY[i]-positionY[j], Ly);
-          if(dx*dx+dy*dy<1) {
-            overlap = true;
-          }
-          j++;
-        }
-      } while(overlap);
-    }
+    // particles placed at random, but not closer than one diameter
+    RandomPlacement.place(positionX, positionY, N, Lx, Ly, 1, true);
     for(int i = 0; i<N; i++) {
       double th = 2*Math.PI*random.nextDouble();
       velocityX[i] = velocityMax*Math.cos(th);
@@ -189,11 +179,23 @@ public class HD implements Drawable {
       totalKineticEnergySquaredAccumulator += getInstaneousKineticEnergy()*getInstaneousKineticEnergy();
       resetList(minimumCollisionI, minimumCollisionJ);
       checkOverlap();
-      for(int i = 0; i<N; i++) {
-        appendVelocityPoint(i);
+      if(measurements!=null) { // binned on the consumer thread
+        measurements.offer(velocityX, N, getInstaneousKineticEnergy(), 0, virial);
+      } else {
+        for(int i = 0; i<N; i++) {
+          appendVelocityPoint(i);
+        }
       }
       steps++;
     }
+    if(trajectory!=null) {
+      try {
+        trajectory.writeFrame(steps, time, positionX, positionY, velocityX, velocityY);
+      } catch(IOException ex) {
+        System.err.println("Could not write trajectory: "+ex);
+        trajectory = null;
+      }
+    }
     // System.out.println(toString() ); //DEBUG
   }
 
@@ -236,6 +238,9 @@ public class HD implements Drawable {
     steps = 0;
     mfpAccumulator = 0;
     velocityHistogram.clear();
+    if(measurements!=null) {
+      measurements.clear();
+    }
   }
 
   public void zeroAverages() {
@@ -245,6 +250,9 @@ public class HD implements Drawable {
     this.totalKineticEnergyAccumulator = 0;
     this.totalKineticEnergySquaredAccumulator = 0;
     this.virialAccumulator = 0;
+    if(measurements!=null) {
+      measurements.clear();
+    }
   }
 
   public void appendVelocityPoint(int i) {
@@ -6,10 +6,14 @@
  */
 
 package org.opensourcephysics.stp.harddisk;
+import java.io.File;
+import java.io.IOException;
 import java.text.NumberFormat;
 import org.opensourcephysics.controls.*;
 import org.opensourcephysics.frames.*;
+import org.opensourcephysics.stp.util.MeasurementPipeline;
 import org.opensourcephysics.stp.util.Rdf;;
+import org.opensourcephysics.stp.util.TrajectoryWriter;
 
 /**
  * Simulates hard disks.
@@ -64,7 +68,31 @@ public class HDApp extends AbstractSimulation {
     hd.setLy(control.getDouble("Ly"));
     hd.setVelocityMax(control.getDouble("temperature"));
     hd.initialConfiguration = control.getString("initial configuration");
+    stopMeasurements();
+    hd.measurements = null;
     hd.initialize();
+    if(control.getBoolean("binning thread")) {
+      // velocities are binned on a separate thread with the bins of the velocity histogram; the
+      // kinetic energy is conserved, so no velocity component exceeds velocityMax*sqrt(N)
+      double vmax = hd.velocityMax*Math.sqrt(hd.N);
+      hd.measurements = new MeasurementPipeline(64*(hd.N+4), 2*hd.velocityMax/hd.N, hd.velocityMax/hd.N, -vmax, vmax);
+    }
+    // configurations are appended to a binary trajectory file if a file name is given
+    if(hd.trajectory!=null) {
+      try {
+        hd.trajectory.close();
+      } catch(IOException ex) {} // a new file is opened below
+      hd.trajectory = null;
+    }
+    String fileName = control.getString("trajectory file").trim();
+    if(fileName.length()>0) {
+      try {
+        hd.trajectory = new TrajectoryWriter(new File(fileName), hd.N, hd.Lx, hd.Ly, true, TrajectoryWriter.FLOAT32, 0);
+        hd.trajectory.setRadius(hd.radius);
+      } catch(IOException ex) {
+        control.println("Could not open "+fileName+": "+ex);
+      }
+    }
     temperatureFrame.clearData();
     pressureFrame.clearData();
     gr.initialize(hd.Lx, hd.Ly, 0.1);
@@ -76,6 +104,9 @@ public class HDApp extends AbstractSimulation {
     temperatureFrame.append(0, hd.getTime(), hd.getInstantaneousTemperature());
     pressureFrame.append(0, hd.getTime(), hd.getInstantanousPressure());
     displayFrame.setPreferredMinMax(-0.1*hd.Lx, 1.1*hd.Lx, -0.1*hd.Lx, 1.1*hd.Lx);
+    if(hd.measurements!=null) {
+      hd.measurements.publish(hd.getVelocityHistogram());
+    }
     histogramFrame.render();
   }
 
@@ -97,6 +128,9 @@ public class HDApp extends AbstractSimulation {
     control.setValue("temperature", 1.0);
     OSPCombo combo = new OSPCombo(new String[] {"crystal", "random"}, 0); // second argument is default
     control.setValue("initial configuration", combo);
+    control.setValue("trajectory file", ""); // no trajectory is written if empty
+    control.setValue("binning thread", false); // bin velocities on a separate thread
+    stopMeasurements();
     gr.reset();
     this.delayTime = 0;
     enableStepsPerDisplay(true);
@@ -107,7 +141,25 @@ public class HDApp extends AbstractSimulation {
     control.clearMessages();
   }
 
+  /**
+   * Stops the binning thread, if any, after showing the velocities it has binned.
+   */
+  void stopMeasurements() {
+    if(hd.measurements!=null) {
+      hd.measurements.stop();
+      hd.measurements.publish(hd.getVelocityHistogram());
+    }
+  }
+
   public void stop() {
+    stopMeasurements();
+    if(hd.trajectory!=null) {
+      try {
+        hd.trajectory.flush();
+      } catch(IOException ex) {
+        control.println("Could not write trajectory: "+ex);
+      }
+    }
     output();
   }
 
@@ -7,8 +7,11 @@
 
 package org.opensourcephysics.stp.hdmc;
 import java.awt.*;
+import java.io.IOException;
 import java.util.Random;
 import org.opensourcephysics.display.*;
+import org.opensourcephysics.stp.util.RandomPlacement;
+import org.opensourcephysics.stp.util.TrajectoryWriter;
 
 /**
  * LJParticlesApp evolves a two-dimensional system of interacting particles
@@ -32,6 +35,7 @@ public class HDMC implements Drawable {
   Random r = new Random();
   public double s;
   public int accept = 0;
+  public TrajectoryWriter trajectory; // if not null, receives the configuration after every Monte Carlo step
 
   public void initialize() {
     accept = 0;
@@ -51,26 +55,8 @@ public class HDMC implements Drawable {
     }
   }
 
-  public void setRandomPositions() { // particles placed at random, but not closer than rMinimumSquared
-    double rMinimumSquared = 1;
-    boolean overlap;
-    for(int i = 0; i<N; ++i) {
-      do {
-        overlap = false;
-        x[i] = L*Math.random();         // x
-        y[i] = L*Math.random();         // y
-        int j = 0;
-        while((j<i)&&!overlap) {
-          double dx = pbcSeparation(x[i]-x[j], L);
-          double dy = pbcSeparation(y[i]-y[j], L);
-          double r2 = dx*dx+dy*dy;
-          if(r2<rMinimumSquared) {
-            overlap = true;
-          }
-          j++;
-        }
-      } while(overlap);
-    }
+  public void setRandomPositions() { // particles placed at random, but not closer than one diameter
+    RandomPlacement.place(x, y, N, L, L, 1, true);
   }
 
   public void setRectangularLattice() { // place particles on a rectangular lattice
@@ -211,6 +197,15 @@ public class HDMC implements Drawable {
     }
     mcs++;
     compress();
+    if(trajectory!=null) {
+      try {
+        trajectory.setRadius(radius); // compress changes the radius
+        trajectory.writeFrame((long) mcs, mcs, x, y, null, null);
+      } catch(IOException ex) {
+        System.err.println("Could not write trajectory: "+ex);
+        trajectory = null;
+      }
+    }
   }
 
   public void draw(DrawingPanel panel, Graphics g) {
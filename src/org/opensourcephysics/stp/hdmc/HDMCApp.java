@@ -6,11 +6,14 @@
  */
 
 package org.opensourcephysics.stp.hdmc;
+import java.io.File;
+import java.io.IOException;
 import org.opensourcephysics.controls.*;
 import org.opensourcephysics.display.GUIUtils;
 import org.opensourcephysics.frames.DisplayFrame;
 import org.opensourcephysics.frames.PlotFrame;
 import org.opensourcephysics.stp.util.Rdf;
+import org.opensourcephysics.stp.util.TrajectoryWriter;
 import org.opensourcephysics.controls.ControlUtils;
 
 
@@ -34,6 +37,7 @@ public class HDMCApp extends AbstractSimulation {
     OSPCombo combo2 = new OSPCombo(new String[] {"hexagonal", "rectangular", "random"}, 1); // second argument is default
     control.setValue("initial configuration", combo2);
     control.setAdjustableValue("scale lengths", 1);
+    control.setValue("trajectory file", ""); // no trajectory is written if empty
     enableStepsPerDisplay(true);
     super.setStepsPerDisplay(100); // draw configurations every 10 steps
     display.setSquareAspect(true); // so particles will appear as circular disks
@@ -53,6 +57,21 @@ public class HDMCApp extends AbstractSimulation {
     mc.initialConfiguration = control.getString("initial configuration");
     mc.stepSize = control.getDouble("step size");
     mc.initialize();
+    // configurations are appended to a binary trajectory file if a file name is given
+    if(mc.trajectory!=null) {
+      try {
+        mc.trajectory.close();
+      } catch(IOException ex) {} // a new file is opened below
+      mc.trajectory = null;
+    }
+    String fileName = control.getString("trajectory file").trim();
+    if(fileName.length()>0) {
+      try {
+        mc.trajectory = new TrajectoryWriter(new File(fileName), mc.N, mc.L, mc.L, false, TrajectoryWriter.FLOAT32, 0);
+      } catch(IOException ex) {
+        control.println("Could not open "+fileName+": "+ex);
+      }
+    }
     gr.initialize(mc.L, mc.L, 0.1);
     grFrame.setPreferredMinMax(0, 0.5*mc.L, 0, 10);
     grFrame.setAutoscaleY(true);
@@ -73,6 +92,13 @@ public class HDMCApp extends AbstractSimulation {
   }
 
   public void stop() {
+    if(mc.trajectory!=null) {
+      try {
+        mc.trajectory.flush();
+      } catch(IOException ex) {
+        control.println("Could not write trajectory: "+ex);
+      }
+    }
 	double x = mc.N/(mc.equivL*mc.equivL);
     control.println("Density = " + ControlUtils.f4(x));
     x = 1.0*mc.accept/mc.steps;
@@ -8,20 +8,34 @@
 package org.opensourcephysics.stp.ising.ising2d;
 import java.util.*;
 import org.opensourcephysics.display.*;
+import org.opensourcephysics.stp.util.FourierTransform;
+import org.opensourcephysics.stp.util.MultipleTauCorrelator;
 
 /**
  * This class computes the auto correlation function of a time series
+ *
+ * In FFT mode the whole series is stored in blocks and all lags are computed in O(n log n)
+ * by compute(). A multiple tau correlator can be enabled to follow long lags in bounded memory.
+ * The integrated autocorrelation time is estimated with the automatic windowing of Sokal.
  * @author Peter Sibley
  */
 public class AutoCorrelator {
   private int numberToSave;
-  private double[] correlationArray;
+  private double[] correlationArray; // normalized correlation written by compute()
+  private double[] lagSum;           // raw sums of a(t)a(t+lag), accumulated by updateStatistics
   private double[] saveArray;
   private double aTotal;  // we will accumulate value of A
   private double a2Total; // and A squared then use the average in our calculations
   private int time;       // counter of number of elements we have processed.
   private boolean isComputed = false;
   private Dataset dataset;
+  private boolean fftMode = false;
+  private static final int BLOCK_SIZE = 4096;
+  private double[][] blocks = new double[16][];    // the series in FFT mode
+  private double[] fullCorrelation;                // normalized correlation at all lags in FFT mode
+  private MultipleTauCorrelator multipleTau;
+  private double windowFactor = 6;                 // window W >= windowFactor*tau_int
+  private int window;                              // window chosen by the last estimate
 
   /**
    * Create a new AutoCorrelator object with a correlation buffer of size ten
@@ -49,8 +63,10 @@ public class AutoCorrelator {
    */
   protected void setupArrays() {
     correlationArray = new double[numberToSave+1];
+    lagSum = new double[numberToSave+1];
     saveArray = new double[numberToSave];
     Arrays.fill(correlationArray, 0); // use built-in funnctions instead of for loop.
+    Arrays.fill(lagSum, 0);
     Arrays.fill(saveArray, 0);
   }
 
@@ -70,23 +86,41 @@ public class AutoCorrelator {
    */
   public void updateStatistics(double a) {
     time++;
+    isComputed = false;
+    aTotal += a;
+    a2Total += (a*a);
+    if(multipleTau!=null) {
+      multipleTau.update(a);
+    }
+    if(fftMode) {
+      int block = (time-1)/BLOCK_SIZE;
+      if(block>=blocks.length) {
+        blocks = Arrays.copyOf(blocks, 2*blocks.length);
+      }
+      if(blocks[block]==null) {
+        blocks[block] = new double[BLOCK_SIZE];
+      }
+      blocks[block][(time-1)%BLOCK_SIZE] = a;
+      return;
+    }
     int index0 = (time-1)%numberToSave; // find index of the oldest element.
     if(time>numberToSave) {
       int index = index0;                 // index is corrent index
       for(int tDiff = numberToSave; tDiff>=1; tDiff--) {
-        correlationArray[tDiff] += a*saveArray[index];
+        lagSum[tDiff] += a*saveArray[index];
         index = ((index+1)%numberToSave); // if index == number to save wrap to 0th index
       }
     }
     saveArray[index0] = a;
-    aTotal += a;
-    a2Total += (a*a);
   }
 
   /**
    * This computes and fills the auto correlation data points.
    * This should be invoked after you have invoked
    * updateStatistics for each element in the time series.
+   * The raw lag sums are kept, so more data may be added after compute.
+   * The correlation is zero until the buffer has been filled, or in FFT mode until there is a sample,
+   * and for a series without fluctuations.
    * @see #getCorrelationDataset
    * @see #getCorrelationArray
    *
@@ -95,6 +129,16 @@ public class AutoCorrelator {
     if(isComputed) {
       return;
     }
+    if(fftMode) {
+      computeFFT();
+      isComputed = true;
+      return;
+    }
+    if(!hasEnoughData()||(a2Total/time-(aTotal/time)*(aTotal/time)<=0)) {
+      Arrays.fill(correlationArray, 0);
+      isComputed = true;
+      return;
+    }
     double aAvg = aTotal/(time);
     double a2Avg = a2Total/(time); // average of the squares
     double aAvg2 = aAvg*aAvg;      // squuare of the average
@@ -102,11 +146,169 @@ public class AutoCorrelator {
     correlationArray[0] = (a2Avg-aAvg2);
     double norm = 1/((double) (time)-(double) numberToSave);
     for(int i = 1; i<=numberToSave; i++) {
-      correlationArray[i] = (correlationArray[i]*norm-aAvg2)/correlationArray[0];
+      correlationArray[i] = (lagSum[i]*norm-aAvg2)/correlationArray[0];
     }
     isComputed = true;
   }
 
+  /**
+   * Returns true if the series is long enough for compute(): longer than the correlation buffer,
+   * or in FFT mode at least one sample.
+   */
+  public boolean hasEnoughData() {
+    return fftMode
+           ? time>0
+           : time>numberToSave;
+  }
+
+  /**
+   * Computes the autocovariance at all lags from the stored series with a zero padded FFT.
+   */
+  protected void computeFFT() {
+    int n = time;
+    if(n==0) {
+      fullCorrelation = new double[0];
+      Arrays.fill(correlationArray, 0);
+      return;
+    }
+    double aAvg = aTotal/n;
+    int size = FourierTransform.powerOfTwo(2*n);
+    double[] re = new double[size];
+    double[] im = new double[size];
+    for(int t = 0; t<n; t++) {
+      re[t] = blocks[t/BLOCK_SIZE][t%BLOCK_SIZE]-aAvg;
+    }
+    FourierTransform.transform(re, im, false);
+    for(int k = 0; k<size; k++) {
+      re[k] = re[k]*re[k]+im[k]*im[k];
+      im[k] = 0;
+    }
+    FourierTransform.transform(re, im, true);
+    fullCorrelation = new double[n];
+    double c0 = re[0]/(size*(double) n);
+    for(int t = 0; t<n; t++) {
+      fullCorrelation[t] = (c0==0)
+                           ? 0
+                           : re[t]/(size*(double) (n-t))/c0;
+    }
+    correlationArray[0] = c0;
+    for(int i = 1; i<=numberToSave; i++) {
+      correlationArray[i] = (i<n)
+                            ? fullCorrelation[i]
+                            : 0;
+    }
+  }
+
+  /**
+   * Selects FFT mode, which stores the whole series and computes all lags when compute() is invoked.
+   * The data collected so far are discarded.
+   *
+   * @param fft
+   */
+  public void setFFTMode(boolean fft) {
+    fftMode = fft;
+    reset();
+  }
+
+  /**
+   * Enables a multiple tau correlator that follows lags up to about 16*2^(levels-1) samples in bounded memory.
+   * The data collected so far are discarded.
+   *
+   * @param levels number of levels, or 0 to disable
+   */
+  public void setMultipleTauLevels(int levels) {
+    multipleTau = (levels>0)
+                  ? new MultipleTauCorrelator(1, levels, 16, 2, false)
+                  : null;
+    reset();
+  }
+
+  /**
+   * Returns the normalized correlation from the multiple tau correlator as (lag, correlation).
+   */
+  public Dataset getMultipleTauDataset() {
+    Dataset data = new Dataset();
+    if((multipleTau==null)||(time==0)) {
+      return data;
+    }
+    double aAvg = aTotal/time;
+    double var = a2Total/time-aAvg*aAvg;
+    double[] lags = multipleTau.getLags();
+    double[] c = multipleTau.getCorrelation();
+    for(int i = 0; i<lags.length; i++) {
+      if(lags[i]>0) {
+        data.append(lags[i], (var==0)
+                             ? 0
+                             : (c[i]-aAvg*aAvg)/var);
+      }
+    }
+    return data;
+  }
+
+  /**
+   * Returns the normalized correlation for lags 0 to n-1. All lags are available in FFT mode;
+   * otherwise lags beyond the correlation buffer are zero. The array is empty until hasEnoughData().
+   */
+  public double[] getNormalizedCorrelation() {
+    if(!isComputed) {
+      compute();
+    }
+    if(!hasEnoughData()) {
+      return new double[0];
+    }
+    if(fftMode) {
+      return(double[]) fullCorrelation.clone();
+    }
+    double[] rho = new double[numberToSave+1];
+    rho[0] = 1;
+    System.arraycopy(correlationArray, 1, rho, 1, numberToSave);
+    return rho;
+  }
+
+  /**
+   * Sets the factor c of the automatic window W >= c*tau_int. Values between 4 and 10 are typical.
+   */
+  public void setWindowFactor(double c) {
+    windowFactor = c;
+  }
+
+  /**
+   * Estimates the integrated autocorrelation time tau_int = 1/2+sum_{t=1}^{W} rho(t) with the smallest
+   * window W such that W >= c*tau_int(W). Use FFT mode or a buffer much longer than tau_int.
+   *
+   * @return tau_int in units of the sampling interval
+   */
+  public double getIntegratedCorrelationTime() {
+    double[] rho = getNormalizedCorrelation();
+    double tau = 0.5;
+    window = Math.max(0, rho.length-1);
+    for(int W = 1; W<rho.length; W++) {
+      tau += rho[W];
+      if(W>=windowFactor*tau) {
+        window = W;
+        break;
+      }
+    }
+    return tau;
+  }
+
+  /**
+   * Estimates the statistical error of tau_int, sqrt((4W+2)/n) tau_int (Madras and Sokal).
+   */
+  public double getIntegratedCorrelationTimeError() {
+    double tau = getIntegratedCorrelationTime();
+    return(time==0)
+          ? 0
+          : tau*Math.sqrt((4.0*window+2.0)/time);
+  }
+
+  /**
+   * Returns the window chosen by the last estimate of the integrated autocorrelation time.
+   */
+  public int getWindow() {
+    return window;
+  }
+
   /**
    * This returns a Dataset with entries as follows: (time , Correlation_A(time) ).
    * The dataset starts at time = 1 , that data is already normalized (divided by Correlation_A(t0)).
@@ -172,13 +374,18 @@ public class AutoCorrelator {
   }
 
   /**
-   * Resets the AutoCorrelator , includeing the size of the correlation buffer
-   * so you can process a new time series.
+   * Resets the AutoCorrelator so you can process a new time series.
+   * The size of the correlation buffer and the mode are kept.
    */
   public void reset() {
     dataset.clear();
-    setNumberToSave(10);
+    setNumberToSave(numberToSave);
     setupVaribles();
+    Arrays.fill(blocks, null);
+    fullCorrelation = null;
+    if(multipleTau!=null) {
+      multipleTau.reset();
+    }
   }
 
 }
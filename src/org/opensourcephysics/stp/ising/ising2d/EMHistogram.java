@@ -0,0 +1,174 @@
+/*
+ * Open Source Physics software is free software as described near the bottom of this code file.
+ *
+ * For additional information and documentation on Open Source Physics please see:
+ * <http://www.opensourcephysics.org/>
+ */
+
+package org.opensourcephysics.stp.ising.ising2d;
+
+/**
+ * EMHistogram records the joint histogram of the interaction energy E+HM and the
+ * magnetization M of a Monte Carlo run at temperature T and field H.
+ *
+ * The histogram is kept in an open addressing hash table with the energy bin and M packed
+ * into one long key, so only the states that are visited use memory and appending does
+ * not allocate. The interaction energy is binned in units of energyBin, which should
+ * divide the spacing of the energy levels, for example |J| for the Ising model.
+ */
+public class EMHistogram {
+  static final long EMPTY = Long.MIN_VALUE;
+  public final int N;           // number of sites
+  public final double T, H;     // parameters of the run
+  public final double energyBin;
+  long[] keys;
+  long[] counts;
+  int size;                     // number of distinct states
+  long totalCount;
+
+  public EMHistogram(int N, double T, double H, double energyBin) {
+    this.N = N;
+    this.T = T;
+    this.H = H;
+    this.energyBin = energyBin;
+    keys = new long[1024];
+    counts = new long[1024];
+    java.util.Arrays.fill(keys, EMPTY);
+  }
+
+  /**
+   * Constructs an empty histogram for a run of an Ising2D model at its current temperature and field.
+   */
+  public EMHistogram(Ising2D ising) {
+    this(ising.N, ising.T, ising.H, Math.abs(ising.J));
+  }
+
+  /**
+   * Appends the current state of an Ising2D model.
+   */
+  public void append(Ising2D ising) {
+    append(ising.E+ising.H*ising.M, ising.M);
+  }
+
+  /**
+   * Appends a sample.
+   *
+   * @param interactionEnergy energy without the field term
+   * @param M magnetization
+   */
+  public void append(double interactionEnergy, int M) {
+    add(interactionEnergy, M, 1);
+  }
+
+  /**
+   * Adds n samples of one state.
+   */
+  public void add(double interactionEnergy, int M, long n) {
+    if(2*(size+1)>keys.length) {
+      grow();
+    }
+    long key = (Math.round(interactionEnergy/energyBin)<<32)|(M&0xffffffffL);
+    int mask = keys.length-1;
+    int slot = hash(key)&mask;
+    while(keys[slot]!=key) {
+      if(keys[slot]==EMPTY) {
+        keys[slot] = key;
+        counts[slot] = 0;
+        size++;
+        break;
+      }
+      slot = (slot+1)&mask;
+    }
+    counts[slot] += n;
+    totalCount += n;
+  }
+
+  static int hash(long key) {
+    key *= 0x9E3779B97F4A7C15L;
+    return(int) (key^(key>>>32));
+  }
+
+  void grow() {
+    long[] oldKeys = keys;
+    long[] oldCounts = counts;
+    keys = new long[2*oldKeys.length];
+    counts = new long[2*oldKeys.length];
+    java.util.Arrays.fill(keys, EMPTY);
+    int mask = keys.length-1;
+    for(int i = 0; i<oldKeys.length; i++) {
+      if(oldKeys[i]!=EMPTY) {
+        int slot = hash(oldKeys[i])&mask;
+        while(keys[slot]!=EMPTY) {
+          slot = (slot+1)&mask;
+        }
+        keys[slot] = oldKeys[i];
+        counts[slot] = oldCounts[i];
+      }
+    }
+  }
+
+  public void clear() {
+    java.util.Arrays.fill(keys, EMPTY);
+    size = 0;
+    totalCount = 0;
+  }
+
+  /**
+   * Returns the number of distinct (E, M) states.
+   */
+  public int size() {
+    return size;
+  }
+
+  public long getTotalCount() {
+    return totalCount;
+  }
+
+  /**
+   * Returns the table capacity; slots 0 to capacity()-1 can be examined with isUsed.
+   */
+  public int capacity() {
+    return keys.length;
+  }
+
+  public boolean isUsed(int slot) {
+    return keys[slot]!=EMPTY;
+  }
+
+  public double energy(int slot) {
+    return(keys[slot]>>32)*energyBin;
+  }
+
+  public int magnetization(int slot) {
+    return(int) keys[slot];
+  }
+
+  public long count(int slot) {
+    return counts[slot];
+  }
+
+}
+
+/*
+ * Open Source Physics software is free software; you can redistribute
+ * it and/or modify it under the terms of the GNU General Public License (GPL) as
+ * published by the Free Software Foundation; either version 2 of the License,
+ * or(at your option) any later version.
+
+ * Code that uses any portion of the code in the org.opensourcephysics package
+ * or any subpackage (subdirectory) of this package must must also be be released
+ * under the GNU GPL license.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston MA 02111-1307 USA
+ * or view the license online at http://www.gnu.org/copyleft/gpl.html
+ *
+ * Copyright (c) 2007  The Open Source Physics project
+ *                     http://www.opensourcephysics.org
+ */
@@ -0,0 +1,464 @@
+/*
+ * Open Source Physics software is free software as described near the bottom of this code file.
+ *
+ * For additional information and documentation on Open Source Physics please see:
+ * <http://www.opensourcephysics.org/>
+ */
+
+package org.opensourcephysics.stp.ising.ising2d;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.util.ArrayList;
+import java.util.Properties;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * FiniteSizeScaling runs Ising2D on a grid of lattice sizes and temperatures and analyzes the
+ * results with finite size scaling.
+ *
+ * The production run of every (L, T) point is divided into blocks of equal length, so the number
+ * of production steps must be a multiple of the number of blocks. Every point is simulated with
+ * its own seed derived from L, T, and seed. The block averages of E, E^2, |M|, M^2, and M^4 are
+ * cached on disk under a name made from (L, T, seed), so extending a sweep only simulates the new
+ * points and a cached point can be reproduced. Errors of the specific heat, susceptibility, and Binder cumulant
+ * U = 1-<M^4>/(3<M^2>^2) are jackknife estimates over the blocks.
+ *
+ * The analysis gives the temperatures at which the Binder cumulants of successive sizes cross,
+ * which approach Tc, and power law fits chi_max ~ L^(gamma/nu) and C_max ~ L^(alpha/nu).
+ * For the two-dimensional Ising model alpha = 0 and C_max grows only logarithmically.
+ *
+ * Arguments are key=value pairs as in Ising2DSweep, for example
+ * <pre>
+ * java org.opensourcephysics.stp.ising.ising2d.FiniteSizeScaling L=16,32,64 T=2.20:2.34:0.01
+ *    dynamics=Wolff equilibration=2000 production=50000 blocks=20 seed=1 threads=8 cache=fss-cache
+ * </pre>
+ */
+public class FiniteSizeScaling {
+  public int[] lengths = {16, 32, 64};
+  public double[] temperatures = {2.2, 2.25, 2.3, 2.35};
+  public String dynamics = "SwendsenWang";
+  public int equilibrationMCS = 1000;
+  public int productionMCS = 20000;
+  public int numberOfBlocks = 20;
+  public long seed = 1;
+  public int numberOfThreads = Runtime.getRuntime().availableProcessors();
+  public File cacheDirectory = new File("fss-cache");
+  public Point[][] points; // points[length index][temperature index]
+
+  /**
+   * The block averages and derived quantities of one (L, T) run.
+   */
+  public static class Point {
+    public int L, N;
+    public double T;
+    public boolean cached;
+    double[][] block; // block[b] = {E, E^2, |M|, M^2, M^4}
+    public double E, specificHeat, specificHeatError;
+    public double absM, absMError, susceptibility, susceptibilityError;
+    public double binderCumulant, binderCumulantError;
+
+    Point(int L, double T, int numberOfBlocks) {
+      this.L = L;
+      this.N = L*L;
+      this.T = T;
+      block = new double[numberOfBlocks][5];
+    }
+
+    void analyze() {
+      int B = block.length;
+      double[] total = new double[5];
+      for(int b = 0; b<B; b++) {
+        for(int k = 0; k<5; k++) {
+          total[k] += block[b][k];
+        }
+      }
+      double[] mean = new double[5];
+      for(int k = 0; k<5; k++) {
+        mean[k] = total[k]/B;
+      }
+      E = mean[0];
+      absM = mean[2];
+      specificHeat = specificHeat(mean);
+      susceptibility = susceptibility(mean);
+      binderCumulant = binder(mean);
+      // jackknife over blocks; for the plain mean this is the usual blocking error
+      double c2 = 0, x2 = 0, u2 = 0, m2 = 0;
+      double[] leaveOut = new double[5];
+      for(int b = 0; b<B; b++) {
+        for(int k = 0; k<5; k++) {
+          leaveOut[k] = (total[k]-block[b][k])/(B-1);
+        }
+        c2 += sqr(specificHeat(leaveOut)-specificHeat);
+        x2 += sqr(susceptibility(leaveOut)-susceptibility);
+        u2 += sqr(binder(leaveOut)-binderCumulant);
+        m2 += sqr(leaveOut[2]-absM);
+      }
+      double factor = (B-1.0)/B;
+      specificHeatError = Math.sqrt(factor*c2);
+      susceptibilityError = Math.sqrt(factor*x2);
+      binderCumulantError = Math.sqrt(factor*u2);
+      absMError = Math.sqrt(factor*m2);
+    }
+
+    double specificHeat(double[] m) {
+      return(m[1]-m[0]*m[0])/(T*T*N);
+    }
+
+    double susceptibility(double[] m) {
+      return(m[3]-m[2]*m[2])/(T*N);
+    }
+
+    double binder(double[] m) {
+      return 1-m[4]/(3*m[3]*m[3]);
+    }
+
+    static double sqr(double x) {
+      return x*x;
+    }
+
+  }
+
+  /**
+   * Runs or loads every point of the grid.
+   *
+   * @throws InterruptedException
+   */
+  public void run() throws InterruptedException {
+    if(numberOfBlocks<2) {
+      throw new IllegalArgumentException("Need at least two blocks for the error estimates.");
+    }
+    if((productionMCS<numberOfBlocks)||(productionMCS%numberOfBlocks!=0)) {
+      throw new IllegalArgumentException("The production steps "+productionMCS+" are not a multiple of the "
+                                         +numberOfBlocks+" blocks.");
+    }
+    points = new Point[lengths.length][temperatures.length];
+    if(!cacheDirectory.isDirectory()) {
+      cacheDirectory.mkdirs();
+    }
+    ExecutorService pool = Executors.newFixedThreadPool(Math.max(1, numberOfThreads));
+    ArrayList<Future<?>> futures = new ArrayList<Future<?>>();
+    // largest lattices first so that the pool is not left waiting for them at the end
+    for(int i = lengths.length-1; i>=0; i--) {
+      for(int j = 0; j<temperatures.length; j++) {
+        final Point point = new Point(lengths[i], temperatures[j], numberOfBlocks);
+        points[i][j] = point;
+        futures.add(pool.submit(new Runnable() {
+          public void run() {
+            if(!load(point)) {
+              simulate(point);
+              save(point);
+            }
+            point.analyze();
+          }
+
+        }));
+      }
+    }
+    try {
+      for(Future<?> f : futures) {
+        f.get();
+      }
+    } catch(ExecutionException ex) {
+      throw new RuntimeException(ex.getCause());
+    } finally {
+      pool.shutdown();
+    }
+  }
+
+  void simulate(Point point) {
+    Ising2D ising = new Ising2D();
+    ising.initialize(point.L, point.T, 0);
+    ising.setSeed(pointSeed(point));
+    for(int i = 0; i<equilibrationMCS; i++) {
+      Ising2DSweep.step(ising, dynamics);
+    }
+    int stepsPerBlock = productionMCS/numberOfBlocks;
+    for(int b = 0; b<numberOfBlocks; b++) {
+      double[] sum = point.block[b];
+      for(int i = 0; i<stepsPerBlock; i++) {
+        Ising2DSweep.step(ising, dynamics);
+        double E = ising.E;
+        double M2 = (double) ising.M*ising.M;
+        sum[0] += E;
+        sum[1] += E*E;
+        sum[2] += Math.abs(ising.M);
+        sum[3] += M2;
+        sum[4] += M2*M2;
+      }
+      for(int k = 0; k<5; k++) {
+        sum[k] /= stepsPerBlock;
+      }
+    }
+  }
+
+  File cacheFile(Point point) {
+    return new File(cacheDirectory, "L"+point.L+"_T"+temperatureKey(point.T)+"_seed"+seed+".properties");
+  }
+
+  /**
+   * Returns the seed of the run at (L, T), a hash of L, the temperature key, and seed.
+   */
+  long pointSeed(Point point) {
+    long h = seed;
+    h = 31*h+point.L;
+    h = 31*h+temperatureKey(point.T).hashCode();
+    return h;
+  }
+
+  /**
+   * Returns T rounded to six decimals without trailing zeros, so that temperatures from different
+   * grids such as 2.28 and 2.2800000000000002 share a cache entry.
+   */
+  static String temperatureKey(double T) {
+    return BigDecimal.valueOf(T).setScale(6, RoundingMode.HALF_EVEN).stripTrailingZeros().toPlainString();
+  }
+
+  boolean load(Point point) {
+    File file = cacheFile(point);
+    if(!file.isFile()) {
+      return false;
+    }
+    Properties p = new Properties();
+    try {
+      InputStream in = new FileInputStream(file);
+      try {
+        p.load(in);
+      } finally {
+        in.close();
+      }
+      // points computed with other run parameters are not reused
+      if(!dynamics.equals(p.getProperty("dynamics"))||(equilibrationMCS!=Integer.parseInt(p.getProperty("equilibrationMCS")))
+         ||(productionMCS!=Integer.parseInt(p.getProperty("productionMCS")))
+         ||(numberOfBlocks!=Integer.parseInt(p.getProperty("blocks")))
+         ||(pointSeed(point)!=Long.parseLong(p.getProperty("pointSeed")))) {
+        return false;
+      }
+      for(int b = 0; b<numberOfBlocks; b++) {
+        String[] values = p.getProperty("block"+b).split(",");
+        for(int k = 0; k<5; k++) {
+          point.block[b][k] = Double.parseDouble(values[k]);
+        }
+      }
+    } catch(IOException ex) {
+      return false;
+    } catch(RuntimeException ex) { // missing or malformed entries
+      return false;
+    }
+    point.cached = true;
+    return true;
+  }
+
+  void save(Point point) {
+    Properties p = new Properties();
+    p.setProperty("L", ""+point.L);
+    p.setProperty("T", ""+point.T);
+    p.setProperty("seed", ""+seed);
+    p.setProperty("pointSeed", ""+pointSeed(point));
+    p.setProperty("dynamics", dynamics);
+    p.setProperty("equilibrationMCS", ""+equilibrationMCS);
+    p.setProperty("productionMCS", ""+productionMCS);
+    p.setProperty("blocks", ""+numberOfBlocks);
+    for(int b = 0; b<numberOfBlocks; b++) {
+      double[] v = point.block[b];
+      p.setProperty("block"+b, v[0]+","+v[1]+","+v[2]+","+v[3]+","+v[4]);
+    }
+    // write to a temporary file first so that an interrupted run never leaves a partial entry
+    File file = cacheFile(point);
+    File tmp = new File(file.getPath()+".tmp");
+    try {
+      OutputStream out = new FileOutputStream(tmp);
+      try {
+        p.store(out, "Ising2D finite size scaling point");
+      } finally {
+        out.close();
+      }
+      if(!tmp.renameTo(file)) {
+        file.delete();
+        tmp.renameTo(file);
+      }
+    } catch(IOException ex) {
+      System.err.println("Could not cache "+file+": "+ex);
+    }
+  }
+
+  /**
+   * Returns the temperature at which the Binder cumulants of lengths[i] and lengths[i+1] cross,
+   * found by linear interpolation on the temperature grid, or NaN if they do not cross.
+   */
+  public double binderCrossing(int i) {
+    for(int j = 0; j+1<temperatures.length; j++) {
+      double d0 = points[i][j].binderCumulant-points[i+1][j].binderCumulant;
+      double d1 = points[i][j+1].binderCumulant-points[i+1][j+1].binderCumulant;
+      if((d0==0)||(d0*d1<0)) {
+        return temperatures[j]+(temperatures[j+1]-temperatures[j])*d0/(d0-d1);
+      }
+    }
+    return Double.NaN;
+  }
+
+  /**
+   * Returns the maximum over temperature of the susceptibility (observable 0) or the specific heat
+   * (observable 1) for lengths[i]. An interior maximum is refined with a parabola through the
+   * neighboring points.
+   */
+  public double maximum(int i, int observable) {
+    int n = temperatures.length;
+    double[] y = new double[n];
+    int jmax = 0;
+    for(int j = 0; j<n; j++) {
+      y[j] = (observable==0)
+             ? points[i][j].susceptibility
+             : points[i][j].specificHeat;
+      if(y[j]>y[jmax]) {
+        jmax = j;
+      }
+    }
+    if((jmax==0)||(jmax==n-1)) {
+      return y[jmax];
+    }
+    double x0 = temperatures[jmax-1], x1 = temperatures[jmax], x2 = temperatures[jmax+1];
+    double y0 = y[jmax-1], y1 = y[jmax], y2 = y[jmax+1];
+    // parabola through three points
+    double denom = (x0-x1)*(x0-x2)*(x1-x2);
+    double a = (x2*(y1-y0)+x1*(y0-y2)+x0*(y2-y1))/denom;
+    double b = (x2*x2*(y0-y1)+x1*x1*(y2-y0)+x0*x0*(y1-y2))/denom;
+    double c = (x1*x2*(x1-x2)*y0+x2*x0*(x2-x0)*y1+x0*x1*(x0-x1)*y2)/denom;
+    if(a>=0) {
+      return y1;
+    }
+    double xv = -b/(2*a);
+    return Math.max(y1, a*xv*xv+b*xv+c);
+  }
+
+  /**
+   * Fits y = A L^x by least squares in log-log form.
+   *
+   * @return {x, A, error of x}
+   */
+  public static double[] fitPowerLaw(int[] L, double[] y) {
+    int n = L.length;
+    double sx = 0, sy = 0, sxx = 0, sxy = 0;
+    for(int i = 0; i<n; i++) {
+      double lx = Math.log(L[i]), ly = Math.log(y[i]);
+      sx += lx;
+      sy += ly;
+      sxx += lx*lx;
+      sxy += lx*ly;
+    }
+    double delta = n*sxx-sx*sx;
+    double slope = (n*sxy-sx*sy)/delta;
+    double intercept = (sy-slope*sx)/n;
+    double residual = 0;
+    for(int i = 0; i<n; i++) {
+      double r = Math.log(y[i])-intercept-slope*Math.log(L[i]);
+      residual += r*r;
+    }
+    double slopeError = (n>2)
+                        ? Math.sqrt(residual/(n-2)*n/delta)
+                        : 0;
+    return new double[] {slope, Math.exp(intercept), slopeError};
+  }
+
+  /**
+   * Fits the maxima of the susceptibility (observable 0) or specific heat (observable 1).
+   *
+   * @return {exponent, amplitude, error of exponent}
+   */
+  public double[] fitMaxima(int observable) {
+    double[] y = new double[lengths.length];
+    for(int i = 0; i<lengths.length; i++) {
+      y[i] = maximum(i, observable);
+    }
+    return fitPowerLaw(lengths, y);
+  }
+
+  public static void main(String[] args) throws InterruptedException {
+    FiniteSizeScaling fss = new FiniteSizeScaling();
+    for(String arg : args) {
+      int eq = arg.indexOf('=');
+      if(eq<0) {
+        System.err.println("Ignoring argument "+arg);
+        continue;
+      }
+      String key = arg.substring(0, eq);
+      String value = arg.substring(eq+1);
+      if(key.equals("L")) {
+        double[] v = Ising2DSweep.parseValues(value);
+        fss.lengths = new int[v.length];
+        for(int i = 0; i<v.length; i++) {
+          fss.lengths[i] = (int) Math.round(v[i]);
+        }
+      } else if(key.equals("T")) {
+        fss.temperatures = Ising2DSweep.parseValues(value);
+      } else if(key.equals("dynamics")) {
+        fss.dynamics = value;
+      } else if(key.equals("equilibration")) {
+        fss.equilibrationMCS = Integer.parseInt(value);
+      } else if(key.equals("production")) {
+        fss.productionMCS = Integer.parseInt(value);
+      } else if(key.equals("blocks")) {
+        fss.numberOfBlocks = Integer.parseInt(value);
+      } else if(key.equals("seed")) {
+        fss.seed = Long.parseLong(value);
+      } else if(key.equals("threads")) {
+        fss.numberOfThreads = Integer.parseInt(value);
+      } else if(key.equals("cache")) {
+        fss.cacheDirectory = new File(value);
+      } else {
+        System.err.println("Unknown parameter "+key);
+      }
+    }
+    fss.run();
+    System.out.println("L,T,C,dC,absM,dabsM,chi,dchi,U,dU,cached");
+    for(int i = 0; i<fss.lengths.length; i++) {
+      for(int j = 0; j<fss.temperatures.length; j++) {
+        Point p = fss.points[i][j];
+        System.out.println(p.L+","+p.T+","+p.specificHeat+","+p.specificHeatError+","+p.absM/p.N+","+p.absMError/p.N+","
+                           +p.susceptibility+","+p.susceptibilityError+","+p.binderCumulant+","+p.binderCumulantError+","+p.cached);
+      }
+    }
+    for(int i = 0; i+1<fss.lengths.length; i++) {
+      System.out.println("# Binder crossing L = "+fss.lengths[i]+", "+fss.lengths[i+1]+": T = "+fss.binderCrossing(i));
+    }
+    if(fss.lengths.length>1) {
+      double[] chi = fss.fitMaxima(0);
+      double[] c = fss.fitMaxima(1);
+      System.out.println("# chi_max ~ L^x with x = gamma/nu = "+chi[0]+" +/- "+chi[2]);
+      System.out.println("# C_max ~ L^x with x = alpha/nu = "+c[0]+" +/- "+c[2]);
+    }
+  }
+
+}
+
+/*
+ * Open Source Physics software is free software; you can redistribute
+ * it and/or modify it under the terms of the GNU General Public License (GPL) as
+ * published by the Free Software Foundation; either version 2 of the License,
+ * or(at your option) any later version.
+
+ * Code that uses any portion of the code in the org.opensourcephysics package
+ * or any subpackage (subdirectory) of this package must must also be be released
+ * under the GNU GPL license.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston MA 02111-1307 USA
+ * or view the license online at http://www.gnu.org/copyleft/gpl.html
+ *
+ * Copyright (c) 2007  The Open Source Physics project
+ *                     http://www.opensourcephysics.org
+ */
@@ -0,0 +1,217 @@
+/*
+ * Open Source Physics software is free software as described near the bottom of this code file.
+ *
+ * For additional information and documentation on Open Source Physics please see:
+ * <http://www.opensourcephysics.org/>
+ */
+
+package org.opensourcephysics.stp.ising.ising2d;
+
+/**
+ * HistogramReweighting estimates thermodynamic averages at nearby temperatures and fields
+ * from one or more EMHistograms.
+ *
+ * The runs are combined with the Ferrenberg-Swendsen multiple histogram (WHAM) equations
+ * <pre>
+ *   Omega(E,M) = sum_k n_k(E,M) / sum_k N_k exp(f_k-beta_k E+beta_k H_k M)
+ *   exp(-f_k) = sum_{E,M} Omega(E,M) exp(-beta_k E+beta_k H_k M)
+ * </pre>
+ * which are iterated in log space until the free energies f_k converge. For a single run the
+ * solution is the single histogram reweighting of Ferrenberg and Swendsen. The estimates are
+ * reliable only where the runs sampled the relevant energies and magnetizations.
+ */
+public class HistogramReweighting {
+  /**
+   * Averages at one temperature and field. Energies and magnetizations are per system;
+   * specific heat and susceptibility are per site as in Ising2D.
+   */
+  public static class Result {
+    public double T, H;
+    public double E, E2, M, absM, M2, M4;
+    public double specificHeat, susceptibility, binderCumulant;
+
+  }
+
+  EMHistogram[] runs;
+  int N;
+  double[] energy;       // interaction energy of each state
+  int[] magnetization;
+  double[] logCount;     // log of the total count of each state over all runs
+  double[] logOmega;     // log of the estimated density of states
+  double[] f;            // dimensionless free energy of each run
+  double[] logSamples;   // log of the number of samples of each run
+  public int iterations;
+
+  public HistogramReweighting(EMHistogram... runs) {
+    if(runs.length==0) {
+      throw new IllegalArgumentException("No histograms.");
+    }
+    this.runs = runs;
+    N = runs[0].N;
+    // merge the runs into one table of distinct states
+    EMHistogram all = new EMHistogram(N, runs[0].T, runs[0].H, runs[0].energyBin);
+    for(EMHistogram run : runs) {
+      for(int slot = 0; slot<run.capacity(); slot++) {
+        if(run.isUsed(slot)) {
+          all.add(run.energy(slot), run.magnetization(slot), run.count(slot));
+        }
+      }
+    }
+    int n = all.size();
+    energy = new double[n];
+    magnetization = new int[n];
+    logCount = new double[n];
+    logOmega = new double[n];
+    int s = 0;
+    for(int slot = 0; slot<all.capacity(); slot++) {
+      if(all.isUsed(slot)) {
+        energy[s] = all.energy(slot);
+        magnetization[s] = all.magnetization(slot);
+        logCount[s] = Math.log(all.count(slot));
+        s++;
+      }
+    }
+    f = new double[runs.length];
+    logSamples = new double[runs.length];
+    for(int k = 0; k<runs.length; k++) {
+      logSamples[k] = Math.log(runs[k].getTotalCount());
+    }
+    solve(1e-10, 10000);
+  }
+
+  /**
+   * Iterates the WHAM equations.
+   *
+   * @param tolerance largest allowed change of any f_k in one iteration
+   * @param maxIterations
+   * @return true if the iteration converged
+   */
+  public boolean solve(double tolerance, int maxIterations) {
+    int K = runs.length;
+    double[] term = new double[K];
+    double[] terms = new double[energy.length];
+    for(iterations = 0; iterations<maxIterations; iterations++) {
+      for(int s = 0; s<energy.length; s++) {
+        for(int k = 0; k<K; k++) {
+          term[k] = logSamples[k]+f[k]+logBoltzmann(s, runs[k].T, runs[k].H);
+        }
+        logOmega[s] = logCount[s]-logSumExp(term, K);
+      }
+      double change = 0;
+      double shift = 0;
+      for(int k = 0; k<K; k++) {
+        for(int s = 0; s<energy.length; s++) {
+          terms[s] = logOmega[s]+logBoltzmann(s, runs[k].T, runs[k].H);
+        }
+        double fk = -logSumExp(terms, energy.length);
+        if(k==0) {
+          shift = fk; // f is defined up to a constant
+        }
+        fk -= shift;
+        change = Math.max(change, Math.abs(fk-f[k]));
+        f[k] = fk;
+      }
+      if(change<tolerance) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  double logBoltzmann(int s, double T, double H) {
+    return -(energy[s]-H*magnetization[s])/T;
+  }
+
+  static double logSumExp(double[] x, int n) {
+    double max = Double.NEGATIVE_INFINITY;
+    for(int i = 0; i<n; i++) {
+      max = Math.max(max, x[i]);
+    }
+    if(max==Double.NEGATIVE_INFINITY) {
+      return max;
+    }
+    double sum = 0;
+    for(int i = 0; i<n; i++) {
+      sum += Math.exp(x[i]-max);
+    }
+    return max+Math.log(sum);
+  }
+
+  /**
+   * Returns the log of the dimensionless free energy -log Z relative to the first run.
+   */
+  public double getFreeEnergy(int run) {
+    return f[run];
+  }
+
+  /**
+   * Reweights the combined histograms to temperature T and field H.
+   */
+  public Result reweight(double T, double H) {
+    int n = energy.length;
+    double[] logWeight = new double[n];
+    for(int s = 0; s<n; s++) {
+      logWeight[s] = logOmega[s]+logBoltzmann(s, T, H);
+    }
+    double logZ = logSumExp(logWeight, n);
+    Result r = new Result();
+    r.T = T;
+    r.H = H;
+    for(int s = 0; s<n; s++) {
+      double p = Math.exp(logWeight[s]-logZ);
+      double e = energy[s]-H*magnetization[s];
+      double m = magnetization[s];
+      r.E += p*e;
+      r.E2 += p*e*e;
+      r.M += p*m;
+      r.absM += p*Math.abs(m);
+      r.M2 += p*m*m;
+      r.M4 += p*m*m*m*m;
+    }
+    r.specificHeat = (r.E2-r.E*r.E)/(T*T*N);
+    r.susceptibility = (r.M2-r.absM*r.absM)/(T*N);
+    r.binderCumulant = 1-r.M4/(3*r.M2*r.M2);
+    return r;
+  }
+
+  /**
+   * Reweights to n+1 equally spaced temperatures from T1 to T2 at field H.
+   *
+   * @param n number of intervals, at least 1
+   */
+  public Result[] reweight(double T1, double T2, int n, double H) {
+    if(n<1) {
+      throw new IllegalArgumentException("Need at least one temperature interval.");
+    }
+    Result[] results = new Result[n+1];
+    for(int i = 0; i<=n; i++) {
+      results[i] = reweight(T1+i*(T2-T1)/n, H);
+    }
+    return results;
+  }
+
+}
+
+/*
+ * Open Source Physics software is free software; you can redistribute
+ * it and/or modify it under the terms of the GNU General Public License (GPL) as
+ * published by the Free Software Foundation; either version 2 of the License,
+ * or(at your option) any later version.
+
+ * Code that uses any portion of the code in the org.opensourcephysics package
+ * or any subpackage (subdirectory) of this package must must also be be released
+ * under the GNU GPL license.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston MA 02111-1307 USA
+ * or view the license online at http://www.gnu.org/copyleft/gpl.html
+ *
+ * Copyright (c) 2007  The Open Source Physics project
+ *                     http://www.opensourcephysics.org
+ */
@@ -8,14 +8,12 @@
 package org.opensourcephysics.stp.ising.ising2d;
 import java.awt.Color;
 import java.awt.Graphics;
-import java.util.ArrayList;
-import java.util.HashMap;
-import java.util.Random;
 import org.opensourcephysics.display.Drawable;
 import org.opensourcephysics.display.DrawingPanel;
 import org.opensourcephysics.display2d.CellLattice;
+import org.opensourcephysics.stp.util.FastRandom;
 
-public class Ising2D implements Drawable {
+public class Ising2D implements Drawable, TemperingReplica {
   public static final double criticalTemperature = 2.0/Math.log(1.0+Math.sqrt(2.0));
   public int[][] spin;
   public int L;
@@ -30,9 +28,24 @@ public class Ising2D implements Drawable {
   public double M_acc;         // M accumulator
   public double absM_acc;      // |M| acumulator
   public double M2_acc;        // M^2 accumulator
+  public double improvedM2_acc;   // cluster estimator of M^2 accumulator
+  public double improvedM4_acc;   // cluster estimator of M^4 accumulator
+  public double improvedAbsM_acc; // cluster estimator of |M| accumulator
+  public int improvedSteps;       // number of steps with cluster estimators
+  public EMHistogram histogram;   // records E and M after every step if not null
   public int mcs;              // Number of MC moves per spin
   public int acceptedMoves;    // Used to determine acceptance ratio
   private CellLattice lattice; // Used only for drawing
+  private MultiSpinMetropolis multiSpin; // packed spins used by doOneMultiSpinStep
+  private WolffCluster wolff;
+  private SwendsenWang swendsenWang;
+  private NFoldWay nFoldWay;
+  private ParallelSweeper parallel;
+  private FastRandom random = new FastRandom(); // used by doOneMCStep
+  private long seed;
+  private boolean seeded = false; // if false the cluster and multi-spin engines seed themselves from the clock
+  private double[] parallelDE = new double[10]; // indexed by (sum of neighbors+4)+(spin+1)/2
+  private double[] parallelW = new double[10];
 
   public void initialize(int _L, double _T, double _H) {
     L = _L;
@@ -49,15 +62,71 @@ public class Ising2D implements Drawable {
         spin[i][j] = 1;
       }
     }
+    multiSpin = null;
+    wolff = null;
+    swendsenWang = null;
+    nFoldWay = null;
     M = N;
     E = -2*J*N-H*M;
     resetData();
   }
 
+  /**
+   * Copies a configuration into the lattice and recomputes E and M.
+   *
+   * @param _spin spins +1 or -1 with the same length as the lattice
+   */
+  public void setSpins(int[][] _spin) {
+    spinsChanged();
+    int bonds = 0;
+    M = 0;
+    for(int i = 0; i<L; ++i) {
+      System.arraycopy(_spin[i], 0, spin[i], 0, L);
+    }
+    for(int i = 0; i<L; ++i) {
+      for(int j = 0; j<L; ++j) {
+        bonds += spin[i][j]*(spin[(i+1)%L][j]+spin[i][(j+1)%L]);
+        M += spin[i][j];
+      }
+    }
+    E = -J*bonds-H*M;
+  }
+
+  /**
+   * Seeds the random number generators of the Metropolis, multi-spin, Wolff, Swendsen-Wang, parallel, and
+   * n-fold way engines so that runs with these dynamics can be reproduced.
+   *
+   * @param _seed
+   */
+  public void setSeed(long _seed) {
+    seed = _seed;
+    seeded = true;
+    random.setSeed(seed+5);
+    if(multiSpin!=null) {
+      multiSpin.setSeed(seed);
+    }
+    if(wolff!=null) {
+      wolff.setSeed(seed+1);
+    }
+    if(swendsenWang!=null) {
+      swendsenWang.setSeed(seed+2);
+    }
+    if(parallel!=null) {
+      parallel.setSeed(seed+3);
+    }
+    if(nFoldWay!=null) {
+      nFoldWay.setSeed(seed+4);
+    }
+  }
+
   public void setTemperature(double _T) {
     T = _T;
   }
 
+  public double getEnergy() {
+    return E;
+  }
+
   public void setExternalField(double _H) {
     E += H*M-_H*M;
     H = _H;
@@ -88,15 +157,44 @@ public class Ising2D implements Drawable {
     absM_acc = 0;
     M_acc = 0;
     M2_acc = 0;
+    improvedM2_acc = 0;
+    improvedM4_acc = 0;
+    improvedAbsM_acc = 0;
+    improvedSteps = 0;
     acceptedMoves = 0;
   }
 
+  /**
+   * Susceptibility from the Swendsen-Wang cluster estimators of M^2 and |M|.
+   */
+  public double improvedSusceptibility() {
+    int steps = (improvedSteps==0)
+                ? 1
+                : improvedSteps;
+    double M2_avg = improvedM2_acc/steps;
+    double M_avg = improvedAbsM_acc/steps;
+    return(M2_avg-M_avg*M_avg)/(T*N);
+  }
+
+  /**
+   * Binder cumulant 1-<M^4>/(3<M^2>^2) from the Swendsen-Wang cluster estimators.
+   */
+  public double improvedBinderCumulant() {
+    if(improvedSteps==0) {
+      return 0;
+    }
+    double M2_avg = improvedM2_acc/improvedSteps;
+    double M4_avg = improvedM4_acc/improvedSteps;
+    return 1-M4_avg/(3*M2_avg*M2_avg);
+  }
+
   public void doOneMCStep() {
+    spinsChanged();
     for(int k = 0; k<N; ++k) {
-      int i = (int) (Math.random()*L);
-      int j = (int) (Math.random()*L);
+      int i = random.nextInt(L);
+      int j = random.nextInt(L);
       double dE = 2*J*spin[i][j]*(H+spin[(i+1)%L][j]+spin[(i-1+L)%L][j]+spin[i][(j+1)%L]+spin[i][(j-1+L)%L]);
-      if((dE<=0)||(Math.random()<Math.exp(-dE/T))) {
+      if((dE<=0)||(random.nextDouble()<Math.exp(-dE/T))) {
         spin[i][j] = -spin[i][j];
         acceptedMoves++;
         E += dE;
@@ -107,63 +205,199 @@ public class Ising2D implements Drawable {
     mcs++;
   }
 
-  public void doOneWolffStep(double bondProbability) {
-    HashMap<Integer, Integer> wolffCluster = growWolffCluster(bondProbability);
-    int size = wolffCluster.size();
-    for(int i = 0; i<size; i++) {
-      int x = (Integer) wolffCluster.get(i)%L;
-      int y = (Integer) wolffCluster.get(i)/L;
-      int spinDirection = spin[x][y];
-      spin[x][y] *= -1;;
-      double dE = 2*spinDirection
-                  *(this.J
-                    *(this.spin[(x-1+L)%L][y]+this.spin[(x+1+L)%L][y]+this.spin[x][(y-1+L)%L]+this.spin[x][(y+1+L)%L]));
-      this.M += -2*spinDirection;
-      this.E += dE;
+  /**
+   * Does one Metropolis Monte Carlo step per spin using the multi-spin coded checkerboard update.
+   * Odd lattice lengths cannot be divided into two sublattices and use doOneMCStep.
+   */
+  public void doOneMultiSpinStep() {
+    if(L%2!=0) {
+      doOneMCStep();
+      return;
+    }
+    if(multiSpin==null) {
+      multiSpin = new MultiSpinMetropolis(this);
+      if(seeded) {
+        multiSpin.setSeed(seed);
+      }
+    }
+    if(nFoldWay!=null) {
+      nFoldWay.invalidate();
+    }
+    multiSpin.sweep();
+    accumulate_EM();
+    mcs++;
+  }
+
+  /**
+   * Sets the number of threads and the seed used by doOneParallelMCStep.
+   *
+   * @param numberOfThreads
+   * @param seed
+   */
+  public void setParallel(int numberOfThreads, long seed) {
+    if(parallel!=null) {
+      parallel.shutdown();
+    }
+    parallel = new ParallelSweeper(numberOfThreads, seed);
+  }
+
+  /**
+   * Does one Metropolis Monte Carlo step per spin with the two checkerboard sublattices
+   * divided into strips of rows that are updated in parallel.
+   * The result is reproducible for a given seed and number of threads.
+   */
+  public void doOneParallelMCStep() {
+    if(L%2!=0) {
+      doOneMCStep();
+      return;
+    }
+    if(parallel==null) {
+      setParallel(Runtime.getRuntime().availableProcessors(), seeded
+                                                              ? seed+3
+                                                              : System.nanoTime());
+    }
+    spinsChanged();
+    for(int index = 0; index<10; index++) {
+      int s = 2*(index%2)-1;
+      int sum = (index-index%2)-4;
+      parallelDE[index] = 2*J*s*(H+sum);
+      parallelW[index] = Math.exp(-parallelDE[index]/T);
+    }
+    for(int parity = 0; parity<2; parity++) {
+      final int p = parity;
+      double[] delta = parallel.run(L, new ParallelSweeper.Task() {
+        public void update(int first, int last, FastRandom random, double[] delta) {
+          updateRows(first, last, p, random, delta);
+        }
+
+      });
+      E += delta[0];
+      M += (int) delta[1];
+      acceptedMoves += (int) delta[2];
     }
     accumulate_EM();
     mcs++;
   }
 
-  public HashMap<Integer, Integer> growWolffCluster(double bondProbability) {
-    Random r = new Random();
-    HashMap<Integer, Integer> wolffSpins = new HashMap<Integer, Integer>(100);
-    boolean visit[] = new boolean[this.N];
-    int stackSize = 0;
-    int stackPointer = 0;
-    int firstSpinX = r.nextInt(this.L);
-    int firstSpinY = r.nextInt(this.L);
-    int firstSpin = firstSpinX+this.L*firstSpinY;
-    int direction = spin[firstSpinX][firstSpinY];
-    wolffSpins.put(stackPointer, firstSpin);
-    stackSize++;
-    visit[firstSpin] = true;
-    while(stackPointer<stackSize) {
-      int currentSpin = wolffSpins.get(stackPointer);
-      ArrayList<Integer> neighborList = new ArrayList<Integer>();
-      int currentX = currentSpin%L;
-      int currentY = currentSpin/L;
-      neighborList.add(currentX+((currentY-1+L)%L)*L);
-      neighborList.add(currentX+((currentY+1+L)%L)*L);
-      neighborList.add((currentX-1+L)%L+currentY*L);
-      neighborList.add((currentX+1+L)%L+currentY*L);
-      visit[currentSpin] = true;
-      for(int nextSpin : neighborList) {
-        boolean visited = visit[nextSpin];
-        boolean inSameDir = (spin[nextSpin%this.L][nextSpin/this.L]==direction);
-        boolean occupyBond = (r.nextDouble()<bondProbability);
-        if(!visited) {
-          if(inSameDir&&occupyBond) {
-            if(!wolffSpins.containsValue(nextSpin)) {
-              wolffSpins.put(stackSize, nextSpin);
-              stackSize++;
-            }
-          }
+  void updateRows(int first, int last, int parity, FastRandom random, double[] delta) {
+    for(int i = first; i<last; i++) {
+      int[] row = spin[i];
+      int[] rowUp = spin[(i+1)%L];
+      int[] rowDown = spin[(i-1+L)%L];
+      for(int j = (i+parity)%2; j<L; j += 2) {
+        int s = row[j];
+        int index = (rowUp[j]+rowDown[j]+row[(j+1)%L]+row[(j-1+L)%L]+4)+(s+1)/2;
+        double dE = parallelDE[index];
+        if((dE<=0)||(random.nextDouble()<parallelW[index])) {
+          row[j] = -s;
+          delta[0] += dE;
+          delta[1] -= 2*s;
+          delta[2]++;
         }
       }
-      stackPointer++;
     }
-    return wolffSpins;
+  }
+
+  /**
+   * Does one Swendsen-Wang sweep. The cluster estimators are accumulated only for H = 0.
+   */
+  public void doOneSwendsenWangStep() {
+    spinsChanged();
+    if(swendsenWang==null) {
+      swendsenWang = new SwendsenWang(this);
+      if(seeded) {
+        swendsenWang.setSeed(seed+2);
+      }
+    }
+    swendsenWang.sweep();
+    if(H==0) {
+      improvedM2_acc += swendsenWang.M2;
+      improvedM4_acc += swendsenWang.M4;
+      improvedAbsM_acc += swendsenWang.absM;
+      improvedSteps++;
+    }
+    accumulate_EM();
+    mcs++;
+  }
+
+  /**
+   * Advances the lattice by one Monte Carlo step per spin with rejection free n-fold way dynamics.
+   * The result has the same statistics as doOneMCStep but each flip costs the same however
+   * small the acceptance probability is, which makes low temperature and hysteresis runs fast.
+   */
+  public void doOneNFoldWayStep() {
+    if(multiSpin!=null) {
+      multiSpin.unpackIfStale();
+      multiSpin.invalidate();
+    }
+    if(nFoldWay==null) {
+      nFoldWay = new NFoldWay(this);
+      if(seeded) {
+        nFoldWay.setSeed(seed+4);
+      }
+    }
+    nFoldWay.advance(1);
+    accumulate_EM();
+    mcs++;
+  }
+
+  /**
+   * Makes the spin array current after multi-spin coded steps.
+   */
+  public void syncSpins() {
+    if(multiSpin!=null) {
+      multiSpin.unpackIfStale();
+    }
+  }
+
+  /**
+   * Brings the spin array up to date before it is modified directly.
+   */
+  protected void spinsChanged() {
+    if(multiSpin!=null) {
+      multiSpin.unpackIfStale();
+      multiSpin.invalidate();
+    }
+    if(nFoldWay!=null) {
+      nFoldWay.invalidate();
+    }
+  }
+
+  public void doOneWolffStep(double bondProbability) {
+    spinsChanged();
+    if(wolff==null) {
+      wolff = new WolffCluster(this);
+      if(seeded) {
+        wolff.setSeed(seed+1);
+      }
+    }
+    wolff.grow(bondProbability);
+    wolff.flip();
+    accumulate_EM();
+    mcs++;
+  }
+
+  /**
+   * Grows a Wolff cluster without flipping it.
+   *
+   * @param bondProbability
+   * @return the cluster sites x+L*y in the order they were added
+   */
+  public int[] growWolffCluster(double bondProbability) {
+    if(wolff==null) {
+      wolff = new WolffCluster(this);
+      if(seeded) {
+        wolff.setSeed(seed+1);
+      }
+    }
+    syncSpins();
+    int size = wolff.grow(bondProbability);
+    int[] sites = new int[size];
+    for(int c = 0; c<size; c++) {
+      int s = wolff.cluster[c];
+      sites[c] = wolff.xOf[s]+L*wolff.yOf[s];
+    }
+    return sites;
   }
 
   public void accumulate_EM() {
@@ -172,12 +406,16 @@ public class Ising2D implements Drawable {
     M_acc += M;
     absM_acc += Math.abs(M);
     M2_acc += M*M;
+    if(histogram!=null) {
+      histogram.append(this);
+    }
   }
 
   public void draw(DrawingPanel panel, Graphics g) {
     if(lattice==null) {
       return;
     }
+    syncSpins();
     for(int i = 0; i<L; i++) {
       for(int j = 0; j<L; j++) {
         lattice.setValue(i, j, (byte) (spin[i][j]+1));
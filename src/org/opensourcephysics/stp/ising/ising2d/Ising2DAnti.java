@@ -17,6 +17,7 @@ public class Ising2DAnti extends Ising2D {
   }
 
   public double getStaggeredM() {
+    syncSpins();
     double sm = 0;
     for(int i = 0; i<L; ++i) {
       for(int j = 0; j<L; ++j) {
@@ -27,7 +27,7 @@ public class Ising2DApp extends AbstractSimulation {
   PlotFrame plotFrame = new PlotFrame("time", "E and M", "Thermodynamic Quantities");
   NumberFormat nf;
   double bondProbability;
-  boolean metropolis = true;
+  String dynamics = "Metropolis";
 
   /**
    * Constructor Ising2DApp
@@ -46,11 +46,7 @@ public class Ising2DApp extends AbstractSimulation {
   public void initialize() {
     ising.initialize(control.getInt("Length"), control.getDouble("Temperature"), control.getDouble("External field"));
     this.bondProbability = bondProbability(ising.J, ising.T);
-    if(control.getString("Dynamics").equals("Metropolis")) {
-      metropolis = true;
-    } else {
-      metropolis = false;
-    }
+    dynamics = control.getString("Dynamics");
     displayPanel.setPreferredMinMax(-5, ising.L+5, -5, ising.L+5);
     control.clearMessages();
     zeroAverages();
@@ -62,10 +58,18 @@ public class Ising2DApp extends AbstractSimulation {
   }
 
   public void doStep() {
-    if(metropolis) {
-      ising.doOneMCStep();
-    } else {
+    if(dynamics.equals("Wolff")) {
       ising.doOneWolffStep(bondProbability);
+    } else if(dynamics.equals("Multi-spin Metropolis")) {
+      ising.doOneMultiSpinStep();
+    } else if(dynamics.equals("Swendsen-Wang")) {
+      ising.doOneSwendsenWangStep();
+    } else if(dynamics.equals("Parallel Metropolis")) {
+      ising.doOneParallelMCStep();
+    } else if(dynamics.equals("n-fold way")) {
+      ising.doOneNFoldWayStep();
+    } else {
+      ising.doOneMCStep();
     }
     plotFrame.append(0, ising.mcs, (double) ising.M/ising.N);
     plotFrame.append(1, ising.mcs, (double) ising.E/ising.N);
@@ -86,7 +90,11 @@ public class Ising2DApp extends AbstractSimulation {
     control.println("<M> = "+nf.format(ising.M_acc*norm));
     control.println("<|M|>="+nf.format(Math.abs(ising.absM_acc*norm)));
     control.println("Susceptibility = "+nf.format(ising.susceptibility()));
-    if(metropolis) {
+    if(dynamics.equals("Swendsen-Wang")&&(ising.improvedSteps>0)) {
+      control.println("Cluster estimate <|M|> = "+nf.format(ising.improvedAbsM_acc/(ising.improvedSteps*ising.N)));
+      control.println("Cluster estimate susceptibility = "+nf.format(ising.improvedSusceptibility()));
+      control.println("Binder cumulant = "+nf.format(ising.improvedBinderCumulant()));
+    } else if(!dynamics.equals("Wolff")) {
       control.println("Acceptance ratio = "+nf.format(ising.acceptedMoves*norm));
     }
     control.println();
@@ -96,7 +104,7 @@ public class Ising2DApp extends AbstractSimulation {
     control.setValue("Length", 32);
     control.setAdjustableValue("Temperature", nf.format(Ising2D.criticalTemperature));
     control.setAdjustableValue("External field", 0);
-    OSPCombo combo = new OSPCombo(new String[] {"Metropolis", "Wolff"}, 0); // second argument is default
+    OSPCombo combo = new OSPCombo(new String[] {"Metropolis", "Wolff", "Multi-spin Metropolis", "Swendsen-Wang", "Parallel Metropolis", "n-fold way"}, 0); // second argument is default
     control.setValue("Dynamics", combo);
     enableStepsPerDisplay(true);
   }
@@ -30,7 +30,7 @@ public class Ising2DHysteresisApp extends AbstractSimulation {
 	NumberFormat nf;
 	double bondProbability, H, dH = 0.01;
 	int dir = 1, mcsPerH;
-	boolean metropolis = true;
+	boolean nFoldWay = false;
 
 	/**
 	 * Constructor Ising2DApp
@@ -59,6 +59,7 @@ public class Ising2DHysteresisApp extends AbstractSimulation {
 		dH = Math.abs(control.getDouble("dH"));
 		if(H > 0) dir = -1; else dir = 1;
 		mcsPerH = control.getInt("mcs per field value");
+		nFoldWay = control.getString("Dynamics").equals("n-fold way");
 		ising.setTemperature(control.getDouble("Temperature"));
 	}
 
@@ -69,8 +70,12 @@ public class Ising2DHysteresisApp extends AbstractSimulation {
 	public void doStep() {
 		ising.setExternalField(H);
 		ising.resetData();
-		for (int i = 0; i < mcsPerH; i++)
-			ising.doOneMCStep();
+		for (int i = 0; i < mcsPerH; i++) {
+			if (nFoldWay)
+				ising.doOneNFoldWayStep();
+			else
+				ising.doOneMCStep();
+		}
 		if(dir < 0)
 			plotFrame.append(0, H, (double) ising.M / ising.N);
 		else
@@ -90,9 +95,10 @@ public class Ising2DHysteresisApp extends AbstractSimulation {
 		control.setValue("Temperature", nf
 				.format(1.8));
 		// control.setAdjustableValue("External field", 0);
-		// OSPCombo combo = new OSPCombo(new String[] {"Metropolis", "Wolff"},
-		// 0); // second argument is default
-		// control.setValue("Dynamics", combo);
+		// n-fold way is rejection free and much faster at low temperatures
+		OSPCombo combo = new OSPCombo(new String[] {"Metropolis", "n-fold way"},
+		0); // second argument is default
+		control.setValue("Dynamics", combo);
 		 enableStepsPerDisplay(true);
 	}
 
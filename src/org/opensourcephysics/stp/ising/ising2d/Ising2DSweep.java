@@ -0,0 +1,290 @@
+/*
+ * Open Source Physics software is free software as described near the bottom of this code file.
+ *
+ * For additional information and documentation on Open Source Physics please see:
+ * <http://www.opensourcephysics.org/>
+ */
+
+package org.opensourcephysics.stp.ising.ising2d;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.util.ArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Ising2DSweep runs Ising2D over a grid of lattice sizes, temperatures, fields, dynamics, and
+ * equilibration and production times without a user interface and writes one CSV line per grid
+ * point as soon as the point is done.
+ *
+ * The temperatures for given values of the other axes form a chain that is run in the order given.
+ * When a point has been equilibrated, its configuration is handed to the next temperature of the
+ * chain, which is submitted to the pool at once and needs only the warm equilibration time.
+ * Different chains and the production phases of neighboring points run concurrently.
+ * Every point is seeded with a hash of its parameters and seed, which is written with the
+ * results, so a sweep can be reproduced whatever the order in which the points finish.
+ *
+ * Arguments are key=value pairs, for example
+ * <pre>
+ * java org.opensourcephysics.stp.ising.ising2d.Ising2DSweep L=16,32,64 T=2.0:2.6:0.05 H=0
+ *    dynamics=Wolff equilibration=1000 warm=250 production=10000,20000 seed=1 threads=8 out=ising.csv
+ * </pre>
+ * Lists are comma separated and ranges are first:last:step. The values of a range are computed in
+ * decimal, so 2.0:2.6:0.05 gives 2.05 and not 2.0500000000000003. Dynamics are Metropolis, Wolff,
+ * MultiSpin, SwendsenWang, and NFoldWay.
+ */
+public class Ising2DSweep {
+  public int[] lengths = {32};
+  public double[] temperatures = {Ising2D.criticalTemperature};
+  public double[] fields = {0};
+  public String[] dynamics = {"Metropolis"};
+  public int[] equilibrationMCS = {1000};
+  public int warmEquilibrationMCS = 250; // equilibration of points that start from a neighbor's configuration
+  public int[] productionMCS = {10000};
+  public long seed = 1;
+  public int numberOfThreads = Runtime.getRuntime().availableProcessors();
+  PrintWriter out;
+  ExecutorService pool;
+  CountDownLatch remaining;
+
+  /**
+   * Runs every grid point and writes the results to the writer.
+   *
+   * @param writer destination of the CSV lines
+   * @throws InterruptedException
+   */
+  public void run(PrintWriter writer) throws InterruptedException {
+    out = writer;
+    out.println("L,T,H,dynamics,equilibrationMCS,productionMCS,seed,E,C,absM,chi,acceptance,seconds");
+    out.flush();
+    ArrayList<Chain> chains = new ArrayList<Chain>();
+    for(int L : lengths) {
+      for(double H : fields) {
+        for(String d : dynamics) {
+          for(int equilibration : equilibrationMCS) {
+            for(int production : productionMCS) {
+              chains.add(new Chain(L, H, d, equilibration, production));
+            }
+          }
+        }
+      }
+    }
+    remaining = new CountDownLatch(chains.size()*temperatures.length);
+    pool = Executors.newFixedThreadPool(Math.max(1, numberOfThreads));
+    for(Chain chain : chains) {
+      submit(chain, 0, null);
+    }
+    remaining.await();
+    pool.shutdown();
+  }
+
+  void submit(final Chain chain, final int index, final int[][] start) {
+    pool.execute(new Runnable() {
+      public void run() {
+        runPoint(chain, index, start);
+      }
+
+    });
+  }
+
+  void runPoint(Chain chain, int index, int[][] start) {
+    boolean nextSubmitted = false;
+    try {
+      long startTime = System.currentTimeMillis();
+      double T = temperatures[index];
+      Ising2D ising = new Ising2D();
+      ising.initialize(chain.L, T, chain.H);
+      long pointSeed = pointSeed(chain, T);
+      ising.setSeed(pointSeed);
+      int equilibration = chain.equilibrationMCS;
+      if(start!=null) {
+        ising.setSpins(start);
+        equilibration = warmEquilibrationMCS;
+      }
+      for(int i = 0; i<equilibration; i++) {
+        step(ising, chain.dynamics);
+      }
+      if(index+1<temperatures.length) {
+        ising.syncSpins();
+        int[][] copy = new int[chain.L][];
+        for(int i = 0; i<chain.L; i++) {
+          copy[i] = ising.spin[i].clone();
+        }
+        submit(chain, index+1, copy);
+        nextSubmitted = true;
+      }
+      ising.resetData();
+      for(int i = 0; i<chain.productionMCS; i++) {
+        step(ising, chain.dynamics);
+      }
+      double norm = 1.0/(ising.mcs*ising.N);
+      double seconds = 0.001*(System.currentTimeMillis()-startTime);
+      write(chain.L+","+T+","+chain.H+","+chain.dynamics+","+equilibration+","+chain.productionMCS+","+pointSeed+","
+            +ising.E_acc*norm+","+ising.specificHeat()+","+ising.absM_acc*norm+","+ising.susceptibility()+","
+            +ising.acceptedMoves*norm+","+seconds);
+    } catch(RuntimeException ex) {
+      System.err.println("L = "+chain.L+" T = "+temperatures[index]+" failed: "+ex);
+    } finally {
+      if(!nextSubmitted&&(index+1<temperatures.length)) {
+        submit(chain, index+1, null);
+      }
+      remaining.countDown();
+    }
+  }
+
+  /**
+   * Returns the seed of the point at temperature T of the chain, a hash of the point's parameters and seed.
+   */
+  long pointSeed(Chain chain, double T) {
+    String key = chain.L+","+T+","+chain.H+","+chain.dynamics+","+chain.equilibrationMCS+","+chain.productionMCS;
+    return 31*seed+key.hashCode();
+  }
+
+  synchronized void write(String line) {
+    out.println(line);
+    out.flush();
+  }
+
+  static void step(Ising2D ising, String dynamics) {
+    if(dynamics.equals("Wolff")) {
+      ising.doOneWolffStep(1-Math.exp(-2*ising.J/ising.T));
+    } else if(dynamics.equals("MultiSpin")) {
+      ising.doOneMultiSpinStep();
+    } else if(dynamics.equals("SwendsenWang")) {
+      ising.doOneSwendsenWangStep();
+    } else if(dynamics.equals("NFoldWay")) {
+      ising.doOneNFoldWayStep();
+    } else {
+      ising.doOneMCStep();
+    }
+  }
+
+  static class Chain {
+    int L;
+    double H;
+    String dynamics;
+    int equilibrationMCS, productionMCS;
+
+    Chain(int L, double H, String dynamics, int equilibrationMCS, int productionMCS) {
+      this.L = L;
+      this.H = H;
+      this.dynamics = dynamics;
+      this.equilibrationMCS = equilibrationMCS;
+      this.productionMCS = productionMCS;
+    }
+
+  }
+
+  /**
+   * Parses a comma separated list of values or ranges first:last:step.
+   * The values of a range are computed in decimal, so they carry no binary rounding error.
+   */
+  static double[] parseValues(String text) {
+    ArrayList<Double> values = new ArrayList<Double>();
+    for(String item : text.split(",")) {
+      String[] range = item.trim().split(":");
+      if(range.length==3) {
+        BigDecimal first = new BigDecimal(range[0].trim());
+        BigDecimal last = new BigDecimal(range[1].trim());
+        BigDecimal step = new BigDecimal(range[2].trim());
+        if(step.signum()<=0) {
+          throw new IllegalArgumentException("The step of "+item+" must be positive.");
+        }
+        int n = last.subtract(first).divide(step, 0, RoundingMode.FLOOR).intValue();
+        for(int i = 0; i<=n; i++) {
+          values.add(first.add(step.multiply(BigDecimal.valueOf(i))).doubleValue());
+        }
+      } else {
+        values.add(Double.parseDouble(range[0]));
+      }
+    }
+    double[] result = new double[values.size()];
+    for(int i = 0; i<result.length; i++) {
+      result[i] = values.get(i);
+    }
+    return result;
+  }
+
+  /**
+   * Parses a list of values or ranges as in parseValues and rounds them to integers.
+   */
+  static int[] parseCounts(String text) {
+    double[] v = parseValues(text);
+    int[] counts = new int[v.length];
+    for(int i = 0; i<v.length; i++) {
+      counts[i] = (int) Math.round(v[i]);
+    }
+    return counts;
+  }
+
+  public static void main(String[] args) throws IOException, InterruptedException {
+    Ising2DSweep sweep = new Ising2DSweep();
+    String fileName = null;
+    for(String arg : args) {
+      int eq = arg.indexOf('=');
+      if(eq<0) {
+        System.err.println("Ignoring argument "+arg);
+        continue;
+      }
+      String key = arg.substring(0, eq);
+      String value = arg.substring(eq+1);
+      if(key.equals("L")) {
+        sweep.lengths = parseCounts(value);
+      } else if(key.equals("T")) {
+        sweep.temperatures = parseValues(value);
+      } else if(key.equals("H")) {
+        sweep.fields = parseValues(value);
+      } else if(key.equals("dynamics")) {
+        sweep.dynamics = value.split(",");
+      } else if(key.equals("equilibration")) {
+        sweep.equilibrationMCS = parseCounts(value);
+      } else if(key.equals("warm")) {
+        sweep.warmEquilibrationMCS = Integer.parseInt(value);
+      } else if(key.equals("production")) {
+        sweep.productionMCS = parseCounts(value);
+      } else if(key.equals("seed")) {
+        sweep.seed = Long.parseLong(value);
+      } else if(key.equals("threads")) {
+        sweep.numberOfThreads = Integer.parseInt(value);
+      } else if(key.equals("out")) {
+        fileName = value;
+      } else {
+        System.err.println("Unknown parameter "+key);
+      }
+    }
+    PrintWriter writer = (fileName==null)
+                         ? new PrintWriter(System.out)
+                         : new PrintWriter(new FileWriter(fileName));
+    sweep.run(writer);
+    writer.close();
+  }
+
+}
+
+/*
+ * Open Source Physics software is free software; you can redistribute
+ * it and/or modify it under the terms of the GNU General Public License (GPL) as
+ * published by the Free Software Foundation; either version 2 of the License,
+ * or(at your option) any later version.
+
+ * Code that uses any portion of the code in the org.opensourcephysics package
+ * or any subpackage (subdirectory) of this package must must also be be released
+ * under the GNU GPL license.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston MA 02111-1307 USA
+ * or view the license online at http://www.gnu.org/copyleft/gpl.html
+ *
+ * Copyright (c) 2007  The Open Source Physics project
+ *                     http://www.opensourcephysics.org
+ */
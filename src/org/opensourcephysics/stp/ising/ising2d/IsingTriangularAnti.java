@@ -11,6 +11,7 @@ import java.awt.Graphics;
 import org.opensourcephysics.display.Drawable;
 import org.opensourcephysics.display.DrawingPanel;
 import org.opensourcephysics.display2d.TriangularByteLattice;
+import org.opensourcephysics.stp.util.FastRandom;
 
 /**
  * IsingTri class.
@@ -18,7 +19,7 @@ import org.opensourcephysics.display2d.TriangularByteLattice;
  *  @author Hui Wang
  *  @version 1.0   revised 11/26/06
  */
-public class IsingTriangularAnti implements Drawable {
+public class IsingTriangularAnti implements Drawable, TemperingReplica {
   public static final double criticalTemperature = 3.641;
   public int spin[][];
   public int L;
@@ -36,6 +37,10 @@ public class IsingTriangularAnti implements Drawable {
   public int acceptedMoves = 0;
   private double w[] = new double[13]; // array to hold Boltzmann factors
   private TriangularByteLattice lattice;
+  private ParallelSweeper parallel;
+  private FastRandom random = new FastRandom(); // used by doOneMCStep
+  private long seed;
+  private boolean seeded = false;
 
   public void initialize(int _L) {
     L = _L;
@@ -52,11 +57,34 @@ public class IsingTriangularAnti implements Drawable {
     magnetization = N;
     energy = -3*J*N;
     resetData();
+    setTemperature(temperature);
+  }
+
+  public void setTemperature(double _temperature) {
+    temperature = _temperature;
     w[12] = Math.exp(-12.0/temperature); // other array elements never occur for H = 0
     w[8] = Math.exp(-8.0/temperature);
     w[4] = Math.exp(-4.0/temperature);
   }
 
+  /**
+   * Seeds the random number generators of doOneMCStep and doOneParallelMCStep.
+   *
+   * @param _seed
+   */
+  public void setSeed(long _seed) {
+    seed = _seed;
+    seeded = true;
+    random.setSeed(seed);
+    if(parallel!=null) {
+      parallel.setSeed(seed+1);
+    }
+  }
+
+  public double getEnergy() {
+    return energy;
+  }
+
   public double magnetizationAverage() {
     return magnetizationAbsAccumulator/mcs;
   }
@@ -86,20 +114,24 @@ public class IsingTriangularAnti implements Drawable {
 
   public void doOneMCStep() {
     for(int k = 0; k<N; ++k) {
-      int i = (int) (Math.random()*L);
-      int j = (int) (Math.random()*L);
+      int i = random.nextInt(L);
+      int j = random.nextInt(L);
       int iu = (i+1)%L;
       int id = (i-1+L)%L;
       int ju = (j+1)%L;
       int jd = (j-1+L)%L;
       int dE = 2*J*spin[i][j]*(spin[iu][j]+spin[id][j]+spin[i][ju]+spin[i][jd]+spin[iu][jd]+spin[id][ju]);
-      if((dE<=0)||(w[dE]>Math.random())) {
+      if((dE<=0)||(w[dE]>random.nextDouble())) {
         spin[i][j] = -spin[i][j];
         acceptedMoves++;
         energy += dE;
         magnetization += 2*spin[i][j];
       }
     }
+    accumulate();
+  }
+
+  void accumulate() {
     energyAccumulator += energy;
     energySquaredAccumulator += energy*energy;
     magnetizationAccumulator += magnetization;
@@ -108,6 +140,67 @@ public class IsingTriangularAnti implements Drawable {
     mcs++;
   }
 
+  /**
+   * Sets the number of threads and the seed used by doOneParallelMCStep.
+   *
+   * @param numberOfThreads
+   * @param seed
+   */
+  public void setParallel(int numberOfThreads, long seed) {
+    if(parallel!=null) {
+      parallel.shutdown();
+    }
+    parallel = new ParallelSweeper(numberOfThreads, seed);
+  }
+
+  /**
+   * Does one Monte Carlo step per spin by updating the three sublattices (i+2j)%3 of the
+   * triangular lattice in turn, with the rows of each sublattice divided among the threads.
+   * L must be a multiple of 3; otherwise doOneMCStep is used.
+   */
+  public void doOneParallelMCStep() {
+    if(L%3!=0) {
+      doOneMCStep();
+      return;
+    }
+    if(parallel==null) {
+      setParallel(Runtime.getRuntime().availableProcessors(), seeded
+                                                              ? seed+1
+                                                              : System.nanoTime());
+    }
+    for(int color = 0; color<3; color++) {
+      final int c = color;
+      double[] delta = parallel.run(L, new ParallelSweeper.Task() {
+        public void update(int first, int last, FastRandom random, double[] delta) {
+          updateRows(first, last, c, random, delta);
+        }
+
+      });
+      energy += (int) delta[0];
+      magnetization += (int) delta[1];
+      acceptedMoves += (int) delta[2];
+    }
+    accumulate();
+  }
+
+  void updateRows(int first, int last, int color, FastRandom random, double[] delta) {
+    for(int i = first; i<last; i++) {
+      int iu = (i+1)%L;
+      int id = (i-1+L)%L;
+      for(int j = (2*(color-i)%3+3)%3; j<L; j += 3) {
+        int ju = (j+1)%L;
+        int jd = (j-1+L)%L;
+        int dE = 2*J*spin[i][j]*(spin[iu][j]+spin[id][j]+spin[i][ju]+spin[i][jd]+spin[iu][jd]+spin[id][ju]);
+        if((dE<=0)||(w[dE]>random.nextDouble())) {
+          spin[i][j] = -spin[i][j];
+          delta[0] += dE;
+          delta[1] += 2*spin[i][j];
+          delta[2]++;
+        }
+      }
+    }
+  }
+
   public void draw(DrawingPanel panel, Graphics g) {
     if(lattice==null) {
       return;
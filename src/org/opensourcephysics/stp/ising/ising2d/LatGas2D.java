@@ -11,8 +11,9 @@ import java.awt.Graphics;
 import org.opensourcephysics.display.Drawable;
 import org.opensourcephysics.display.DrawingPanel;
 import org.opensourcephysics.display2d.CellLattice;
+import org.opensourcephysics.stp.util.FastRandom;
 
-public class LatGas2D implements Drawable {
+public class LatGas2D implements Drawable, TemperingReplica {
   public static final double criticalTemperature = 0.5/Math.log(1.0+Math.sqrt(2.0));
   public int[][] site;
   public int L;
@@ -27,6 +28,10 @@ public class LatGas2D implements Drawable {
   public int mcs;              // Number of MC moves per site
   public int acceptedMoves;    // Used to determine acceptance ratio
   private CellLattice lattice; // Used only for drawing
+  private ParallelSweeper parallel;
+  private FastRandom random = new FastRandom(); // used by doOneMCStep
+  private long seed;
+  private boolean seeded = false;
 
   public void initialize(int _L, double _T, int _NP) {
     L = _L;
@@ -52,6 +57,24 @@ public class LatGas2D implements Drawable {
   public void setTemperature(double _T) {
     T = _T;
   }
+  /**
+   * Seeds the random number generators of doOneMCStep and doOneParallelMCStep.
+   *
+   * @param _seed
+   */
+  public void setSeed(long _seed) {
+    seed = _seed;
+    seeded = true;
+    random.setSeed(seed);
+    if(parallel!=null) {
+      parallel.setSeed(seed+1);
+    }
+  }
+
+  public double getEnergy() {
+    return E;
+  }
+
   public void setField(double _g) {
 	    double dg = _g - g;
 	    g= _g;
@@ -78,24 +101,17 @@ public class LatGas2D implements Drawable {
 
   public void doOneMCStep() {
     for(int k = 0; k<N; ++k) {
-      int i = (int) (Math.random()*L);
-      int j = (int) (Math.random()*L);
+      int i = random.nextInt(L);
+      int j = random.nextInt(L);
       int iNN = (i+1)%L;
       int jNN = j;
-      if(Math.random() < 0.5  && (g==0 || j < L-1)) { //choose other neighbor
+      if(random.nextDouble() < 0.5  && (g==0 || j < L-1)) { //choose other neighbor
     	  iNN = i;
           jNN = (j+1)%L;
       }
       if(site[i][j] + site[iNN][jNN] == 1){
-       double dE = 0;
-       if (j != jNN) dE += g*(site[i][j] - site[iNN][jNN]);
-       if(g==0 || (j > 0 && jNN < L-1)) 
-    	   dE += -v0*(site[iNN][jNN]- site[i][j])*
-        (site[(i+1)%L][j]+site[(i-1+L)%L][j]+site[i][(j+1)%L]+site[i][(j-1+L)%L]-site[iNN][jNN]
-        -site[(iNN+1)%L][jNN]-site[(iNN-1+L)%L][jNN]-site[iNN][(jNN+1)%L]-site[iNN][(jNN-1+L)%L]+site[i][j]);
-       else
-    	   dE += inFielddE(i,j,iNN,jNN);
-       if((dE<=0)||(Math.random()<Math.exp(-dE/T))) {
+       double dE = exchangeEnergy(i, j, iNN, jNN);
+       if((dE<=0)||(random.nextDouble()<Math.exp(-dE/T))) {
     	  int stemp = site[i][j];
     	  site[i][j] = site[iNN][jNN];
     	  site[iNN][jNN] = stemp;
@@ -109,6 +125,104 @@ public class LatGas2D implements Drawable {
      mcs++;
   }
 
+  /**
+   * Returns the change in energy if the particle and hole at (i,j) and (iNN,jNN) are exchanged.
+   */
+  public double exchangeEnergy(int i, int j, int iNN, int jNN) {
+    double dE = 0;
+    if (j != jNN) dE += g*(site[i][j] - site[iNN][jNN]);
+    if(g==0 || (j > 0 && jNN < L-1))
+      dE += -v0*(site[iNN][jNN]- site[i][j])*
+        (site[(i+1)%L][j]+site[(i-1+L)%L][j]+site[i][(j+1)%L]+site[i][(j-1+L)%L]-site[iNN][jNN]
+        -site[(iNN+1)%L][jNN]-site[(iNN-1+L)%L][jNN]-site[iNN][(jNN+1)%L]-site[iNN][(jNN-1+L)%L]+site[i][j]);
+    else
+      dE += inFielddE(i,j,iNN,jNN);
+    return dE;
+  }
+
+  /**
+   * Sets the number of threads and the seed used by doOneParallelMCStep.
+   *
+   * @param numberOfThreads
+   * @param seed
+   */
+  public void setParallel(int numberOfThreads, long seed) {
+    if(parallel!=null) {
+      parallel.shutdown();
+    }
+    parallel = new ParallelSweeper(numberOfThreads, seed);
+  }
+
+  /**
+   * Does one Kawasaki step per site in parallel.
+   *
+   * The columns i are divided into an even number of blocks at least four columns wide,
+   * starting at a random offset. An exchange is only attempted if both sites lie in the same
+   * block, so the even blocks and then the odd blocks can be updated independently.
+   * The energy is accumulated once per phase with weight N/2 instead of after every trial.
+   * Lattices with L < 8 use doOneMCStep.
+   */
+  public void doOneParallelMCStep() {
+    final int numberOfBlocks = 2*(L/8);
+    if(numberOfBlocks<2) {
+      doOneMCStep();
+      return;
+    }
+    if(parallel==null) {
+      setParallel(Runtime.getRuntime().availableProcessors(), seeded
+                                                              ? seed+1
+                                                              : System.nanoTime());
+    }
+    final int offset = parallel.masterRandom.nextInt(L);
+    for(int phase = 0; phase<2; phase++) {
+      final int p = phase;
+      double[] delta = parallel.run(numberOfBlocks/2, new ParallelSweeper.Task() {
+        public void update(int first, int last, FastRandom random, double[] delta) {
+          for(int b = first; b<last; b++) {
+            int block = 2*b+p;
+            int start = (int) ((long) block*L/numberOfBlocks);
+            int end = (int) ((long) (block+1)*L/numberOfBlocks);
+            updateBlock(offset+start, end-start, random, delta);
+          }
+        }
+
+      });
+      E += delta[0];
+      acceptedMoves += (int) delta[2];
+      E_acc += 0.5*N*E;
+      E2_acc += 0.5*N*E*E;
+    }
+    mcs++;
+  }
+
+  void updateBlock(int start, int width, FastRandom random, double[] delta) {
+    for(int k = 0, trials = width*L; k<trials; ++k) {
+      int local = random.nextInt(width);
+      int i = (start+local)%L;
+      int j = random.nextInt(L);
+      int iNN, jNN;
+      if(random.nextDouble()<0.5&&(g==0||j<L-1)) {
+        iNN = i;
+        jNN = (j+1)%L;
+      } else if(local<width-1) {
+        iNN = (i+1)%L;
+        jNN = j;
+      } else {
+        continue; // the neighbor belongs to the next block
+      }
+      if(site[i][j]+site[iNN][jNN]==1) {
+        double dE = exchangeEnergy(i, j, iNN, jNN);
+        if((dE<=0)||(random.nextDouble()<Math.exp(-dE/T))) {
+          int stemp = site[i][j];
+          site[i][j] = site[iNN][jNN];
+          site[iNN][jNN] = stemp;
+          delta[0] += dE;
+          delta[2]++;
+        }
+      }
+    }
+  }
+
   public double inFielddE(int i, int j, int iNN, int jNN) {
 	  if(j == 0 && jNN == 0) return
 	  -v0*(site[iNN][jNN]- site[i][j])*
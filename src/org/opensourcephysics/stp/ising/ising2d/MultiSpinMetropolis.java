@@ -0,0 +1,296 @@
+/*
+ * Open Source Physics software is free software as described near the bottom of this code file.
+ *
+ * For additional information and documentation on Open Source Physics please see:
+ * <http://www.opensourcephysics.org/>
+ */
+
+package org.opensourcephysics.stp.ising.ising2d;
+import org.opensourcephysics.stp.util.FastRandom;
+
+/**
+ * MultiSpinMetropolis does checkerboard Metropolis sweeps for an Ising2D model
+ * with 64 spins packed into each long.
+ *
+ * Row i of the lattice is stored in words[i*W] .. words[i*W+W-1]; bit b of word w holds
+ * spin[i][64*w+b] with 1 for spin up. The number of antiparallel neighbors of every site
+ * in a word is computed with bitwise adders, so the only per-site work left is one random
+ * number for each trial flip that raises the energy. The Boltzmann factors are tabulated
+ * once per sweep. The lattice length must be even so that the two sublattices are
+ * consistent with periodic boundary conditions.
+ *
+ * The energy, magnetization, and acceptance count of the Ising2D model are updated
+ * exactly as in doOneMCStep so the model's accumulators can be used unchanged.
+ */
+public class MultiSpinMetropolis {
+  static final long EVEN_BITS = 0x5555555555555555L;
+  static final long ODD_BITS = 0xAAAAAAAAAAAAAAAAL;
+  Ising2D ising;
+  int L, W;          // lattice length and number of words per row
+  int lastBits;      // number of spins stored in the last word of a row
+  long lastMask;     // valid bits of the last word of a row
+  long[] words;
+  long[] up, down;   // neighbors at j+1 and j-1 for one row
+  boolean packed;    // true if words holds the current configuration
+  boolean arrayStale; // true if ising.spin has not been updated since the last sweep
+  FastRandom random = new FastRandom();
+  // acceptance thresholds indexed by 2*(number of antiparallel neighbors)+(spin up ? 1 : 0)
+  long[] threshold = new long[10];
+  double[] dE = new double[10];
+  static final long ALWAYS = 1L<<53;
+
+  public MultiSpinMetropolis(Ising2D ising) {
+    if(ising.L%2!=0) {
+      throw new IllegalArgumentException("Checkerboard update requires an even lattice length.");
+    }
+    this.ising = ising;
+    L = ising.L;
+    W = (L+63)/64;
+    lastBits = L-64*(W-1);
+    lastMask = (lastBits==64)
+               ? -1L
+               : (1L<<lastBits)-1;
+    words = new long[L*W];
+    up = new long[W];
+    down = new long[W];
+  }
+
+  public void setSeed(long seed) {
+    random.setSeed(seed);
+  }
+
+  /**
+   * Copies the spin array of the model into the packed words.
+   */
+  public void pack() {
+    int[][] spin = ising.spin;
+    for(int i = 0; i<L; i++) {
+      for(int w = 0; w<W; w++) {
+        long word = 0;
+        int bits = (w==W-1)
+                   ? lastBits
+                   : 64;
+        for(int b = 0; b<bits; b++) {
+          if(spin[i][64*w+b]>0) {
+            word |= 1L<<b;
+          }
+        }
+        words[i*W+w] = word;
+      }
+    }
+    packed = true;
+    arrayStale = false;
+  }
+
+  /**
+   * Copies the packed words into the spin array of the model.
+   */
+  public void unpack() {
+    int[][] spin = ising.spin;
+    for(int i = 0; i<L; i++) {
+      for(int w = 0; w<W; w++) {
+        long word = words[i*W+w];
+        int bits = (w==W-1)
+                   ? lastBits
+                   : 64;
+        for(int b = 0; b<bits; b++) {
+          spin[i][64*w+b] = (((word>>>b)&1L)!=0)
+                            ? 1
+                            : -1;
+        }
+      }
+    }
+    arrayStale = false;
+  }
+
+  /**
+   * Updates the spin array if sweeps have been done since the last unpack.
+   */
+  public void unpackIfStale() {
+    if(packed&&arrayStale) {
+      unpack();
+    }
+  }
+
+  /**
+   * Marks the packed words as out of date because the spin array was changed elsewhere.
+   */
+  public void invalidate() {
+    packed = false;
+    arrayStale = false;
+  }
+
+  /**
+   * Does one Monte Carlo step per spin by updating both checkerboard sublattices.
+   */
+  public void sweep() {
+    if(!packed) {
+      pack();
+    }
+    computeThresholds();
+    updateSublattice(0);
+    updateSublattice(1);
+    arrayStale = true;
+  }
+
+  void computeThresholds() {
+    for(int k = 0; k<=4; k++) {
+      for(int s = 0; s<=1; s++) {
+        int spin = 2*s-1;
+        // same expression as Ising2D.doOneMCStep with sum of neighbors = spin*(4-2k)
+        double de = 2*ising.J*spin*(ising.H+spin*(4-2*k));
+        dE[2*k+s] = de;
+        if(de<=0) {
+          threshold[2*k+s] = ALWAYS;
+        } else {
+          double p = Math.exp(-de/ising.T);
+          threshold[2*k+s] = (p>=1)
+                             ? ALWAYS
+                             : (long) (p*ALWAYS);
+        }
+      }
+    }
+  }
+
+  void updateSublattice(int parity) {
+    double deltaE = 0;
+    int deltaM = 0;
+    int accepted = 0;
+    for(int i = 0; i<L; i++) {
+      int row = i*W;
+      int rowUp = ((i+1)%L)*W;
+      int rowDown = ((i-1+L)%L)*W;
+      shiftRow(row);
+      long subMask = ((i+parity)%2==0)
+                     ? EVEN_BITS
+                     : ODD_BITS;
+      for(int w = 0; w<W; w++) {
+        long s = words[row+w];
+        long active = (w==W-1)
+                      ? subMask&lastMask
+                      : subMask;
+        // antiparallel neighbors
+        long a1 = s^words[rowUp+w];
+        long a2 = s^words[rowDown+w];
+        long a3 = s^up[w];
+        long a4 = s^down[w];
+        // bit-sliced sum a1+a2+a3+a4 = 4*s2+2*s1+s0
+        long x1 = a1^a2, c1 = a1&a2;
+        long x2 = a3^a4, c2 = a3&a4;
+        long s0 = x1^x2, c0 = x1&x2;
+        long s1 = c1^c2^c0;
+        long s2 = (c1&c2)|(c0&(c1^c2));
+        long flip = 0;
+        for(int k = 0; k<=4; k++) {
+          long kMask;
+          switch(k) {
+          case 0 :
+            kMask = ~(s0|s1|s2);
+            break;
+          case 1 :
+            kMask = s0&~s1&~s2;
+            break;
+          case 2 :
+            kMask = ~s0&s1;
+            break;
+          case 3 :
+            kMask = s0&s1;
+            break;
+          default :
+            kMask = s2;
+          }
+          kMask &= active;
+          if(kMask==0) {
+            continue;
+          }
+          for(int sp = 0; sp<=1; sp++) {
+            long cls = (sp==1)
+                       ? kMask&s
+                       : kMask&~s;
+            if(cls==0) {
+              continue;
+            }
+            long t = threshold[2*k+sp];
+            long acc;
+            if(t>=ALWAYS) {
+              acc = cls;
+            } else if(t<=0) {
+              acc = 0;
+            } else {
+              acc = 0;
+              long bits = cls;
+              while(bits!=0) {
+                long bit = bits&-bits;
+                if(random.next53()<t) {
+                  acc |= bit;
+                }
+                bits ^= bit;
+              }
+            }
+            if(acc!=0) {
+              int n = Long.bitCount(acc);
+              accepted += n;
+              deltaE += n*dE[2*k+sp];
+              deltaM += (sp==1)
+                        ? -2*n
+                        : 2*n;
+              flip |= acc;
+            }
+          }
+        }
+        words[row+w] = s^flip;
+      }
+    }
+    ising.E += deltaE;
+    ising.M += deltaM;
+    ising.acceptedMoves += accepted;
+  }
+
+  /**
+   * Fills up and down with the spins at j+1 and j-1 for every site j of a row.
+   */
+  void shiftRow(int row) {
+    for(int w = 0; w<W; w++) {
+      long cur = words[row+w];
+      long next, prev;
+      if(w==W-1) {
+        next = (words[row]&1L)<<(lastBits-1);
+      } else {
+        next = words[row+w+1]<<63;
+      }
+      if(w==0) {
+        prev = (words[row+W-1]>>>(lastBits-1))&1L;
+      } else {
+        prev = words[row+w-1]>>>63;
+      }
+      up[w] = (cur>>>1)|next;
+      down[w] = (cur<<1)|prev;
+    }
+    down[W-1] &= lastMask;
+  }
+
+}
+
+/*
+ * Open Source Physics software is free software; you can redistribute
+ * it and/or modify it under the terms of the GNU General Public License (GPL) as
+ * published by the Free Software Foundation; either version 2 of the License,
+ * or(at your option) any later version.
+
+ * Code that uses any portion of the code in the org.opensourcephysics package
+ * or any subpackage (subdirectory) of this package must must also be be released
+ * under the GNU GPL license.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston MA 02111-1307 USA
+ * or view the license online at http://www.gnu.org/copyleft/gpl.html
+ *
+ * Copyright (c) 2007  The Open Source Physics project
+ *                     http://www.opensourcephysics.org
+ */
@@ -0,0 +1,216 @@
+/*
+ * Open Source Physics software is free software as described near the bottom of this code file.
+ *
+ * For additional information and documentation on Open Source Physics please see:
+ * <http://www.opensourcephysics.org/>
+ */
+
+package org.opensourcephysics.stp.ising.ising2d;
+import org.opensourcephysics.stp.util.FastRandom;
+
+/**
+ * NFoldWay does rejection free continuous time Monte Carlo (the n-fold way of Bortz, Kalos, and
+ * Lebowitz) for an Ising2D model.
+ *
+ * Every site belongs to one of ten classes given by its spin and the sum of its four neighbors.
+ * All sites of a class have the same Metropolis flip rate, so a flip is done by choosing a class
+ * with probability proportional to its total rate, choosing a site of the class uniformly, and
+ * advancing the time by an exponentially distributed waiting time. The sites are kept in a single
+ * array sorted by class with the position of every site stored. A flip changes the class of a site
+ * by one or two, so sites move between classes with at most two swaps and the classes need only
+ * O(N) memory.
+ *
+ * Time is measured in Monte Carlo steps per spin: a site that would always be accepted flips at
+ * rate 1 per mcs, which is the rate at which doOneMCStep attempts it. At low temperatures most
+ * trial flips of doOneMCStep are rejected, whereas here each event is a flip.
+ */
+public class NFoldWay {
+  static final int CLASSES = 10;
+  Ising2D ising;
+  int L, N;
+  int[] classOf;             // class of site s
+  int[] site;                // the sites of class c are site[start[c]] to site[start[c+1]-1]
+  int[] start = new int[CLASSES+1];
+  int[] position;            // index of site s in site
+  double[] rate = new double[CLASSES];
+  double[] dE = new double[CLASSES];
+  boolean valid;             // true if the classes describe the current spins
+  public double time;        // elapsed time in mcs
+  public long flips;         // number of flips done
+  FastRandom random = new FastRandom();
+
+  public NFoldWay(Ising2D ising) {
+    this.ising = ising;
+    L = ising.L;
+    N = L*L;
+    classOf = new int[N];
+    site = new int[N];
+    position = new int[N];
+  }
+
+  public void setSeed(long seed) {
+    random.setSeed(seed);
+  }
+
+  /**
+   * Marks the classes as out of date because the spin array was changed elsewhere.
+   */
+  public void invalidate() {
+    valid = false;
+  }
+
+  /**
+   * Does flips until the time has advanced by the given number of mcs.
+   * Because waiting times are exponential, the flip that would overshoot the
+   * end of the interval is discarded without bias.
+   *
+   * @param mcs
+   */
+  public void advance(double mcs) {
+    if(!valid) {
+      classify();
+    }
+    computeRates();
+    int[][] spin = ising.spin;
+    double end = time+mcs;
+    double deltaE = 0;
+    int deltaM = 0;
+    int accepted = 0;
+    while(true) {
+      double total = 0;
+      for(int c = 0; c<CLASSES; c++) {
+        total += (start[c+1]-start[c])*rate[c];
+      }
+      if(total<=0) {
+        break;
+      }
+      double wait = -Math.log(1-random.nextDouble())/total;
+      if(time+wait>=end) {
+        break;
+      }
+      time += wait;
+      // choose a class by its total rate
+      double r = random.nextDouble()*total;
+      int c = 0;
+      while((c<CLASSES-1)&&((r -= (start[c+1]-start[c])*rate[c])>=0)) {
+        c++;
+      }
+      while(start[c+1]==start[c]) { // roundoff can leave r just past the last nonempty class
+        c--;
+      }
+      int s = site[start[c]+random.nextInt(start[c+1]-start[c])];
+      int x = s/L, y = s%L;
+      int newSpin = -spin[x][y];
+      spin[x][y] = newSpin;
+      deltaE += dE[c];
+      deltaM += 2*newSpin;
+      accepted++;
+      // the flipped site changes spin and each neighbor's sum changes by 2*newSpin
+      move(s, c^1);
+      int up = ((x+1)%L)*L+y, down = ((x-1+L)%L)*L+y;
+      int right = x*L+(y+1)%L, left = x*L+(y-1+L)%L;
+      move(up, classOf[up]+2*newSpin);
+      move(down, classOf[down]+2*newSpin);
+      move(right, classOf[right]+2*newSpin);
+      move(left, classOf[left]+2*newSpin);
+    }
+    time = end;
+    ising.E += deltaE;
+    ising.M += deltaM;
+    ising.acceptedMoves += accepted;
+    flips += accepted;
+  }
+
+  /**
+   * Tabulates the Metropolis rate of each class for the current temperature and field.
+   * Class c = (sum of neighbors+4)+(spin+1)/2 as in Ising2D.doOneParallelMCStep.
+   */
+  void computeRates() {
+    for(int c = 0; c<CLASSES; c++) {
+      int s = 2*(c%2)-1;
+      int sum = (c-c%2)-4;
+      dE[c] = 2*ising.J*s*(ising.H+sum);
+      rate[c] = (dE[c]<=0)
+                ? 1
+                : Math.exp(-dE[c]/ising.T);
+    }
+  }
+
+  void classify() {
+    int[][] spin = ising.spin;
+    java.util.Arrays.fill(start, 0);
+    for(int x = 0; x<L; x++) {
+      for(int y = 0; y<L; y++) {
+        int sum = spin[(x+1)%L][y]+spin[(x-1+L)%L][y]+spin[x][(y+1)%L]+spin[x][(y-1+L)%L];
+        int c = (sum+4)+(spin[x][y]+1)/2;
+        classOf[x*L+y] = c;
+        start[c+1]++;
+      }
+    }
+    for(int c = 0; c<CLASSES; c++) {
+      start[c+1] += start[c];
+    }
+    int[] next = start.clone();
+    for(int s = 0; s<N; s++) {
+      int p = next[classOf[s]]++;
+      site[p] = s;
+      position[s] = p;
+    }
+    valid = true;
+  }
+
+  /**
+   * Moves site s to class c one class boundary at a time.
+   */
+  void move(int s, int c) {
+    int old = classOf[s];
+    while(old<c) { // s becomes the first site of class old+1
+      swap(s, start[old+1]-1);
+      start[old+1]--;
+      old++;
+    }
+    while(old>c) { // s becomes the last site of class old-1
+      swap(s, start[old]);
+      start[old]++;
+      old--;
+    }
+    classOf[s] = c;
+  }
+
+  /**
+   * Puts site s at index p of site and the site that was there at the old index of s.
+   */
+  void swap(int s, int p) {
+    int q = position[s];
+    int other = site[p];
+    site[q] = other;
+    position[other] = q;
+    site[p] = s;
+    position[s] = p;
+  }
+
+}
+
+/*
+ * Open Source Physics software is free software; you can redistribute
+ * it and/or modify it under the terms of the GNU General Public License (GPL) as
+ * published by the Free Software Foundation; either version 2 of the License,
+ * or(at your option) any later version.
+
+ * Code that uses any portion of the code in the org.opensourcephysics package
+ * or any subpackage (subdirectory) of this package must must also be be released
+ * under the GNU GPL license.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston MA 02111-1307 USA
+ * or view the license online at http://www.gnu.org/copyleft/gpl.html
+ *
+ * Copyright (c) 2007  The Open Source Physics project
+ *                     http://www.opensourcephysics.org
+ */
@@ -0,0 +1,141 @@
+/*
+ * Open Source Physics software is free software as described near the bottom of this code file.
+ *
+ * For additional information and documentation on Open Source Physics please see:
+ * <http://www.opensourcephysics.org/>
+ */
+
+package org.opensourcephysics.stp.ising.ising2d;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import org.opensourcephysics.stp.util.FastRandom;
+
+/**
+ * ParallelSweeper runs the parts of a domain decomposed lattice sweep on a ForkJoinPool.
+ *
+ * A model divides a sweep into phases whose items (rows of a sublattice, blocks of rows)
+ * can be updated independently. Worker w always receives the same items and its own
+ * random number stream, and the per-worker changes of the energy, magnetization, and
+ * acceptance count are summed in worker order. The results therefore depend only on
+ * the seed and the number of threads.
+ */
+public class ParallelSweeper {
+  /**
+   * The work done by one worker in one phase of a sweep.
+   */
+  public interface Task {
+    /**
+     * Updates items first to last-1 and adds the changes of the observables to delta.
+     */
+    void update(int first, int last, FastRandom random, double[] delta);
+
+  }
+
+  public static final int DELTA_LENGTH = 4; // room for dE, dM, accepted moves, and one model specific value
+  int numberOfThreads;
+  ForkJoinPool pool;
+  FastRandom[] random;
+  FastRandom masterRandom; // for choices made once per sweep, such as block offsets
+  double[][] delta;
+  double[] sum = new double[DELTA_LENGTH];
+
+  public ParallelSweeper(int numberOfThreads, long seed) {
+    this.numberOfThreads = Math.max(1, numberOfThreads);
+    pool = new ForkJoinPool(this.numberOfThreads);
+    random = new FastRandom[this.numberOfThreads];
+    delta = new double[this.numberOfThreads][DELTA_LENGTH];
+    for(int w = 0; w<this.numberOfThreads; w++) {
+      random[w] = new FastRandom();
+    }
+    masterRandom = new FastRandom();
+    setSeed(seed);
+  }
+
+  /**
+   * Seeds every worker stream from the given seed.
+   *
+   * @param seed
+   */
+  public void setSeed(long seed) {
+    masterRandom.setSeed(seed);
+    for(int w = 0; w<numberOfThreads; w++) {
+      random[w].setSeed(seed+0x632BE59BD9B4E019L*(w+1));
+    }
+  }
+
+  public int getNumberOfThreads() {
+    return numberOfThreads;
+  }
+
+  /**
+   * Divides items 0 to numberOfItems-1 into contiguous ranges, updates the ranges in parallel,
+   * and returns the summed changes of the observables.
+   *
+   * @param numberOfItems
+   * @param task
+   * @return the sum of the worker deltas, reused by the next call
+   */
+  public double[] run(final int numberOfItems, final Task task) {
+    RecursiveAction[] actions = new RecursiveAction[numberOfThreads];
+    for(int w = 0; w<numberOfThreads; w++) {
+      final int worker = w;
+      final int first = (int) ((long) w*numberOfItems/numberOfThreads);
+      final int last = (int) ((long) (w+1)*numberOfItems/numberOfThreads);
+      java.util.Arrays.fill(delta[w], 0);
+      actions[w] = new RecursiveAction() {
+        protected void compute() {
+          if(first<last) {
+            task.update(first, last, random[worker], delta[worker]);
+          }
+        }
+
+      };
+    }
+    final RecursiveAction[] all = actions;
+    pool.invoke(new RecursiveAction() {
+      protected void compute() {
+        invokeAll(all);
+      }
+
+    });
+    java.util.Arrays.fill(sum, 0);
+    for(int w = 0; w<numberOfThreads; w++) {
+      for(int k = 0; k<DELTA_LENGTH; k++) {
+        sum[k] += delta[w][k];
+      }
+    }
+    return sum;
+  }
+
+  /**
+   * Stops the worker threads.
+   */
+  public void shutdown() {
+    pool.shutdown();
+  }
+
+}
+
+/*
+ * Open Source Physics software is free software; you can redistribute
+ * it and/or modify it under the terms of the GNU General Public License (GPL) as
+ * published by the Free Software Foundation; either version 2 of the License,
+ * or(at your option) any later version.
+
+ * Code that uses any portion of the code in the org.opensourcephysics package
+ * or any subpackage (subdirectory) of this package must must also be be released
+ * under the GNU GPL license.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston MA 02111-1307 USA
+ * or view the license online at http://www.gnu.org/copyleft/gpl.html
+ *
+ * Copyright (c) 2007  The Open Source Physics project
+ *                     http://www.opensourcephysics.org
+ */
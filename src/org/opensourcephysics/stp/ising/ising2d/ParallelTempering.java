@@ -0,0 +1,262 @@
+/*
+ * Open Source Physics software is free software as described near the bottom of this code file.
+ *
+ * For additional information and documentation on Open Source Physics please see:
+ * <http://www.opensourcephysics.org/>
+ */
+
+package org.opensourcephysics.stp.ising.ising2d;
+import java.util.ArrayList;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import org.opensourcephysics.stp.util.FastRandom;
+
+/**
+ * ParallelTempering runs replicas of a lattice model on a ladder of temperatures,
+ * one replica per worker thread, and periodically attempts to exchange the temperatures
+ * of neighboring rungs.
+ *
+ * Only the temperature labels are exchanged; each replica keeps its own configuration.
+ * An exchange of rungs k and k+1 is accepted with probability
+ * min(1, exp((1/T_k-1/T_k+1)(E_k-E_k+1))). Even and odd pairs are tried on alternate rounds.
+ *
+ * The swap acceptance of every pair and the round trips of the replicas between the lowest
+ * and the highest temperature are recorded, together with the fraction of replicas at each
+ * rung that last visited the lowest temperature, which can be used to tune the ladder.
+ */
+public class ParallelTempering {
+  public TemperingReplica[] replica;
+  public double[] temperature;   // the ladder, lowest temperature first
+  public int[] replicaAt;        // replica at each rung
+  public int[] rungOf;           // rung of each replica
+  public int swapInterval = 10;  // MC steps per replica between exchange attempts
+  public int mcs;                // MC steps per replica
+  public int[] swapAttempts, swapAccepts; // for rungs k and k+1
+  public double[] E_acc, E2_acc; // energy accumulators at each rung
+  public int samples;
+  int[] direction;               // +1 if the replica last visited the lowest rung, -1 the highest, 0 neither
+  int[] tripStart;               // mcs at which the current round trip started
+  public int roundTrips;
+  public double roundTripTime_acc;
+  int[] upVisits, downVisits;    // visits of each rung by replicas moving up or down the ladder
+  int round;
+  FastRandom random;
+  ExecutorService pool;
+  ArrayList<Callable<Object>> tasks = new ArrayList<Callable<Object>>();
+
+  /**
+   * Constructs the driver. Replica r starts at temperature[r] and is seeded with seed+r.
+   * The exchange decisions are seeded with seed+K for K replicas.
+   *
+   * @param replica the models, one for each temperature
+   * @param temperature the ladder in increasing order
+   * @param seed
+   */
+  public ParallelTempering(TemperingReplica[] replica, double[] temperature, long seed) {
+    if(replica.length!=temperature.length) {
+      throw new IllegalArgumentException("Need one replica per temperature.");
+    }
+    this.replica = replica;
+    this.temperature = (double[]) temperature.clone();
+    int K = replica.length;
+    replicaAt = new int[K];
+    rungOf = new int[K];
+    swapAttempts = new int[K];
+    swapAccepts = new int[K];
+    E_acc = new double[K];
+    E2_acc = new double[K];
+    direction = new int[K];
+    tripStart = new int[K];
+    upVisits = new int[K];
+    downVisits = new int[K];
+    random = new FastRandom(seed+K);
+    for(int r = 0; r<K; r++) {
+      replicaAt[r] = r;
+      rungOf[r] = r;
+      replica[r].setTemperature(temperature[r]);
+      replica[r].setSeed(seed+r);
+      final TemperingReplica model = replica[r];
+      tasks.add(new Callable<Object>() {
+        public Object call() {
+          for(int i = 0; i<swapInterval; i++) {
+            model.doOneMCStep();
+          }
+          return null;
+        }
+
+      });
+    }
+    pool = Executors.newFixedThreadPool(K, new ThreadFactory() {
+      public Thread newThread(Runnable r) {
+        Thread t = new Thread(r, "tempering replica");
+        t.setDaemon(true);
+        return t;
+      }
+
+    });
+    resetData();
+  }
+
+  public void resetData() {
+    int K = replica.length;
+    for(int k = 0; k<K; k++) {
+      swapAttempts[k] = 0;
+      swapAccepts[k] = 0;
+      E_acc[k] = 0;
+      E2_acc[k] = 0;
+      upVisits[k] = 0;
+      downVisits[k] = 0;
+      direction[k] = 0;
+      tripStart[k] = mcs;
+    }
+    samples = 0;
+    roundTrips = 0;
+    roundTripTime_acc = 0;
+  }
+
+  /**
+   * Runs swapInterval steps on every replica in parallel and then attempts the exchanges.
+   */
+  public void doOneRound() {
+    try {
+      for(Future<Object> f : pool.invokeAll(tasks)) {
+        f.get();
+      }
+    } catch(InterruptedException ex) {
+      Thread.currentThread().interrupt();
+      return;
+    } catch(ExecutionException ex) {
+      throw new RuntimeException(ex.getCause());
+    }
+    mcs += swapInterval;
+    attemptSwaps(round%2);
+    round++;
+    accumulate();
+  }
+
+  void attemptSwaps(int firstRung) {
+    for(int k = firstRung; k<replica.length-1; k += 2) {
+      int a = replicaAt[k], b = replicaAt[k+1];
+      double delta = (1.0/temperature[k]-1.0/temperature[k+1])*(replica[a].getEnergy()-replica[b].getEnergy());
+      swapAttempts[k]++;
+      if((delta>=0)||(random.nextDouble()<Math.exp(delta))) {
+        swapAccepts[k]++;
+        replicaAt[k] = b;
+        replicaAt[k+1] = a;
+        rungOf[a] = k+1;
+        rungOf[b] = k;
+        replica[a].setTemperature(temperature[k+1]);
+        replica[b].setTemperature(temperature[k]);
+      }
+    }
+  }
+
+  void accumulate() {
+    int K = replica.length;
+    for(int k = 0; k<K; k++) {
+      double E = replica[replicaAt[k]].getEnergy();
+      E_acc[k] += E;
+      E2_acc[k] += E*E;
+    }
+    samples++;
+    for(int r = 0; r<K; r++) {
+      int k = rungOf[r];
+      if(k==0) {
+        if(direction[r]==-1) {
+          roundTrips++;
+          roundTripTime_acc += mcs-tripStart[r];
+        }
+        if(direction[r]!=1) {
+          tripStart[r] = mcs;
+        }
+        direction[r] = 1;
+      } else if(k==K-1) {
+        direction[r] = -1;
+      }
+      if(direction[r]==1) {
+        upVisits[k]++;
+      } else if(direction[r]==-1) {
+        downVisits[k]++;
+      }
+    }
+  }
+
+  public double swapAcceptance(int k) {
+    return(swapAttempts[k]==0)
+          ? 0
+          : (double) swapAccepts[k]/swapAttempts[k];
+  }
+
+  /**
+   * Mean number of MC steps for a replica to go from the lowest temperature to the highest and back.
+   */
+  public double meanRoundTripTime() {
+    return(roundTrips==0)
+          ? 0
+          : roundTripTime_acc/roundTrips;
+  }
+
+  /**
+   * Fraction of visits to rung k by replicas that came from the lowest temperature.
+   * An optimized ladder gives a fraction that decreases linearly from 1 to 0.
+   */
+  public double upwardFraction(int k) {
+    int visits = upVisits[k]+downVisits[k];
+    return(visits==0)
+          ? 0
+          : (double) upVisits[k]/visits;
+  }
+
+  public double meanEnergy(int k) {
+    return(samples==0)
+          ? 0
+          : E_acc[k]/samples;
+  }
+
+  /**
+   * Heat capacity (not per site) at rung k from the energy fluctuations.
+   */
+  public double heatCapacity(int k) {
+    if(samples==0) {
+      return 0;
+    }
+    double E_avg = E_acc[k]/samples;
+    return(E2_acc[k]/samples-E_avg*E_avg)/(temperature[k]*temperature[k]);
+  }
+
+  /**
+   * Stops the worker threads.
+   */
+  public void shutdown() {
+    pool.shutdown();
+  }
+
+}
+
+/*
+ * Open Source Physics software is free software; you can redistribute
+ * it and/or modify it under the terms of the GNU General Public License (GPL) as
+ * published by the Free Software Foundation; either version 2 of the License,
+ * or(at your option) any later version.
+
+ * Code that uses any portion of the code in the org.opensourcephysics package
+ * or any subpackage (subdirectory) of this package must must also be be released
+ * under the GNU GPL license.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston MA 02111-1307 USA
+ * or view the license online at http://www.gnu.org/copyleft/gpl.html
+ *
+ * Copyright (c) 2007  The Open Source Physics project
+ *                     http://www.opensourcephysics.org
+ */
@@ -0,0 +1,211 @@
+/*
+ * Open Source Physics software is free software as described near the bottom of this code file.
+ *
+ * For additional information and documentation on Open Source Physics please see:
+ * <http://www.opensourcephysics.org/>
+ */
+
+package org.opensourcephysics.stp.ising.ising2d;
+import org.opensourcephysics.stp.util.FastRandom;
+
+/**
+ * SwendsenWang does whole lattice Fortuin-Kasteleyn cluster updates of an Ising2D model.
+ *
+ * Each sweep occupies bonds between satisfied neighbors with probability 1-exp(-2|J|/T),
+ * labels the clusters with a flat array union-find (path halving, union by size), and flips
+ * every cluster with probability 1/2. If the external field is nonzero, each cluster is instead
+ * given the orientation chosen by a heat bath in the field.
+ *
+ * For H = 0 the cluster sizes n_c give improved estimators of the magnetization moments,
+ * M^2 = sum n_c^2 and M^4 = 3(sum n_c^2)^2-2 sum n_c^4, which average over all 2^(number of clusters)
+ * flips at once. The improved estimate of |M| averages over signSamples random sets of
+ * cluster orientations because it has no closed form.
+ */
+public class SwendsenWang {
+  Ising2D ising;
+  int L, N;
+  int[] parent;      // union-find forest, parent[s]==s for a root
+  int[] size;        // cluster size for a root
+  int[] clusterSign; // orientation change of the cluster rooted at s, +1 or -1
+  int[] roots;       // roots of the clusters of the last sweep
+  int numberOfClusters;
+  int signSamples = 16;
+  FastRandom random = new FastRandom();
+  double M2, M4, absM; // improved estimates from the last sweep
+
+  public SwendsenWang(Ising2D ising) {
+    this.ising = ising;
+    L = ising.L;
+    N = L*L;
+    parent = new int[N];
+    size = new int[N];
+    clusterSign = new int[N];
+    roots = new int[N];
+  }
+
+  public void setSeed(long seed) {
+    random.setSeed(seed);
+  }
+
+  int find(int s) {
+    while(parent[s]!=s) {
+      parent[s] = parent[parent[s]]; // path halving
+      s = parent[s];
+    }
+    return s;
+  }
+
+  void union(int a, int b) {
+    a = find(a);
+    b = find(b);
+    if(a==b) {
+      return;
+    }
+    if(size[a]<size[b]) {
+      int tmp = a;
+      a = b;
+      b = tmp;
+    }
+    parent[b] = a;
+    size[a] += size[b];
+  }
+
+  /**
+   * Does one Swendsen-Wang sweep and recomputes the energy and magnetization of the model.
+   */
+  public void sweep() {
+    int[][] spin = ising.spin;
+    double J = ising.J;
+    long threshold = (long) ((1-Math.exp(-2*Math.abs(J)/ising.T))*(1L<<53));
+    for(int s = 0; s<N; s++) {
+      parent[s] = s;
+      size[s] = 1;
+    }
+    // each bond is visited once through the neighbors at x+1 and y+1
+    for(int x = 0; x<L; x++) {
+      int[] row = spin[x];
+      int[] nextRow = spin[(x+1)%L];
+      for(int y = 0; y<L; y++) {
+        int s = x*L+y;
+        int yp = (y+1)%L;
+        if((J*row[y]*nextRow[y]>0)&&(random.next53()<threshold)) {
+          union(s, ((x+1)%L)*L+y);
+        }
+        if((J*row[y]*row[yp]>0)&&(random.next53()<threshold)) {
+          union(s, x*L+yp);
+        }
+      }
+    }
+    numberOfClusters = 0;
+    for(int s = 0; s<N; s++) {
+      if(parent[s]==s) {
+        roots[numberOfClusters++] = s;
+      }
+    }
+    computeImprovedEstimators();
+    chooseOrientations();
+    for(int x = 0; x<L; x++) {
+      int[] row = spin[x];
+      for(int y = 0; y<L; y++) {
+        row[y] *= clusterSign[find(x*L+y)];
+      }
+    }
+    recomputeEnergy();
+  }
+
+  void chooseOrientations() {
+    double H = ising.H;
+    if(H==0) {
+      for(int c = 0; c<numberOfClusters; c++) {
+        clusterSign[roots[c]] = ((random.nextLong()&1L)==0)
+                                ? 1
+                                : -1;
+      }
+      return;
+    }
+    // the field acts on each cluster independently, so each cluster is placed in a heat bath
+    int[][] spin = ising.spin;
+    for(int c = 0; c<numberOfClusters; c++) {
+      clusterSign[roots[c]] = 0; // used to accumulate the cluster magnetization
+    }
+    for(int x = 0; x<L; x++) {
+      for(int y = 0; y<L; y++) {
+        clusterSign[find(x*L+y)] += spin[x][y];
+      }
+    }
+    for(int c = 0; c<numberOfClusters; c++) {
+      int m = clusterSign[roots[c]];
+      double pKeep = 1.0/(1.0+Math.exp(-2*H*m/ising.T));
+      clusterSign[roots[c]] = (random.nextDouble()<pKeep)
+                              ? 1
+                              : -1;
+    }
+  }
+
+  void computeImprovedEstimators() {
+    double sum2 = 0, sum4 = 0;
+    for(int c = 0; c<numberOfClusters; c++) {
+      double n2 = (double) size[roots[c]]*size[roots[c]];
+      sum2 += n2;
+      sum4 += n2*n2;
+    }
+    M2 = sum2;
+    M4 = 3*sum2*sum2-2*sum4;
+    double absSum = 0;
+    for(int k = 0; k<signSamples; k++) {
+      long m = 0;
+      long bits = 0;
+      for(int c = 0; c<numberOfClusters; c++) {
+        if((c&63)==0) {
+          bits = random.nextLong();
+        }
+        m += ((bits&1L)==0)
+             ? size[roots[c]]
+             : -size[roots[c]];
+        bits >>>= 1;
+      }
+      absSum += Math.abs(m);
+    }
+    absM = absSum/signSamples;
+  }
+
+  void recomputeEnergy() {
+    int[][] spin = ising.spin;
+    int bonds = 0, m = 0;
+    for(int x = 0; x<L; x++) {
+      int[] row = spin[x];
+      int[] nextRow = spin[(x+1)%L];
+      for(int y = 0; y<L; y++) {
+        bonds += row[y]*(nextRow[y]+row[(y+1)%L]);
+        m += row[y];
+      }
+    }
+    ising.M = m;
+    ising.E = -ising.J*bonds-ising.H*m;
+  }
+
+}
+
+/*
+ * Open Source Physics software is free software; you can redistribute
+ * it and/or modify it under the terms of the GNU General Public License (GPL) as
+ * published by the Free Software Foundation; either version 2 of the License,
+ * or(at your option) any later version.
+
+ * Code that uses any portion of the code in the org.opensourcephysics package
+ * or any subpackage (subdirectory) of this package must must also be be released
+ * under the GNU GPL license.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston MA 02111-1307 USA
+ * or view the license online at http://www.gnu.org/copyleft/gpl.html
+ *
+ * Copyright (c) 2007  The Open Source Physics project
+ *                     http://www.opensourcephysics.org
+ */
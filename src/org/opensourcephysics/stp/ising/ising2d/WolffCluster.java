@@ -0,0 +1,137 @@
+/*
+ * Open Source Physics software is free software as described near the bottom of this code file.
+ *
+ * For additional information and documentation on Open Source Physics please see:
+ * <http://www.opensourcephysics.org/>
+ */
+
+package org.opensourcephysics.stp.ising.ising2d;
+import org.opensourcephysics.stp.util.FastRandom;
+
+/**
+ * WolffCluster grows and flips single Wolff clusters of an Ising2D model.
+ *
+ * Site s = x*L+y refers to spin[x][y]. The neighbor table, the cluster array, and the
+ * visited array are allocated once, so a cluster step does no allocation and takes a time
+ * proportional to the cluster size. A site belongs to the current cluster if its visited entry
+ * equals the current generation, which avoids clearing the array between steps.
+ */
+public class WolffCluster {
+  Ising2D ising;
+  int L, N;
+  int[] neighbor;    // neighbor[4*s+k] for the four nearest neighbors of s
+  int[] xOf, yOf;    // lattice coordinates of s
+  int[] cluster;     // sites in the order they were added, also used as the stack
+  int[] visited;     // generation in which a site was last added to a cluster
+  int generation;
+  int size;          // size of the last cluster
+  FastRandom random = new FastRandom();
+
+  public WolffCluster(Ising2D ising) {
+    this.ising = ising;
+    L = ising.L;
+    N = L*L;
+    neighbor = new int[4*N];
+    xOf = new int[N];
+    yOf = new int[N];
+    cluster = new int[N];
+    visited = new int[N];
+    for(int x = 0; x<L; x++) {
+      for(int y = 0; y<L; y++) {
+        int s = x*L+y;
+        xOf[s] = x;
+        yOf[s] = y;
+        neighbor[4*s] = ((x+1)%L)*L+y;
+        neighbor[4*s+1] = ((x-1+L)%L)*L+y;
+        neighbor[4*s+2] = x*L+(y+1)%L;
+        neighbor[4*s+3] = x*L+(y-1+L)%L;
+      }
+    }
+  }
+
+  public void setSeed(long seed) {
+    random.setSeed(seed);
+  }
+
+  /**
+   * Grows a cluster from a random seed site.
+   *
+   * @param bondProbability probability of adding a parallel neighbor
+   * @return the number of sites in the cluster
+   */
+  public int grow(double bondProbability) {
+    int[][] spin = ising.spin;
+    if(++generation==0) { // wrapped around, so old stamps are no longer distinct
+      java.util.Arrays.fill(visited, 0);
+      generation = 1;
+    }
+    long threshold = (long) (bondProbability*(1L<<53));
+    int seed = random.nextInt(N);
+    int direction = spin[xOf[seed]][yOf[seed]];
+    cluster[0] = seed;
+    visited[seed] = generation;
+    size = 1;
+    int pointer = 0;
+    while(pointer<size) {
+      int s = cluster[pointer++];
+      for(int k = 4*s; k<4*s+4; k++) {
+        int nn = neighbor[k];
+        if((visited[nn]!=generation)&&(spin[xOf[nn]][yOf[nn]]==direction)&&(random.next53()<threshold)) {
+          visited[nn] = generation;
+          cluster[size++] = nn;
+        }
+      }
+    }
+    return size;
+  }
+
+  /**
+   * Flips the last cluster and updates the energy and magnetization of the model.
+   */
+  public void flip() {
+    int[][] spin = ising.spin;
+    double J = ising.J, H = ising.H;
+    double dE = 0;
+    int dM = 0;
+    for(int c = 0; c<size; c++) {
+      int s = cluster[c];
+      int x = xOf[s], y = yOf[s];
+      int spinDirection = spin[x][y];
+      spin[x][y] = -spinDirection;
+      int sum = 0;
+      for(int k = 4*s; k<4*s+4; k++) {
+        int nn = neighbor[k];
+        sum += spin[xOf[nn]][yOf[nn]];
+      }
+      dE += 2*spinDirection*(J*sum+H);
+      dM -= 2*spinDirection;
+    }
+    ising.E += dE;
+    ising.M += dM;
+  }
+
+}
+
+/*
+ * Open Source Physics software is free software; you can redistribute
+ * it and/or modify it under the terms of the GNU General Public License (GPL) as
+ * published by the Free Software Foundation; either version 2 of the License,
+ * or(at your option) any later version.
+
+ * Code that uses any portion of the code in the org.opensourcephysics package
+ * or any subpackage (subdirectory) of this package must must also be be released
+ * under the GNU GPL license.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston MA 02111-1307 USA
+ * or view the license online at http://www.gnu.org/copyleft/gpl.html
+ *
+ * Copyright (c) 2007  The Open Source Physics project
+ *                     http://www.opensourcephysics.org
+ */
@@ -12,9 +12,17 @@
 
 package org.opensourcephysics.stp.lj;
 import java.awt.*;
+import java.io.IOException;
 import org.opensourcephysics.display.*;
 import org.opensourcephysics.frames.*;
 import org.opensourcephysics.numerics.*;
+import org.opensourcephysics.stp.util.DiffusionEstimator;
+import org.opensourcephysics.stp.util.FastRandom;
+import org.opensourcephysics.stp.util.LennardJones;
+import org.opensourcephysics.stp.util.MeasurementPipeline;
+import org.opensourcephysics.stp.util.RandomPlacement;
+import org.opensourcephysics.stp.util.TrajectoryWriter;
+import org.opensourcephysics.stp.util.VelocityVerlet;
 
 /**
 
@@ -34,8 +42,10 @@ import org.opensourcephysics.numerics.*;
 
  */
 public class LJfluid implements Drawable, ODE {
-  public double state[];
-  public double ax[], ay[];
+  public double x[], y[];     // positions
+  public double vx[], vy[];   // velocities
+  public double ax[], ay[];   // accelerations
+  public double state[];      // x, vx, y, vy of particle i at 4*i, the view of the particles seen by the ODE solver
   public int N, nx, ny;       // number of particles, number per row, number per column
   public double Lx, Ly;
   public double rho = N/(Lx*Ly);
@@ -46,9 +56,30 @@ public class LJfluid implements Drawable, ODE {
   public double totalPotentialEnergyAccumulator;
   public double totalKineticEnergyAccumulator, totalKineticEnergySquaredAccumulator;
   public double virialAccumulator;
+  public double kineticEnergy, potentialEnergy, virial; // of the last step
   public String initialConfiguration;
   public double radius = 0.5; // radius of particles on screen
+  public double cutoff = 0;   // cutoff of the potential, 0 to include all pairs
+  public double skin = 0.3;   // skin of the neighbor list used if cutoff > 0
+  public NeighborList neighborList;
+  public int numberOfThreads = 1; // threads used to compute the forces
+  public boolean velocityVerlet = false; // step the arrays in place instead of using the Verlet ODE solver
+  public MeasurementPipeline measurements; // if not null, receives the velocities and energies instead of the histogram
+  public TrajectoryWriter trajectory;     // if not null, receives the configuration after every measured step
+  public DiffusionEstimator diffusion;    // if not null, samples the configuration after every measured step
+  public FastRandom random = new FastRandom(); // initial velocities, seeded for reproducible replicas
+  LennardJones potential = new LennardJones(0, 0);
   Verlet odeSolver = new Verlet(this);
+  VelocityVerlet integrator = new VelocityVerlet(new VelocityVerlet.Model() {
+    public void computeAcceleration() {
+      LJfluid.this.computeAcceleration();
+    }
+
+    public void stepDone(double kineticEnergy) {
+      accumulate(kineticEnergy);
+    }
+
+  });
 
   public void initialize() {
     N = nx*ny;
@@ -56,6 +87,10 @@ public class LJfluid implements Drawable, ODE {
     rho = N/(Lx*Ly);
     resetAverages();
     state = new double[1+4*N];
+    x = new double[N];
+    y = new double[N];
+    vx = new double[N];
+    vy = new double[N];
     ax = new double[N];
     ay = new double[N];
     if(initialConfiguration.equals("triangular")) {
@@ -66,6 +101,18 @@ public class LJfluid implements Drawable, ODE {
       setRandomPositions();
     }
     setVelocities();
+    packState();
+    if(neighborList!=null) {
+      neighborList.setNumberOfThreads(1);
+    }
+    neighborList = (cutoff>0)
+                   ? new NeighborList(cutoff, skin)
+                   : null;
+    if(neighborList!=null) {
+      neighborList.setNumberOfThreads(numberOfThreads);
+    } else if(potential.getNumberOfThreads()!=numberOfThreads) {
+      potential.setNumberOfThreads(numberOfThreads);
+    }
     computeAcceleration();
     odeSolver.setStepSize(dt);
   }
@@ -73,25 +120,8 @@ public class LJfluid implements Drawable, ODE {
   // end break
   // start break
   // setRandomPositions
-  public void setRandomPositions() { // particles placed at random, but not closer than rMinimumSquared
-    double rMinimumSquared = Math.pow(2.0, 1.0/3.0);
-    boolean overlap;
-    for(int i = 0; i<N; ++i) {
-      do {
-        overlap = false;
-        state[4*i] = Lx*Math.random();   // x
-        state[4*i+2] = Ly*Math.random(); // y
-        int j = 0;
-        while((j<i)&&!overlap) {
-        	double dx = pbcSeparation(state[4*i]-state[4*j], Lx);
-        	double dy = pbcSeparation(state[4*i+2]-state[4*j+2], Ly);
-        	if(dx*dx+dy*dy<rMinimumSquared) {
-            overlap = true;
-          }
-          j++;
-        }
-      } while(overlap);
-    }
+  public void setRandomPositions() { // particles placed at random, but not closer than 2^(1/6)
+    RandomPlacement.place(x, y, N, Lx, Ly, Math.pow(2.0, 1.0/6.0), true);
   }
 
   // end break
@@ -103,8 +133,8 @@ public class LJfluid implements Drawable, ODE {
     for(int ix = 0; ix<nx; ++ix) {     // loop through particles in a row
       for(int iy = 0; iy<ny; ++iy) {   // loop through rows
         int i = ix+iy*ny;
-        state[4*i] = dx*(ix+0.5);
-        state[4*i+2] = dy*(iy+0.5);
+        x[i] = dx*(ix+0.5);
+        y[i] = dy*(iy+0.5);
       }
     }
   }
@@ -118,11 +148,11 @@ public class LJfluid implements Drawable, ODE {
     for(int ix = 0; ix<nx; ++ix) {
       for(int iy = 0; iy<ny; ++iy) {
         int i = ix+iy*ny;
-        state[4*i+2] = dy*(iy+0.5);
+        y[i] = dy*(iy+0.5);
         if(iy%2==0) {
-          state[4*i] = dx*(ix+0.25);
+          x[i] = dx*(ix+0.25);
         } else {
-          state[4*i] = dx*(ix+0.75);
+          x[i] = dx*(ix+0.75);
         }
       }
     }
@@ -135,27 +165,27 @@ public class LJfluid implements Drawable, ODE {
     double vxSum = 0.0;
     double vySum = 0.0;
     for(int i = 0; i<N; ++i) {          // assign random initial velocities
-      state[4*i+1] = Math.random()-0.5; // vx
-      state[4*i+3] = Math.random()-0.5; // vy
-      vxSum += state[4*i+1];
-      vySum += state[4*i+3];
+      vx[i] = random.nextDouble()-0.5;
+      vy[i] = random.nextDouble()-0.5;
+      vxSum += vx[i];
+      vySum += vy[i];
     }
     // zero center of mass momentum
     double vxcm = vxSum/N; // center of mass momentum (velocity)
     double vycm = vySum/N;
     for(int i = 0; i<N; ++i) {
-      state[4*i+1] -= vxcm;
-      state[4*i+3] -= vycm;
+      vx[i] -= vxcm;
+      vy[i] -= vycm;
     }
     double v2sum = 0; // rescale velocities to obtain desired initial kinetic energy
     for(int i = 0; i<N; ++i) {
-      v2sum += state[4*i+1]*state[4*i+1]+state[4*i+3]*state[4*i+3];
+      v2sum += vx[i]*vx[i]+vy[i]*vy[i];
     }
     double kineticEnergyPerParticle = 0.5*v2sum/N;
     double rescale = Math.sqrt(initialKineticEnergy/kineticEnergyPerParticle);
     for(int i = 0; i<N; ++i) {
-      state[4*i+1] *= rescale;
-      state[4*i+3] *= rescale;
+      vx[i] *= rescale;
+      vy[i] *= rescale;
     }
   }
 
@@ -178,8 +208,8 @@ public class LJfluid implements Drawable, ODE {
 
   public void quench(double quenchRate) {
     for(int i = 0; i<N; i++) {
-      state[4*i+1] *= quenchRate; // vx
-      state[4*i+3] *= quenchRate; // vy
+      vx[i] *= quenchRate;
+      vy[i] *= quenchRate;
     }
   }
 
@@ -214,66 +244,37 @@ public class LJfluid implements Drawable, ODE {
     totalPotentialEnergyAccumulator = 0;
     totalKineticEnergyAccumulator = 0;
     totalKineticEnergySquaredAccumulator = 0;
-  }
-
-  // end break
-  // start break
-  // computeAcceleration
-  public void computeAcceleration() {
-    for(int i = 0; i<N; i++) {
-      ax[i] = 0;
-      ay[i] = 0;
+    if(measurements!=null) {
+      measurements.clear();
     }
-    for(int i = 0; i<N-1; i++) {
-      for(int j = i+1; j<N; j++) {
-        double dx = pbcSeparation(state[4*i]-state[4*j], Lx);
-        double dy = pbcSeparation(state[4*i+2]-state[4*j+2], Ly);
-        double r2 = dx*dx+dy*dy;
-        double oneOverR2 = 1.0/r2;
-        double oneOverR6 = oneOverR2*oneOverR2*oneOverR2;
-        double fOverR = 48.0*oneOverR6*(oneOverR6-0.5)*oneOverR2;
-        double fx = fOverR*dx; // force in x-direction
-        double fy = fOverR*dy; // force in y-direction
-        ax[i] += fx;           // use Newton's third law
-        ay[i] += fy;
-        ax[j] -= fx;
-        ay[j] -= fy;
-        totalPotentialEnergyAccumulator += 4.0*(oneOverR6*oneOverR6-oneOverR6);
-        virialAccumulator += dx*fx+dy*fy;
-      }
+    if(diffusion!=null) {
+      diffusion.reset();
     }
   }
 
   // end break
   // start break
-  // pbcSeparation
-  private double pbcSeparation(double ds, double L) {
-    if(ds>0) {
-      while(ds>0.5*L) {
-        ds -= L;
-      }
+  // computeAcceleration
+  public void computeAcceleration() {
+    if(neighborList!=null) {
+      neighborList.compute(x, y, N, Lx, Ly, ax, ay);
+      potentialEnergy = neighborList.potentialEnergy;
+      virial = neighborList.virial;
     } else {
-      while(ds<-0.5*L) {
-        ds += L;
-      }
+      potential.setBox(Lx, Ly);
+      potential.computeForces(x, y, N, ax, ay);
+      potentialEnergy = potential.potentialEnergy;
+      virial = potential.virial;
     }
-    return ds;
+    totalPotentialEnergyAccumulator += potentialEnergy;
+    virialAccumulator += virial;
   }
 
   // end break
   // start break
   // pbcPosition
   private double pbcPosition(double s, double L) {
-    if(s>0) {
-      while(s>L) {
-        s -= L;
-      }
-    } else {
-      while(s<0) {
-        s += L;
-      }
-    }
-    return s;
+    return LennardJones.position(s, L);
   }
 
   // end break
@@ -285,6 +286,10 @@ public class LJfluid implements Drawable, ODE {
     // new velocity is computed from previous and current acceleration.
     // Previous acceleration is saved in step method of Verlet.
     if(odeSolver.getRateCounter()==1) {
+      for(int i = 0; i<N; i++) { // new positions from the solver
+        x[i] = state[4*i];
+        y[i] = state[4*i+2];
+      }
       computeAcceleration();
     }
     for(int i = 0; i<N; i++) {
@@ -296,20 +301,104 @@ public class LJfluid implements Drawable, ODE {
     rate[4*N] = 1; // dt/dt = 1
   }
 
+  /**
+
+   * Gets the interleaved view of the particle arrays used by the ODE solver.
+
+   * The view is copied from the arrays at the start of every solver step and back at the end;
+
+   * it is not updated by steps of the velocityVerlet mode.
+
+   *
+
+   * @return double[]
+
+   */
   public double[] getState() {
     return state;
   }
 
+  /**
+
+   * Copies the particle arrays into the state view.
+
+   */
+  public void packState() {
+    for(int i = 0; i<N; i++) {
+      state[4*i] = x[i];
+      state[4*i+1] = vx[i];
+      state[4*i+2] = y[i];
+      state[4*i+3] = vy[i];
+    }
+  }
+
   public void step(HistogramFrame xVelocityHistogram) {
-    odeSolver.step();
-    double totalKineticEnergy = 0;
+    step(xVelocityHistogram, 1);
+  }
+
+  /**
+
+   * Does numberOfSteps steps. With velocityVerlet the steps are fused by the VelocityVerlet
+
+   * integrator and the histogram receives the velocities at the end of the call only.
+
+   * If measurements is not null the velocities and energies are offered to it instead and
+
+   * the histogram is not used.
+
+   */
+  public void step(HistogramFrame xVelocityHistogram, int numberOfSteps) {
+    if(velocityVerlet) {
+      integrator.dt = dt;
+      integrator.Lx = Lx;
+      integrator.Ly = Ly;
+      integrator.setArrays(x, y, vx, vy, ax, ay, N);
+      integrator.step(numberOfSteps);
+      measure(xVelocityHistogram);
+      return;
+    }
+    for(int k = 0; k<numberOfSteps; k++) {
+      packState();
+      odeSolver.step();
+      double totalKineticEnergy = 0;
+      for(int i = 0; i<N; i++) {
+        vx[i] = state[4*i+1];
+        vy[i] = state[4*i+3];
+        x[i] = state[4*i] = pbcPosition(state[4*i], Lx);
+        y[i] = state[4*i+2] = pbcPosition(state[4*i+2], Ly);
+        totalKineticEnergy += (vx[i]*vx[i]+vy[i]*vy[i]);
+      }
+      accumulate(0.5*totalKineticEnergy);
+      measure(xVelocityHistogram);
+    }
+  }
+
+  void measure(HistogramFrame xVelocityHistogram) {
+    if(trajectory!=null) {
+      try {
+        trajectory.writeFrame(steps, t, x, y, vx, vy);
+      } catch(IOException ex) {
+        System.err.println("Could not write trajectory: "+ex);
+        trajectory = null;
+      }
+    }
+    if(diffusion!=null) {
+      diffusion.update(x, y, vx, vy, Lx, Ly, t);
+    }
+    if(measurements!=null) {
+      measurements.offer(vx, N, kineticEnergy, potentialEnergy, virial);
+      return;
+    }
+    if(xVelocityHistogram==null) { // runs without a display
+      return;
+    }
     for(int i = 0; i<N; i++) {
-      totalKineticEnergy += (state[4*i+1]*state[4*i+1]+state[4*i+3]*state[4*i+3]);
-      xVelocityHistogram.append(state[4*i+1]);
-      state[4*i] = pbcPosition(state[4*i], Lx);
-      state[4*i+2] = pbcPosition(state[4*i+2], Ly);
+      xVelocityHistogram.append(vx[i]);
     }
-    totalKineticEnergy *= 0.5;
+  }
+
+  void accumulate(double totalKineticEnergy) {
+    kineticEnergy = totalKineticEnergy;
     steps++;
     totalKineticEnergyAccumulator += totalKineticEnergy;
     totalKineticEnergySquaredAccumulator += totalKineticEnergy*totalKineticEnergy;
@@ -327,8 +416,8 @@ public class LJfluid implements Drawable, ODE {
     int pyRadius = Math.abs(panel.yToPix(radius)-panel.yToPix(0));
     g.setColor(Color.red);
     for(int i = 0; i<N; i++) {
-      int xpix = panel.xToPix(state[4*i])-pxRadius;
-      int ypix = panel.yToPix(state[4*i+2])-pyRadius;
+      int xpix = panel.xToPix(x[i])-pxRadius;
+      int ypix = panel.yToPix(y[i])-pyRadius;
       g.fillOval(xpix, ypix, 2*pxRadius, 2*pyRadius);
     } // draw central cell boundary
     g.setColor(Color.black);
@@ -0,0 +1,703 @@
+/*
+ * Open Source Physics software is free software as described near the bottom of this code file.
+ *
+ * For additional information and documentation on Open Source Physics please see:
+ * <http://www.opensourcephysics.org/>
+ */
+
+package org.opensourcephysics.stp.lj;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import org.opensourcephysics.stp.util.FastRandom;
+import org.opensourcephysics.stp.util.LennardJones;
+import org.opensourcephysics.stp.util.ParallelPairs;
+
+/**
+ * LJfluid3D evolves a three-dimensional system of particles interacting with the Lennard-Jones
+ * potential in a periodic cubic box using the velocity Verlet algorithm.
+ *
+ * The potential is truncated at the cutoff and shifted to vanish there. Forces are found with a
+ * grid of cells of length at least the cutoff. Every force evaluation sorts the particles by cell
+ * with a counting sort and copies their positions into cell order, so the pairs of a cell and of
+ * its 13 forward neighbors are read from contiguous memory, and periodic images are found by
+ * shifting a whole neighbor cell instead of taking the minimum image of every pair. The forces are
+ * copied back afterwards, so the particles keep their indices. If the box holds fewer than three
+ * cells in a direction all pairs are used and the cutoff is limited to half the box.
+ *
+ * The averages follow LJfluid: getMeanTemperature, getMeanEnergy, getMeanPressure (PV/NkT from
+ * the virial), and getHeatCapacity from the fluctuations of the kinetic energy. Every rdfInterval
+ * steps the pair distances of the force calculation are binned for g(r) up to the cutoff.
+ *
+ * The initial configuration is an fcc lattice, random positions, or a configuration written by
+ * saveConfiguration and read by initialize(File).
+ */
+public class LJfluid3D {
+  public static final int MAGIC = 0x4c4a3344;       // "LJ3D", first int of a configuration file
+  public static final double RANDOM_PACKING = 0.3;  // volume fraction of the random configuration
+  public static final int MAXIMUM_FAILURES = 100000;
+  public double x[], y[], z[];    // positions
+  public double vx[], vy[], vz[]; // velocities
+  public double ax[], ay[], az[]; // accelerations
+  public int N = 4000;
+  public double L;
+  public double rho = 0.8;
+  public double initialTemperature = 1.0;
+  public String initialConfiguration = "fcc"; // fcc or random
+  public double cutoff = 2.5;
+  public double dt = 0.005;
+  public double t;
+  public int steps = 0;
+  public long seed = 1;
+  public double totalPotentialEnergyAccumulator;
+  public double totalKineticEnergyAccumulator, totalKineticEnergySquaredAccumulator;
+  public double virialAccumulator;
+  public double kineticEnergy, potentialEnergy, virial; // of the last step
+  public int rdfInterval = 10;        // steps between samples of g(r), 0 for none
+  public double rdfBinWidth = 0.02;
+  public double[] rdfRadius, rdf;     // set by computeRdf
+  double rc2, shift0;
+  int nCell;                          // cells per side, 1 if all pairs are used
+  int[] cellStart = new int[0];       // particles of cell c are at cellStart[c] .. cellStart[c+1]-1 in cell order
+  int[] cellOf = new int[0], order = new int[0]; // cell of each particle, particle at each position in cell order
+  double[] xs, ys, zs, fx, fy, fz;    // positions and forces in cell order
+  double[] sums = new double[0];      // energy, virial, and the g(r) histogram
+  double[] rdfHistogram = new double[0];
+  int rdfSamples;
+  long[] prefix = new long[0];
+  ParallelPairs parallel;             // null for serial calculation
+  FastRandom random;
+  // forward neighbors of a cell, so that each pair of cells is visited once
+  static final int[][] FORWARD = {
+    {1, 0, 0}, {1, 1, 0}, {0, 1, 0}, {-1, 1, 0}, {0, 0, 1}, {1, 0, 1}, {-1, 0, 1}, {0, 1, 1}, {0, -1, 1},
+    {1, 1, 1}, {-1, 1, 1}, {1, -1, 1}, {-1, -1, 1}
+  };
+
+  /**
+   * Places N particles at density rho in the initial configuration and computes the accelerations.
+   */
+  public void initialize() {
+    L = Math.cbrt(N/rho);
+    random = new FastRandom(seed);
+    setArrays();
+    t = 0;
+    if(initialConfiguration.equals("random")) {
+      setRandomPositions();
+    } else {
+      setFccLattice();
+    }
+    setVelocities();
+    resetAverages();
+    computeAcceleration(false);
+  }
+
+  /**
+   * Continues from a configuration written by saveConfiguration.
+   *
+   * @param file
+   * @throws IOException
+   */
+  public void initialize(File file) throws IOException {
+    DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file), 1<<16));
+    try {
+      if(in.readInt()!=MAGIC) {
+        throw new IOException(file+" is not an LJfluid3D configuration.");
+      }
+      N = in.readInt();
+      L = in.readDouble();
+      rho = N/(L*L*L);
+      setArrays();
+      t = in.readDouble();
+      double[][] arrays = {x, y, z, vx, vy, vz};
+      for(int k = 0; k<arrays.length; k++) {
+        for(int i = 0; i<N; i++) {
+          arrays[k][i] = in.readDouble();
+        }
+      }
+    } finally {
+      in.close();
+    }
+    random = new FastRandom(seed);
+    resetAverages();
+    computeAcceleration(false);
+  }
+
+  /**
+   * Writes the box, time, positions, and velocities so that a run can be continued exactly.
+   * The file is written to a temporary file first so that an interrupted write never replaces
+   * a good configuration.
+   *
+   * @param file
+   * @throws IOException
+   */
+  public void saveConfiguration(File file) throws IOException {
+    File tmp = new File(file.getPath()+".tmp");
+    DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tmp), 1<<16));
+    try {
+      out.writeInt(MAGIC);
+      out.writeInt(N);
+      out.writeDouble(L);
+      out.writeDouble(t);
+      double[][] arrays = {x, y, z, vx, vy, vz};
+      for(int k = 0; k<arrays.length; k++) {
+        for(int i = 0; i<N; i++) {
+          out.writeDouble(arrays[k][i]);
+        }
+      }
+    } finally {
+      out.close();
+    }
+    if(!tmp.renameTo(file)) {
+      file.delete();
+      if(!tmp.renameTo(file)) {
+        throw new IOException("Could not replace "+file);
+      }
+    }
+  }
+
+  void setArrays() {
+    x = new double[N];
+    y = new double[N];
+    z = new double[N];
+    vx = new double[N];
+    vy = new double[N];
+    vz = new double[N];
+    ax = new double[N];
+    ay = new double[N];
+    az = new double[N];
+    xs = new double[N];
+    ys = new double[N];
+    zs = new double[N];
+    fx = new double[N];
+    fy = new double[N];
+    fz = new double[N];
+    cellOf = new int[N];
+    order = new int[N];
+  }
+
+  /**
+   * Places the particles on the sites of the smallest fcc lattice with at least N sites.
+   * Sites are filled in order, so the lattice is complete if N = 4 n^3.
+   */
+  public void setFccLattice() {
+    int n = 1;
+    while(4*n*n*n<N) {
+      n++;
+    }
+    double a = L/n; // side of the cubic unit cell
+    double[][] basis = {{0, 0, 0}, {0.5, 0.5, 0}, {0.5, 0, 0.5}, {0, 0.5, 0.5}};
+    int i = 0;
+    for(int ix = 0; ix<n; ix++) {
+      for(int iy = 0; iy<n; iy++) {
+        for(int iz = 0; iz<n; iz++) {
+          for(int b = 0; (b<4)&&(i<N); b++) {
+            x[i] = a*(ix+basis[b][0]+0.25);
+            y[i] = a*(iy+basis[b][1]+0.25);
+            z[i] = a*(iz+basis[b][2]+0.25);
+            i++;
+          }
+        }
+      }
+    }
+  }
+
+  /**
+   * Places the particles at random by random sequential addition with a grid of cells. Random
+   * addition jams near a volume fraction of 0.38, so the smallest separation is 2^(1/6) or the
+   * diameter at which the volume fraction is RANDOM_PACKING, whichever is smaller. The closest
+   * pairs of a dense liquid then start somewhat inside the repulsive core. If a particle cannot
+   * be placed after MAXIMUM_FAILURES trials the fcc lattice is used instead.
+   *
+   * @return true if the positions are random
+   */
+  public boolean setRandomPositions() {
+    double d = Math.min(Math.pow(2.0, 1.0/6.0), Math.cbrt(6*RANDOM_PACKING/(Math.PI*rho)));
+    double d2 = d*d;
+    int m = Math.max(1, (int) (L/d));
+    int[] head = new int[m*m*m];
+    int[] next = new int[N];
+    java.util.Arrays.fill(head, -1);
+    for(int i = 0; i<N; i++) {
+      int failures = 0;
+      while(true) {
+        double xi = L*random.nextDouble(), yi = L*random.nextDouble(), zi = L*random.nextDouble();
+        int cx = (int) (xi*m/L), cy = (int) (yi*m/L), cz = (int) (zi*m/L);
+        boolean overlap = false;
+        for(int ox = -1; (ox<=1)&&!overlap; ox++) {
+          for(int oy = -1; (oy<=1)&&!overlap; oy++) {
+            for(int oz = -1; (oz<=1)&&!overlap; oz++) {
+              int c = (((cx+ox+m)%m)*m+(cy+oy+m)%m)*m+(cz+oz+m)%m;
+              for(int j = head[c]; j>=0; j = next[j]) {
+                double dx = LennardJones.separation(xi-x[j], L);
+                double dy = LennardJones.separation(yi-y[j], L);
+                double dz = LennardJones.separation(zi-z[j], L);
+                if(dx*dx+dy*dy+dz*dz<d2) {
+                  overlap = true;
+                  break;
+                }
+              }
+            }
+          }
+        }
+        if(!overlap) {
+          x[i] = xi;
+          y[i] = yi;
+          z[i] = zi;
+          int c = (cx*m+cy)*m+cz;
+          next[i] = head[c];
+          head[c] = i;
+          break;
+        }
+        if(++failures>MAXIMUM_FAILURES) {
+          setFccLattice();
+          return false;
+        }
+      }
+    }
+    return true;
+  }
+
+  /**
+   * Assigns random velocities with zero total momentum and the initial temperature.
+   */
+  public void setVelocities() {
+    double[][] v = {vx, vy, vz};
+    for(int k = 0; k<3; k++) {
+      double sum = 0;
+      for(int i = 0; i<N; i++) {
+        v[k][i] = random.nextDouble()-0.5;
+        sum += v[k][i];
+      }
+      double vcm = sum/N; // zero center of mass momentum
+      for(int i = 0; i<N; i++) {
+        v[k][i] -= vcm;
+      }
+    }
+    setTemperature(initialTemperature);
+  }
+
+  /**
+   * Rescales the velocities to the temperature T.
+   */
+  public void setTemperature(double T) {
+    double v2sum = 0;
+    for(int i = 0; i<N; i++) {
+      v2sum += vx[i]*vx[i]+vy[i]*vy[i]+vz[i]*vz[i];
+    }
+    if(v2sum>0) {
+      quench(Math.sqrt(3*N*T/v2sum));
+    }
+  }
+
+  public void quench(double quenchRate) {
+    for(int i = 0; i<N; i++) {
+      vx[i] *= quenchRate;
+      vy[i] *= quenchRate;
+      vz[i] *= quenchRate;
+    }
+  }
+
+  /**
+   * Sets the number of threads used to compute the forces. One thread does the work on the calling thread.
+   */
+  public void setNumberOfThreads(int numberOfThreads) {
+    if(parallel!=null) {
+      parallel.shutdown();
+      parallel = null;
+    }
+    if(numberOfThreads>1) {
+      parallel = new ParallelPairs(numberOfThreads);
+    }
+  }
+
+  /**
+   * Stops the worker threads of the parallel mode.
+   */
+  public void shutdown() {
+    setNumberOfThreads(1);
+  }
+
+  public double getMeanTemperature() {
+    return totalKineticEnergyAccumulator/(1.5*N*steps);
+  }
+
+  public double getMeanEnergy() {
+    return totalKineticEnergyAccumulator/steps+totalPotentialEnergyAccumulator/steps;
+  }
+
+  public double getMeanPressure() {
+    double meanVirial = virialAccumulator/steps;
+    return 1.0+meanVirial/(3*N*getMeanTemperature()); // quantity PV/NkT
+  }
+
+  /**
+   * Gets the heat capacity from the fluctuations of the kinetic energy,
+   * C = (3N/2)/(1-2<dK^2>/(3N T^2)).
+   *
+   * @return double
+   */
+  public double getHeatCapacity() {
+    double meanTemperature = getMeanTemperature();
+    double meanKineticEnergySquared = totalKineticEnergySquaredAccumulator/steps;
+    double meanKineticEnergy = totalKineticEnergyAccumulator/steps;
+    double sigma2 = meanKineticEnergySquared-meanKineticEnergy*meanKineticEnergy;
+    double denom = 1.0-sigma2/(1.5*N*meanTemperature*meanTemperature);
+    return 1.5*N/denom;
+  }
+
+  /**
+   * Returns the energy per particle of pairs beyond the cutoff for the unshifted potential, assuming g(r) = 1.
+   */
+  public double getEnergyTailCorrection() {
+    double ir3 = 1/(cutoff*cutoff*cutoff);
+    return 8*Math.PI*rho*(ir3*ir3*ir3/3-ir3)/3;
+  }
+
+  /**
+   * Returns the pressure of pairs beyond the cutoff, assuming g(r) = 1.
+   */
+  public double getPressureTailCorrection() {
+    double ir3 = 1/(cutoff*cutoff*cutoff);
+    return 16*Math.PI*rho*rho*(2*ir3*ir3*ir3/3-ir3)/3;
+  }
+
+  public void resetAverages() {
+    steps = 0;
+    virialAccumulator = 0;
+    totalPotentialEnergyAccumulator = 0;
+    totalKineticEnergyAccumulator = 0;
+    totalKineticEnergySquaredAccumulator = 0;
+    rdfSamples = 0;
+    java.util.Arrays.fill(rdfHistogram, 0);
+  }
+
+  /**
+   * Sets rdfRadius to the centers of the bins and rdf to g(r) averaged over the samples so far.
+   */
+  public void computeRdf() {
+    int bins = rdfHistogram.length;
+    rdfRadius = new double[bins];
+    rdf = new double[bins];
+    for(int k = 0; k<bins; k++) {
+      double r0 = k*rdfBinWidth, r1 = r0+rdfBinWidth;
+      rdfRadius[k] = r0+0.5*rdfBinWidth;
+      double shell = 4*Math.PI*(r1*r1*r1-r0*r0*r0)/3;
+      if(rdfSamples>0) {
+        rdf[k] = 2*rdfHistogram[k]/(rdfSamples*N*rho*shell); // each pair is counted once
+      }
+    }
+  }
+
+  public void step() {
+    step(1);
+  }
+
+  /**
+   * Does numberOfSteps velocity Verlet steps and accumulates the averages after each.
+   */
+  public void step(int numberOfSteps) {
+    double dthalf = 0.5*dt;
+    double dt2half = 0.5*dt*dt;
+    for(int k = 0; k<numberOfSteps; k++) {
+      for(int i = 0; i<N; i++) {
+        x[i] = LennardJones.position(x[i]+vx[i]*dt+ax[i]*dt2half, L);
+        y[i] = LennardJones.position(y[i]+vy[i]*dt+ay[i]*dt2half, L);
+        z[i] = LennardJones.position(z[i]+vz[i]*dt+az[i]*dt2half, L);
+        vx[i] += ax[i]*dthalf;
+        vy[i] += ay[i]*dthalf;
+        vz[i] += az[i]*dthalf;
+      }
+      computeAcceleration((rdfInterval>0)&&((steps+1)%rdfInterval==0));
+      double v2sum = 0;
+      for(int i = 0; i<N; i++) {
+        vx[i] += ax[i]*dthalf;
+        vy[i] += ay[i]*dthalf;
+        vz[i] += az[i]*dthalf;
+        v2sum += vx[i]*vx[i]+vy[i]*vy[i]+vz[i]*vz[i];
+      }
+      kineticEnergy = 0.5*v2sum;
+      steps++;
+      t += dt;
+      totalKineticEnergyAccumulator += kineticEnergy;
+      totalKineticEnergySquaredAccumulator += kineticEnergy*kineticEnergy;
+      totalPotentialEnergyAccumulator += potentialEnergy;
+      virialAccumulator += virial;
+    }
+  }
+
+  /**
+   * Sets the accelerations, potentialEnergy, and virial, and adds the pair distances to the g(r)
+   * histogram if sample is true.
+   */
+  public void computeAcceleration(final boolean sample) {
+    double rc = Math.min(cutoff, 0.5*L);
+    rc2 = rc*rc;
+    double ir6 = 1/(rc2*rc2*rc2);
+    shift0 = 4*ir6*(ir6-1);
+    nCell = (int) (L/rc);
+    if(nCell<3) {
+      nCell = 1;
+    }
+    int bins = (int) Math.ceil(rc/rdfBinWidth);
+    if(rdfHistogram.length!=bins) {
+      rdfHistogram = new double[bins];
+      rdfSamples = 0;
+    }
+    final int numberOfSums = 2+bins;
+    if(sums.length!=numberOfSums) {
+      sums = new double[numberOfSums];
+    }
+    sortByCell();
+    double[] result;
+    final int items = nCell*nCell; // columns of cells along z
+    if(parallel==null) {
+      java.util.Arrays.fill(fx, 0);
+      java.util.Arrays.fill(fy, 0);
+      java.util.Arrays.fill(fz, 0);
+      java.util.Arrays.fill(sums, 0);
+      if(nCell==1) {
+        allPairs(0, N, fx, fy, fz, sums, sample);
+      } else {
+        cellForces(0, items, fx, fy, fz, sums, sample);
+      }
+      result = sums;
+    } else {
+      // items are rows of the pair loop or columns of cells, weighted by their number of pairs
+      final int count = (nCell==1)
+                        ? N
+                        : items;
+      if(prefix.length<count+1) {
+        prefix = new long[count+1];
+      }
+      prefix[0] = 0;
+      for(int k = 0; k<count; k++) {
+        long work = (nCell==1)
+                    ? N-1-k
+                    : cellStart[(k+1)*nCell]-cellStart[k*nCell];
+        prefix[k+1] = prefix[k]+work;
+      }
+      result = parallel.run(prefix, count, N, numberOfSums, new ParallelPairs.Task3D() {
+        public void compute(int first, int last, double[] ax, double[] ay, double[] az, double[] sums) {
+          if(nCell==1) {
+            allPairs(first, last, ax, ay, az, sums, sample);
+          } else {
+            cellForces(first, last, ax, ay, az, sums, sample);
+          }
+        }
+
+      }, fx, fy, fz);
+    }
+    for(int p = 0; p<N; p++) { // forces back to particle order
+      int i = order[p];
+      ax[i] = fx[p];
+      ay[i] = fy[p];
+      az[i] = fz[p];
+    }
+    potentialEnergy = result[0];
+    virial = result[1];
+    if(sample) {
+      for(int k = 0; k<bins; k++) {
+        rdfHistogram[k] += result[2+k];
+      }
+      rdfSamples++;
+    }
+  }
+
+  /**
+   * Sorts the particles by cell with a counting sort and copies their positions into cell order.
+   */
+  void sortByCell() {
+    int cells = nCell*nCell*nCell;
+    if(cellStart.length!=cells+1) {
+      cellStart = new int[cells+1];
+    }
+    java.util.Arrays.fill(cellStart, 0);
+    double scale = nCell/L;
+    int last = nCell-1;
+    for(int i = 0; i<N; i++) {
+      int cx = Math.min(last, (int) (x[i]*scale));
+      int cy = Math.min(last, (int) (y[i]*scale));
+      int cz = Math.min(last, (int) (z[i]*scale));
+      int c = (cx*nCell+cy)*nCell+cz;
+      cellOf[i] = c;
+      cellStart[c+1]++;
+    }
+    for(int c = 0; c<cells; c++) {
+      cellStart[c+1] += cellStart[c];
+    }
+    // cellStart[c] is used as the next free position of cell c and restored afterwards
+    for(int i = 0; i<N; i++) {
+      int p = cellStart[cellOf[i]]++;
+      order[p] = i;
+      xs[p] = x[i];
+      ys[p] = y[i];
+      zs[p] = z[i];
+    }
+    for(int c = cells; c>0; c--) {
+      cellStart[c] = cellStart[c-1];
+    }
+    cellStart[0] = 0;
+  }
+
+  void cellForces(int first, int last, double[] ax, double[] ay, double[] az, double[] sums, boolean sample) {
+    for(int item = first; item<last; item++) {
+      int cx = item/nCell, cy = item%nCell;
+      for(int cz = 0; cz<nCell; cz++) {
+        int c = item*nCell+cz;
+        int start = cellStart[c], end = cellStart[c+1];
+        if(start==end) {
+          continue;
+        }
+        cellPairs(start, end, start, end, true, 0, 0, 0, ax, ay, az, sums, sample);
+        for(int k = 0; k<FORWARD.length; k++) {
+          // a neighbor across the boundary is shifted by the box length
+          int nx = cx+FORWARD[k][0], ny = cy+FORWARD[k][1], nz = cz+FORWARD[k][2];
+          double sx = 0, sy = 0, sz = 0;
+          if(nx<0) {
+            nx += nCell;
+            sx = -L;
+          } else if(nx>=nCell) {
+            nx -= nCell;
+            sx = L;
+          }
+          if(ny<0) {
+            ny += nCell;
+            sy = -L;
+          } else if(ny>=nCell) {
+            ny -= nCell;
+            sy = L;
+          }
+          if(nz>=nCell) {
+            nz -= nCell;
+            sz = L;
+          }
+          int n = (nx*nCell+ny)*nCell+nz;
+          cellPairs(start, end, cellStart[n], cellStart[n+1], false, sx, sy, sz, ax, ay, az, sums, sample);
+        }
+      }
+    }
+  }
+
+  /**
+   * Adds the forces of the pairs of particles i in [iStart, iEnd) and j in [jStart, jEnd) in cell
+   * order, with j shifted by (sx, sy, sz). If same is true the ranges are one cell and each pair is
+   * taken once.
+   */
+  void cellPairs(int iStart, int iEnd, int jStart, int jEnd, boolean same, double sx, double sy, double sz, double[] ax, double[] ay, double[] az, double[] sums, boolean sample) {
+    double[] xs = this.xs, ys = this.ys, zs = this.zs;
+    double rc2 = this.rc2, shift0 = this.shift0;
+    double invBin = 1/rdfBinWidth;
+    int lastBin = sums.length-3;
+    double energy = 0, sumVirial = 0;
+    for(int i = iStart; i<iEnd; i++) {
+      double xi = xs[i]-sx, yi = ys[i]-sy, zi = zs[i]-sz;
+      double fxi = 0, fyi = 0, fzi = 0;
+      int j0 = same
+               ? i+1
+               : jStart;
+      for(int j = j0; j<jEnd; j++) {
+        double dx = xi-xs[j];
+        double dy = yi-ys[j];
+        double dz = zi-zs[j];
+        double r2 = dx*dx+dy*dy+dz*dz;
+        if(r2>=rc2) {
+          continue;
+        }
+        double oneOverR2 = 1.0/r2;
+        double oneOverR6 = oneOverR2*oneOverR2*oneOverR2;
+        double fOverR = 48.0*oneOverR6*(oneOverR6-0.5)*oneOverR2;
+        fxi += fOverR*dx; // use Newton's third law
+        fyi += fOverR*dy;
+        fzi += fOverR*dz;
+        ax[j] -= fOverR*dx;
+        ay[j] -= fOverR*dy;
+        az[j] -= fOverR*dz;
+        energy += 4.0*(oneOverR6*oneOverR6-oneOverR6)-shift0;
+        sumVirial += fOverR*r2;
+        if(sample) {
+          sums[2+Math.min(lastBin, (int) (Math.sqrt(r2)*invBin))]++;
+        }
+      }
+      ax[i] += fxi;
+      ay[i] += fyi;
+      az[i] += fzi;
+    }
+    sums[0] += energy;
+    sums[1] += sumVirial;
+  }
+
+  /**
+   * Adds the forces of the rows first to last-1 of the pair loop in a box too small for cells.
+   */
+  void allPairs(int first, int last, double[] ax, double[] ay, double[] az, double[] sums, boolean sample) {
+    double invL = 1/L;
+    double invBin = 1/rdfBinWidth;
+    int lastBin = sums.length-3;
+    double energy = 0, sumVirial = 0;
+    for(int i = first; i<last; i++) {
+      double fxi = 0, fyi = 0, fzi = 0;
+      for(int j = i+1; j<N; j++) {
+        double dx = xs[i]-xs[j];
+        double dy = ys[i]-ys[j];
+        double dz = zs[i]-zs[j];
+        dx -= L*Math.rint(dx*invL);
+        dy -= L*Math.rint(dy*invL);
+        dz -= L*Math.rint(dz*invL);
+        double r2 = dx*dx+dy*dy+dz*dz;
+        if(r2>=rc2) {
+          continue;
+        }
+        double oneOverR2 = 1.0/r2;
+        double oneOverR6 = oneOverR2*oneOverR2*oneOverR2;
+        double fOverR = 48.0*oneOverR6*(oneOverR6-0.5)*oneOverR2;
+        fxi += fOverR*dx;
+        fyi += fOverR*dy;
+        fzi += fOverR*dz;
+        ax[j] -= fOverR*dx;
+        ay[j] -= fOverR*dy;
+        az[j] -= fOverR*dz;
+        energy += 4.0*(oneOverR6*oneOverR6-oneOverR6)-shift0;
+        sumVirial += fOverR*r2;
+        if(sample) {
+          sums[2+Math.min(lastBin, (int) (Math.sqrt(r2)*invBin))]++;
+        }
+      }
+      ax[i] += fxi;
+      ay[i] += fyi;
+      az[i] += fzi;
+    }
+    sums[0] += energy;
+    sums[1] += sumVirial;
+  }
+
+}
+
+
+/*
+ * Open Source Physics software is free software; you can redistribute
+ * it and/or modify it under the terms of the GNU General Public License (GPL) as
+ * published by the Free Software Foundation; either version 2 of the License,
+ * or(at your option) any later version.
+
+ * Code that uses any portion of the code in the org.opensourcephysics package
+ * or any subpackage (subdirectory) of this package must must also be be released
+ * under the GNU GPL license.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston MA 02111-1307 USA
+ * or view the license online at http://www.gnu.org/copyleft/gpl.html
+ *
+ * Copyright (c) 2007  The Open Source Physics project
+ *                     http://www.opensourcephysics.org
+ */
@@ -0,0 +1,181 @@
+/*
+ * Open Source Physics software is free software as described near the bottom of this code file.
+ *
+ * For additional information and documentation on Open Source Physics please see:
+ * <http://www.opensourcephysics.org/>
+ */
+
+package org.opensourcephysics.stp.lj;
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.PrintWriter;
+
+/**
+ * LJfluid3DBatch runs LJfluid3D without a display and prints its averages.
+ *
+ * The run starts from an fcc lattice, random positions, or a saved configuration. During
+ * equilibration the velocities are rescaled to the temperature T every rescaleInterval steps;
+ * the production run is microcanonical. A new configuration is equilibrated for 1000 steps by
+ * default, and a restart is not equilibrated unless equilibration is given, so that it continues
+ * the saved trajectory. The averages are printed as one line of CSV with the
+ * energy and pressure of the truncated and shifted potential and the tail corrections of the
+ * full potential. The final configuration can be saved to continue the run later, and g(r) can
+ * be written to a CSV file. Progress is reported on the error stream.
+ *
+ * Arguments are key=value pairs, for example
+ * <pre>
+ * java -Xmx4g org.opensourcephysics.stp.lj.LJfluid3DBatch N=256000 rho=0.8 T=1.0 dt=0.005
+ *    equilibration=2000 production=10000 threads=8 save=lj.cfg rdf=gr.csv
+ * java org.opensourcephysics.stp.lj.LJfluid3DBatch restart=lj.cfg production=10000 save=lj.cfg
+ * </pre>
+ */
+public class LJfluid3DBatch {
+  public LJfluid3D md = new LJfluid3D();
+  public double temperature = 1.0;
+  public int equilibrationSteps = -1; // -1 for 1000 steps from a new configuration and none after a restart
+  public int productionSteps = 5000;
+  public int rescaleInterval = 10;
+  public int reportInterval = 1000;
+  public int numberOfThreads = Runtime.getRuntime().availableProcessors();
+  public File restartFile, saveFile, rdfFile;
+  public double secondsPerStep;
+
+  /**
+   * Initializes the system, equilibrates, and does the production run.
+   *
+   * @throws IOException
+   */
+  public void run() throws IOException {
+    md.initialTemperature = temperature;
+    md.setNumberOfThreads(numberOfThreads);
+    try {
+      if(restartFile!=null) {
+        md.initialize(restartFile);
+      } else {
+        md.initialize();
+      }
+      int equilibration = (equilibrationSteps>=0)
+                          ? equilibrationSteps
+                          : (restartFile!=null)
+                            ? 0
+                            : 1000;
+      for(int i = 0; i<equilibration; i += rescaleInterval) {
+        md.step(Math.min(rescaleInterval, equilibration-i));
+        md.setTemperature(temperature);
+        report("equilibration", i+rescaleInterval, equilibration);
+      }
+      md.resetAverages();
+      long start = System.nanoTime();
+      for(int i = 0; i<productionSteps; i += reportInterval) {
+        md.step(Math.min(reportInterval, productionSteps-i));
+        report("production", i+reportInterval, productionSteps);
+      }
+      secondsPerStep = (System.nanoTime()-start)*1e-9/Math.max(1, productionSteps);
+    } finally {
+      md.shutdown();
+    }
+    if(saveFile!=null) {
+      md.saveConfiguration(saveFile);
+    }
+    if(rdfFile!=null) {
+      md.computeRdf();
+      PrintWriter out = new PrintWriter(new FileWriter(rdfFile));
+      try {
+        out.println("r,g");
+        for(int k = 0; k<md.rdf.length; k++) {
+          out.println(md.rdfRadius[k]+","+md.rdf[k]);
+        }
+      } finally {
+        out.close();
+      }
+    }
+  }
+
+  void report(String phase, int done, int total) {
+    if((done%reportInterval==0)||(done>=total)) {
+      System.err.println(phase+" "+Math.min(done, total)+"/"+total+" t = "+md.t+" E/N = "+(md.kineticEnergy+md.potentialEnergy)/md.N);
+    }
+  }
+
+  public static void main(String[] args) throws IOException {
+    LJfluid3DBatch batch = new LJfluid3DBatch();
+    LJfluid3D md = batch.md;
+    for(String arg : args) {
+      int eq = arg.indexOf('=');
+      if(eq<0) {
+        System.err.println("Ignoring argument "+arg);
+        continue;
+      }
+      String key = arg.substring(0, eq);
+      String value = arg.substring(eq+1);
+      if(key.equals("N")) {
+        md.N = Integer.parseInt(value);
+      } else if(key.equals("rho")) {
+        md.rho = Double.parseDouble(value);
+      } else if(key.equals("T")) {
+        batch.temperature = Double.parseDouble(value);
+      } else if(key.equals("dt")) {
+        md.dt = Double.parseDouble(value);
+      } else if(key.equals("cutoff")) {
+        md.cutoff = Double.parseDouble(value);
+      } else if(key.equals("config")) {
+        md.initialConfiguration = value;
+      } else if(key.equals("seed")) {
+        md.seed = Long.parseLong(value);
+      } else if(key.equals("equilibration")) {
+        batch.equilibrationSteps = Integer.parseInt(value);
+      } else if(key.equals("production")) {
+        batch.productionSteps = Integer.parseInt(value);
+      } else if(key.equals("rescale")) {
+        batch.rescaleInterval = Math.max(1, Integer.parseInt(value));
+      } else if(key.equals("report")) {
+        batch.reportInterval = Math.max(1, Integer.parseInt(value));
+      } else if(key.equals("rdfInterval")) {
+        md.rdfInterval = Integer.parseInt(value);
+      } else if(key.equals("threads")) {
+        batch.numberOfThreads = Integer.parseInt(value);
+      } else if(key.equals("restart")) {
+        batch.restartFile = new File(value);
+      } else if(key.equals("save")) {
+        batch.saveFile = new File(value);
+      } else if(key.equals("rdf")) {
+        batch.rdfFile = new File(value);
+      } else {
+        System.err.println("Unknown parameter "+key);
+      }
+    }
+    batch.run();
+    double T = md.getMeanTemperature();
+    double Z = md.getMeanPressure();
+    System.out.println("N,rho,T,E/N,P,PV/NkT,C/N,uTail,pTail,steps,secondsPerStep");
+    System.out.println(md.N+","+md.rho+","+T+","+md.getMeanEnergy()/md.N+","+Z*md.rho*T+","+Z+","+md.getHeatCapacity()/md.N+","
+                       +md.getEnergyTailCorrection()+","+md.getPressureTailCorrection()+","+md.steps+","+batch.secondsPerStep);
+  }
+
+}
+
+
+/*
+ * Open Source Physics software is free software; you can redistribute
+ * it and/or modify it under the terms of the GNU General Public License (GPL) as
+ * published by the Free Software Foundation; either version 2 of the License,
+ * or(at your option) any later version.
+
+ * Code that uses any portion of the code in the org.opensourcephysics package
+ * or any subpackage (subdirectory) of this package must must also be be released
+ * under the GNU GPL license.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston MA 02111-1307 USA
+ * or view the license online at http://www.gnu.org/copyleft/gpl.html
+ *
+ * Copyright (c) 2007  The Open Source Physics project
+ *                     http://www.opensourcephysics.org
+ */
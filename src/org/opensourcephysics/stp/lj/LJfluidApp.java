@@ -14,6 +14,8 @@ package org.opensourcephysics.stp.lj;
 import java.awt.event.ActionEvent;
 import java.awt.event.ActionListener;
 import java.awt.event.WindowListener;
+import java.io.File;
+import java.io.IOException;
 import javax.swing.JFrame;
 import javax.swing.JMenu;
 import javax.swing.JMenuItem;
@@ -23,7 +25,10 @@ import org.opensourcephysics.display.GUIUtils;
 import org.opensourcephysics.display.OSPFrame;
 import org.opensourcephysics.display.OSPRuntime;
 import org.opensourcephysics.frames.*;
+import org.opensourcephysics.stp.util.DiffusionEstimator;
+import org.opensourcephysics.stp.util.MeasurementPipeline;
 import org.opensourcephysics.stp.util.Rdf;
+import org.opensourcephysics.stp.util.TrajectoryWriter;
 
 /**
  * LJfluidApp simulates a two-dimensional system of interacting particles
@@ -41,6 +46,8 @@ public class LJfluidApp extends AbstractSimulation {
   DrawingPanel displayPanel;
   PlotFrame grFrame = new PlotFrame("r", "g(r)", "Radial distribution function");
   Rdf gr = new Rdf();
+  PlotFrame skFrame = new PlotFrame("k", "S(k)", "Static structure factor");
+  PlotFrame msdFrame = new PlotFrame("time", "<\u0394r^2>", "Mean square displacement");
   public double x[], y[];
   
   public LJfluidApp(){
@@ -72,7 +79,34 @@ public class LJfluidApp extends AbstractSimulation {
     md.Ly = control.getDouble("L");
     md.initialConfiguration = "rectangular"; // control.getString("initial configuration");"
     md.dt = control.getDouble("\u0394t");
+    md.cutoff = control.getDouble("cutoff");
+    md.numberOfThreads = control.getInt("number of threads");
+    md.velocityVerlet = control.getString("integrator").equals("velocity Verlet");
+    stopMeasurements();
+    md.measurements = null;
+    if(control.getBoolean("binning thread")) {
+      // velocities are binned on a separate thread and shown once per display
+      double vmax = 10*Math.sqrt(2*md.initialKineticEnergy); // faster velocities are counted as overflow
+      md.measurements = new MeasurementPipeline(64*(md.N+4), 2*md.initialKineticEnergy/md.N, 0, -vmax, vmax);
+    }
     md.initialize();
+    md.diffusion = new DiffusionEstimator(md.N, 8); // eight groups of particles for the error estimates
+    // configurations are appended to a binary trajectory file if a file name is given
+    if(md.trajectory!=null) {
+      try {
+        md.trajectory.close();
+      } catch(IOException ex) {} // a new file is opened below
+      md.trajectory = null;
+    }
+    String fileName = control.getString("trajectory file").trim();
+    if(fileName.length()>0) {
+      try {
+        md.trajectory = new TrajectoryWriter(new File(fileName), md.N, md.Lx, md.Ly, true, TrajectoryWriter.FLOAT32, 0);
+        md.trajectory.setRadius(md.radius);
+      } catch(IOException ex) {
+        control.println("Could not open "+fileName+": "+ex);
+      }
+    }
     displayPanel.addDrawable(md);
     displayPanel.setPreferredMinMax(0, md.Lx, 0, md.Ly); // assumes vmax = 2*initalTemp and bin width = Vmax/N
     xVelocityHistogram.setBinWidth(2*md.initialKineticEnergy/md.N);
@@ -80,7 +114,9 @@ public class LJfluidApp extends AbstractSimulation {
     grFrame.setAutoscaleX(true);
     grFrame.setPreferredMinMaxY(0, 10);
     grFrame.setAutoscaleY(true);
-    gr.initialize(md.Lx, md.Lx, 0.1);
+    gr.initialize(md.Lx, md.Lx, 0.1, Math.min(0.5*md.Lx, 10)); // pairs beyond the plotted range are not binned
+    gr.setStructureFactorGrid(64);
+    gr.setNumberOfThreads(md.numberOfThreads);
   }
 
   /**
@@ -91,9 +127,9 @@ public class LJfluidApp extends AbstractSimulation {
     double temperature = 0;
     md.step(xVelocityHistogram);
     for(int i = 0; i<md.N; i++) {
-      x[i] = md.state[4*i];
-      y[i] = md.state[4*i+2];
-      temperature += md.state[4*i+1]*md.state[4*i+1]+md.state[4*i+3]*md.state[4*i+3];
+      x[i] = md.x[i];
+      y[i] = md.y[i];
+      temperature += md.vx[i]*md.vx[i]+md.vy[i]*md.vy[i];
     }
     gr.append(x, y);
     temperature /= 2.0*md.N;
@@ -102,6 +138,17 @@ public class LJfluidApp extends AbstractSimulation {
     gr.normalize();
     grFrame.clearData();
     grFrame.append(0, gr.rx, gr.ngr);
+    skFrame.clearData();
+    skFrame.append(0, gr.k, gr.sk);
+    if(md.steps%getStepsPerDisplay()==0) {
+      if(md.measurements!=null) {
+        md.measurements.publish(xVelocityHistogram);
+      }
+      msdFrame.clearData();
+      msdFrame.append(0, md.diffusion.getLagTimes(), md.diffusion.getMeanSquareDisplacement());
+      msdFrame.setMessage("D = "+decimalFormat.format(md.diffusion.getEinsteinCoefficient())+" \u00b1 "
+                          +decimalFormat.format(md.diffusion.getEinsteinError()));
+    }
   }
 
   /**
@@ -110,6 +157,14 @@ public class LJfluidApp extends AbstractSimulation {
 
    */
   public void stop() {
+    stopMeasurements();
+    if(md.trajectory!=null) {
+      try {
+        md.trajectory.flush();
+      } catch(IOException ex) {
+        control.println("Could not write trajectory: "+ex);
+      }
+    }
     control.println("Density = "+decimalFormat.format(md.rho));
     control.println("Number of time steps = "+md.steps);
     control.println("Time step dt = "+decimalFormat.format(md.dt));
@@ -117,6 +172,10 @@ public class LJfluidApp extends AbstractSimulation {
     control.println("<E> = "+decimalFormat.format(md.getMeanEnergy()));
     control.println("Heat capacity = "+decimalFormat.format(md.getHeatCapacity()));
     control.println("<PA/NkT> = "+decimalFormat.format(md.getMeanPressure()));
+    control.println("D (Einstein) = "+decimalFormat.format(md.diffusion.getEinsteinCoefficient())+" \u00b1 "
+                    +decimalFormat.format(md.diffusion.getEinsteinError()));
+    control.println("D (Green-Kubo) = "+decimalFormat.format(md.diffusion.getGreenKuboCoefficient())+" \u00b1 "
+                    +decimalFormat.format(md.diffusion.getGreenKuboError()));
   }
 
   /**
@@ -150,11 +209,31 @@ public class LJfluidApp extends AbstractSimulation {
     control.setAdjustableValue("\u0394t", 0.01);
     //control.setValue("initial configuration", "rectangular");
     control.setAdjustableValue("velocity rescaling", 1.0);
+    control.setValue("cutoff", 0); // 0 includes all pairs
+    control.setValue("number of threads", 1); // up to Runtime.getRuntime().availableProcessors()
+    // velocity Verlet updates the particle arrays in place without the copies of the ODE solver
+    OSPCombo combo2 = new OSPCombo(new String[] {"Verlet ODE solver", "velocity Verlet"}, 0);
+    control.setValue("integrator", combo2);
+    control.setValue("trajectory file", ""); // no trajectory is written if empty
+    control.setValue("binning thread", false); // bin velocities on a separate thread
+    stopMeasurements();
     enableStepsPerDisplay(true);
     super.setStepsPerDisplay(10);  // draw configurations every 10 steps
     displayPanel.setSquareAspect(true); // so particles will appear as circular disks
   }
 
+  /**
+
+   * Stops the binning thread, if any, after showing the velocities it has binned.
+
+   */
+  void stopMeasurements() {
+    if(md.measurements!=null) {
+      md.measurements.stop();
+      md.measurements.publish(xVelocityHistogram);
+    }
+  }
+
   /**
 
    * Resets the LJ model and the data graphs.
@@ -244,6 +323,8 @@ public class LJfluidApp extends AbstractSimulation {
     addChildFrame(displayFrame);
     addChildFrame(xVelocityHistogram);
     addChildFrame(grFrame);
+    addChildFrame(skFrame);
+    addChildFrame(msdFrame);
     addChildFrame(pressureData);
     addChildFrame(temperatureData);
   }
@@ -0,0 +1,262 @@
+/*
+ * Open Source Physics software is free software as described near the bottom of this code file.
+ *
+ * For additional information and documentation on Open Source Physics please see:
+ * <http://www.opensourcephysics.org/>
+ */
+
+package org.opensourcephysics.stp.lj;
+import java.util.ArrayList;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * LJfluidEnsemble runs independent replicas of LJfluid at the same state point on a fixed thread
+ * pool and estimates the errors of the averages from the spread between replicas.
+ *
+ * Every replica starts from the same initial configuration with velocities drawn from its own
+ * seed, is equilibrated, and then accumulates its averages with the velocity Verlet integrator.
+ * The ensemble value of an observable is the mean of the replica values and its error is the
+ * standard deviation of the replica values divided by sqrt(replicas). Each replica's heat
+ * capacity is computed from its own fluctuations of the kinetic energy. The replicas have slightly
+ * different total energies, so their fluctuations are not pooled.
+ *
+ * The total energy of every replica is compared with its initial value every checkInterval steps.
+ * A replica whose energy has drifted by more than maximumDrift per particle, or has become NaN,
+ * is started again from the beginning with a new seed, at most maximumRestarts times.
+ *
+ * Arguments are key=value pairs, for example
+ * <pre>
+ * java org.opensourcephysics.stp.lj.LJfluidEnsemble replicas=32 nx=16 L=20 KE=1.0 dt=0.01
+ *    equilibration=2000 production=20000 seed=1 threads=8
+ * </pre>
+ */
+public class LJfluidEnsemble {
+  public static final String[] OBSERVABLES = {"T", "E/N", "PA/NkT", "C/N"};
+  public int replicas = 16;
+  public int nx = 16, ny = 16;
+  public double Lx = 20, Ly = 20;
+  public double initialKineticEnergy = 1.0;
+  public String initialConfiguration = "rectangular";
+  public double dt = 0.01;
+  public double cutoff = 0;
+  public int equilibrationSteps = 1000;
+  public int productionSteps = 10000;
+  public int checkInterval = 100;
+  public double maximumDrift = 0.05; // largest change of the total energy per particle
+  public int maximumRestarts = 10;
+  public long seed = 1;
+  public int numberOfThreads = Runtime.getRuntime().availableProcessors();
+  public Replica[] replica;
+  public double[] mean, error; // over replicas, in the order of OBSERVABLES
+
+  /**
+   * The averages of one replica.
+   */
+  public static class Replica {
+    public int index, restarts;
+    public long seed;
+    public double[] value = new double[OBSERVABLES.length];
+
+    Replica(int index) {
+      this.index = index;
+    }
+
+  }
+
+  /**
+   * Runs all replicas and computes the ensemble averages.
+   *
+   * @throws InterruptedException
+   */
+  public void run() throws InterruptedException {
+    replica = new Replica[replicas];
+    ExecutorService pool = Executors.newFixedThreadPool(Math.max(1, numberOfThreads));
+    ArrayList<Future<?>> futures = new ArrayList<Future<?>>();
+    for(int r = 0; r<replicas; r++) {
+      final Replica rep = new Replica(r);
+      replica[r] = rep;
+      futures.add(pool.submit(new Runnable() {
+        public void run() {
+          while(!simulate(rep)) {
+            if(++rep.restarts>maximumRestarts) {
+              throw new IllegalStateException("Replica "+rep.index+" diverged "+rep.restarts+" times.");
+            }
+          }
+        }
+
+      }));
+    }
+    try {
+      for(Future<?> f : futures) {
+        f.get();
+      }
+    } catch(ExecutionException ex) {
+      throw new RuntimeException(ex.getCause());
+    } finally {
+      pool.shutdown();
+    }
+    int m = OBSERVABLES.length;
+    mean = new double[m];
+    error = new double[m];
+    for(int k = 0; k<m; k++) {
+      double sum = 0;
+      for(int r = 0; r<replicas; r++) {
+        sum += replica[r].value[k];
+      }
+      mean[k] = sum/replicas;
+      double sum2 = 0;
+      for(int r = 0; r<replicas; r++) {
+        double d = replica[r].value[k]-mean[k];
+        sum2 += d*d;
+      }
+      error[k] = (replicas>1)
+                 ? Math.sqrt(sum2/(replicas-1)/replicas)
+                 : 0;
+    }
+  }
+
+  /**
+   * Runs one attempt of a replica.
+   *
+   * @return false if the replica diverged
+   */
+  boolean simulate(Replica rep) {
+    // distinct seeds for every replica and attempt; FastRandom scrambles nearby seeds
+    rep.seed = seed+rep.index+(long) rep.restarts*replicas;
+    LJfluid md = new LJfluid();
+    md.random.setSeed(rep.seed);
+    md.nx = nx;
+    md.ny = ny;
+    md.Lx = Lx;
+    md.Ly = Ly;
+    md.initialKineticEnergy = initialKineticEnergy;
+    md.initialConfiguration = initialConfiguration;
+    md.dt = dt;
+    md.cutoff = cutoff;
+    md.velocityVerlet = true;
+    md.initialize();
+    double initialEnergy = md.N*md.initialKineticEnergy+md.potentialEnergy;
+    int interval = Math.max(1, checkInterval);
+    int total = equilibrationSteps+productionSteps;
+    int done = 0;
+    while(done<total) {
+      if(done==equilibrationSteps) {
+        md.resetAverages();
+      }
+      int end = (done<equilibrationSteps)
+                ? equilibrationSteps
+                : total;
+      int n = Math.min(interval, end-done);
+      md.step(null, n);
+      done += n;
+      double drift = Math.abs(md.kineticEnergy+md.potentialEnergy-initialEnergy)/md.N;
+      if(!(drift<=maximumDrift)) { // also true if the energy is NaN
+        return false;
+      }
+    }
+    rep.value[0] = md.getMeanTemperature();
+    rep.value[1] = md.getMeanEnergy()/md.N;
+    rep.value[2] = md.getMeanPressure();
+    rep.value[3] = md.getHeatCapacity()/md.N;
+    return true;
+  }
+
+  public static void main(String[] args) throws InterruptedException {
+    LJfluidEnsemble ensemble = new LJfluidEnsemble();
+    for(String arg : args) {
+      int eq = arg.indexOf('=');
+      if(eq<0) {
+        System.err.println("Ignoring argument "+arg);
+        continue;
+      }
+      String key = arg.substring(0, eq);
+      String value = arg.substring(eq+1);
+      if(key.equals("replicas")) {
+        ensemble.replicas = Integer.parseInt(value);
+      } else if(key.equals("nx")) {
+        ensemble.nx = ensemble.ny = Integer.parseInt(value);
+      } else if(key.equals("ny")) {
+        ensemble.ny = Integer.parseInt(value);
+      } else if(key.equals("L")) {
+        ensemble.Lx = ensemble.Ly = Double.parseDouble(value);
+      } else if(key.equals("Ly")) {
+        ensemble.Ly = Double.parseDouble(value);
+      } else if(key.equals("KE")) {
+        ensemble.initialKineticEnergy = Double.parseDouble(value);
+      } else if(key.equals("config")) {
+        ensemble.initialConfiguration = value;
+      } else if(key.equals("dt")) {
+        ensemble.dt = Double.parseDouble(value);
+      } else if(key.equals("cutoff")) {
+        ensemble.cutoff = Double.parseDouble(value);
+      } else if(key.equals("equilibration")) {
+        ensemble.equilibrationSteps = Integer.parseInt(value);
+      } else if(key.equals("production")) {
+        ensemble.productionSteps = Integer.parseInt(value);
+      } else if(key.equals("check")) {
+        ensemble.checkInterval = Integer.parseInt(value);
+      } else if(key.equals("drift")) {
+        ensemble.maximumDrift = Double.parseDouble(value);
+      } else if(key.equals("restarts")) {
+        ensemble.maximumRestarts = Integer.parseInt(value);
+      } else if(key.equals("seed")) {
+        ensemble.seed = Long.parseLong(value);
+      } else if(key.equals("threads")) {
+        ensemble.numberOfThreads = Integer.parseInt(value);
+      } else {
+        System.err.println("Unknown parameter "+key);
+      }
+    }
+    ensemble.run();
+    StringBuffer header = new StringBuffer("replica,seed,restarts");
+    for(int k = 0; k<OBSERVABLES.length; k++) {
+      header.append(","+OBSERVABLES[k]);
+    }
+    System.out.println(header);
+    for(int r = 0; r<ensemble.replicas; r++) {
+      Replica rep = ensemble.replica[r];
+      StringBuffer line = new StringBuffer(rep.index+","+rep.seed+","+rep.restarts);
+      for(int k = 0; k<OBSERVABLES.length; k++) {
+        line.append(","+rep.value[k]);
+      }
+      System.out.println(line);
+    }
+    StringBuffer mean = new StringBuffer("mean,,");
+    StringBuffer error = new StringBuffer("error,,");
+    for(int k = 0; k<OBSERVABLES.length; k++) {
+      mean.append(","+ensemble.mean[k]);
+      error.append(","+ensemble.error[k]);
+    }
+    System.out.println(mean);
+    System.out.println(error);
+  }
+
+}
+
+
+/*
+ * Open Source Physics software is free software; you can redistribute
+ * it and/or modify it under the terms of the GNU General Public License (GPL) as
+ * published by the Free Software Foundation; either version 2 of the License,
+ * or(at your option) any later version.
+
+ * Code that uses any portion of the code in the org.opensourcephysics package
+ * or any subpackage (subdirectory) of this package must must also be be released
+ * under the GNU GPL license.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston MA 02111-1307 USA
+ * or view the license online at http://www.gnu.org/copyleft/gpl.html
+ *
+ * Copyright (c) 2007  The Open Source Physics project
+ *                     http://www.opensourcephysics.org
+ */
@@ -0,0 +1,349 @@
+/*
+ * Open Source Physics software is free software as described near the bottom of this code file.
+ *
+ * For additional information and documentation on Open Source Physics please see:
+ * <http://www.opensourcephysics.org/>
+ */
+
+package org.opensourcephysics.stp.lj;
+import org.opensourcephysics.stp.util.LennardJones;
+import org.opensourcephysics.stp.util.ParallelPairs;
+
+/**
+ * NeighborList computes Lennard-Jones forces with a cutoff using a Verlet neighbor list
+ * that is built from a grid of cells.
+ *
+ * The list holds every pair closer than cutoff+skin, each pair once. It is rebuilt only when
+ * some particle has moved more than skin/2 since the last build, so between builds a force
+ * evaluation costs a time proportional to N. Building uses cells of length at least cutoff+skin
+ * so that only the 3x3 block of cells around a particle is searched. If the box is too small for
+ * three cells in a direction the list is built from all pairs.
+ *
+ * The force is truncated at the cutoff and the potential is shifted so that it vanishes there.
+ * If tailCorrection is true, potentialEnergy and virial are estimates for the full potential:
+ * the unshifted truncated sums plus the analytic contributions of pairs beyond the cutoff
+ * assuming g(r) = 1. Otherwise potentialEnergy is the shifted energy, which together with the
+ * kinetic energy is conserved by the dynamics.
+ *
+ * With more than one thread the rows of the list are divided among the threads of a ParallelPairs
+ * pool, with results that are reproducible for a fixed number of threads.
+ *
+ * Positions are read from separate x and y arrays as stored by LJfluid.
+ *
+ * If shiftedForce is true the force is also shifted so that it goes to zero continuously at the
+ * cutoff, and the energy is changed to match. Quantities such as Lyapunov exponents that compare
+ * neighboring trajectories need the force to be continuous.
+ *
+ * Copies of a system that stay within tolerance of it, such as the perturbed trajectories of a
+ * Lyapunov exponent calculation, can share its list through computeCopy; the list is then rebuilt
+ * when some particle has moved more than skin/2-tolerance.
+ */
+public class NeighborList {
+  public double cutoff, skin;
+  public boolean tailCorrection = true;
+  public double potentialEnergy; // potential energy found by the last call to compute
+  public double virial;          // sum of r.F found by the last call to compute
+  public int builds;             // number of times the list has been built
+  public boolean shiftedForce = false; // shift the force to vanish at the cutoff
+  public double tolerance = 0;   // largest distance of a copy passed to computeCopy from this system
+  int N;
+  double Lx, Ly;
+  int[] start = new int[1];      // neighbors of i are neighbor[start[i]] .. neighbor[start[i+1]-1]
+  int[] neighbor = new int[0];
+  double[] x0 = new double[0], y0 = new double[0]; // positions at the last build
+  int nCellX, nCellY;
+  int[] cellHead = new int[0], cellNext = new int[0];
+  double[] sums = new double[3]; // energy, virial, and pairs inside the cutoff
+  long[] prefix = new long[0];
+  ParallelPairs parallel;        // null for serial calculation
+
+  public NeighborList(double cutoff, double skin) {
+    this.cutoff = cutoff;
+    this.skin = skin;
+  }
+
+  /**
+   * Forces a rebuild at the next call to compute, for example after particles were moved by hand.
+   */
+  public void invalidate() {
+    N = -1;
+  }
+
+  /**
+   * Sets the number of threads used by compute. One thread does the work on the calling thread.
+   */
+  public void setNumberOfThreads(int numberOfThreads) {
+    if(parallel!=null) {
+      parallel.shutdown();
+      parallel = null;
+    }
+    if(numberOfThreads>1) {
+      parallel = new ParallelPairs(numberOfThreads);
+    }
+  }
+
+  /**
+   * Sets ax and ay to the forces on unit mass particles and computes potentialEnergy and virial.
+   */
+  public void compute(final double[] x, final double[] y, int N, double Lx, double Ly, double[] ax, double[] ay) {
+    if((N!=this.N)||(Lx!=this.Lx)||(Ly!=this.Ly)||needsRebuild(x, y)) {
+      build(x, y, N, Lx, Ly);
+    }
+    double[] result;
+    if(parallel==null) {
+      for(int i = 0; i<N; i++) {
+        ax[i] = 0;
+        ay[i] = 0;
+      }
+      java.util.Arrays.fill(sums, 0);
+      rowForces(x, y, 0, N, ax, ay, sums);
+      result = sums;
+    } else {
+      // rows are weighted by their number of neighbors
+      if(prefix.length<N+1) {
+        prefix = new long[N+1];
+      }
+      for(int i = 0; i<=N; i++) {
+        prefix[i] = start[i];
+      }
+      result = parallel.run(prefix, N, N, 3, new ParallelPairs.Task() {
+        public void compute(int first, int last, double[] ax, double[] ay, double[] sums) {
+          rowForces(x, y, first, last, ax, ay, sums);
+        }
+
+      }, ax, ay);
+    }
+    double energy = result[0];
+    double sumVirial = result[1];
+    double pairs = result[2];
+    if(tailCorrection) {
+      potentialEnergy = energy+N*tailEnergy(N/(Lx*Ly));
+      virial = sumVirial+N*tailVirial(N/(Lx*Ly));
+    } else {
+      double rc6 = 1.0/(cutoff*cutoff*cutoff*cutoff*cutoff*cutoff);
+      potentialEnergy = energy-pairs*4.0*(rc6*rc6-rc6);
+      virial = sumVirial;
+    }
+  }
+
+  /**
+   * Sets ax and ay to the forces on a copy of the system whose particles are within tolerance of
+   * the positions of the last call to compute, using the same list, and sets sums to the shifted
+   * energy, the virial, and the number of pairs inside the cutoff. The list is not changed, so
+   * several threads may compute copies at once.
+   */
+  public void computeCopy(double[] x, double[] y, double[] ax, double[] ay, double[] sums) {
+    for(int i = 0; i<N; i++) {
+      ax[i] = 0;
+      ay[i] = 0;
+    }
+    java.util.Arrays.fill(sums, 0);
+    rowForces(x, y, 0, N, ax, ay, sums);
+    double rc6 = 1.0/(cutoff*cutoff*cutoff*cutoff*cutoff*cutoff);
+    sums[0] -= sums[2]*4.0*(rc6*rc6-rc6);
+  }
+
+  /**
+   * Adds the forces of the pairs listed for rows first to last-1 to ax and ay and
+   * their energy, virial, and number of pairs inside the cutoff to sums.
+   */
+  void rowForces(double[] x, double[] y, int first, int last, double[] ax, double[] ay, double[] sums) {
+    double rc2 = cutoff*cutoff;
+    double halfLx = 0.5*Lx, halfLy = 0.5*Ly;
+    double forceShift = 0; // force at the cutoff
+    if(shiftedForce) {
+      double rc6 = 1.0/(rc2*rc2*rc2);
+      forceShift = 48.0*rc6*(rc6-0.5)/cutoff;
+    }
+    double energy = 0;
+    double sumVirial = 0;
+    int pairs = 0;
+    for(int i = first; i<last; i++) {
+      double xi = x[i], yi = y[i];
+      double fxi = 0, fyi = 0;
+      for(int k = start[i], end = start[i+1]; k<end; k++) {
+        int j = neighbor[k];
+        double dx = xi-x[j];
+        double dy = yi-y[j];
+        if(dx>halfLx) {
+          dx -= Lx;
+        } else if(dx<-halfLx) {
+          dx += Lx;
+        }
+        if(dy>halfLy) {
+          dy -= Ly;
+        } else if(dy<-halfLy) {
+          dy += Ly;
+        }
+        double r2 = dx*dx+dy*dy;
+        if(r2>=rc2) {
+          continue;
+        }
+        double oneOverR2 = 1.0/r2;
+        double oneOverR6 = oneOverR2*oneOverR2*oneOverR2;
+        double fOverR = 48.0*oneOverR6*(oneOverR6-0.5)*oneOverR2;
+        if(forceShift!=0) {
+          double r = Math.sqrt(r2);
+          fOverR -= forceShift/r;
+          energy += forceShift*(r-cutoff);
+        }
+        double fx = fOverR*dx;
+        double fy = fOverR*dy;
+        fxi += fx;
+        fyi += fy;
+        ax[j] -= fx;
+        ay[j] -= fy;
+        energy += 4.0*(oneOverR6*oneOverR6-oneOverR6);
+        sumVirial += dx*fx+dy*fy;
+        pairs++;
+      }
+      ax[i] += fxi;
+      ay[i] += fyi;
+    }
+    sums[0] += energy;
+    sums[1] += sumVirial;
+    sums[2] += pairs;
+  }
+
+  /**
+   * Returns the potential energy per particle of pairs beyond the cutoff,
+   * (rho/2) times the integral of 4(r^-12-r^-6) 2 pi r dr from the cutoff to infinity.
+   */
+  public double tailEnergy(double rho) {
+    double rc2 = cutoff*cutoff;
+    double rc4 = rc2*rc2;
+    return 4*Math.PI*rho*(1/(10*rc4*rc4*rc2)-1/(4*rc4));
+  }
+
+  /**
+   * Returns the virial per particle of pairs beyond the cutoff,
+   * (rho/2) times the integral of (48r^-12-24r^-6) 2 pi r dr from the cutoff to infinity.
+   */
+  public double tailVirial(double rho) {
+    double rc2 = cutoff*cutoff;
+    double rc4 = rc2*rc2;
+    return Math.PI*rho*(4.8/(rc4*rc4*rc2)-6/rc4);
+  }
+
+  boolean needsRebuild(double[] x, double[] y) {
+    double half = Math.max(0, 0.5*skin-tolerance);
+    double limit = half*half; // (skin/2-tolerance)^2
+    for(int i = 0; i<N; i++) {
+      double dx = LennardJones.separation(x[i]-x0[i], Lx);
+      double dy = LennardJones.separation(y[i]-y0[i], Ly);
+      if(dx*dx+dy*dy>limit) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  void build(double[] x, double[] y, int N, double Lx, double Ly) {
+    this.N = N;
+    this.Lx = Lx;
+    this.Ly = Ly;
+    builds++;
+    if(x0.length!=N) {
+      x0 = new double[N];
+      y0 = new double[N];
+      start = new int[N+1];
+      cellNext = new int[N];
+    }
+    for(int i = 0; i<N; i++) {
+      x0[i] = x[i];
+      y0[i] = y[i];
+    }
+    double range = cutoff+skin;
+    nCellX = (int) (Lx/range);
+    nCellY = (int) (Ly/range);
+    int count = 0;
+    if((nCellX<3)||(nCellY<3)) {
+      double range2 = range*range;
+      for(int i = 0; i<N; i++) {
+        start[i] = count;
+        for(int j = i+1; j<N; j++) {
+          if(distance2(i, j)<range2) {
+            count = add(count, j);
+          }
+        }
+      }
+      start[N] = count;
+      return;
+    }
+    if(cellHead.length!=nCellX*nCellY) {
+      cellHead = new int[nCellX*nCellY];
+    }
+    java.util.Arrays.fill(cellHead, -1);
+    for(int i = N-1; i>=0; i--) {
+      int c = cell(x0[i], Lx, nCellX)*nCellY+cell(y0[i], Ly, nCellY);
+      cellNext[i] = cellHead[c];
+      cellHead[c] = i;
+    }
+    double range2 = range*range;
+    for(int i = 0; i<N; i++) {
+      start[i] = count;
+      int cx = cell(x0[i], Lx, nCellX);
+      int cy = cell(y0[i], Ly, nCellY);
+      for(int ox = -1; ox<=1; ox++) {
+        int row = ((cx+ox+nCellX)%nCellX)*nCellY;
+        for(int oy = -1; oy<=1; oy++) {
+          // each pair is stored once, with the lower index
+          for(int j = cellHead[row+(cy+oy+nCellY)%nCellY]; j>=0; j = cellNext[j]) {
+            if((j>i)&&(distance2(i, j)<range2)) {
+              count = add(count, j);
+            }
+          }
+        }
+      }
+    }
+    start[N] = count;
+  }
+
+  int add(int count, int j) {
+    if(count==neighbor.length) {
+      int[] bigger = new int[Math.max(16, 2*count)];
+      System.arraycopy(neighbor, 0, bigger, 0, count);
+      neighbor = bigger;
+    }
+    neighbor[count] = j;
+    return count+1;
+  }
+
+  double distance2(int i, int j) {
+    double dx = LennardJones.separation(x0[i]-x0[j], Lx);
+    double dy = LennardJones.separation(y0[i]-y0[j], Ly);
+    return dx*dx+dy*dy;
+  }
+
+  static int cell(double s, double L, int n) {
+    int c = (int) Math.floor(s/L*n)%n;
+    return (c<0)
+           ? c+n
+           : c;
+  }
+
+}
+
+/*
+ * Open Source Physics software is free software; you can redistribute
+ * it and/or modify it under the terms of the GNU General Public License (GPL) as
+ * published by the Free Software Foundation; either version 2 of the License,
+ * or(at your option) any later version.
+
+ * Code that uses any portion of the code in the org.opensourcephysics package
+ * or any subpackage (subdirectory) of this package must must also be be released
+ * under the GNU GPL license.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston MA 02111-1307 USA
+ * or view the license online at http://www.gnu.org/copyleft/gpl.html
+ *
+ * Copyright (c) 2007  The Open Source Physics project
+ *                     http://www.opensourcephysics.org
+ */
@@ -9,6 +9,8 @@ package org.opensourcephysics.stp.ljmc;
 import java.awt.*;
 import java.util.Random;
 import org.opensourcephysics.display.*;
+import org.opensourcephysics.stp.util.LennardJones;
+import org.opensourcephysics.stp.util.RandomPlacement;
 
 /**
  * LJParticlesApp evolves a two-dimensional system of interacting particles
@@ -33,6 +35,7 @@ public class LJMC implements Drawable {
   public double stepSize;
   public double totalPotentialEnergyAccumulator = 0, virialAccumulator = 0, totalPotentialEnergyAccumulator2 = 0;
   Random r = new Random();
+  LennardJones potential = new LennardJones(0, 0);
 
   public void initialize() {
     mcs = 0;
@@ -55,26 +58,8 @@ public class LJMC implements Drawable {
     virialAccumulator = 0;
   }
 
-  public void setRandomPositions() { // particles placed at random, but not closer than rMinimumSquared
-    double rMinimumSquared = Math.pow(2.0, 1.0/3.0);
-    boolean overlap;
-    for(int i = 0; i<N; ++i) {
-      do {
-        overlap = false;
-        x[i] = L*Math.random();         // x
-        y[i] = L*Math.random();         // y
-        int j = 0;
-        while((j<i)&&!overlap) {
-          double dx = pbcSeparation(x[i]-x[j], L);
-      	  double dy = pbcSeparation(y[i]-y[j], L);
-
-          if(dx*dx+dy*dy<rMinimumSquared) {
-            overlap = true;
-          }
-          j++;
-        }
-      } while(overlap);
-    }
+  public void setRandomPositions() { // particles placed at random, but not closer than 2^(1/6)
+    RandomPlacement.place(x, y, N, L, L, Math.pow(2.0, 1.0/6.0), true);
   }
 
   public void setRectangularLattice() { // place particles on a rectangular lattice
@@ -119,78 +104,21 @@ public class LJMC implements Drawable {
   }
 
   public void computePE() {
-    for(int i = 0; i<N-1; i++) {
-      for(int j = i+1; j<N; j++) {
-        double dx = pbcSeparation(x[i]-x[j], L);
-        double dy = pbcSeparation(y[i]-y[j], L);
-        double r2 = dx*dx+dy*dy;
-        double oneOverR2 = 1.0/r2;
-        double oneOverR6 = oneOverR2*oneOverR2*oneOverR2;
-        double fOverR = 48.0*oneOverR6*(oneOverR6-0.5)*oneOverR2;
-        double fx = fOverR*dx;
-        double fy = fOverR*dy;
-        pe += 4.0*(oneOverR6*oneOverR6-oneOverR6);
-        virial += dx*fx+dy*fy;
-      }
-    }
+    potential.setBox(L, L);
+    potential.computeForces(x, y, N, new double[N], new double[N]);
+    pe += potential.potentialEnergy;
+    virial += potential.virial;
   }
 
   public void computeTrialPE(TrialMove tm) {
-	  tm.dvirial = 0;
-	  tm.dE = 0;
-    for(int i = 0; i<N; i++) {
-      if(i != tm.n) {
-    	//trial contribution to energy and virial
-        double dx = pbcSeparation(x[i]-tm.x, L);
-        double dy = pbcSeparation(y[i]-tm.y, L);
-        double r2 = dx*dx+dy*dy;
-        double oneOverR2 = 1.0/r2;
-        double oneOverR6 = oneOverR2*oneOverR2*oneOverR2;
-        double fOverR = 48.0*oneOverR6*(oneOverR6-0.5)*oneOverR2;
-        double fx = fOverR*dx;
-        double fy = fOverR*dy;
-        tm.dE += 4.0*(oneOverR6*oneOverR6-oneOverR6);
-        tm.dvirial += dx*fx+dy*fy;
-        // old contribution to energy and virial
-        dx = pbcSeparation(x[i]-x[tm.n], L);
-        dy = pbcSeparation(y[i]-y[tm.n], L);
-        r2 = dx*dx+dy*dy;
-        oneOverR2 = 1.0/r2;
-        oneOverR6 = oneOverR2*oneOverR2*oneOverR2;
-        fOverR = 48.0*oneOverR6*(oneOverR6-0.5)*oneOverR2;
-        fx = fOverR*dx;
-        fy = fOverR*dy;
-        tm.dE -= 4.0*(oneOverR6*oneOverR6-oneOverR6);
-        tm.dvirial -= dx*fx+dy*fy;
-     }
-    }
-    return;
-  }
-
-  private double pbcSeparation(double ds, double L) {
-    if(ds>0) {
-      while(ds>0.5*L) {
-        ds -= L;
-      }
-    } else {
-      while(ds<-0.5*L) {
-        ds += L;
-      }
-    }
-    return ds;
+    potential.setBox(L, L);
+    potential.computeMove(x, y, N, tm.n, tm.x, tm.y);
+    tm.dE = potential.deltaEnergy;
+    tm.dvirial = potential.deltaVirial;
   }
 
   private double pbcPosition(double s, double L) {
-    if(s>0) {
-      while(s>L) {
-        s -= L;
-      }
-    } else {
-      while(s<0) {
-        s += L;
-      }
-    }
-    return s;
+    return LennardJones.position(s, L);
   }
 
   public class TrialMove {
@@ -7,9 +7,24 @@
 
 package org.opensourcephysics.stp.sensitive;
 import org.opensourcephysics.display.*;
+import org.opensourcephysics.stp.util.LennardJones;
 import java.awt.*;
 
+/**
+ * LJgas is a small Lennard-Jones system started in an ordered state that shows the sensitivity of
+ * a trajectory to a small perturbation.
+ *
+ * In floating point arithmetic the velocity Verlet algorithm is reversible only up to round off, so
+ * a reversed trajectory drifts away from the original one after a while. If reversible is true the
+ * positions are kept as integers in units of 2^-48 of the cell length together with the integer
+ * displacements of the last step. The leapfrog step adds the rounded acceleration times dt^2 to
+ * the displacement and the displacement to the position, which is integer arithmetic modulo the
+ * cell, so reversing the displacements retraces the trajectory bit for bit.
+ *
+ * In both modes n steps, reverse(), and n more steps return to the initial positions at t = 0.
+ */
 public class LJgas implements Drawable {
+  static final long UNITS = 1L<<48; // fixed point units per cell length, a power of two
   double x[], y[], vx[], vy[], ax[], ay[];
   int numberOfParticles = 11;
   double cellLength = 11;
@@ -18,8 +33,11 @@ public class LJgas implements Drawable {
   double dt = 0.01;
   double radius = 0.5;
   double cut2 = 3.0*3.0;
+  LennardJones potential = new LennardJones(0, 0);
   double t = 0;
   double timeDirection = 1;
+  boolean reversible = false; // integer leapfrog that retraces its steps exactly when reversed
+  long[] px, py, sx, sy;      // fixed point positions and displacements of the last step
 
   public void setArrays() {
     int N = numberOfParticles;
@@ -42,6 +60,33 @@ public class LJgas implements Drawable {
     setPositions();
     setVelocities();
     accel();
+    if(reversible) {
+      setFixedPoint();
+    }
+  }
+
+  /**
+   * Rounds the positions to fixed point and sets the displacements of the step that led to them,
+   * x(t)-x(t-dt) = v dt-a dt^2/2.
+   */
+  void setFixedPoint() {
+    int N = numberOfParticles;
+    px = new long[N];
+    py = new long[N];
+    sx = new long[N];
+    sy = new long[N];
+    double unit = cellLength/UNITS;
+    for(int i = 0; i<N; i++) {
+      px[i] = Math.round(x[i]/unit)&(UNITS-1);
+      py[i] = Math.round(y[i]/unit)&(UNITS-1);
+      x[i] = px[i]*unit;
+      y[i] = py[i]*unit;
+    }
+    accel();
+    for(int i = 0; i<N; i++) {
+      sx[i] = Math.round((vx[i]*dt-0.5*ax[i]*dt*dt)/unit);
+      sy[i] = Math.round((vy[i]*dt-0.5*ay[i]*dt*dt)/unit);
+    }
   }
 
   public void zeroAverages() {
@@ -49,6 +94,10 @@ public class LJgas implements Drawable {
   }
 
   public void step() { // Velocity Verlet algorithm
+    if(reversible) {
+      leapfrogStep();
+      return;
+    }
     double dt2half = 0.5*dt*dt;
     double dthalf = 0.5*dt;
     for(int i = 0; i<numberOfParticles; i++) {
@@ -68,11 +117,47 @@ public class LJgas implements Drawable {
     t += timeDirection*dt;
   }
 
+  /**
+   * Does a fixed point leapfrog step. The velocities are those of the middle of the step.
+   */
+  void leapfrogStep() {
+    double unit = cellLength/UNITS;
+    double scale = dt*dt/unit;
+    for(int i = 0; i<numberOfParticles; i++) {
+      sx[i] += Math.round(ax[i]*scale);
+      sy[i] += Math.round(ay[i]*scale);
+      px[i] = (px[i]+sx[i])&(UNITS-1); // periodic boundary conditions
+      py[i] = (py[i]+sy[i])&(UNITS-1);
+      x[i] = px[i]*unit;
+      y[i] = py[i]*unit;
+      vx[i] = sx[i]*unit/dt;
+      vy[i] = sy[i]*unit/dt;
+    }
+    accel();
+    steps++;
+    t += timeDirection*dt;
+  }
+
   public void perturb(double a) {
     vx[6] *= a;
+    if(reversible) {
+      sx[6] = Math.round(sx[6]*a);
+    }
   }
 
+  /**
+   * Reverses the velocities. In reversible mode the displacement of the next forward step is
+   * reversed, so the next step goes back to the previous position and no step is lost.
+   */
   public void reverse() {
+    if(reversible) {
+      double unit = cellLength/UNITS;
+      double scale = dt*dt/unit; // as in leapfrogStep, so that the rounding is the same
+      for(int i = 0; i<numberOfParticles; i++) {
+        sx[i] = -(sx[i]+Math.round(ax[i]*scale));
+        sy[i] = -(sy[i]+Math.round(ay[i]*scale));
+      }
+    }
     for(int i = 0; i<numberOfParticles; i++) {
       vx[i] = -vx[i];
       vy[i] = -vy[i];
@@ -117,56 +202,13 @@ public class LJgas implements Drawable {
   }
 
   private void accel() {
-    double dx;
-    double dy;
-    double fx;
-    double fy;
-    double r2;
-    double fOverR;
-    double rm2;
-    double rm6;
-    for(int i = 0; i<numberOfParticles; i++) {
-      ax[i] = 0;
-      ay[i] = 0;
-    }
-    for(int i = 0; i<numberOfParticles-1; i++) {
-      for(int j = i+1; j<numberOfParticles; j++) {
-        dx = pbc(x[i]-x[j]);
-        dy = pbc(y[i]-y[j]);
-        r2 = dx*dx+dy*dy;
-        if(r2<cut2) {
-          rm2 = 1.0/r2;
-          rm6 = rm2*rm2*rm2;
-          fOverR = 48.0*rm6*(rm6-0.5)*rm2;
-          fx = fOverR*dx;
-          fy = fOverR*dy;
-          ax[i] += fx;
-          ay[i] += fy;
-          ax[j] -= fx;
-          ay[j] -= fy;
-          //PEsum += 4*(rm6*rm6 - rm6);
-          //Vsum += dx*fx + dy*fy;     //virial calculation
-        }
-      }
-    }
-  }
-
-  private double pbc(double s) {
-    if(s>0.5*cellLength) {
-      s -= cellLength;
-    } else if(s<-0.5*cellLength) {
-      s += cellLength;
-    }
-    return s;
+    potential.setBox(cellLength, cellLength);
+    potential.setCutoff(Math.sqrt(cut2), false);
+    potential.computeForces(x, y, numberOfParticles, ax, ay);
   }
 
   private double image(double s) {
-    if(s>cellLength) {
-      s -= cellLength;
-    } else if(s<0) {
-      s += cellLength;
-    }
-    return s;
+    return LennardJones.position(s, cellLength);
   }
 
 }
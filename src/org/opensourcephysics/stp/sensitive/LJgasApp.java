@@ -12,6 +12,7 @@ import org.opensourcephysics.frames.DisplayFrame;
 
 public class LJgasApp extends AbstractSimulation {
   LJgas gas;
+  LyapunovEnsemble ensemble; // null if no copies are integrated
   DisplayFrame displayFrame = new DisplayFrame("");
   NumberFormat numberformat = NumberFormat.getInstance();
 
@@ -30,14 +31,31 @@ public class LJgasApp extends AbstractSimulation {
   public void initialize() {
     //gas.numberOfParticles = control.getInt("N");
     gas.cellLength = 11.0; //control.getDouble("cell length");
+    gas.reversible = control.getBoolean("bit reversible");
     gas.initialize();
+    if(ensemble!=null) {
+      ensemble.shutdown();
+      ensemble = null;
+    }
+    int copies = control.getInt("Lyapunov copies");
+    if(copies>0) {
+      ensemble = new LyapunovEnsemble(gas, copies, control.getInt("number of threads"), System.currentTimeMillis());
+    }
   }
 
   public void doStep() {
     for(int i = 0; i<20; i++) {
       gas.step(); // advance the solution of the ODE by one step
     }
-    displayFrame.setMessage("time = "+numberformat.format(gas.t));
+    String message = "time = "+numberformat.format(gas.t);
+    if(ensemble!=null) {
+      for(int i = 0; i<20; i++) {
+        ensemble.step();
+      }
+      message += "  \u03bb = "+numberformat.format(ensemble.getLyapunovExponent())+" \u00b1 "
+                 +numberformat.format(ensemble.getLyapunovError());
+    }
+    displayFrame.setMessage(message);
     displayFrame.render();
   }
 
@@ -46,6 +64,9 @@ public class LJgasApp extends AbstractSimulation {
     //control.setValue("N", gas.numberOfParticles);
     //control.setValue("cell length", gas.cellLength);
     control.setValue("perturbation strength", 1.00001);
+    control.setValue("bit reversible", false); // integer leapfrog that reverses exactly
+    control.setValue("Lyapunov copies", 0);    // perturbed copies used to estimate the Lyapunov exponent
+    control.setValue("number of threads", 1);
     displayFrame.setPreferredMinMax(-0.2*gas.cellLength, 1.2*gas.cellLength, -0.2*gas.cellLength, 1.2*gas.cellLength);
     displayFrame.render();
   }
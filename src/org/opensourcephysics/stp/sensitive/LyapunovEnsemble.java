@@ -0,0 +1,290 @@
+/*
+ * Open Source Physics software is free software as described near the bottom of this code file.
+ *
+ * For additional information and documentation on Open Source Physics please see:
+ * <http://www.opensourcephysics.org/>
+ */
+
+package org.opensourcephysics.stp.sensitive;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import org.opensourcephysics.stp.lj.NeighborList;
+import org.opensourcephysics.stp.util.LennardJones;
+
+/**
+ * LyapunovEnsemble estimates the largest Lyapunov exponent of an LJgas by integrating many
+ * perturbed copies of it together with a reference trajectory.
+ *
+ * Each copy starts at a random phase space distance separation from the reference. Every
+ * renormalizationInterval steps, or earlier if some copy has moved maximumSeparation away, the
+ * logarithm of the growth of each distance is added to a sum and the difference of the copy from
+ * the reference is scaled back to separation (Benettin et al.). The exponent of a copy is its sum
+ * divided by the time, and the estimate is the mean over the copies with the standard error.
+ * The copies all turn toward the most unstable direction of the same reference trajectory, so the
+ * error measures their spread and not the fluctuations of the reference over time.
+ *
+ * All trajectories use the velocity Verlet algorithm of LJgas, but the force is shifted to vanish
+ * continuously at the cutoff: with the jump of the truncated force of LJgas a pair that crosses
+ * the cutoff at slightly different times in a copy and in the reference would change their
+ * distance by a finite amount, and the exponent would not converge. The copies stay within a small
+ * distance of the reference, so they share the NeighborList of the reference, whose tolerance
+ * makes it rebuild early enough to hold every pair of every copy. The copies are divided among
+ * the threads of a ForkJoinPool.
+ */
+public class LyapunovEnsemble {
+  static final int DRIFT = 0, FORCE = 1, FORCE_AND_KICK = 2; // phases of a step
+  public int numberOfCopies;
+  public double separation = 1e-8;         // phase space distance of the copies after renormalization
+  public double maximumSeparation = 1e-4;  // distance at which copies are renormalized early
+  public int renormalizationInterval = 10; // steps between renormalizations
+  public double dt, L;
+  public double t;
+  int N;
+  double[][] x, y, vx, vy, ax, ay; // index 0 is the reference trajectory
+  double[] distance, logSum;
+  double[][] sums;                 // energy, virial, and pairs of each trajectory
+  double renormalizedTime;         // time of the last renormalization
+  int stepsSinceRenormalization;
+  NeighborList neighborList;
+  ForkJoinPool pool;               // null for serial calculation
+  int numberOfThreads;
+
+  /**
+   * Copies the state of gas to the reference trajectory and places the copies around it.
+   *
+   * @param gas
+   * @param numberOfCopies
+   * @param numberOfThreads
+   * @param seed seed of the random perturbations
+   */
+  public LyapunovEnsemble(LJgas gas, int numberOfCopies, int numberOfThreads, long seed) {
+    this.numberOfCopies = numberOfCopies;
+    this.numberOfThreads = Math.max(1, numberOfThreads);
+    if(this.numberOfThreads>1) {
+      pool = new ForkJoinPool(this.numberOfThreads);
+    }
+    N = gas.numberOfParticles;
+    L = gas.cellLength;
+    dt = gas.dt;
+    int M = numberOfCopies+1;
+    x = new double[M][N];
+    y = new double[M][N];
+    vx = new double[M][N];
+    vy = new double[M][N];
+    ax = new double[M][N];
+    ay = new double[M][N];
+    distance = new double[M];
+    logSum = new double[M];
+    sums = new double[M][3];
+    neighborList = new NeighborList(Math.sqrt(gas.cut2), 0.3);
+    neighborList.tolerance = 2*maximumSeparation;
+    neighborList.tailCorrection = false;
+    neighborList.shiftedForce = true;
+    System.arraycopy(gas.x, 0, x[0], 0, N);
+    System.arraycopy(gas.y, 0, y[0], 0, N);
+    System.arraycopy(gas.vx, 0, vx[0], 0, N);
+    System.arraycopy(gas.vy, 0, vy[0], 0, N);
+    Random random = new Random(seed);
+    for(int c = 1; c<M; c++) {
+      double norm = 0;
+      for(int i = 0; i<N; i++) {
+        x[c][i] = random.nextGaussian();
+        y[c][i] = random.nextGaussian();
+        vx[c][i] = random.nextGaussian();
+        vy[c][i] = random.nextGaussian();
+        norm += x[c][i]*x[c][i]+y[c][i]*y[c][i]+vx[c][i]*vx[c][i]+vy[c][i]*vy[c][i];
+      }
+      double scale = separation/Math.sqrt(norm);
+      for(int i = 0; i<N; i++) {
+        x[c][i] = LennardJones.position(x[0][i]+scale*x[c][i], L);
+        y[c][i] = LennardJones.position(y[0][i]+scale*y[c][i], L);
+        vx[c][i] = vx[0][i]+scale*vx[c][i];
+        vy[c][i] = vy[0][i]+scale*vy[c][i];
+      }
+    }
+    neighborList.compute(x[0], y[0], N, L, L, ax[0], ay[0]);
+    run(FORCE);
+  }
+
+  /**
+   * Advances the reference and the copies by one step.
+   */
+  public void step() {
+    neighborList.tolerance = 2*maximumSeparation;
+    run(DRIFT);
+    neighborList.compute(x[0], y[0], N, L, L, ax[0], ay[0]);
+    // the reference is completed before the copies, which compare themselves with it
+    for(int i = 0; i<N; i++) {
+      vx[0][i] += 0.5*ax[0][i]*dt;
+      vy[0][i] += 0.5*ay[0][i]*dt;
+    }
+    run(FORCE_AND_KICK);
+    t += dt;
+    stepsSinceRenormalization++;
+    double largest = 0;
+    for(int c = 1; c<=numberOfCopies; c++) {
+      largest = Math.max(largest, distance[c]);
+    }
+    if((stepsSinceRenormalization>=renormalizationInterval)||(largest>maximumSeparation)) {
+      renormalize();
+    }
+  }
+
+  /**
+   * Does one phase of a step for trajectories 0 to numberOfCopies, divided among the threads.
+   */
+  void run(final int phase) {
+    final int M = numberOfCopies+1;
+    if(pool==null) {
+      update(phase, 0, M);
+      return;
+    }
+    RecursiveAction[] actions = new RecursiveAction[numberOfThreads];
+    for(int w = 0; w<numberOfThreads; w++) {
+      final int first = (int) ((long) w*M/numberOfThreads);
+      final int last = (int) ((long) (w+1)*M/numberOfThreads);
+      actions[w] = new RecursiveAction() {
+        protected void compute() {
+          update(phase, first, last);
+        }
+
+      };
+    }
+    final RecursiveAction[] all = actions;
+    pool.invoke(new RecursiveAction() {
+      protected void compute() {
+        invokeAll(all);
+      }
+
+    });
+  }
+
+  void update(int phase, int first, int last) {
+    double dthalf = 0.5*dt;
+    for(int c = first; c<last; c++) {
+      double[] x = this.x[c], y = this.y[c], vx = this.vx[c], vy = this.vy[c], ax = this.ax[c], ay = this.ay[c];
+      if(phase==DRIFT) {
+        for(int i = 0; i<N; i++) {
+          vx[i] += ax[i]*dthalf;
+          vy[i] += ay[i]*dthalf;
+          x[i] = LennardJones.position(x[i]+vx[i]*dt, L);
+          y[i] = LennardJones.position(y[i]+vy[i]*dt, L);
+        }
+        continue;
+      }
+      if(c==0) { // the reference is updated by step
+        continue;
+      }
+      neighborList.computeCopy(x, y, ax, ay, sums[c]);
+      if(phase==FORCE_AND_KICK) {
+        for(int i = 0; i<N; i++) {
+          vx[i] += ax[i]*dthalf;
+          vy[i] += ay[i]*dthalf;
+        }
+      }
+      distance[c] = distance(c);
+    }
+  }
+
+  /**
+   * Returns the phase space distance of copy c from the reference.
+   */
+  double distance(int c) {
+    double sum = 0;
+    for(int i = 0; i<N; i++) {
+      double dx = LennardJones.separation(x[c][i]-x[0][i], L);
+      double dy = LennardJones.separation(y[c][i]-y[0][i], L);
+      double dvx = vx[c][i]-vx[0][i];
+      double dvy = vy[c][i]-vy[0][i];
+      sum += dx*dx+dy*dy+dvx*dvx+dvy*dvy;
+    }
+    return Math.sqrt(sum);
+  }
+
+  /**
+   * Adds the logarithms of the growth of the distances and scales the copies back to separation.
+   */
+  void renormalize() {
+    for(int c = 1; c<=numberOfCopies; c++) {
+      logSum[c] += Math.log(distance[c]/separation);
+      double scale = separation/distance[c];
+      for(int i = 0; i<N; i++) {
+        double dx = LennardJones.separation(x[c][i]-x[0][i], L);
+        double dy = LennardJones.separation(y[c][i]-y[0][i], L);
+        x[c][i] = LennardJones.position(x[0][i]+scale*dx, L);
+        y[c][i] = LennardJones.position(y[0][i]+scale*dy, L);
+        vx[c][i] = vx[0][i]+scale*(vx[c][i]-vx[0][i]);
+        vy[c][i] = vy[0][i]+scale*(vy[c][i]-vy[0][i]);
+      }
+    }
+    run(FORCE); // forces at the scaled positions
+    renormalizedTime = t;
+    stepsSinceRenormalization = 0;
+  }
+
+  /**
+   * Returns the mean of the exponents of the copies.
+   */
+  public double getLyapunovExponent() {
+    if(renormalizedTime==0) {
+      return 0;
+    }
+    double sum = 0;
+    for(int c = 1; c<=numberOfCopies; c++) {
+      sum += logSum[c];
+    }
+    return sum/(numberOfCopies*renormalizedTime);
+  }
+
+  /**
+   * Returns the standard error of the mean of the exponents of the copies.
+   */
+  public double getLyapunovError() {
+    if((renormalizedTime==0)||(numberOfCopies<2)) {
+      return 0;
+    }
+    double mean = getLyapunovExponent();
+    double sum2 = 0;
+    for(int c = 1; c<=numberOfCopies; c++) {
+      double d = logSum[c]/renormalizedTime-mean;
+      sum2 += d*d;
+    }
+    return Math.sqrt(sum2/(numberOfCopies*(numberOfCopies-1.0)));
+  }
+
+  /**
+   * Stops the worker threads.
+   */
+  public void shutdown() {
+    if(pool!=null) {
+      pool.shutdown();
+      pool = null;
+    }
+  }
+
+}
+
+/*
+ * Open Source Physics software is free software; you can redistribute
+ * it and/or modify it under the terms of the GNU General Public License (GPL) as
+ * published by the Free Software Foundation; either version 2 of the License,
+ * or(at your option) any later version.
+
+ * Code that uses any portion of the code in the org.opensourcephysics package
+ * or any subpackage (subdirectory) of this package must must also be be released
+ * under the GNU GPL license.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston MA 02111-1307 USA
+ * or view the license online at http://www.gnu.org/copyleft/gpl.html
+ *
+ * Copyright (c) 2007  The Open Source Physics project
+ *                     http://www.opensourcephysics.org
+ */
@@ -6,6 +6,18 @@
  */
 
 package org.opensourcephysics.stp.thermalcontact;
+import org.opensourcephysics.stp.util.LennardJones;
+
+/**
+ * LJSimulation is a Lennard-Jones mixture of particles a and b in a box with repulsive walls.
+ *
+ * Pair forces are computed by LennardJones from a table of the parameters of each pair of species.
+ * The potential is cut off at cutoffRatio times the largest sigma and shifted to vanish there, so
+ * that the energy is conserved and the pairs are found with a grid of cells when the box is large
+ * enough. The walls interact with the particles through the same truncated and shifted potential
+ * of the distance to the wall. The force evaluation allocates nothing, and the kinetic and
+ * potential energies of each subsystem are kept in Ka, Kb, Va, and Vb.
+ */
 public class LJSimulation {
   public double[] x, y, vx, vy;
   double[] ax, ay;
@@ -19,8 +31,13 @@ public class LJSimulation {
   double epsilon_bb = 1;
   double epsilon_ab = 1;
   double dt;
-  double r_cutoff = Double.MAX_VALUE; // No cutoff
+  double cutoffRatio = 3;             // cutoff in units of the largest sigma, 0 for no cutoff
+  double r_cutoff = Double.MAX_VALUE; // set from cutoffRatio
+  double wallShift;                   // wall potential at the cutoff
+  double wallAcceleration;            // set by wall
   public double Ka, Kb, Va, Vb;
+  int[] species; // 0 for particles of type a, 1 for type b
+  LennardJones potential;
 
   /**
    * Constructor LJSimulation
@@ -43,6 +60,13 @@ public class LJSimulation {
     vy = new double[N];
     ax = new double[N];
     ay = new double[N];
+    species = new int[N];
+    for(int i = Na; i<N; i++) {
+      species[i] = 1;
+    }
+    potential = new LennardJones(Lx, Ly);
+    potential.periodic = false; // particles are confined by walls
+    setPotentialParameters();
     setHexagonalPositions();
   }
 
@@ -55,6 +79,35 @@ public class LJSimulation {
     epsilon_aa = _epsilon_aa;
     epsilon_bb = _epsilon_bb;
     epsilon_ab = 0.5*(epsilon_aa+epsilon_bb);
+    setPotentialParameters();
+  }
+
+  /**
+   * Sets the cutoff in units of the largest sigma, 0 for no cutoff.
+   */
+  public void setCutoff(double ratio) {
+    cutoffRatio = ratio;
+    setPotentialParameters();
+  }
+
+  void setPotentialParameters() {
+    double sigmaMax = Math.max(sigma_w, Math.max(sigma_aa, sigma_bb));
+    r_cutoff = (cutoffRatio>0)
+               ? cutoffRatio*sigmaMax
+               : Double.MAX_VALUE;
+    potential.setCutoff((cutoffRatio>0)
+                        ? r_cutoff
+                        : 0, true);
+    wallShift = 0;
+    if(cutoffRatio>0) {
+      double ir6 = Math.pow(sigma_w/r_cutoff, 6);
+      wallShift = 4*(ir6-1)*ir6;
+    }
+    potential.setSpecies(species, new double[][] {
+      {epsilon_aa, epsilon_ab}, {epsilon_ab, epsilon_bb}
+    }, new double[][] {
+      {sigma_aa, sigma_ab}, {sigma_ab, sigma_bb}
+    });
   }
 
   public void setTimeStep(double _dt) {
@@ -81,90 +134,40 @@ public class LJSimulation {
     }
   }
 
-  // returns {acceleration, potential}
-  double[] wallAccel(double x, double L) {
-    double[] ret = new double[2];
+  /**
+   * Returns the potential energy of a particle at s due to the nearer wall of an interval of
+   * length L and sets wallAcceleration.
+   */
+  double wall(double s, double L) {
     double r;
-    if((x<r_cutoff)&&(x<L/2)) {
-      r = x;
-    } else if((L-x<r_cutoff)&&(x>L/2)) {
-      r = x-L;
+    if((s<r_cutoff)&&(s<L/2)) {
+      r = s;
+    } else if((L-s<r_cutoff)&&(s>L/2)) {
+      r = s-L;
     } else {
-      return ret;
+      wallAcceleration = 0;
+      return 0;
     }
     double ir2 = (sigma_w*sigma_w)/(r*r);
     double ir6 = ir2*ir2*ir2;
-    ret[0] = (48*ir6-24)*ir6/r;
-    ret[1] = (4*ir6-4)*ir6;
-    return ret;
-  }
-
-  double sigma2(int i, int j) {
-    if((i<Na)&&(j<Na)) {
-      return sigma_aa*sigma_aa;
-    }
-    if(i<Na) {
-      return sigma_ab*sigma_ab;
-    } else {
-      return sigma_bb*sigma_bb;
-    }
-  }
-
-  double epsilon(int i, int j) {
-    if((i<Na)&&(j<Na)) {
-      return epsilon_aa;
-    }
-    if(i<Na) {
-      return epsilon_ab;
-    } else {
-      return epsilon_bb;
-    }
-  }
-
-  // returns {accel_x, accel_y, potential}
-  double[] particleAccel(int i, int j) {
-    double[] ret = new double[3];
-    double dx = x[i]-x[j];
-    double dy = y[i]-y[j];
-    double r2 = dx*dx+dy*dy;
-    if(r2<r_cutoff*r_cutoff) {
-      double eps = epsilon(i, j);
-      double ir2 = sigma2(i, j)/r2;
-      double ir6 = ir2*ir2*ir2;
-      ret[0] = eps*((48*ir6-24)*ir6/r2)*dx;
-      ret[1] = eps*((48*ir6-24)*ir6/r2)*dy;
-      ret[2] = eps*(4*ir6-4)*ir6;
-    }
-    return ret;
+    wallAcceleration = (48*ir6-24)*ir6/r;
+    return (4*ir6-4)*ir6-wallShift;
   }
 
   public void accel() {
+    potential.computeForces(x, y, N, ax, ay);
+    // each pair energy is divided equally between the species of the two particles
+    Va += potential.speciesEnergy[0];
+    Vb += potential.speciesEnergy[1];
     for(int i = 0; i<N; i++) {
-      double[] ret1, ret2;
-      ret1 = wallAccel(x[i], Lx);
-      ret2 = wallAccel(y[i], Ly);
-      ax[i] = ret1[0];
-      ay[i] = ret2[0];
+      double u = wall(x[i], Lx);
+      ax[i] += wallAcceleration;
+      u += wall(y[i], Ly);
+      ay[i] += wallAcceleration;
       if(i<Na) {
-        Va += ret1[1]+ret2[1];
+        Va += u;
       } else {
-        Vb += ret1[1]+ret2[1];
-      }
-    }
-    for(int i = 0; i<N-1; i++) {
-      for(int j = i+1; j<N; j++) {
-        double[] ret = particleAccel(i, j);
-        ax[i] += ret[0];
-        ay[i] += ret[1];
-        ax[j] -= ret[0];
-        ay[j] -= ret[1];
-        double p = ((i<Na)
-                    ? 0.5
-                    : 0)+((j<Na)
-                          ? 0.5
-                          : 0);
-        Va += ret[2]*p;
-        Vb += ret[2]*(1-p);
+        Vb += u;
       }
     }
   }
@@ -0,0 +1,280 @@
+/*
+ * Open Source Physics software is free software as described near the bottom of this code file.
+ *
+ * For additional information and documentation on Open Source Physics please see:
+ * <http://www.opensourcephysics.org/>
+ */
+
+package org.opensourcephysics.stp.util;
+
+/**
+ * DiffusionEstimator measures the mean square displacement and the velocity autocorrelation
+ * function of particles in two dimensions and the self diffusion coefficient from both.
+ *
+ * Each sample costs O(N): displacements since the previous sample are added to unwrapped
+ * positions using the minimum image, and the unwrapped positions and velocities are passed to
+ * multiple tau correlators, so the memory does not grow with the length of the run. The samples
+ * must be equally spaced in time; if the spacing changes the data are cleared.
+ *
+ * Both estimates use the lags up to a quarter of the duration of the run, which are averaged over
+ * many time origins. The Einstein estimate is a quarter of the slope of the mean square
+ * displacement over the upper half of these lags, and the Green-Kubo estimate is half the
+ * integral of the velocity autocorrelation function. The particles are divided into groups with their own correlators,
+ * and the errors are the standard errors of the group estimates.
+ */
+public class DiffusionEstimator {
+  public static final int LEVELS = 16, POINTS_PER_LEVEL = 16, AVERAGING_FACTOR = 2;
+  public int numberOfParticles, numberOfGroups;
+  public double sampleTime; // time between samples, set by the first two samples
+  double lastTime;
+  long samples;
+  double[] ux, uy;           // unwrapped positions
+  double[] lastX, lastY;
+  int[] groupSize;
+  double[][] position, velocity;
+  MultipleTauCorrelator[] msd, vacf;
+  double[] estimate;
+
+  /**
+   * @param numberOfParticles
+   * @param numberOfGroups number of groups of particles used for the error estimates
+   */
+  public DiffusionEstimator(int numberOfParticles, int numberOfGroups) {
+    this.numberOfParticles = numberOfParticles;
+    this.numberOfGroups = Math.max(1, Math.min(numberOfGroups, numberOfParticles));
+    ux = new double[numberOfParticles];
+    uy = new double[numberOfParticles];
+    lastX = new double[numberOfParticles];
+    lastY = new double[numberOfParticles];
+    groupSize = new int[this.numberOfGroups];
+    for(int i = 0; i<numberOfParticles; i++) {
+      groupSize[i%this.numberOfGroups]++;
+    }
+    position = new double[this.numberOfGroups][];
+    velocity = new double[this.numberOfGroups][];
+    msd = new MultipleTauCorrelator[this.numberOfGroups];
+    vacf = new MultipleTauCorrelator[this.numberOfGroups];
+    estimate = new double[this.numberOfGroups];
+    for(int g = 0; g<this.numberOfGroups; g++) {
+      position[g] = new double[2*groupSize[g]];
+      velocity[g] = new double[2*groupSize[g]];
+      msd[g] = new MultipleTauCorrelator(2*groupSize[g], LEVELS, POINTS_PER_LEVEL, AVERAGING_FACTOR, true);
+      vacf[g] = new MultipleTauCorrelator(2*groupSize[g], LEVELS, POINTS_PER_LEVEL, AVERAGING_FACTOR, false);
+    }
+  }
+
+  public void reset() {
+    samples = 0;
+    sampleTime = 0;
+    for(int g = 0; g<numberOfGroups; g++) {
+      msd[g].reset();
+      vacf[g].reset();
+    }
+  }
+
+  /**
+   * Adds a sample of the positions and velocities at time t. Positions wrapped into a periodic
+   * box Lx by Ly are unwrapped, which requires that no particle moves more than half the box
+   * between samples; a box size of 0 means that the coordinate is not wrapped.
+   */
+  public void update(double[] x, double[] y, double[] vx, double[] vy, double Lx, double Ly, double t) {
+    if(samples==1) {
+      sampleTime = t-lastTime;
+    } else if((samples>1)&&(Math.abs(t-lastTime-sampleTime)>1e-6*sampleTime)) {
+      reset(); // the correlators assume equally spaced samples
+    }
+    if(samples==0) {
+      for(int i = 0; i<numberOfParticles; i++) {
+        ux[i] = lastX[i] = x[i];
+        uy[i] = lastY[i] = y[i];
+      }
+    } else {
+      for(int i = 0; i<numberOfParticles; i++) {
+        double dx = x[i]-lastX[i];
+        double dy = y[i]-lastY[i];
+        if(Lx>0) {
+          dx -= Lx*Math.rint(dx/Lx);
+        }
+        if(Ly>0) {
+          dy -= Ly*Math.rint(dy/Ly);
+        }
+        ux[i] += dx;
+        uy[i] += dy;
+        lastX[i] = x[i];
+        lastY[i] = y[i];
+      }
+    }
+    lastTime = t;
+    samples++;
+    for(int g = 0; g<numberOfGroups; g++) {
+      double[] r = position[g], v = velocity[g];
+      for(int i = g, k = 0; i<numberOfParticles; i += numberOfGroups, k += 2) {
+        r[k] = ux[i];
+        r[k+1] = uy[i];
+        v[k] = vx[i];
+        v[k+1] = vy[i];
+      }
+      msd[g].update(r);
+      vacf[g].update(v);
+    }
+  }
+
+  /**
+   * Returns the lag times of the correlation functions.
+   */
+  public double[] getLagTimes() {
+    double[] lags = msd[0].getLags();
+    for(int j = 0; j<lags.length; j++) {
+      lags[j] *= sampleTime;
+    }
+    return lags;
+  }
+
+  /**
+   * Returns the mean square displacement <|r(t)-r(0)|^2> at each lag time.
+   */
+  public double[] getMeanSquareDisplacement() {
+    return average(msd);
+  }
+
+  /**
+   * Returns the velocity autocorrelation function <v(0).v(t)> at each lag time.
+   */
+  public double[] getVelocityAutocorrelation() {
+    return average(vacf);
+  }
+
+  double[] average(MultipleTauCorrelator[] correlator) {
+    double[] c = null;
+    for(int g = 0; g<numberOfGroups; g++) {
+      double[] cg = correlator[g].getCorrelation();
+      if(c==null) {
+        c = new double[cg.length];
+      }
+      // the correlators average over components; sum the x and y components
+      double weight = 2.0*groupSize[g]/numberOfParticles;
+      for(int j = 0; j<c.length; j++) {
+        c[j] += weight*cg[j];
+      }
+    }
+    return c;
+  }
+
+  public double getEinsteinCoefficient() {
+    return einstein()[0];
+  }
+
+  public double getEinsteinError() {
+    return einstein()[1];
+  }
+
+  public double getGreenKuboCoefficient() {
+    return greenKubo()[0];
+  }
+
+  public double getGreenKuboError() {
+    return greenKubo()[1];
+  }
+
+  /**
+   * Returns the mean and standard error of the group estimates from the mean square displacement.
+   */
+  double[] einstein() {
+    double[] lags = getLagTimes();
+    if(lags.length<2) {
+      return new double[] {Double.NaN, Double.NaN};
+    }
+    int last = lastLag(lags);
+    double tmax = lags[last];
+    for(int g = 0; g<numberOfGroups; g++) {
+      double[] c = msd[g].getCorrelation();
+      // least squares slope of 2*c against the lag time over the longest lags
+      double n = 0, st = 0, sc = 0, stt = 0, stc = 0;
+      for(int j = 0; j<=last; j++) {
+        if(lags[j]>=0.5*tmax) {
+          n++;
+          st += lags[j];
+          sc += 2*c[j];
+          stt += lags[j]*lags[j];
+          stc += lags[j]*2*c[j];
+        }
+      }
+      double denominator = n*stt-st*st;
+      estimate[g] = (denominator>0)
+                    ? 0.25*(n*stc-st*sc)/denominator
+                    : 0.25*sc/st;
+    }
+    return meanAndError();
+  }
+
+  /**
+   * Returns the mean and standard error of the group estimates from the velocity autocorrelation.
+   */
+  double[] greenKubo() {
+    double[] lags = getLagTimes();
+    if(lags.length<2) {
+      return new double[] {Double.NaN, Double.NaN};
+    }
+    int last = lastLag(lags);
+    for(int g = 0; g<numberOfGroups; g++) {
+      double[] c = vacf[g].getCorrelation();
+      // trapezoidal integral of 2*c, the lags are unequally spaced
+      double integral = 0;
+      for(int j = 1; j<=last; j++) {
+        integral += (lags[j]-lags[j-1])*(c[j]+c[j-1]);
+      }
+      estimate[g] = 0.5*integral;
+    }
+    return meanAndError();
+  }
+
+  /**
+   * Returns the index of the longest lag that is at most a quarter of the duration, and at least 1.
+   */
+  int lastLag(double[] lags) {
+    double duration = (samples-1)*sampleTime;
+    int last = 1;
+    while((last+1<lags.length)&&(lags[last+1]<=0.25*duration)) {
+      last++;
+    }
+    return last;
+  }
+
+  double[] meanAndError() {
+    double sum = 0, sum2 = 0;
+    for(int g = 0; g<numberOfGroups; g++) {
+      sum += estimate[g];
+      sum2 += estimate[g]*estimate[g];
+    }
+    double mean = sum/numberOfGroups;
+    double error = (numberOfGroups>1)
+                   ? Math.sqrt(Math.max(0, sum2/numberOfGroups-mean*mean)/(numberOfGroups-1))
+                   : Double.NaN;
+    return new double[] {mean, error};
+  }
+
+}
+
+/*
+ * Open Source Physics software is free software; you can redistribute
+ * it and/or modify it under the terms of the GNU General Public License (GPL) as
+ * published by the Free Software Foundation; either version 2 of the License,
+ * or(at your option) any later version.
+
+ * Code that uses any portion of the code in the org.opensourcephysics package
+ * or any subpackage (subdirectory) of this package must must also be be released
+ * under the GNU GPL license.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston MA 02111-1307 USA
+ * or view the license online at http://www.gnu.org/copyleft/gpl.html
+ *
+ * Copyright (c) 2007  The Open Source Physics project
+ *                     http://www.opensourcephysics.org
+ */
@@ -0,0 +1,105 @@
+/*
+ * Open Source Physics software is free software as described near the bottom of this code file.
+ *
+ * For additional information and documentation on Open Source Physics please see:
+ * <http://www.opensourcephysics.org/>
+ */
+
+package org.opensourcephysics.stp.util;
+
+/**
+ * Unsynchronized xorshift64* random number generator for inner Monte Carlo loops.
+ * Each instance is an independent, reproducible stream.
+ */
+public class FastRandom {
+  private long seed;
+
+  /**
+   * Constructs a generator with a seed taken from the clock
+   */
+  public FastRandom() {
+    setSeed(System.nanoTime()^Double.doubleToLongBits(Math.random()));
+  }
+
+  /**
+   * Constructs a generator with the given seed
+   *
+   * @param seed
+   */
+  public FastRandom(long seed) {
+    setSeed(seed);
+  }
+
+  /**
+   * Sets the seed. Seeds are scrambled so that nearby seeds give unrelated streams.
+   *
+   * @param _seed
+   */
+  public void setSeed(long _seed) {
+    long z = _seed+0x9E3779B97F4A7C15L; // splitmix64 finalizer
+    z = (z^(z>>>30))*0xBF58476D1CE4E5B9L;
+    z = (z^(z>>>27))*0x94D049BB133111EBL;
+    z = z^(z>>>31);
+    seed = (z==0)
+           ? 0x9E3779B97F4A7C15L // xorshift must not start from zero
+           : z;
+  }
+
+  /**
+   * Returns a uniformly distributed long
+   */
+  public long nextLong() {
+    seed ^= seed>>>12;
+    seed ^= seed<<25;
+    seed ^= seed>>>27;
+    return seed*0x2545F4914F6CDD1DL;
+  }
+
+  /**
+   * Returns a uniformly distributed 53 bit integer, useful for comparison with fixed point thresholds
+   */
+  public long next53() {
+    return nextLong()>>>11;
+  }
+
+  /**
+   * Returns a random double in [0, 1)
+   */
+  public double nextDouble() {
+    return(nextLong()>>>11)*0x1.0p-53;
+  }
+
+  /**
+   * Returns a random int in [0, n)
+   *
+   * @param n
+   */
+  public int nextInt(int n) {
+    return(int) (((nextLong()>>>33)*n)>>>31);
+  }
+
+}
+
+/*
+ * Open Source Physics software is free software; you can redistribute
+ * it and/or modify it under the terms of the GNU General Public License (GPL) as
+ * published by the Free Software Foundation; either version 2 of the License,
+ * or(at your option) any later version.
+
+ * Code that uses any portion of the code in the org.opensourcephysics package
+ * or any subpackage (subdirectory) of this package must must also be be released
+ * under the GNU GPL license.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston MA 02111-1307 USA
+ * or view the license online at http://www.gnu.org/copyleft/gpl.html
+ *
+ * Copyright (c) 2007  The Open Source Physics project
+ *                     http://www.opensourcephysics.org
+ */
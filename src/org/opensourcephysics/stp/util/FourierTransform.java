@@ -0,0 +1,124 @@
+/*
+ * Open Source Physics software is free software as described near the bottom of this code file.
+ *
+ * For additional information and documentation on Open Source Physics please see:
+ * <http://www.opensourcephysics.org/>
+ */
+
+package org.opensourcephysics.stp.util;
+
+/**
+ * In place radix 2 fast Fourier transforms of complex data stored in separate real and
+ * imaginary arrays. The forward transform uses exp(-2 pi i jk/n); the inverse transform is
+ * not normalized.
+ */
+public class FourierTransform {
+  /**
+   * Returns the smallest power of two that is at least n
+   *
+   * @param n
+   */
+  public static int powerOfTwo(int n) {
+    int p = 1;
+    while(p<n) {
+      p <<= 1;
+    }
+    return p;
+  }
+
+  /**
+   * Transforms n = re.length values, where n is a power of two
+   *
+   * @param re
+   * @param im
+   * @param inverse
+   */
+  public static void transform(double[] re, double[] im, boolean inverse) {
+    transform(re, im, 0, 1, re.length, inverse);
+  }
+
+  /**
+   * Transforms the n values re[offset+k*stride], k = 0..n-1, where n is a power of two
+   */
+  public static void transform(double[] re, double[] im, int offset, int stride, int n, boolean inverse) {
+    if((n&(n-1))!=0) {
+      throw new IllegalArgumentException("Length must be a power of two: "+n);
+    }
+    // bit reversal permutation
+    for(int i = 1, j = 0; i<n; i++) {
+      int bit = n>>1;
+      for(; (j&bit)!=0; bit >>= 1) {
+        j ^= bit;
+      }
+      j ^= bit;
+      if(i<j) {
+        int a = offset+i*stride, b = offset+j*stride;
+        double t = re[a];
+        re[a] = re[b];
+        re[b] = t;
+        t = im[a];
+        im[a] = im[b];
+        im[b] = t;
+      }
+    }
+    for(int len = 2; len<=n; len <<= 1) {
+      double angle = 2*Math.PI/len*(inverse
+                                    ? 1
+                                    : -1);
+      double wRe = Math.cos(angle), wIm = Math.sin(angle);
+      int half = len>>1;
+      for(int i = 0; i<n; i += len) {
+        double uRe = 1, uIm = 0;
+        for(int k = 0; k<half; k++) {
+          int a = offset+(i+k)*stride, b = offset+(i+k+half)*stride;
+          double xRe = re[b]*uRe-im[b]*uIm;
+          double xIm = re[b]*uIm+im[b]*uRe;
+          re[b] = re[a]-xRe;
+          im[b] = im[a]-xIm;
+          re[a] += xRe;
+          im[a] += xIm;
+          double t = uRe*wRe-uIm*wIm;
+          uIm = uRe*wIm+uIm*wRe;
+          uRe = t;
+        }
+      }
+    }
+  }
+
+  /**
+   * Transforms an nx by ny array stored row by row, index = x*ny+y. Both sizes must be powers of two.
+   */
+  public static void transform2D(double[] re, double[] im, int nx, int ny, boolean inverse) {
+    for(int x = 0; x<nx; x++) {
+      transform(re, im, x*ny, 1, ny, inverse);
+    }
+    for(int y = 0; y<ny; y++) {
+      transform(re, im, y, ny, nx, inverse);
+    }
+  }
+
+}
+
+/*
+ * Open Source Physics software is free software; you can redistribute
+ * it and/or modify it under the terms of the GNU General Public License (GPL) as
+ * published by the Free Software Foundation; either version 2 of the License,
+ * or(at your option) any later version.
+
+ * Code that uses any portion of the code in the org.opensourcephysics package
+ * or any subpackage (subdirectory) of this package must must also be be released
+ * under the GNU GPL license.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston MA 02111-1307 USA
+ * or view the license online at http://www.gnu.org/copyleft/gpl.html
+ *
+ * Copyright (c) 2007  The Open Source Physics project
+ *                     http://www.opensourcephysics.org
+ */
@@ -0,0 +1,562 @@
+/*
+ * Open Source Physics software is free software as described near the bottom of this code file.
+ *
+ * For additional information and documentation on Open Source Physics please see:
+ * <http://www.opensourcephysics.org/>
+ */
+
+package org.opensourcephysics.stp.util;
+
+/**
+ * LennardJones evaluates forces and energies of particles in two dimensions interacting with the
+ * Lennard-Jones potential u(r) = 4 epsilon ((sigma/r)^12-(sigma/r)^6).
+ *
+ * Coordinates are passed as separate x and y arrays. In a periodic box separations use the
+ * minimum image convention; otherwise the box only sets the extent of the cell grid. Without a
+ * cutoff every pair is included. With a cutoff the potential is truncated and, if shifted is true,
+ * shifted to vanish at the cutoff, and computeForces finds pairs with a grid of cells of length
+ * at least the cutoff whenever the box holds three or more cells in each direction.
+ *
+ * The results of each evaluation are left in public fields so that no arrays are allocated:
+ * computeForces sets potentialEnergy and virial (the sum of r.F over pairs), and
+ * particleEnergy, insertionEnergy, and computeMove set particleVirial or deltaEnergy and deltaVirial.
+ *
+ * With more than one thread computeForces divides the rows of the pair loop, or the columns of
+ * the cell grid, among the threads of a ParallelPairs pool. The results are reproducible for a
+ * fixed number of threads but differ in the last bits from the serial results.
+ *
+ * Mixtures are described by a species index for each particle with tables of epsilon and sigma.
+ * With species, computeForces also divides the energy of each pair equally between the species
+ * of the two particles in speciesEnergy. The parameters of each pair of species are copied into a
+ * flat table, and the pair loop without cells reads them from the table without branches.
+ */
+public class LennardJones {
+  public double Lx, Ly;
+  public boolean periodic = true;
+  public double cutoff = 0;      // 0 for no cutoff
+  public boolean shifted = false;
+  public double potentialEnergy; // set by computeForces
+  public double virial;          // set by computeForces
+  public double[] speciesEnergy; // set by computeForces if there are species
+  public double particleVirial;  // set by particleEnergy and insertionEnergy
+  public double deltaEnergy, deltaVirial; // set by computeMove
+  int[] species;
+  double[][] epsilon, sigma2, shift;
+  int numberOfSpecies;
+  double[] pairTable = new double[0]; // epsilon, sigma^2, and shift of species a, b at 3*(a*numberOfSpecies+b)
+  double rc2 = Double.MAX_VALUE, shift0;
+  int nCellX, nCellY;
+  int[] cellHead = new int[0], cellNext = new int[0], cellCount = new int[0];
+  double[] sums = new double[0];    // energy, virial, and species energies of the serial calculation
+  long[] prefix = new long[0];      // work of the items given to the parallel calculation
+  ParallelPairs parallel;           // null for serial calculation
+
+  public LennardJones(double Lx, double Ly) {
+    setBox(Lx, Ly);
+  }
+
+  public void setBox(double Lx, double Ly) {
+    this.Lx = Lx;
+    this.Ly = Ly;
+  }
+
+  /**
+   * Sets the cutoff, 0 for none, and whether the potential is shifted to vanish at the cutoff.
+   */
+  public void setCutoff(double cutoff, boolean shifted) {
+    this.cutoff = cutoff;
+    this.shifted = shifted;
+    rc2 = (cutoff>0)
+          ? cutoff*cutoff
+          : Double.MAX_VALUE;
+    shift0 = (shifted&&(cutoff>0))
+             ? lj(1, 1/rc2)
+             : 0;
+    computeShifts();
+  }
+
+  /**
+   * Sets the species of each particle and the interaction parameters between species,
+   * or removes species if species is null.
+   *
+   * @param species species[i] is the index of particle i in epsilon and sigma
+   * @param epsilon symmetric table of energy parameters
+   * @param sigma symmetric table of length parameters
+   */
+  public void setSpecies(int[] species, double[][] epsilon, double[][] sigma) {
+    this.species = species;
+    if(species==null) {
+      speciesEnergy = null;
+      return;
+    }
+    int n = epsilon.length;
+    this.epsilon = epsilon;
+    sigma2 = new double[n][n];
+    shift = new double[n][n];
+    for(int a = 0; a<n; a++) {
+      for(int b = 0; b<n; b++) {
+        sigma2[a][b] = sigma[a][b]*sigma[a][b];
+      }
+    }
+    speciesEnergy = new double[n];
+    computeShifts();
+  }
+
+  void computeShifts() {
+    if(species==null) {
+      return;
+    }
+    numberOfSpecies = shift.length;
+    if(pairTable.length!=3*numberOfSpecies*numberOfSpecies) {
+      pairTable = new double[3*numberOfSpecies*numberOfSpecies];
+    }
+    for(int a = 0; a<numberOfSpecies; a++) {
+      for(int b = 0; b<numberOfSpecies; b++) {
+        shift[a][b] = (shifted&&(cutoff>0))
+                      ? lj(epsilon[a][b], sigma2[a][b]/rc2)
+                      : 0;
+        int p = 3*(a*numberOfSpecies+b);
+        pairTable[p] = epsilon[a][b];
+        pairTable[p+1] = sigma2[a][b];
+        pairTable[p+2] = shift[a][b];
+      }
+    }
+  }
+
+  static double lj(double eps, double ir2) {
+    double ir6 = ir2*ir2*ir2;
+    return 4*eps*ir6*(ir6-1);
+  }
+
+  /**
+   * Returns the minimum image of a separation in a periodic box of length L.
+   */
+  public static double separation(double ds, double L) {
+    if((ds>0.5*L)||(ds<-0.5*L)) {
+      ds -= L*Math.floor(ds/L+0.5);
+    }
+    return ds;
+  }
+
+  /**
+   * Returns a coordinate moved into the periodic box 0 to L.
+   */
+  public static double position(double s, double L) {
+    if((s>L)||(s<0)) {
+      s -= L*Math.floor(s/L);
+    }
+    return s;
+  }
+
+  /**
+   * Sets the number of threads used by computeForces. One thread does the work on the calling thread.
+   */
+  public void setNumberOfThreads(int numberOfThreads) {
+    if(parallel!=null) {
+      parallel.shutdown();
+      parallel = null;
+    }
+    if(numberOfThreads>1) {
+      parallel = new ParallelPairs(numberOfThreads);
+    }
+  }
+
+  public int getNumberOfThreads() {
+    return (parallel==null)
+           ? 1
+           : parallel.getNumberOfThreads();
+  }
+
+  /**
+   * Stops the worker threads of the parallel mode.
+   */
+  public void shutdown() {
+    setNumberOfThreads(1);
+  }
+
+  /**
+   * Sets ax and ay to the forces on particles of unit mass and computes potentialEnergy and virial.
+   */
+  public void computeForces(final double[] x, final double[] y, int n, double[] ax, double[] ay) {
+    int numberOfSums = (species==null)
+                       ? 2
+                       : 2+speciesEnergy.length;
+    if(sums.length!=numberOfSums) {
+      sums = new double[numberOfSums];
+    }
+    boolean cells = false;
+    if(cutoff>0) {
+      nCellX = (int) (Lx/cutoff);
+      nCellY = (int) (Ly/cutoff);
+      cells = (nCellX>=3)&&(nCellY>=3);
+    }
+    if(cells) {
+      buildCells(x, y, n);
+    }
+    double[] result;
+    if(parallel==null) {
+      for(int i = 0; i<n; i++) {
+        ax[i] = 0;
+        ay[i] = 0;
+      }
+      java.util.Arrays.fill(sums, 0);
+      if(cells) {
+        cellForces(x, y, 0, nCellX, ax, ay, sums);
+      } else {
+        rowForces(x, y, n, 0, n, ax, ay, sums);
+      }
+      result = sums;
+    } else {
+      // items are rows of the pair loop or columns of the cell grid, weighted by their number of pairs
+      final int items = cells
+                        ? nCellX
+                        : n;
+      if(prefix.length<items+1) {
+        prefix = new long[items+1];
+      }
+      prefix[0] = 0;
+      for(int k = 0; k<items; k++) {
+        long work;
+        if(cells) {
+          work = 0;
+          for(int c = k*nCellY; c<(k+1)*nCellY; c++) {
+            work += cellCount[c];
+          }
+        } else {
+          work = n-1-k;
+        }
+        prefix[k+1] = prefix[k]+work;
+      }
+      final boolean useCells = cells;
+      final int number = n;
+      result = parallel.run(prefix, items, n, numberOfSums, new ParallelPairs.Task() {
+        public void compute(int first, int last, double[] ax, double[] ay, double[] sums) {
+          if(useCells) {
+            cellForces(x, y, first, last, ax, ay, sums);
+          } else {
+            rowForces(x, y, number, first, last, ax, ay, sums);
+          }
+        }
+
+      }, ax, ay);
+    }
+    potentialEnergy = result[0];
+    virial = result[1];
+    if(speciesEnergy!=null) {
+      System.arraycopy(result, 2, speciesEnergy, 0, speciesEnergy.length);
+    }
+  }
+
+  void rowForces(double[] x, double[] y, int n, int first, int last, double[] ax, double[] ay, double[] sums) {
+    if(species==null) {
+      rowKernel(x, y, n, first, last, ax, ay, sums);
+    } else {
+      speciesRowKernel(x, y, n, first, last, ax, ay, sums);
+    }
+  }
+
+  /**
+   * The pair loop of rowForces for a single species. The inner loop runs over contiguous
+   * coordinate arrays without calls or branches: the minimum image is taken with rint, or with a
+   * box length of zero if the box is not periodic, and the cutoff is applied as a factor of 0 or 1.
+   */
+  void rowKernel(double[] x, double[] y, int n, int first, int last, double[] ax, double[] ay, double[] sums) {
+    double boxX = periodic
+                  ? Lx
+                  : 0;
+    double boxY = periodic
+                  ? Ly
+                  : 0;
+    double invLx = periodic
+                   ? 1/Lx
+                   : 0;
+    double invLy = periodic
+                   ? 1/Ly
+                   : 0;
+    double rc2 = this.rc2, shift0 = this.shift0;
+    double energy = 0, sumVirial = 0;
+    for(int i = first; i<last; i++) {
+      double xi = x[i], yi = y[i];
+      double fxi = 0, fyi = 0;
+      for(int j = i+1; j<n; j++) {
+        double dx = xi-x[j];
+        double dy = yi-y[j];
+        dx -= boxX*Math.rint(dx*invLx);
+        dy -= boxY*Math.rint(dy*invLy);
+        double r2 = dx*dx+dy*dy;
+        double inside = (r2<rc2)
+                        ? 1.0
+                        : 0.0;
+        double oneOverR2 = 1.0/r2;
+        double oneOverR6 = oneOverR2*oneOverR2*oneOverR2;
+        double fOverR = inside*48.0*oneOverR6*(oneOverR6-0.5)*oneOverR2;
+        double fx = fOverR*dx;
+        double fy = fOverR*dy;
+        fxi += fx; // use Newton's third law
+        fyi += fy;
+        ax[j] -= fx;
+        ay[j] -= fy;
+        energy += inside*(4.0*(oneOverR6*oneOverR6-oneOverR6)-shift0);
+        sumVirial += fOverR*r2;
+      }
+      ax[i] += fxi;
+      ay[i] += fyi;
+    }
+    sums[0] += energy;
+    sums[1] += sumVirial;
+  }
+
+  /**
+   * The pair loop of rowForces for mixtures, written like rowKernel. The parameters of each pair
+   * are read from pairTable, and the energy of particle i is collected for its species.
+   */
+  void speciesRowKernel(double[] x, double[] y, int n, int first, int last, double[] ax, double[] ay, double[] sums) {
+    double boxX = periodic
+                  ? Lx
+                  : 0;
+    double boxY = periodic
+                  ? Ly
+                  : 0;
+    double invLx = periodic
+                   ? 1/Lx
+                   : 0;
+    double invLy = periodic
+                   ? 1/Ly
+                   : 0;
+    double rc2 = this.rc2;
+    double[] table = pairTable;
+    int[] species = this.species;
+    int ns = numberOfSpecies;
+    double energy = 0, sumVirial = 0;
+    for(int i = first; i<last; i++) {
+      double xi = x[i], yi = y[i];
+      double fxi = 0, fyi = 0, ui = 0;
+      int row = species[i]*ns;
+      for(int j = i+1; j<n; j++) {
+        double dx = xi-x[j];
+        double dy = yi-y[j];
+        dx -= boxX*Math.rint(dx*invLx);
+        dy -= boxY*Math.rint(dy*invLy);
+        double r2 = dx*dx+dy*dy;
+        double inside = (r2<rc2)
+                        ? 1.0
+                        : 0.0;
+        int p = 3*(row+species[j]);
+        double eps = inside*table[p];
+        double ir2 = table[p+1]/r2;
+        double ir6 = ir2*ir2*ir2;
+        double fOverR = eps*(48*ir6-24)*ir6/r2;
+        double u = eps*4*ir6*(ir6-1)-inside*table[p+2];
+        double fx = fOverR*dx;
+        double fy = fOverR*dy;
+        fxi += fx;
+        fyi += fy;
+        ax[j] -= fx;
+        ay[j] -= fy;
+        sums[2+species[j]] += 0.5*u;
+        ui += 0.5*u;
+        energy += u;
+        sumVirial += fOverR*r2;
+      }
+      ax[i] += fxi;
+      ay[i] += fyi;
+      sums[2+species[i]] += ui;
+    }
+    sums[0] += energy;
+    sums[1] += sumVirial;
+  }
+
+  void buildCells(double[] x, double[] y, int n) {
+    if(cellHead.length!=nCellX*nCellY) {
+      cellHead = new int[nCellX*nCellY];
+      cellCount = new int[nCellX*nCellY];
+    }
+    if(cellNext.length<n) {
+      cellNext = new int[n];
+    }
+    java.util.Arrays.fill(cellHead, -1);
+    java.util.Arrays.fill(cellCount, 0);
+    for(int i = n-1; i>=0; i--) {
+      int c = cell(x[i], Lx, nCellX)*nCellY+cell(y[i], Ly, nCellY);
+      cellNext[i] = cellHead[c];
+      cellHead[c] = i;
+      cellCount[c]++;
+    }
+  }
+
+  void cellForces(double[] x, double[] y, int firstColumn, int lastColumn, double[] ax, double[] ay, double[] sums) {
+    for(int cx = firstColumn; cx<lastColumn; cx++) {
+      for(int cy = 0; cy<nCellY; cy++) {
+        int c = cx*nCellY+cy;
+        for(int i = cellHead[c]; i>=0; i = cellNext[i]) {
+          // pairs within the cell
+          for(int j = cellNext[i]; j>=0; j = cellNext[j]) {
+            pairForce(x, y, i, j, ax, ay, sums);
+          }
+          // pairs with the four forward neighbors so that each pair of cells is visited once
+          for(int k = 0; k<4; k++) {
+            int ox = (k==0)
+                     ? 0
+                     : 1;
+            int oy = (k==0)
+                     ? 1
+                     : k-2;
+            int nx = cx+ox, ny = cy+oy;
+            if(periodic) {
+              nx = (nx+nCellX)%nCellX;
+              ny = (ny+nCellY)%nCellY;
+            } else if((nx>=nCellX)||(ny<0)||(ny>=nCellY)) {
+              continue;
+            }
+            for(int j = cellHead[nx*nCellY+ny]; j>=0; j = cellNext[j]) {
+              pairForce(x, y, i, j, ax, ay, sums);
+            }
+          }
+        }
+      }
+    }
+  }
+
+  /**
+   * Adds the force of pair i, j to ax and ay and its energy, virial, and species energies to sums.
+   */
+  void pairForce(double[] x, double[] y, int i, int j, double[] ax, double[] ay, double[] sums) {
+    double dx = x[i]-x[j];
+    double dy = y[i]-y[j];
+    if(periodic) {
+      dx = separation(dx, Lx);
+      dy = separation(dy, Ly);
+    }
+    double r2 = dx*dx+dy*dy;
+    if(r2>=rc2) {
+      return;
+    }
+    double oneOverR2 = 1.0/r2;
+    double fOverR, u;
+    if(species==null) {
+      double oneOverR6 = oneOverR2*oneOverR2*oneOverR2;
+      fOverR = 48.0*oneOverR6*(oneOverR6-0.5)*oneOverR2;
+      u = 4.0*(oneOverR6*oneOverR6-oneOverR6)-shift0;
+    } else {
+      int a = species[i], b = species[j];
+      int p = 3*(a*numberOfSpecies+b);
+      double eps = pairTable[p];
+      double ir2 = pairTable[p+1]*oneOverR2;
+      double ir6 = ir2*ir2*ir2;
+      fOverR = eps*(48*ir6-24)*ir6*oneOverR2;
+      u = 4*eps*ir6*(ir6-1)-pairTable[p+2];
+      sums[2+a] += 0.5*u;
+      sums[2+b] += 0.5*u;
+    }
+    double fx = fOverR*dx;
+    double fy = fOverR*dy;
+    ax[i] += fx; // use Newton's third law
+    ay[i] += fy;
+    ax[j] -= fx;
+    ay[j] -= fy;
+    sums[0] += u;
+    sums[1] += dx*fx+dy*fy;
+  }
+
+  /**
+   * Returns the interaction energy of a particle at (xp, yp) with every particle except skip and
+   * sets particleVirial. The particle has the species of skip if there are species.
+   */
+  public double particleEnergy(double[] x, double[] y, int n, int skip, double xp, double yp) {
+    int a = ((species==null)||(skip<0))
+            ? 0
+            : species[skip];
+    double energy = 0;
+    double sumVirial = 0;
+    for(int j = 0; j<n; j++) {
+      if(j==skip) {
+        continue;
+      }
+      double dx = xp-x[j];
+      double dy = yp-y[j];
+      if(periodic) {
+        dx = separation(dx, Lx);
+        dy = separation(dy, Ly);
+      }
+      double r2 = dx*dx+dy*dy;
+      if(r2>=rc2) {
+        continue;
+      }
+      double oneOverR2 = 1.0/r2;
+      if(species==null) {
+        double oneOverR6 = oneOverR2*oneOverR2*oneOverR2;
+        energy += 4.0*(oneOverR6*oneOverR6-oneOverR6)-shift0;
+        sumVirial += 48.0*oneOverR6*(oneOverR6-0.5);
+      } else {
+        int b = species[j];
+        double eps = epsilon[a][b];
+        double ir2 = sigma2[a][b]*oneOverR2;
+        double ir6 = ir2*ir2*ir2;
+        energy += 4*eps*ir6*(ir6-1)-shift[a][b];
+        sumVirial += eps*(48*ir6-24)*ir6;
+      }
+    }
+    particleVirial = sumVirial;
+    return energy;
+  }
+
+  /**
+   * Returns the energy of a test particle inserted at (xp, yp), as used by the Widom method.
+   * Particles have the first species if there are species.
+   */
+  public double insertionEnergy(double[] x, double[] y, int n, double xp, double yp) {
+    return particleEnergy(x, y, n, -1, xp, yp);
+  }
+
+  /**
+   * Computes deltaEnergy and deltaVirial for moving particle i to (xNew, yNew).
+   * The coordinate arrays are not changed.
+   */
+  public void computeMove(double[] x, double[] y, int n, int i, double xNew, double yNew) {
+    double newEnergy = particleEnergy(x, y, n, i, xNew, yNew);
+    double newVirial = particleVirial;
+    double oldEnergy = particleEnergy(x, y, n, i, x[i], y[i]);
+    deltaEnergy = newEnergy-oldEnergy;
+    deltaVirial = newVirial-particleVirial;
+  }
+
+  int cell(double s, double L, int n) {
+    int c = (int) Math.floor(s/L*n);
+    if(periodic) {
+      c %= n;
+      return (c<0)
+             ? c+n
+             : c;
+    }
+    return (c<0)
+           ? 0
+           : (c>=n)
+             ? n-1
+             : c;
+  }
+
+}
+
+/*
+ * Open Source Physics software is free software; you can redistribute
+ * it and/or modify it under the terms of the GNU General Public License (GPL) as
+ * published by the Free Software Foundation; either version 2 of the License,
+ * or(at your option) any later version.
+
+ * Code that uses any portion of the code in the org.opensourcephysics package
+ * or any subpackage (subdirectory) of this package must must also be be released
+ * under the GNU GPL license.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston MA 02111-1307 USA
+ * or view the license online at http://www.gnu.org/copyleft/gpl.html
+ *
+ * Copyright (c) 2007  The Open Source Physics project
+ *                     http://www.opensourcephysics.org
+ */
@@ -0,0 +1,324 @@
+/*
+ * Open Source Physics software is free software as described near the bottom of this code file.
+ *
+ * For additional information and documentation on Open Source Physics please see:
+ * <http://www.opensourcephysics.org/>
+ */
+
+package org.opensourcephysics.stp.util;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+import org.opensourcephysics.display.Histogram;
+import org.opensourcephysics.frames.HistogramFrame;
+
+/**
+ * MeasurementPipeline moves the observables of a simulation step from the simulation thread to a
+ * consumer thread that bins them, so that histogram bookkeeping is not done inside the step.
+ *
+ * The simulation thread is the only producer. Each call to offer copies the velocities, the kinetic
+ * and potential energies, and the virial of one step into a preallocated ring buffer of doubles and
+ * publishes the new write position with an ordered store; no lock is taken and nothing is
+ * allocated. A daemon thread, started by the first offer, is the only consumer. It bins the
+ * velocities into an array of counts and sums the energies and the virial. If the ring is full the
+ * producer waits for the consumer, so no record is lost.
+ *
+ * The range of the bins is fixed when the pipeline is constructed. Values below the range are
+ * counted as underflow and values above it, including NaN, as overflow, so a diverging simulation
+ * cannot make the histogram grow without bound.
+ *
+ * The pipeline is meant for runs on several cores. Programs that may run on a single thread, such
+ * as the JavaScript versions of the applications, should append to their histograms directly.
+ *
+ * The display thread copies the bins into a Histogram or HistogramFrame with publish, typically
+ * once per display, and drain waits until every record offered so far has been binned.
+ */
+public class MeasurementPipeline {
+  public static final int KINETIC_ENERGY = 0, POTENTIAL_ENERGY = 1, VIRIAL = 2;
+  static final int HEADER = 4; // number of values, kinetic energy, potential energy, and virial
+  double[] ring;
+  int mask;
+  AtomicLong head = new AtomicLong(); // next write position, advanced by the producer
+  AtomicLong tail = new AtomicLong(); // next read position, advanced by the consumer
+  long cachedTail;                    // producer's copy of tail
+  Thread consumer;
+  volatile boolean running;
+  // consumer state, guarded by this
+  double binWidth, binOffset;
+  int offset;                         // bin k starts at binOffset+(k+offset)*binWidth
+  double[] counts;
+  long underflow, overflow;
+  long records;
+  double[] sum = new double[3], sum2 = new double[3];
+  boolean changed;
+  double[] snapshot = new double[0]; // bins copied for the display thread
+  int offsetSnapshot;
+
+  /**
+   * Constructs a pipeline whose ring buffer holds at least capacity values.
+   *
+   * @param capacity the size of the ring, at least a few records of N+4 values
+   * @param binWidth bin width of the velocity histogram
+   * @param binOffset a bin edge of the velocity histogram
+   * @param minimum smallest value binned
+   * @param maximum largest value binned
+   */
+  public MeasurementPipeline(int capacity, double binWidth, double binOffset, double minimum, double maximum) {
+    if(!(binWidth>0)||!(maximum>minimum)||Double.isInfinite(minimum)||Double.isInfinite(maximum)) {
+      throw new IllegalArgumentException("The bin width must be positive and the range finite.");
+    }
+    int size = 1;
+    while(size<capacity) {
+      size <<= 1;
+    }
+    ring = new double[size];
+    mask = size-1;
+    this.binWidth = binWidth;
+    this.binOffset = binOffset;
+    offset = (int) Math.floor((minimum-binOffset)/binWidth);
+    counts = new double[(int) Math.ceil((maximum-binOffset)/binWidth)-offset];
+  }
+
+  /**
+   * Copies one record into the ring. Called by the simulation thread only.
+   *
+   * @param values the velocities of the step, values 0 to n-1 are binned
+   * @param n
+   * @param kineticEnergy
+   * @param potentialEnergy
+   * @param virial
+   */
+  public void offer(double[] values, int n, double kineticEnergy, double potentialEnergy, double virial) {
+    int length = HEADER+n;
+    if(length>ring.length) {
+      throw new IllegalArgumentException("Record of "+length+" values does not fit in the ring.");
+    }
+    if(consumer==null) {
+      start();
+    }
+    long h = head.get();
+    while(h+length-cachedTail>ring.length) {
+      cachedTail = tail.get();
+      if(h+length-cachedTail>ring.length) {
+        LockSupport.parkNanos(10000);
+      }
+    }
+    ring[(int) (h&mask)] = n;
+    ring[(int) ((h+1)&mask)] = kineticEnergy;
+    ring[(int) ((h+2)&mask)] = potentialEnergy;
+    ring[(int) ((h+3)&mask)] = virial;
+    int start = (int) ((h+HEADER)&mask);
+    int first = Math.min(n, ring.length-start); // values before the end of the ring
+    System.arraycopy(values, 0, ring, start, first);
+    System.arraycopy(values, first, ring, 0, n-first);
+    head.lazySet(h+length);
+  }
+
+  void start() {
+    running = true;
+    consumer = new Thread(new Runnable() {
+      public void run() {
+        while(running) {
+          if(!consume()) {
+            LockSupport.parkNanos(100000);
+          }
+        }
+      }
+
+    }, "MeasurementPipeline");
+    consumer.setDaemon(true);
+    consumer.start();
+  }
+
+  /**
+   * Bins every record in the ring. Returns false if the ring was empty.
+   */
+  synchronized boolean consume() {
+    long t = tail.get();
+    long h = head.get();
+    if(t==h) {
+      return false;
+    }
+    while(t<h) {
+      int n = (int) ring[(int) (t&mask)];
+      for(int k = 0; k<3; k++) {
+        double value = ring[(int) ((t+1+k)&mask)];
+        sum[k] += value;
+        sum2[k] += value*value;
+      }
+      for(int i = 0; i<n; i++) {
+        bin(ring[(int) ((t+HEADER+i)&mask)]);
+      }
+      records++;
+      t += HEADER+n;
+    }
+    changed = true;
+    tail.lazySet(t);
+    return true;
+  }
+
+  void bin(double value) {
+    double k = Math.floor((value-binOffset)/binWidth)-offset;
+    if(k<0) {
+      underflow++;
+    } else if(k<counts.length) {
+      counts[(int) k]++;
+    } else { // also NaN
+      overflow++;
+    }
+  }
+
+  /**
+   * Waits until the consumer has binned every record offered so far.
+   */
+  public void drain() {
+    while(tail.get()<head.get()) {
+      LockSupport.parkNanos(100000);
+    }
+  }
+
+  /**
+   * Copies the bins into a histogram if records were binned since the last publish.
+   */
+  public void publish(Histogram histogram) {
+    int length = takeSnapshot();
+    if(length<0) {
+      return;
+    }
+    histogram.clear();
+    for(int k = 0; k<length; k++) {
+      if(snapshot[k]>0) {
+        histogram.append(binOffset+(k+offsetSnapshot+0.5)*binWidth, snapshot[k]);
+      }
+    }
+  }
+
+  /**
+   * Copies the bins into a histogram frame if records were binned since the last publish.
+   */
+  public void publish(HistogramFrame frame) {
+    int length = takeSnapshot();
+    if(length<0) {
+      return;
+    }
+    frame.clearData();
+    for(int k = 0; k<length; k++) {
+      if(snapshot[k]>0) {
+        frame.append(binOffset+(k+offsetSnapshot+0.5)*binWidth, snapshot[k]);
+      }
+    }
+  }
+
+  synchronized int takeSnapshot() {
+    if(!changed) {
+      return -1;
+    }
+    changed = false;
+    if(snapshot.length<counts.length) {
+      snapshot = new double[counts.length];
+    }
+    System.arraycopy(counts, 0, snapshot, 0, counts.length);
+    offsetSnapshot = offset;
+    return counts.length;
+  }
+
+  /**
+   * Returns the number of records binned so far.
+   */
+  public synchronized long getRecords() {
+    return records;
+  }
+
+  /**
+   * Returns the number of values below the range of the bins.
+   */
+  public synchronized long getUnderflow() {
+    return underflow;
+  }
+
+  /**
+   * Returns the number of values above the range of the bins or NaN.
+   */
+  public synchronized long getOverflow() {
+    return overflow;
+  }
+
+  /**
+   * Returns the mean of KINETIC_ENERGY, POTENTIAL_ENERGY, or VIRIAL over the binned records.
+   */
+  public synchronized double getMean(int observable) {
+    return (records==0)
+           ? 0
+           : sum[observable]/records;
+  }
+
+  /**
+   * Returns the variance of KINETIC_ENERGY, POTENTIAL_ENERGY, or VIRIAL over the binned records.
+   */
+  public synchronized double getVariance(int observable) {
+    if(records==0) {
+      return 0;
+    }
+    double mean = sum[observable]/records;
+    return sum2[observable]/records-mean*mean;
+  }
+
+  /**
+   * Waits for the records offered so far and then clears the bins and sums.
+   */
+  public void clear() {
+    drain();
+    synchronized(this) {
+      java.util.Arrays.fill(counts, 0);
+      java.util.Arrays.fill(sum, 0);
+      java.util.Arrays.fill(sum2, 0);
+      records = 0;
+      underflow = 0;
+      overflow = 0;
+      changed = true;
+    }
+  }
+
+  /**
+   * Stops the consumer thread after the remaining records are binned and waits for it to end.
+   * The next offer starts a new consumer.
+   */
+  public void stop() {
+    if(consumer==null) {
+      return;
+    }
+    drain();
+    running = false;
+    LockSupport.unpark(consumer);
+    try {
+      consumer.join();
+    } catch(InterruptedException ex) {
+      Thread.currentThread().interrupt();
+    }
+    consumer = null;
+  }
+
+}
+
+/*
+ * Open Source Physics software is free software; you can redistribute
+ * it and/or modify it under the terms of the GNU General Public License (GPL) as
+ * published by the Free Software Foundation; either version 2 of the License,
+ * or(at your option) any later version.
+
+ * Code that uses any portion of the code in the org.opensourcephysics package
+ * or any subpackage (subdirectory) of this package must must also be be released
+ * under the GNU GPL license.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston MA 02111-1307 USA
+ * or view the license online at http://www.gnu.org/copyleft/gpl.html
+ *
+ * Copyright (c) 2007  The Open Source Physics project
+ *                     http://www.opensourcephysics.org
+ */
@@ -0,0 +1,217 @@
+/*
+ * Open Source Physics software is free software as described near the bottom of this code file.
+ *
+ * For additional information and documentation on Open Source Physics please see:
+ * <http://www.opensourcephysics.org/>
+ */
+
+package org.opensourcephysics.stp.util;
+
+/**
+ * Multiple tau correlator for time correlation functions in bounded memory.
+ *
+ * The correlator keeps a hierarchy of short shift registers. Level 0 holds the last
+ * pointsPerLevel samples; each higher level holds averages of averagingFactor values of the
+ * level below, so lag times grow geometrically while the memory is
+ * O(levels*pointsPerLevel*dimension). Every sample is a vector of dimension values, for example
+ * all particle velocity components, and the correlation is the average over components of
+ * a_i(t)a_i(t+tau). Optionally the differences [a_i(t+tau)-a_i(t)]^2 are averaged instead,
+ * which gives mean square displacements from unwrapped positions.
+ *
+ * Reference: J. Ramirez, S. K. Sukumaran, B. Vorselaars, and A. E. Likhtman,
+ * J. Chem. Phys. 133, 154103 (2010).
+ */
+public class MultipleTauCorrelator {
+  public final int dimension, levels, pointsPerLevel, averagingFactor;
+  public final boolean displacement; // average squared differences instead of products
+  double[][] register;  // register[level][slot*dimension+component]
+  int[] filled;         // number of valid slots of each level
+  int[] newest;         // slot of the newest value of each level
+  double[][] accumulator;
+  int[] accumulated;
+  double[][] sum;       // sum[level][j] for lag j at this level
+  long[][] count;
+  double[] scalar = new double[1];
+  public long samples;
+
+  /**
+   * @param dimension number of components of each sample
+   * @param levels number of levels; the longest lag is about pointsPerLevel*averagingFactor^(levels-1)
+   * @param pointsPerLevel length of each register, a multiple of averagingFactor
+   * @param averagingFactor number of values averaged when passing to the next level
+   * @param displacement if true, correlate squared differences instead of products
+   */
+  public MultipleTauCorrelator(int dimension, int levels, int pointsPerLevel, int averagingFactor, boolean displacement) {
+    this.dimension = dimension;
+    this.levels = levels;
+    this.pointsPerLevel = pointsPerLevel;
+    this.averagingFactor = averagingFactor;
+    this.displacement = displacement;
+    register = new double[levels][pointsPerLevel*dimension];
+    accumulator = new double[levels][dimension];
+    filled = new int[levels];
+    newest = new int[levels];
+    accumulated = new int[levels];
+    sum = new double[levels][pointsPerLevel];
+    count = new long[levels][pointsPerLevel];
+  }
+
+  public void reset() {
+    for(int l = 0; l<levels; l++) {
+      filled[l] = 0;
+      newest[l] = 0;
+      accumulated[l] = 0;
+      java.util.Arrays.fill(accumulator[l], 0);
+      java.util.Arrays.fill(sum[l], 0);
+      java.util.Arrays.fill(count[l], 0);
+    }
+    samples = 0;
+  }
+
+  /**
+   * Adds a scalar sample; the dimension must be one.
+   */
+  public void update(double a) {
+    scalar[0] = a;
+    update(scalar);
+  }
+
+  /**
+   * Adds a sample with dimension components. The array is copied.
+   */
+  public void update(double[] a) {
+    samples++;
+    add(0, a);
+  }
+
+  void add(int level, double[] a) {
+    int p = pointsPerLevel;
+    int slot = (filled[level]==0)
+               ? 0
+               : (newest[level]+1)%p;
+    newest[level] = slot;
+    System.arraycopy(a, 0, register[level], slot*dimension, dimension);
+    if(filled[level]<p) {
+      filled[level]++;
+    }
+    double[] reg = register[level];
+    // lags below p/m are already covered by the level below
+    int firstLag = (level==0)
+                   ? 0
+                   : p/averagingFactor;
+    int base = slot*dimension;
+    for(int j = firstLag; j<filled[level]; j++) {
+      int other = ((slot-j+p)%p)*dimension;
+      double c = 0;
+      if(displacement) {
+        for(int d = 0; d<dimension; d++) {
+          double diff = reg[base+d]-reg[other+d];
+          c += diff*diff;
+        }
+      } else {
+        for(int d = 0; d<dimension; d++) {
+          c += reg[base+d]*reg[other+d];
+        }
+      }
+      sum[level][j] += c/dimension;
+      count[level][j]++;
+    }
+    if(level+1<levels) {
+      double[] acc = accumulator[level];
+      for(int d = 0; d<dimension; d++) {
+        acc[d] += a[d];
+      }
+      if(++accumulated[level]==averagingFactor) {
+        for(int d = 0; d<dimension; d++) {
+          acc[d] /= averagingFactor;
+        }
+        add(level+1, acc);
+        java.util.Arrays.fill(acc, 0);
+        accumulated[level] = 0;
+      }
+    }
+  }
+
+  /**
+   * Returns the number of lags with data.
+   */
+  public int getNumberOfLags() {
+    int n = 0;
+    for(int l = 0; l<levels; l++) {
+      int firstLag = (l==0)
+                     ? 0
+                     : pointsPerLevel/averagingFactor;
+      for(int j = firstLag; j<pointsPerLevel; j++) {
+        if(count[l][j]>0) {
+          n++;
+        }
+      }
+    }
+    return n;
+  }
+
+  /**
+   * Returns the lags in units of the sampling interval, in increasing order.
+   */
+  public double[] getLags() {
+    double[] lags = new double[getNumberOfLags()];
+    int n = 0;
+    long scale = 1;
+    for(int l = 0; l<levels; l++) {
+      int firstLag = (l==0)
+                     ? 0
+                     : pointsPerLevel/averagingFactor;
+      for(int j = firstLag; j<pointsPerLevel; j++) {
+        if(count[l][j]>0) {
+          lags[n++] = j*scale;
+        }
+      }
+      scale *= averagingFactor;
+    }
+    return lags;
+  }
+
+  /**
+   * Returns the correlation at each lag returned by getLags.
+   */
+  public double[] getCorrelation() {
+    double[] c = new double[getNumberOfLags()];
+    int n = 0;
+    for(int l = 0; l<levels; l++) {
+      int firstLag = (l==0)
+                     ? 0
+                     : pointsPerLevel/averagingFactor;
+      for(int j = firstLag; j<pointsPerLevel; j++) {
+        if(count[l][j]>0) {
+          c[n++] = sum[l][j]/count[l][j];
+        }
+      }
+    }
+    return c;
+  }
+
+}
+
+/*
+ * Open Source Physics software is free software; you can redistribute
+ * it and/or modify it under the terms of the GNU General Public License (GPL) as
+ * published by the Free Software Foundation; either version 2 of the License,
+ * or(at your option) any later version.
+
+ * Code that uses any portion of the code in the org.opensourcephysics package
+ * or any subpackage (subdirectory) of this package must must also be be released
+ * under the GNU GPL license.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston MA 02111-1307 USA
+ * or view the license online at http://www.gnu.org/copyleft/gpl.html
+ *
+ * Copyright (c) 2007  The Open Source Physics project
+ *                     http://www.opensourcephysics.org
+ */
@@ -0,0 +1,281 @@
+/*
+ * Open Source Physics software is free software as described near the bottom of this code file.
+ *
+ * For additional information and documentation on Open Source Physics please see:
+ * <http://www.opensourcephysics.org/>
+ */
+
+package org.opensourcephysics.stp.util;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * ParallelPairs divides a pair force calculation among the threads of a ForkJoinPool.
+ *
+ * The items (rows of a pair loop, columns of a cell grid) are split into one contiguous range
+ * per worker with about the same amount of work. Each worker adds its forces to its own
+ * buffers and its energy, virial, and other sums to its own array, and the buffers are then
+ * added in worker order. The result depends only on the number of threads, not on the timing
+ * of the threads, so runs with a fixed number of threads are reproducible bit for bit.
+ * Forces in three dimensions are computed in the same way by a Task3D.
+ * The actions given to the pool are allocated once and reinitialized for every call.
+ */
+public class ParallelPairs {
+  /**
+   * The pair work of one worker.
+   */
+  public interface Task {
+    /**
+     * Adds the forces of the pairs belonging to items first to last-1 to ax and ay
+     * and their energy and other observables to sums.
+     */
+    void compute(int first, int last, double[] ax, double[] ay, double[] sums);
+
+  }
+
+  /**
+   * The pair work of one worker in three dimensions.
+   */
+  public interface Task3D {
+    /**
+     * Adds the forces of the pairs belonging to items first to last-1 to ax, ay, and az
+     * and their energy and other observables to sums.
+     */
+    void compute(int first, int last, double[] ax, double[] ay, double[] az, double[] sums);
+
+  }
+
+  int numberOfThreads;
+  ForkJoinPool pool;
+  int[] bounds;
+  double[][][] force = new double[0][][]; // force[worker][component]
+  double[][] out2 = new double[2][], out3 = new double[3][]; // the result arrays of the last call
+  double[][] sums = new double[0][];
+  double[] total = new double[0];
+  Pairs[] pairs;    // one action per worker for the pair work
+  Reduce[] reduce;  // one action per worker for the reduction
+  All allPairs, allReduce;
+  // the arguments of the current call, read by the actions
+  Task task;
+  Task3D task3D;
+  double[][] out;
+  int n;
+
+  public ParallelPairs(int numberOfThreads) {
+    this.numberOfThreads = Math.max(1, numberOfThreads);
+    pool = new ForkJoinPool(this.numberOfThreads);
+    bounds = new int[this.numberOfThreads+1];
+    pairs = new Pairs[this.numberOfThreads];
+    reduce = new Reduce[this.numberOfThreads];
+    for(int w = 0; w<this.numberOfThreads; w++) {
+      pairs[w] = new Pairs(w);
+      reduce[w] = new Reduce(w);
+    }
+    allPairs = new All(pairs);
+    allReduce = new All(reduce);
+  }
+
+  /**
+   * Clears the buffers of a worker and computes the pairs of its items.
+   */
+  class Pairs extends RecursiveAction {
+    int worker;
+
+    Pairs(int worker) {
+      this.worker = worker;
+    }
+
+    protected void compute() {
+      int first = bounds[worker], last = bounds[worker+1];
+      double[][] wf = force[worker];
+      double[] ws = sums[worker];
+      for(int c = 0; c<wf.length; c++) {
+        java.util.Arrays.fill(wf[c], 0, n, 0);
+      }
+      java.util.Arrays.fill(ws, 0);
+      if(first>=last) {
+        return;
+      }
+      if(task!=null) {
+        task.compute(first, last, wf[0], wf[1], ws);
+      } else {
+        task3D.compute(first, last, wf[0], wf[1], wf[2], ws);
+      }
+    }
+
+  }
+
+  /**
+   * Adds the buffers of all workers in worker order for one range of particles.
+   */
+  class Reduce extends RecursiveAction {
+    int worker;
+
+    Reduce(int worker) {
+      this.worker = worker;
+    }
+
+    protected void compute() {
+      int first = (int) ((long) worker*n/numberOfThreads);
+      int last = (int) ((long) (worker+1)*n/numberOfThreads);
+      for(int c = 0; c<out.length; c++) {
+        double[] sum = out[c];
+        for(int i = first; i<last; i++) {
+          double f = 0;
+          for(int k = 0; k<numberOfThreads; k++) {
+            f += force[k][c][i];
+          }
+          sum[i] = f;
+        }
+      }
+    }
+
+  }
+
+  /**
+   * Runs a set of actions and waits for them.
+   */
+  static class All extends RecursiveAction {
+    RecursiveAction[] actions;
+
+    All(RecursiveAction[] actions) {
+      this.actions = actions;
+    }
+
+    protected void compute() {
+      invokeAll(actions);
+    }
+
+  }
+
+  public int getNumberOfThreads() {
+    return numberOfThreads;
+  }
+
+  /**
+   * Computes the forces on n particles.
+   *
+   * @param prefix prefix[k] is the work of items 0 to k-1, so prefix has numberOfItems+1 entries
+   * @param numberOfItems
+   * @param n number of particles
+   * @param numberOfSums length of the sums passed to the task
+   * @param task
+   * @param fx set to the summed x forces
+   * @param fy set to the summed y forces
+   * @return the sums added in worker order, reused by the next call
+   */
+  public double[] run(long[] prefix, int numberOfItems, int n, int numberOfSums, Task task, double[] fx, double[] fy) {
+    if((out2[0]!=fx)||(out2[1]!=fy)) {
+      out2 = new double[][] {fx, fy};
+    }
+    return run(prefix, numberOfItems, n, numberOfSums, task, null, out2);
+  }
+
+  /**
+   * Computes the forces on n particles in three dimensions.
+   *
+   * @param prefix prefix[k] is the work of items 0 to k-1, so prefix has numberOfItems+1 entries
+   * @param numberOfItems
+   * @param n number of particles
+   * @param numberOfSums length of the sums passed to the task
+   * @param task
+   * @param fx set to the summed x forces
+   * @param fy set to the summed y forces
+   * @param fz set to the summed z forces
+   * @return the sums added in worker order, reused by the next call
+   */
+  public double[] run(long[] prefix, int numberOfItems, int n, int numberOfSums, Task3D task, double[] fx, double[] fy, double[] fz) {
+    if((out3[0]!=fx)||(out3[1]!=fy)||(out3[2]!=fz)) {
+      out3 = new double[][] {fx, fy, fz};
+    }
+    return run(prefix, numberOfItems, n, numberOfSums, null, task, out3);
+  }
+
+  double[] run(long[] prefix, int numberOfItems, int n, int numberOfSums, Task task, Task3D task3D, double[][] out) {
+    int components = out.length;
+    if((force.length!=numberOfThreads)||(force[0].length!=components)||(force[0][0].length<n)) {
+      force = new double[numberOfThreads][components][n];
+    }
+    if(total.length!=numberOfSums) {
+      sums = new double[numberOfThreads][numberOfSums];
+      total = new double[numberOfSums];
+    }
+    balance(prefix, numberOfItems);
+    this.task = task;
+    this.task3D = task3D;
+    this.out = out;
+    this.n = n;
+    try {
+      runAll(allPairs);
+      // add the buffers in worker order, with the particles divided among the threads
+      runAll(allReduce);
+    } finally {
+      this.task = null;
+      this.task3D = null;
+    }
+    java.util.Arrays.fill(total, 0);
+    for(int w = 0; w<numberOfThreads; w++) {
+      for(int k = 0; k<numberOfSums; k++) {
+        total[k] += sums[w][k];
+      }
+    }
+    return total;
+  }
+
+  void runAll(All all) {
+    for(int w = 0; w<all.actions.length; w++) {
+      all.actions[w].reinitialize();
+    }
+    all.reinitialize();
+    pool.invoke(all);
+  }
+
+  /**
+   * Sets bounds so that every worker gets about the same share of the total work.
+   */
+  void balance(long[] prefix, int numberOfItems) {
+    long work = prefix[numberOfItems];
+    bounds[0] = 0;
+    int item = 0;
+    for(int w = 1; w<numberOfThreads; w++) {
+      long target = work*w/numberOfThreads;
+      while((item<numberOfItems)&&(prefix[item]<target)) {
+        item++;
+      }
+      bounds[w] = item;
+    }
+    bounds[numberOfThreads] = numberOfItems;
+  }
+
+  /**
+   * Stops the worker threads.
+   */
+  public void shutdown() {
+    pool.shutdown();
+  }
+
+}
+
+/*
+ * Open Source Physics software is free software; you can redistribute
+ * it and/or modify it under the terms of the GNU General Public License (GPL) as
+ * published by the Free Software Foundation; either version 2 of the License,
+ * or(at your option) any later version.
+
+ * Code that uses any portion of the code in the org.opensourcephysics package
+ * or any subpackage (subdirectory) of this package must must also be be released
+ * under the GNU GPL license.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston MA 02111-1307 USA
+ * or view the license online at http://www.gnu.org/copyleft/gpl.html
+ *
+ * Copyright (c) 2007  The Open Source Physics project
+ *                     http://www.opensourcephysics.org
+ */
@@ -0,0 +1,201 @@
+/*
+ * Open Source Physics software is free software as described near the bottom of this code file.
+ *
+ * For additional information and documentation on Open Source Physics please see:
+ * <http://www.opensourcephysics.org/>
+ */
+
+package org.opensourcephysics.stp.util;
+
+/**
+ * RandomPlacement places particles at random in a rectangle so that no two are closer than a
+ * minimum distance.
+ *
+ * Particles are added one at a time at random positions, and a trial position is tested only
+ * against the particles in the surrounding cells of a grid whose cells are at least the minimum
+ * distance wide, so each trial costs a fixed amount of work. Random addition cannot exceed the
+ * jamming coverage of about 0.547 of the area; above this coverage, or if too many trials in a
+ * row fail, the particles are instead placed on randomly chosen sites of a staggered lattice and
+ * moved by random displacements that keep them at least the minimum distance apart, as far as the
+ * lattice spacing allows.
+ */
+public class RandomPlacement {
+  public static final double JAMMING_COVERAGE = 0.547;
+  public static final int MAXIMUM_FAILURES = 1000; // failed trials in a row before falling back to a lattice
+
+  /**
+   * Places n particles in the box 0 to Lx by 0 to Ly.
+   *
+   * @return true if the particles were placed at random, false if on a lattice
+   */
+  public static boolean place(double[] x, double[] y, int n, double Lx, double Ly, double minimumDistance, boolean periodic) {
+    return place(x, y, n, 0, 0, Lx, Ly, minimumDistance, periodic, periodic);
+  }
+
+  /**
+   * Places n particles in the rectangle x0 to x0+width by y0 to y0+height.
+   *
+   * @return true if the particles were placed at random, false if on a lattice
+   */
+  public static boolean place(double[] x, double[] y, int n, double x0, double y0, double width, double height, double minimumDistance, boolean periodicX, boolean periodicY) {
+    double coverage = 0.25*Math.PI*minimumDistance*minimumDistance*n/(width*height);
+    if((coverage<JAMMING_COVERAGE)&&placeRandomly(x, y, n, x0, y0, width, height, minimumDistance, periodicX, periodicY)) {
+      return true;
+    }
+    placeOnLattice(x, y, n, x0, y0, width, height, minimumDistance, periodicX, periodicY);
+    return false;
+  }
+
+  static boolean placeRandomly(double[] x, double[] y, int n, double x0, double y0, double width, double height, double d, boolean periodicX, boolean periodicY) {
+    int nx = Math.max(1, Math.min((int) (width/d), 4096));
+    int ny = Math.max(1, Math.min((int) (height/d), 4096));
+    int[] head = new int[nx*ny];
+    int[] next = new int[n];
+    java.util.Arrays.fill(head, -1);
+    double d2 = d*d;
+    int failures = 0;
+    for(int i = 0; i<n; ) {
+      double xi = width*Math.random();
+      double yi = height*Math.random();
+      int cx = Math.min((int) (xi/width*nx), nx-1);
+      int cy = Math.min((int) (yi/height*ny), ny-1);
+      boolean overlap = false;
+      for(int a = cx-1; (a<=cx+1)&&!overlap; a++) {
+        int ca = a;
+        if((ca<0)||(ca>=nx)) {
+          if(!periodicX) {
+            continue;
+          }
+          ca = (ca+nx)%nx;
+        }
+        for(int b = cy-1; (b<=cy+1)&&!overlap; b++) {
+          int cb = b;
+          if((cb<0)||(cb>=ny)) {
+            if(!periodicY) {
+              continue;
+            }
+            cb = (cb+ny)%ny;
+          }
+          for(int j = head[ca*ny+cb]; j>=0; j = next[j]) {
+            double dx = xi-(x[j]-x0);
+            double dy = yi-(y[j]-y0);
+            if(periodicX) {
+              dx -= width*Math.rint(dx/width);
+            }
+            if(periodicY) {
+              dy -= height*Math.rint(dy/height);
+            }
+            if(dx*dx+dy*dy<d2) {
+              overlap = true;
+              break;
+            }
+          }
+        }
+      }
+      if(overlap) {
+        if(++failures>MAXIMUM_FAILURES) {
+          return false;
+        }
+        continue;
+      }
+      failures = 0;
+      x[i] = x0+xi;
+      y[i] = y0+yi;
+      int c = cx*ny+cy;
+      next[i] = head[c];
+      head[c] = i;
+      i++;
+    }
+    return true;
+  }
+
+  static void placeOnLattice(double[] x, double[] y, int n, double x0, double y0, double width, double height, double d, boolean periodicX, boolean periodicY) {
+    // choose the number of columns that gives the largest nearest neighbor distance
+    int columns = 1;
+    double spacing = 0;
+    for(int nx = 1; nx<=n; nx++) {
+      int ny = (n+nx-1)/nx;
+      double s = latticeSpacing(width/nx, height/ny, nx, ny, periodicX, periodicY);
+      if(s>spacing) {
+        spacing = s;
+        columns = nx;
+      }
+      if(ny==1) {
+        break;
+      }
+    }
+    int rows = (n+columns-1)/columns;
+    double w = width/columns, h = height/rows;
+    // random choice of n sites
+    int[] site = new int[columns*rows];
+    for(int s = 0; s<site.length; s++) {
+      site[s] = s;
+    }
+    double radius = Math.max(0, 0.5*(spacing-d));
+    radius = Math.min(radius, Math.min(0.25*w, 0.5*h)); // stays inside the box
+    for(int i = 0; i<n; i++) {
+      int k = i+(int) ((site.length-i)*Math.random());
+      int s = site[k];
+      site[k] = site[i];
+      site[i] = s;
+      int row = s/columns, column = s%columns;
+      double r = radius*Math.sqrt(Math.random());
+      double theta = 2*Math.PI*Math.random();
+      x[i] = x0+w*(column+(((row&1)==0)
+                           ? 0.25
+                           : 0.75))+r*Math.cos(theta);
+      y[i] = y0+h*(row+0.5)+r*Math.sin(theta);
+      if(periodicX) {
+        x[i] = x0+LennardJones.position(x[i]-x0, width);
+      }
+      if(periodicY) {
+        y[i] = y0+LennardJones.position(y[i]-y0, height);
+      }
+    }
+  }
+
+  /**
+   * Returns the nearest neighbor distance of a lattice whose odd rows are shifted by half a column.
+   */
+  static double latticeSpacing(double w, double h, int nx, int ny, boolean periodicX, boolean periodicY) {
+    double s = Double.MAX_VALUE;
+    if((nx>1)||periodicX) {
+      s = w;
+    }
+    if(ny>1) {
+      boolean aligned = periodicY&&((ny&1)==1); // the first and last rows touch and are both unshifted
+      s = Math.min(s, aligned
+                      ? h
+                      : Math.sqrt(0.25*w*w+h*h));
+    }
+    if((ny>2)||periodicY) {
+      s = Math.min(s, 2*h); // rows with the same shift
+    }
+    return s;
+  }
+
+}
+
+/*
+ * Open Source Physics software is free software; you can redistribute
+ * it and/or modify it under the terms of the GNU General Public License (GPL) as
+ * published by the Free Software Foundation; either version 2 of the License,
+ * or(at your option) any later version.
+
+ * Code that uses any portion of the code in the org.opensourcephysics package
+ * or any subpackage (subdirectory) of this package must must also be be released
+ * under the GNU GPL license.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston MA 02111-1307 USA
+ * or view the license online at http://www.gnu.org/copyleft/gpl.html
+ *
+ * Copyright (c) 2007  The Open Source Physics project
+ *                     http://www.opensourcephysics.org
+ */
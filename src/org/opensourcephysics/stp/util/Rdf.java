@@ -6,6 +6,27 @@
  */
 
 package org.opensourcephysics.stp.util;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Rdf accumulates the radial distribution function g(r) of particles in a two dimensional box
+ * and, optionally, the static structure factor S(k).
+ *
+ * Only pairs closer than the range of the bins are visited: when the box holds at least three
+ * cells of that length in each direction the pairs are found with a cell list, otherwise every
+ * pair is tested, in both cases comparing squared distances before taking a root. With more than
+ * one thread the rows or cell columns are divided among the threads of a ForkJoinPool, each with
+ * its own bins, and the bins are added afterwards; the counts are the same as the serial counts.
+ *
+ * If setStructureFactorGrid is called with a grid size m, append also assigns the particles to an
+ * m by m density grid with cloud in cell weights, transforms the grid with FourierTransform, and
+ * adds |rho(k)|^2, corrected for the assignment window, to bins of |k| below half the Nyquist
+ * wave number. The grid is periodic, so S(k) assumes periodic boundary conditions.
+ *
+ * append only adds to running sums, including the normalization sums shared by g(r) and S(k),
+ * so normalize costs a pass over the bins and both can be sampled every step.
+ */
 public class Rdf {
   public double bin = 0.1;
   public double[] x, y;
@@ -16,6 +37,16 @@ public class Rdf {
   public int ncorr = 0;
   double[] gr;
   public double[] rx, ngr; // normalized gr
+  public double[] k, sk;   // wave numbers and normalized S(k)
+  double pairNormalization; // sum over samples of N^2/(2 Lx Ly)
+  double particleSum;       // sum over samples of N
+  int nCellX, nCellY;
+  int[] cellHead = new int[0], cellNext = new int[0];
+  ForkJoinPool pool;
+  int numberOfThreads = 1;
+  double[][] partial = new double[0][];
+  int gridSize;
+  double[] re, im, skSum, modes;
 
   /**
    * Constructor Rdf
@@ -32,11 +63,19 @@ public class Rdf {
   }
 
   public void initialize(double lx, double ly, double _bin) {
+    initialize(lx, ly, _bin, (lx>ly)
+                             ? 0.5*lx
+                             : 0.5*ly);
+  }
+
+  /**
+   * Initializes the bins of g(r) up to a range smaller than half the box, for which the pairs
+   * are found with a cell list.
+   */
+  public void initialize(double lx, double ly, double _bin, double _rmax) {
     Lx = lx;
     Ly = ly;
-    rmax = (Lx>Ly)
-           ? 0.5*Lx
-           : 0.5*Ly;
+    rmax = _rmax;
     bin = _bin;
     nbins = (int) Math.ceil(rmax/bin);
     gr = new double[nbins];
@@ -46,6 +85,12 @@ public class Rdf {
       rx[i] = i*bin;
       gr[i] = 0.0;
     }
+    ncorr = 0;
+    pairNormalization = 0;
+    particleSum = 0;
+    if(gridSize>0) {
+      setStructureFactorGrid(gridSize);
+    }
   }
 
   public void reset() {
@@ -54,44 +99,312 @@ public class Rdf {
       gr[i] = 0.0;
     }
     ncorr = 0;
+    pairNormalization = 0;
+    particleSum = 0;
+    if(skSum!=null) {
+      java.util.Arrays.fill(skSum, 0);
+    }
+  }
+
+  /**
+   * Sets the number of threads used to bin the pairs. One thread bins on the calling thread.
+   */
+  public void setNumberOfThreads(int numberOfThreads) {
+    if(pool!=null) {
+      pool.shutdown();
+      pool = null;
+    }
+    this.numberOfThreads = Math.max(1, numberOfThreads);
+    if(this.numberOfThreads>1) {
+      pool = new ForkJoinPool(this.numberOfThreads);
+    }
+  }
+
+  /**
+   * Stops the worker threads, if any, and bins on the calling thread afterwards.
+   */
+  public void shutdown() {
+    setNumberOfThreads(1);
+  }
+
+  /**
+   * Enables the structure factor with an m by m density grid, m rounded up to a power of two,
+   * or disables it if m is 0. The bins of S(k) have the width 2 pi/max(Lx, Ly).
+   */
+  public void setStructureFactorGrid(int m) {
+    if(m<=0) {
+      gridSize = 0;
+      re = im = skSum = modes = k = sk = null;
+      return;
+    }
+    gridSize = FourierTransform.powerOfTwo(m);
+    re = new double[gridSize*gridSize];
+    im = new double[gridSize*gridSize];
+    double dk = 2*Math.PI/Math.max(Lx, Ly);
+    double kmax = 0.5*Math.PI*gridSize/Math.max(Lx, Ly); // half the Nyquist wave number
+    int nk = (int) (kmax/dk);
+    k = new double[nk];
+    sk = new double[nk];
+    skSum = new double[nk];
+    modes = new double[nk];
+    for(int b = 0; b<nk; b++) {
+      k[b] = (b+1)*dk;
+    }
+    // number of grid wave vectors in each bin
+    for(int i = 0; i<gridSize; i++) {
+      for(int j = 0; j<gridSize; j++) {
+        int b = kBin(i, j, dk, nk);
+        if(b>=0) {
+          modes[b]++;
+        }
+      }
+    }
+  }
+
+  /**
+   * Returns the bin of the wave vector of grid point i, j or -1 if it is not binned.
+   */
+  int kBin(int i, int j, double dk, int nk) {
+    int m = gridSize;
+    double kx = 2*Math.PI*((i<m/2)
+                           ? i
+                           : i-m)/Lx;
+    double ky = 2*Math.PI*((j<m/2)
+                           ? j
+                           : j-m)/Ly;
+    int b = (int) Math.round(Math.sqrt(kx*kx+ky*ky)/dk)-1;
+    return (b<nk)
+           ? b
+           : -1;
   }
 
   public void append(double[] x, double[] y) {
     N = x.length;
     ncorr++;
-    for(int i = 0; i<N; i++) {
+    pairNormalization += 0.5*N*(double) N/(Lx*Ly);
+    particleSum += N;
+    double range = nbins*bin; // pairs beyond range are not binned
+    nCellX = nCellY = 0;
+    if(range>0) {
+      nCellX = (int) (Lx/range);
+      nCellY = (int) (Ly/range);
+    }
+    final boolean cells = (nCellX>=3)&&(nCellY>=3);
+    if(cells) {
+      buildCells(x, y);
+    }
+    final int items = cells
+                      ? nCellX
+                      : N;
+    if(pool==null) {
+      if(cells) {
+        binCells(x, y, 0, items, gr);
+      } else {
+        binRows(x, y, 0, items, gr);
+      }
+    } else {
+      binParallel(x, y, items, cells);
+    }
+    if(gridSize>0) {
+      appendStructureFactor(x, y);
+    }
+  }
+
+  void binParallel(final double[] x, final double[] y, int items, final boolean cells) {
+    if((partial.length!=numberOfThreads)||(partial[0].length!=nbins)) {
+      partial = new double[numberOfThreads][nbins];
+    }
+    RecursiveAction[] actions = new RecursiveAction[numberOfThreads];
+    int first = 0;
+    for(int w = 0; w<numberOfThreads; w++) {
+      int last;
+      if(cells) {
+        last = (int) ((long) (w+1)*items/numberOfThreads);
+      } else { // rows near the end of the pair loop have fewer pairs
+        double f = 1-Math.sqrt(1-(w+1.0)/numberOfThreads);
+        last = (w==numberOfThreads-1)
+               ? items
+               : Math.max(first, (int) (f*items));
+      }
+      final int a = first, b = last;
+      final double[] h = partial[w];
+      java.util.Arrays.fill(h, 0);
+      actions[w] = new RecursiveAction() {
+        protected void compute() {
+          if(cells) {
+            binCells(x, y, a, b, h);
+          } else {
+            binRows(x, y, a, b, h);
+          }
+        }
+
+      };
+      first = last;
+    }
+    final RecursiveAction[] all = actions;
+    pool.invoke(new RecursiveAction() {
+      protected void compute() {
+        invokeAll(all);
+      }
+
+    });
+    for(int w = 0; w<numberOfThreads; w++) {
+      for(int i = 0; i<nbins; i++) {
+        gr[i] += partial[w][i];
+      }
+    }
+  }
+
+  void binRows(double[] x, double[] y, int first, int last, double[] h) {
+    double range = nbins*bin;
+    double range2 = range*range;
+    for(int i = first; i<last; i++) {
       for(int j = i+1; j<N; j++) {
-        double dx = x[i]-x[j];
-        double dy = y[i]-y[j];
-        if(pbc) {
-          dx = separation(dx, Lx);
-          dy = separation(dy, Ly);
+        binPair(x, y, i, j, range2, h);
+      }
+    }
+  }
+
+  void buildCells(double[] x, double[] y) {
+    if(cellHead.length!=nCellX*nCellY) {
+      cellHead = new int[nCellX*nCellY];
+    }
+    if(cellNext.length<N) {
+      cellNext = new int[N];
+    }
+    java.util.Arrays.fill(cellHead, -1);
+    for(int i = N-1; i>=0; i--) {
+      int c = cell(x[i], Lx, nCellX)*nCellY+cell(y[i], Ly, nCellY);
+      cellNext[i] = cellHead[c];
+      cellHead[c] = i;
+    }
+  }
+
+  static int cell(double s, double L, int n) {
+    int c = (int) Math.floor(s/L*n)%n;
+    return (c<0)
+           ? c+n
+           : c;
+  }
+
+  void binCells(double[] x, double[] y, int firstColumn, int lastColumn, double[] h) {
+    double range = nbins*bin;
+    double range2 = range*range;
+    for(int cx = firstColumn; cx<lastColumn; cx++) {
+      for(int cy = 0; cy<nCellY; cy++) {
+        for(int i = cellHead[cx*nCellY+cy]; i>=0; i = cellNext[i]) {
+          for(int j = cellNext[i]; j>=0; j = cellNext[j]) {
+            binPair(x, y, i, j, range2, h);
+          }
+          // the four forward neighbor cells so that each pair of cells is visited once
+          for(int n = 0; n<4; n++) {
+            int nx = cx+((n==0)
+                         ? 0
+                         : 1);
+            int ny = cy+((n==0)
+                         ? 1
+                         : n-2);
+            if(pbc) {
+              nx = (nx+nCellX)%nCellX;
+              ny = (ny+nCellY)%nCellY;
+            } else if((nx>=nCellX)||(ny<0)||(ny>=nCellY)) {
+              continue;
+            }
+            for(int j = cellHead[nx*nCellY+ny]; j>=0; j = cellNext[j]) {
+              binPair(x, y, i, j, range2, h);
+            }
+          }
         }
-        double dr = dx*dx+dy*dy;
-        dr = Math.sqrt(dr);
-        int nbin = (int) ((dr+0.0000001)/bin);
-        if(nbin<nbins) {
-          //if(nbin == 9)System.out.println(dr);
-          gr[nbin]++;
+      }
+    }
+  }
+
+  void binPair(double[] x, double[] y, int i, int j, double range2, double[] h) {
+    double dx = x[i]-x[j];
+    double dy = y[i]-y[j];
+    if(pbc) {
+      dx = separation(dx, Lx);
+      dy = separation(dy, Ly);
+    }
+    double dr = dx*dx+dy*dy;
+    if(dr>=range2) {
+      return;
+    }
+    dr = Math.sqrt(dr);
+    int nbin = (int) ((dr+0.0000001)/bin);
+    if(nbin<nbins) {
+      h[nbin]++;
+    }
+  }
+
+  void appendStructureFactor(double[] x, double[] y) {
+    int m = gridSize;
+    java.util.Arrays.fill(re, 0);
+    java.util.Arrays.fill(im, 0);
+    // cloud in cell assignment
+    for(int i = 0; i<N; i++) {
+      double gx = LennardJones.position(x[i], Lx)/Lx*m;
+      double gy = LennardJones.position(y[i], Ly)/Ly*m;
+      int ix = (int) gx, iy = (int) gy;
+      double fx = gx-ix, fy = gy-iy;
+      ix %= m;
+      iy %= m;
+      int ix1 = (ix+1)%m, iy1 = (iy+1)%m;
+      re[ix*m+iy] += (1-fx)*(1-fy);
+      re[ix1*m+iy] += fx*(1-fy);
+      re[ix*m+iy1] += (1-fx)*fy;
+      re[ix1*m+iy1] += fx*fy;
+    }
+    FourierTransform.transform2D(re, im, m, m, false);
+    double dk = 2*Math.PI/Math.max(Lx, Ly);
+    int nk = skSum.length;
+    for(int i = 0; i<m; i++) {
+      for(int j = 0; j<m; j++) {
+        int b = kBin(i, j, dk, nk);
+        if(b<0) {
+          continue;
         }
+        // window of the assignment, sinc^2 in each direction
+        double wx = window(((i<m/2)
+                            ? i
+                            : i-m)*Math.PI/m);
+        double wy = window(((j<m/2)
+                            ? j
+                            : j-m)*Math.PI/m);
+        double w = wx*wy;
+        int g = i*m+j;
+        skSum[b] += (re[g]*re[g]+im[g]*im[g])/(w*w);
       }
     }
   }
 
+  static double window(double u) {
+    if(u==0) {
+      return 1;
+    }
+    double sinc = Math.sin(u)/u;
+    return sinc*sinc;
+  }
+
   public void normalize() {
     double area;
     double pi = Math.PI;
     int i = 0;
     int imax = (int) (rmax/bin);
-    double rho = N/Lx/Ly;
-    double norm = 0.5*rho*ncorr*N;
     while(i<imax) {
       double r = i*bin;
       area = pi*((r+bin)*(r+bin)-r*r);
-      area *= norm;
+      area *= pairNormalization;
       ngr[i] = gr[i]/area;
       i++;
     }
+    if(skSum!=null) {
+      for(int b = 0; b<sk.length; b++) {
+        sk[b] = (modes[b]>0)
+                ? skSum[b]/(modes[b]*particleSum)
+                : 0;
+      }
+    }
   }
 
   public void setBinSize(double _bin) {
@@ -0,0 +1,206 @@
+/*
+ * Open Source Physics software is free software as described near the bottom of this code file.
+ *
+ * For additional information and documentation on Open Source Physics please see:
+ * <http://www.opensourcephysics.org/>
+ */
+
+package org.opensourcephysics.stp.util;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * TrajectoryReader gives random access to the frames of a file written by TrajectoryWriter.
+ *
+ * The file is memory mapped in segments of whole frames, each mapped when first used, so only the
+ * pages of the frames that are read are brought into memory and long runs are never loaded into
+ * the heap. The number of frames is found from the length of the file, so a file whose writer
+ * was not closed can be read up to its last complete frame. Files of version 1 are read with
+ * a radius of NaN.
+ */
+public class TrajectoryReader {
+  static final int SEGMENT_BYTES = 1<<28;
+  public int numberOfParticles, encoding, version;
+  public boolean velocities;
+  public double Lx, Ly, velocityScale;
+  FileChannel channel;
+  int frameSize, frameHeader, framesPerSegment; // frameHeader is the size of the step, time, and radius
+  long numberOfFrames;
+  ByteBuffer[] segments;
+
+  public TrajectoryReader(File file) throws IOException {
+    channel = FileChannel.open(file.toPath(), StandardOpenOption.READ);
+    ByteBuffer header = ByteBuffer.allocate(TrajectoryWriter.HEADER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+    channel.read(header, 0);
+    if(header.hasRemaining()||(header.getInt(0)!=TrajectoryWriter.MAGIC)) {
+      channel.close();
+      throw new IOException(file+" is not a trajectory file.");
+    }
+    version = header.getInt(4);
+    if((version<1)||(version>TrajectoryWriter.VERSION)) {
+      channel.close();
+      throw new IOException(file+" has unsupported version "+header.getInt(4)+".");
+    }
+    numberOfParticles = header.getInt(8);
+    encoding = header.getInt(12);
+    velocities = header.getInt(16)!=0;
+    Lx = header.getDouble(24);
+    Ly = header.getDouble(32);
+    velocityScale = header.getDouble(40);
+    frameSize = TrajectoryWriter.frameSize(numberOfParticles, encoding, velocities);
+    frameHeader = 24;
+    if(version==1) {
+      frameSize -= 8;
+      frameHeader = 16;
+    }
+    framesPerSegment = Math.max(1, SEGMENT_BYTES/frameSize);
+    numberOfFrames = (channel.size()-TrajectoryWriter.HEADER_SIZE)/frameSize;
+    segments = new ByteBuffer[(int) ((numberOfFrames+framesPerSegment-1)/framesPerSegment)];
+  }
+
+  public long getNumberOfFrames() {
+    return numberOfFrames;
+  }
+
+  /**
+   * Returns the step number stored with a frame.
+   */
+  public long getStep(long frame) throws IOException {
+    return segment(frame).getLong(offset(frame));
+  }
+
+  public double getTime(long frame) throws IOException {
+    return segment(frame).getDouble(offset(frame)+8);
+  }
+
+  /**
+   * Returns the particle radius stored with a frame, or NaN for a version 1 file.
+   */
+  public double getRadius(long frame) throws IOException {
+    return(version==1)
+          ? Double.NaN
+          : segment(frame).getDouble(offset(frame)+16);
+  }
+
+  /**
+   * Returns the frame with the given step number, or -1 if there is none.
+   * The steps must increase from frame to frame.
+   */
+  public long findStep(long step) throws IOException {
+    long low = 0, high = numberOfFrames-1;
+    while(low<=high) {
+      long mid = (low+high)>>>1;
+      long s = getStep(mid);
+      if(s<step) {
+        low = mid+1;
+      } else if(s>step) {
+        high = mid-1;
+      } else {
+        return mid;
+      }
+    }
+    return -1;
+  }
+
+  /**
+   * Copies a frame into the given arrays and returns its time. vx and vy may be null, and are left
+   * unchanged if the file has no velocities.
+   */
+  public double readFrame(long frame, double[] x, double[] y, double[] vx, double[] vy) throws IOException {
+    ByteBuffer b = segment(frame);
+    int p = offset(frame);
+    double time = b.getDouble(p+8);
+    int n = numberOfParticles;
+    int bytes = (encoding==TrajectoryWriter.FLOAT32)
+                ? 4
+                : 2;
+    p += frameHeader;
+    getBlock(b, p, x, Lx, true);
+    getBlock(b, p+n*bytes, y, Ly, true);
+    if(velocities) {
+      if(vx!=null) {
+        getBlock(b, p+2*n*bytes, vx, velocityScale, false);
+      }
+      if(vy!=null) {
+        getBlock(b, p+3*n*bytes, vy, velocityScale, false);
+      }
+    }
+    return time;
+  }
+
+  void getBlock(ByteBuffer b, int p, double[] values, double scale, boolean position) {
+    int n = numberOfParticles;
+    if(encoding==TrajectoryWriter.FLOAT32) {
+      for(int i = 0; i<n; i++) {
+        values[i] = b.getFloat(p+4*i);
+      }
+    } else if(position) {
+      double factor = scale/65536;
+      for(int i = 0; i<n; i++) {
+        values[i] = (b.getShort(p+2*i)&0xFFFF)*factor;
+      }
+    } else {
+      double factor = scale/32767;
+      for(int i = 0; i<n; i++) {
+        values[i] = b.getShort(p+2*i)*factor;
+      }
+    }
+  }
+
+  ByteBuffer segment(long frame) throws IOException {
+    if((frame<0)||(frame>=numberOfFrames)) {
+      throw new IndexOutOfBoundsException("Frame "+frame+" of "+numberOfFrames+".");
+    }
+    int s = (int) (frame/framesPerSegment);
+    if(segments[s]==null) {
+      long first = (long) s*framesPerSegment;
+      long count = Math.min(framesPerSegment, numberOfFrames-first);
+      MappedByteBuffer mapped = channel.map(FileChannel.MapMode.READ_ONLY, TrajectoryWriter.HEADER_SIZE+first*frameSize, count*frameSize);
+      segments[s] = mapped.order(ByteOrder.LITTLE_ENDIAN);
+    }
+    return segments[s];
+  }
+
+  int offset(long frame) {
+    return (int) (frame%framesPerSegment)*frameSize;
+  }
+
+  /**
+   * Closes the file. Mapped segments are released by the garbage collector.
+   */
+  public void close() throws IOException {
+    segments = new ByteBuffer[0];
+    numberOfFrames = 0;
+    channel.close();
+  }
+
+}
+
+/*
+ * Open Source Physics software is free software; you can redistribute
+ * it and/or modify it under the terms of the GNU General Public License (GPL) as
+ * published by the Free Software Foundation; either version 2 of the License,
+ * or(at your option) any later version.
+
+ * Code that uses any portion of the code in the org.opensourcephysics package
+ * or any subpackage (subdirectory) of this package must must also be be released
+ * under the GNU GPL license.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston MA 02111-1307 USA
+ * or view the license online at http://www.gnu.org/copyleft/gpl.html
+ *
+ * Copyright (c) 2007  The Open Source Physics project
+ *                     http://www.opensourcephysics.org
+ */
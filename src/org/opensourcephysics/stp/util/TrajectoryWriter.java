@@ -0,0 +1,204 @@
+/*
+ * Open Source Physics software is free software as described near the bottom of this code file.
+ *
+ * For additional information and documentation on Open Source Physics please see:
+ * <http://www.opensourcephysics.org/>
+ */
+
+package org.opensourcephysics.stp.util;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * TrajectoryWriter appends particle configurations to a compact binary trajectory file.
+ *
+ * The file starts with a header of HEADER_SIZE bytes: the int MAGIC, the version, the number of
+ * particles, the encoding, and 1 if velocities are stored, then the doubles Lx, Ly, and the
+ * velocity scale. Every frame has the same size, so frame k starts at HEADER_SIZE+k*frameSize
+ * and the file itself is the frame index. A frame holds the step number as a long and the time
+ * and the particle radius as doubles followed by the blocks x[0..n-1], y[0..n-1], and, if stored,
+ * vx and vy. The radius is the value of the last setRadius, so models whose particles change size,
+ * such as compressed hard disks, can be replayed with the right size; it is 0 if never set. With
+ * FLOAT32 each value is a float. With INT16 each value is a short: positions are fractions of the
+ * box in units of 1/65536, and velocities are fractions of the velocity scale in units of 1/32767,
+ * clipped to the scale. All values are little endian.
+ *
+ * Frames are collected in a direct buffer and written to a FileChannel when the buffer is full,
+ * so writing a frame does not allocate. TrajectoryReader maps the file for random access.
+ */
+public class TrajectoryWriter {
+  public static final int MAGIC = 0x54505453; // "STPT" in little endian order
+  public static final int VERSION = 2; // version 1 frames have no radius
+  public static final int HEADER_SIZE = 64;
+  public static final int FLOAT32 = 0, INT16 = 1;
+  FileChannel channel;
+  ByteBuffer buffer;
+  int n, encoding;
+  boolean velocities;
+  double Lx, Ly, velocityScale;
+  double radius;
+  long frames;
+
+  /**
+   * Creates or replaces a trajectory file.
+   *
+   * @param file
+   * @param n number of particles
+   * @param Lx width of the box
+   * @param Ly height of the box
+   * @param velocities true to store velocities
+   * @param encoding FLOAT32 or INT16
+   * @param velocityScale largest velocity component stored exactly with INT16, positive and finite if used
+   * @throws IOException
+   */
+  public TrajectoryWriter(File file, int n, double Lx, double Ly, boolean velocities, int encoding, double velocityScale) throws IOException {
+    if((encoding!=FLOAT32)&&(encoding!=INT16)) {
+      throw new IllegalArgumentException("Unknown encoding "+encoding+".");
+    }
+    if(velocities&&(encoding==INT16)&&!((velocityScale>0)&&(velocityScale<Double.POSITIVE_INFINITY))) {
+      throw new IllegalArgumentException("INT16 velocities need a positive finite velocity scale, not "+velocityScale+".");
+    }
+    this.n = n;
+    this.Lx = Lx;
+    this.Ly = Ly;
+    this.velocities = velocities;
+    this.encoding = encoding;
+    this.velocityScale = velocityScale;
+    channel = FileChannel.open(file.toPath(), StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+    int frameSize = frameSize(n, encoding, velocities);
+    buffer = ByteBuffer.allocateDirect(frameSize*Math.max(1, (1<<20)/frameSize)).order(ByteOrder.LITTLE_ENDIAN);
+    int flags = velocities
+                ? 1
+                : 0;
+    buffer.putInt(MAGIC).putInt(VERSION).putInt(n).putInt(encoding).putInt(flags).putInt(0);
+    buffer.putDouble(Lx).putDouble(Ly).putDouble(velocityScale);
+    while(buffer.position()<HEADER_SIZE) {
+      buffer.put((byte) 0);
+    }
+    buffer.flip();
+    while(buffer.hasRemaining()) {
+      channel.write(buffer);
+    }
+    buffer.clear();
+  }
+
+  /**
+   * Returns the number of bytes of a frame.
+   */
+  public static int frameSize(int n, int encoding, boolean velocities) {
+    int bytes = (encoding==FLOAT32)
+                ? 4
+                : 2;
+    return 24+(velocities
+               ? 4
+               : 2)*n*bytes;
+  }
+
+  /**
+   * Sets the particle radius stored with the following frames.
+   */
+  public void setRadius(double radius) {
+    this.radius = radius;
+  }
+
+  /**
+   * Appends a frame. The velocity arrays are ignored if velocities are not stored.
+   *
+   * @param step step number, stored as the frame label
+   * @param time
+   * @param x
+   * @param y
+   * @param vx
+   * @param vy
+   * @throws IOException
+   */
+  public void writeFrame(long step, double time, double[] x, double[] y, double[] vx, double[] vy) throws IOException {
+    if(buffer.remaining()<frameSize(n, encoding, velocities)) {
+      writeBuffer();
+    }
+    buffer.putLong(step).putDouble(time).putDouble(radius);
+    putBlock(x, Lx, true);
+    putBlock(y, Ly, true);
+    if(velocities) {
+      putBlock(vx, velocityScale, false);
+      putBlock(vy, velocityScale, false);
+    }
+    frames++;
+  }
+
+  void putBlock(double[] values, double scale, boolean position) {
+    if(encoding==FLOAT32) {
+      for(int i = 0; i<n; i++) {
+        buffer.putFloat((float) values[i]);
+      }
+    } else if(position) {
+      double factor = 65536/scale;
+      for(int i = 0; i<n; i++) {
+        buffer.putShort((short) Math.round(values[i]*factor)); // wraps modulo the box
+      }
+    } else {
+      double factor = 32767/scale;
+      for(int i = 0; i<n; i++) {
+        long q = Math.round(values[i]*factor);
+        buffer.putShort((short) Math.max(-32767, Math.min(32767, q)));
+      }
+    }
+  }
+
+  void writeBuffer() throws IOException {
+    buffer.flip();
+    while(buffer.hasRemaining()) {
+      channel.write(buffer);
+    }
+    buffer.clear();
+  }
+
+  /**
+   * Returns the number of frames written.
+   */
+  public long getNumberOfFrames() {
+    return frames;
+  }
+
+  /**
+   * Writes the buffered frames to the file.
+   */
+  public void flush() throws IOException {
+    writeBuffer();
+    channel.force(false);
+  }
+
+  public void close() throws IOException {
+    writeBuffer();
+    channel.close();
+  }
+
+}
+
+/*
+ * Open Source Physics software is free software; you can redistribute
+ * it and/or modify it under the terms of the GNU General Public License (GPL) as
+ * published by the Free Software Foundation; either version 2 of the License,
+ * or(at your option) any later version.
+
+ * Code that uses any portion of the code in the org.opensourcephysics package
+ * or any subpackage (subdirectory) of this package must must also be be released
+ * under the GNU GPL license.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston MA 02111-1307 USA
+ * or view the license online at http://www.gnu.org/copyleft/gpl.html
+ *
+ * Copyright (c) 2007  The Open Source Physics project
+ *                     http://www.opensourcephysics.org
+ */
@@ -0,0 +1,134 @@
+/*
+ * Open Source Physics software is free software as described near the bottom of this code file.
+ *
+ * For additional information and documentation on Open Source Physics please see:
+ * <http://www.opensourcephysics.org/>
+ */
+
+package org.opensourcephysics.stp.util;
+
+/**
+ * VelocityVerlet advances particles with unit mass stored in separate coordinate, velocity,
+ * and acceleration arrays by the velocity Verlet algorithm.
+ *
+ * Unlike the general ODE solvers, which copy the whole state into rate arrays and call getRate
+ * twice per step, the arrays are updated in place. A step is one pass that kicks the velocities
+ * for half a step, drifts the positions, and moves them back into a periodic box, then the force
+ * evaluation, then a second half kick. In a call for several steps the closing half kick of one
+ * step and the opening pass of the next are done in a single pass, so each step costs the force
+ * evaluation and one pass over the particles. No arrays are allocated.
+ */
+public class VelocityVerlet {
+  /**
+   * The model whose forces drive the particles.
+   */
+  public interface Model {
+    /**
+     * Sets the accelerations from the current positions.
+     */
+    void computeAcceleration();
+
+    /**
+     * Called after every step with the kinetic energy at the end of the step. In a call for several
+     * steps the arrays hold the end of step values only after the last step.
+     */
+    void stepDone(double kineticEnergy);
+
+  }
+
+  public double dt;
+  public double Lx, Ly; // periodic box, 0 for a direction without wrapping
+  double[] x, y, vx, vy, ax, ay;
+  int n;
+  Model model;
+
+  public VelocityVerlet(Model model) {
+    this.model = model;
+  }
+
+  /**
+   * Sets the arrays that are advanced and the number of particles.
+   */
+  public void setArrays(double[] x, double[] y, double[] vx, double[] vy, double[] ax, double[] ay, int n) {
+    this.x = x;
+    this.y = y;
+    this.vx = vx;
+    this.vy = vy;
+    this.ax = ax;
+    this.ay = ay;
+    this.n = n;
+  }
+
+  /**
+   * Does one step. The accelerations must be those of the current positions.
+   */
+  public void step() {
+    step(1);
+  }
+
+  /**
+   * Does numberOfSteps steps. The accelerations must be those of the current positions.
+   */
+  public void step(int numberOfSteps) {
+    double h = 0.5*dt;
+    for(int i = 0; i<n; i++) {
+      vx[i] += h*ax[i];
+      vy[i] += h*ay[i];
+      x[i] = wrap(x[i]+dt*vx[i], Lx);
+      y[i] = wrap(y[i]+dt*vy[i], Ly);
+    }
+    for(int k = 1; k<=numberOfSteps; k++) {
+      model.computeAcceleration();
+      double v2 = 0;
+      if(k<numberOfSteps) {
+        for(int i = 0; i<n; i++) {
+          double vxi = vx[i]+h*ax[i]; // velocity at the end of step k
+          double vyi = vy[i]+h*ay[i];
+          v2 += vxi*vxi+vyi*vyi;
+          vx[i] = vxi+h*ax[i];
+          vy[i] = vyi+h*ay[i];
+          x[i] = wrap(x[i]+dt*vx[i], Lx);
+          y[i] = wrap(y[i]+dt*vy[i], Ly);
+        }
+      } else {
+        for(int i = 0; i<n; i++) {
+          vx[i] += h*ax[i];
+          vy[i] += h*ay[i];
+          v2 += vx[i]*vx[i]+vy[i]*vy[i];
+        }
+      }
+      model.stepDone(0.5*v2);
+    }
+  }
+
+  static double wrap(double s, double L) {
+    return (L>0)
+           ? LennardJones.position(s, L)
+           : s;
+  }
+
+}
+
+/*
+ * Open Source Physics software is free software; you can redistribute
+ * it and/or modify it under the terms of the GNU General Public License (GPL) as
+ * published by the Free Software Foundation; either version 2 of the License,
+ * or(at your option) any later version.
+
+ * Code that uses any portion of the code in the org.opensourcephysics package
+ * or any subpackage (subdirectory) of this package must must also be be released
+ * under the GNU GPL license.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston MA 02111-1307 USA
+ * or view the license online at http://www.gnu.org/copyleft/gpl.html
+ *
+ * Copyright (c) 2007  The Open Source Physics project
+ *                     http://www.opensourcephysics.org
+ */
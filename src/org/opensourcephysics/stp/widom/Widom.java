@@ -8,6 +8,7 @@
 package org.opensourcephysics.stp.widom;
 import java.awt.*;
 import org.opensourcephysics.display.*;
+import org.opensourcephysics.stp.util.LennardJones;
 
 /**
  * LJParticlesApp evolves a two-dimensional system of interacting particles
@@ -28,6 +29,7 @@ public class Widom implements Drawable {
   public double radius = 0.5; // radius of particles on screen
   public double chemPotAccumulator;
   public double temperature, beta, ds, accept;
+  LennardJones potential = new LennardJones(0, 0);
 
   public void initialize() {
     chemPotAccumulator = 0;
@@ -84,55 +86,13 @@ public class Widom implements Drawable {
   // start break
   // computeTotals
   public void computeTotals() {
-    energy = 0;
-    virial = 0;
-    for(int i = 0; i<N-1; i++) {
-      for(int j = i+1; j<N; j++) {
-        double dx = pbcSeparation(x[i]-x[j], Lx);
-        double dy = pbcSeparation(y[i]-y[j], Ly);
-        double r2 = dx*dx+dy*dy;
-        double oneOverR2 = 1.0/r2;
-        double oneOverR6 = oneOverR2*oneOverR2*oneOverR2;
-        energy += 4.0*oneOverR6*(oneOverR6-1);
-        double fOverR = 48.0*oneOverR6*(oneOverR6-0.5)*oneOverR2;
-        double fx = fOverR*dx; // force in x-direction
-        double fy = fOverR*dy; // force in y-direction
-        virial += dx*fx+dy*fy;
-      }
-    }
+    potential.setBox(Lx, Ly);
+    potential.computeForces(x, y, N, new double[N], new double[N]);
+    energy = potential.potentialEnergy;
+    virial = potential.virial;
   }
 
   // end break
-  // start break
-  // pbcSeparation
-  private double pbcSeparation(double ds, double L) {
-    if(ds>0) {
-      while(ds>0.5*L) {
-        ds -= L;
-      }
-    } else {
-      while(ds<-0.5*L) {
-        ds += L;
-      }
-    }
-    return ds;
-  }
-
-  // end break
-  // start break
-  // pbcPosition
-  private double pbcPosition(double s, double L) {
-    if(s>0) {
-      while(s>L) {
-        s -= L;
-      }
-    } else {
-      while(s<0) {
-        s += L;
-      }
-    }
-    return s;
-  }
 
   public void step() {
     double[] change = {0, 0};
@@ -158,48 +118,15 @@ public class Widom implements Drawable {
   }
 
   public double[] computeChange(int i, double xTry, double yTry) {
-    double change[] = {0, 0};
-    for(int j = 0; j<N; j++) {
-      if(j!=i) {
-        // old value
-        double dx = pbcSeparation(x[i]-x[j], Lx);
-        double dy = pbcSeparation(y[i]-y[j], Ly);
-        double r2 = dx*dx+dy*dy;
-        double oneOverR2 = 1.0/r2;
-        double oneOverR6 = oneOverR2*oneOverR2*oneOverR2;
-        change[0] -= 4.0*oneOverR6*(oneOverR6-1);
-        double fOverR = 48.0*oneOverR6*(oneOverR6-0.5)*oneOverR2;
-        double fx = fOverR*dx; // force in x-direction
-        double fy = fOverR*dy; // force in y-direction
-        change[1] -= dx*fx+dy*fy;
-        // new value
-        dx = pbcSeparation(xTry-x[j], Lx);
-        dy = pbcSeparation(yTry-y[j], Ly);
-        r2 = dx*dx+dy*dy;
-        oneOverR2 = 1.0/r2;
-        oneOverR6 = oneOverR2*oneOverR2*oneOverR2;
-        change[0] += 4.0*oneOverR6*(oneOverR6-1);
-        fOverR = 48.0*oneOverR6*(oneOverR6-0.5)*oneOverR2;
-        fx = fOverR*dx;        // force in x-direction
-        fy = fOverR*dy;        // force in y-direction
-        change[1] += dx*fx+dy*fy;
-      }
-    }
-    return change;
+    potential.setBox(Lx, Ly);
+    potential.computeMove(x, y, N, i, xTry, yTry);
+    return new double[] {potential.deltaEnergy, potential.deltaVirial};
   }
 
   public void computeChemicalPotential() {
-     xc = Lx*Math.random();
-     yc = Ly*Math.random();
-    double dU = 0;
-    for(int j = 0; j<N; j++) {
-      double dx = pbcSeparation(xc-x[j], Lx);
-      double dy = pbcSeparation(yc-y[j], Ly);
-      double r2 = dx*dx+dy*dy;
-      double oneOverR2 = 1.0/r2;
-      double oneOverR6 = oneOverR2*oneOverR2*oneOverR2;
-      dU += 4.0*oneOverR6*(oneOverR6-1);
-    }
+    xc = Lx*Math.random();
+    yc = Ly*Math.random();
+    double dU = potential.insertionEnergy(x, y, N, xc, yc);
     chemPotAccumulator += Math.exp(-beta*dU);
   }
 
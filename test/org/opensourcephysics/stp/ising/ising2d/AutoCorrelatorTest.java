@@ -0,0 +1,121 @@
+/*
+ * Open Source Physics software is free software as described near the bottom of this code file.
+ *
+ * For additional information and documentation on Open Source Physics please see:
+ * <http://www.opensourcephysics.org/>
+ */
+
+package org.opensourcephysics.stp.ising.ising2d;
+import java.util.Arrays;
+import org.opensourcephysics.stp.util.FastRandom;
+
+/**
+ * Checks AutoCorrelator on short and constant series, on an AR(1) series with known correlation
+ * rho(t) = phi^t, and when compute() is invoked while the series grows.
+ * A failed check throws an AssertionError.
+ */
+public class AutoCorrelatorTest {
+  static void check(boolean condition, String message) {
+    if(!condition) {
+      throw new AssertionError(message);
+    }
+  }
+
+  static void checkFinite(double[] values, String message) {
+    for(int i = 0; i<values.length; i++) {
+      check(!Double.isNaN(values[i])&&!Double.isInfinite(values[i]), message+" at "+i);
+    }
+  }
+
+  static void shortSeries(boolean fft) {
+    AutoCorrelator ac = new AutoCorrelator(20);
+    ac.setFFTMode(fft);
+    check(!ac.hasEnoughData(), "no data is enough");
+    checkFinite(ac.getCorrelationArray(), "empty series");
+    check(ac.getNormalizedCorrelation().length==0, "empty series has a correlation");
+    check(ac.getIntegratedCorrelationTime()==0.5, "tau_int of an empty series");
+    for(int t = 0; t<20; t++) {
+      ac.updateStatistics(t%3);
+    }
+    checkFinite(ac.getCorrelationArray(), "short series");
+    check(ac.hasEnoughData()==fft, "twenty samples with a buffer of twenty");
+    AutoCorrelator constant = new AutoCorrelator(5);
+    constant.setFFTMode(fft);
+    for(int t = 0; t<50; t++) {
+      constant.updateStatistics(1.5);
+    }
+    checkFinite(constant.getCorrelationArray(), "constant series");
+    checkFinite(constant.getNormalizedCorrelation(), "constant series");
+  }
+
+  static void ar1(boolean fft) {
+    double phi = 0.8;
+    int n = 200000;
+    AutoCorrelator ac = new AutoCorrelator(100);
+    ac.setFFTMode(fft);
+    FastRandom random = new FastRandom(3);
+    double x = 0;
+    for(int t = 0; t<n; t++) {
+      x = phi*x+random.nextDouble()-0.5;
+      ac.updateStatistics(x);
+    }
+    double[] rho = ac.getNormalizedCorrelation();
+    for(int t = 1; t<=5; t++) {
+      check(Math.abs(rho[t]-Math.pow(phi, t))<0.02, "rho("+t+") = "+rho[t]);
+    }
+    double tau = ac.getIntegratedCorrelationTime();
+    double exact = (1+phi)/(2*(1-phi));
+    check(Math.abs(tau-exact)<0.1*exact, "tau_int "+tau+" != "+exact);
+  }
+
+  static void incremental(boolean fft) {
+    AutoCorrelator once = new AutoCorrelator(30), often = new AutoCorrelator(30);
+    once.setFFTMode(fft);
+    often.setFFTMode(fft);
+    FastRandom random = new FastRandom(4);
+    double x = 0;
+    for(int t = 0; t<5000; t++) {
+      x = 0.5*x+random.nextDouble();
+      once.updateStatistics(x);
+      often.updateStatistics(x);
+      if(t%500==0) {
+        often.compute();
+      }
+    }
+    check(Arrays.equals(once.getCorrelationArray(), often.getCorrelationArray()), "compute() changed the data");
+  }
+
+  public static void main(String[] args) {
+    for(int mode = 0; mode<2; mode++) {
+      shortSeries(mode==1);
+      ar1(mode==1);
+      incremental(mode==1);
+    }
+    System.out.println("AutoCorrelatorTest passed");
+  }
+
+}
+
+/*
+ * Open Source Physics software is free software; you can redistribute
+ * it and/or modify it under the terms of the GNU General Public License (GPL) as
+ * published by the Free Software Foundation; either version 2 of the License,
+ * or(at your option) any later version.
+
+ * Code that uses any portion of the code in the org.opensourcephysics package
+ * or any subpackage (subdirectory) of this package must must also be be released
+ * under the GNU GPL license.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston MA 02111-1307 USA
+ * or view the license online at http://www.gnu.org/copyleft/gpl.html
+ *
+ * Copyright (c) 2007  The Open Source Physics project
+ *                     http://www.opensourcephysics.org
+ */
@@ -0,0 +1,107 @@
+/*
+ * Open Source Physics software is free software as described near the bottom of this code file.
+ *
+ * For additional information and documentation on Open Source Physics please see:
+ * <http://www.opensourcephysics.org/>
+ */
+
+package org.opensourcephysics.stp.ising.ising2d;
+import java.io.File;
+import java.util.Arrays;
+
+/**
+ * Checks that the points of a finite size scaling run are seeded reproducibly, that every
+ * point has its own seed, that cached points are reused, and that uneven blocks are rejected.
+ * A failed check throws an AssertionError.
+ */
+public class FiniteSizeScalingTest {
+  static void check(boolean condition, String message) {
+    if(!condition) {
+      throw new AssertionError(message);
+    }
+  }
+
+  static FiniteSizeScaling create(File cache) {
+    FiniteSizeScaling fss = new FiniteSizeScaling();
+    fss.lengths = new int[] {4, 6};
+    fss.temperatures = new double[] {2.2, 2.2+0.1};
+    fss.dynamics = "Metropolis";
+    fss.equilibrationMCS = 50;
+    fss.productionMCS = 200;
+    fss.numberOfBlocks = 4;
+    fss.seed = 7;
+    fss.numberOfThreads = 2;
+    fss.cacheDirectory = cache;
+    return fss;
+  }
+
+  static File emptyDirectory(String name) {
+    File dir = new File(System.getProperty("java.io.tmpdir"), name);
+    File[] files = dir.listFiles();
+    if(files!=null) {
+      for(int i = 0; i<files.length; i++) {
+        files[i].delete();
+      }
+    }
+    return dir;
+  }
+
+  public static void main(String[] args) throws InterruptedException {
+    FiniteSizeScaling first = create(emptyDirectory("fss-test-a"));
+    first.run();
+    FiniteSizeScaling second = create(emptyDirectory("fss-test-b"));
+    second.run();
+    for(int i = 0; i<2; i++) {
+      for(int j = 0; j<2; j++) {
+        FiniteSizeScaling.Point a = first.points[i][j], b = second.points[i][j];
+        check(!a.cached&&!b.cached, "fresh directories must not give cached points");
+        check(Arrays.deepEquals(a.block, b.block), "point "+i+","+j+" is not reproducible");
+      }
+    }
+    check(first.pointSeed(first.points[0][0])!=first.pointSeed(first.points[0][1]), "temperatures share a seed");
+    check(first.pointSeed(first.points[0][0])!=first.pointSeed(first.points[1][0]), "lengths share a seed");
+    check(!Arrays.deepEquals(first.points[0][0].block, first.points[0][1].block), "temperatures give the same blocks");
+    // 2.2+0.1 is 2.3000000000000003 but must find the entry written for it
+    FiniteSizeScaling again = create(first.cacheDirectory);
+    again.temperatures = new double[] {2.2, 2.3};
+    again.run();
+    for(int i = 0; i<2; i++) {
+      for(int j = 0; j<2; j++) {
+        check(again.points[i][j].cached, "point "+i+","+j+" was not read from the cache");
+        check(Arrays.deepEquals(again.points[i][j].block, first.points[i][j].block), "cached blocks differ");
+      }
+    }
+    FiniteSizeScaling uneven = create(first.cacheDirectory);
+    uneven.productionMCS = 201;
+    try {
+      uneven.run();
+      throw new AssertionError("production steps that are not a multiple of the blocks were accepted");
+    } catch(IllegalArgumentException ex) {}
+    System.out.println("FiniteSizeScalingTest passed");
+  }
+
+}
+
+/*
+ * Open Source Physics software is free software; you can redistribute
+ * it and/or modify it under the terms of the GNU General Public License (GPL) as
+ * published by the Free Software Foundation; either version 2 of the License,
+ * or(at your option) any later version.
+
+ * Code that uses any portion of the code in the org.opensourcephysics package
+ * or any subpackage (subdirectory) of this package must must also be be released
+ * under the GNU GPL license.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston MA 02111-1307 USA
+ * or view the license online at http://www.gnu.org/copyleft/gpl.html
+ *
+ * Copyright (c) 2007  The Open Source Physics project
+ *                     http://www.opensourcephysics.org
+ */
@@ -0,0 +1,88 @@
+/*
+ * Open Source Physics software is free software as described near the bottom of this code file.
+ *
+ * For additional information and documentation on Open Source Physics please see:
+ * <http://www.opensourcephysics.org/>
+ */
+
+package org.opensourcephysics.stp.ising.ising2d;
+
+/**
+ * Checks histogram reweighting against the plain averages of the run and against a direct run
+ * at a nearby temperature. A failed check throws an AssertionError.
+ */
+public class HistogramReweightingTest {
+  static void check(boolean condition, String message) {
+    if(!condition) {
+      throw new AssertionError(message);
+    }
+  }
+
+  /**
+   * Runs Metropolis at T with a histogram and returns the model with its accumulators.
+   */
+  static Ising2D run(double T, long seed, int mcs) {
+    Ising2D ising = new Ising2D();
+    ising.initialize(6, T, 0);
+    ising.setSeed(seed);
+    for(int k = 0; k<2000; k++) {
+      ising.doOneMCStep();
+    }
+    ising.resetData();
+    ising.histogram = new EMHistogram(ising);
+    for(int k = 0; k<mcs; k++) {
+      ising.doOneMCStep();
+    }
+    return ising;
+  }
+
+  public static void main(String[] args) {
+    int mcs = 100000;
+    Ising2D at = run(2.4, 1, mcs);
+    HistogramReweighting hr = new HistogramReweighting(at.histogram);
+    // at the temperature of the run reweighting gives the plain averages
+    HistogramReweighting.Result same = hr.reweight(2.4, 0);
+    check(Math.abs(same.E-at.E_acc/at.mcs)<1e-9*at.N, "E at the run temperature "+same.E+" != "+at.E_acc/at.mcs);
+    check(Math.abs(same.absM-at.absM_acc/at.mcs)<1e-9*at.N, "|M| at the run temperature");
+    // a direct run at a nearby temperature agrees within the statistical errors
+    Ising2D direct = run(2.5, 2, mcs);
+    HistogramReweighting.Result near = hr.reweight(2.5, 0);
+    double E = direct.E_acc/direct.mcs;
+    check(Math.abs(near.E-E)<0.01*at.N, "reweighted E "+near.E/at.N+" differs from a direct run "+E/at.N);
+    double specificHeat = direct.specificHeat();
+    check(Math.abs(near.specificHeat-specificHeat)<0.05*specificHeat,
+          "reweighted C "+near.specificHeat+" differs from a direct run "+specificHeat);
+    HistogramReweighting.Result[] scan = hr.reweight(2.3, 2.5, 4, 0);
+    check(scan.length==5&&Math.abs(scan[4].T-2.5)<1e-12, "scan temperatures");
+    try {
+      hr.reweight(2.3, 2.5, 0, 0);
+      throw new AssertionError("a scan without intervals was accepted");
+    } catch(IllegalArgumentException ex) {}
+    System.out.println("HistogramReweightingTest passed");
+  }
+
+}
+
+/*
+ * Open Source Physics software is free software; you can redistribute
+ * it and/or modify it under the terms of the GNU General Public License (GPL) as
+ * published by the Free Software Foundation; either version 2 of the License,
+ * or(at your option) any later version.
+
+ * Code that uses any portion of the code in the org.opensourcephysics package
+ * or any subpackage (subdirectory) of this package must must also be be released
+ * under the GNU GPL license.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston MA 02111-1307 USA
+ * or view the license online at http://www.gnu.org/copyleft/gpl.html
+ *
+ * Copyright (c) 2007  The Open Source Physics project
+ *                     http://www.opensourcephysics.org
+ */
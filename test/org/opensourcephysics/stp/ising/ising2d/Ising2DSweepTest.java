@@ -0,0 +1,93 @@
+/*
+ * Open Source Physics software is free software as described near the bottom of this code file.
+ *
+ * For additional information and documentation on Open Source Physics please see:
+ * <http://www.opensourcephysics.org/>
+ */
+
+package org.opensourcephysics.stp.ising.ising2d;
+import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.util.Arrays;
+
+/**
+ * Checks that sweep ranges give decimal grid values, that every axis is swept, and that a
+ * seeded sweep can be reproduced. A failed check throws an AssertionError.
+ */
+public class Ising2DSweepTest {
+  static void check(boolean condition, String message) {
+    if(!condition) {
+      throw new AssertionError(message);
+    }
+  }
+
+  /**
+   * Runs the sweep and returns its CSV lines without the timing column, sorted because the
+   * points finish in any order.
+   */
+  static String[] run(Ising2DSweep sweep) throws InterruptedException {
+    StringWriter text = new StringWriter();
+    sweep.run(new PrintWriter(text));
+    String[] lines = text.toString().trim().split("\n");
+    for(int i = 0; i<lines.length; i++) {
+      lines[i] = lines[i].trim();
+      lines[i] = lines[i].substring(0, lines[i].lastIndexOf(','));
+    }
+    Arrays.sort(lines, 1, lines.length);
+    return lines;
+  }
+
+  public static void main(String[] args) throws InterruptedException {
+    double[] values = Ising2DSweep.parseValues("2.0:2.6:0.05");
+    check(values.length==13, "2.0:2.6:0.05 has "+values.length+" values");
+    check(Double.toString(values[1]).equals("2.05"), "second value is "+values[1]);
+    check(values[12]==2.6, "last value is "+values[12]);
+    check(Arrays.equals(Ising2DSweep.parseCounts("100:300:100,1000"), new int[] {100, 200, 300, 1000}), "counts");
+    Ising2DSweep sweep = new Ising2DSweep();
+    sweep.lengths = new int[] {4, 6};
+    sweep.temperatures = Ising2DSweep.parseValues("2.1:2.3:0.1");
+    sweep.dynamics = new String[] {"Metropolis", "Wolff"};
+    sweep.equilibrationMCS = new int[] {20, 40};
+    sweep.warmEquilibrationMCS = 10;
+    sweep.productionMCS = new int[] {50, 100};
+    sweep.seed = 3;
+    sweep.numberOfThreads = 4;
+    String[] first = run(sweep);
+    check(first.length==1+2*3*2*2*2, "sweep wrote "+(first.length-1)+" points");
+    check(first[0].startsWith("L,T,H,dynamics,equilibrationMCS,productionMCS,seed,"), "header "+first[0]);
+    for(int i = 1; i<first.length; i++) {
+      String T = first[i].split(",")[1];
+      check(T.equals("2.1")||T.equals("2.2")||T.equals("2.3"), "temperature "+T);
+    }
+    String[] second = run(sweep);
+    check(Arrays.equals(first, second), "a seeded sweep is not reproducible");
+    sweep.seed = 4;
+    check(!Arrays.equals(first, run(sweep)), "the seed has no effect");
+    System.out.println("Ising2DSweepTest passed");
+  }
+
+}
+
+/*
+ * Open Source Physics software is free software; you can redistribute
+ * it and/or modify it under the terms of the GNU General Public License (GPL) as
+ * published by the Free Software Foundation; either version 2 of the License,
+ * or(at your option) any later version.
+
+ * Code that uses any portion of the code in the org.opensourcephysics package
+ * or any subpackage (subdirectory) of this package must must also be be released
+ * under the GNU GPL license.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston MA 02111-1307 USA
+ * or view the license online at http://www.gnu.org/copyleft/gpl.html
+ *
+ * Copyright (c) 2007  The Open Source Physics project
+ *                     http://www.opensourcephysics.org
+ */
@@ -0,0 +1,139 @@
+/*
+ * Open Source Physics software is free software as described near the bottom of this code file.
+ *
+ * For additional information and documentation on Open Source Physics please see:
+ * <http://www.opensourcephysics.org/>
+ */
+
+package org.opensourcephysics.stp.ising.ising2d;
+import java.util.Arrays;
+
+/**
+ * Checks that the n-fold way keeps its classes, energy, and magnetization consistent with a
+ * recount of the lattice, that seeded runs are reproducible, and that its mean energy agrees
+ * with Metropolis dynamics. A failed check throws an AssertionError.
+ */
+public class NFoldWayTest {
+  static void check(boolean condition, String message) {
+    if(!condition) {
+      throw new AssertionError(message);
+    }
+  }
+
+  /**
+   * Compares the classes of n with the spins and E and M of the model with a recount.
+   */
+  static void recount(Ising2D ising, NFoldWay n) {
+    int L = ising.L;
+    for(int p = 0; p<n.N; p++) {
+      check(n.position[n.site[p]]==p, "position is not the inverse of site");
+    }
+    for(int c = 0; c<NFoldWay.CLASSES; c++) {
+      check(n.start[c]<=n.start[c+1], "class "+c+" has a negative size");
+      for(int p = n.start[c]; p<n.start[c+1]; p++) {
+        check(n.classOf[n.site[p]]==c, "site "+n.site[p]+" is stored in the wrong class");
+      }
+    }
+    for(int x = 0; x<L; x++) {
+      for(int y = 0; y<L; y++) {
+        int[][] spin = ising.spin;
+        int sum = spin[(x+1)%L][y]+spin[(x-1+L)%L][y]+spin[x][(y+1)%L]+spin[x][(y-1+L)%L];
+        check(n.classOf[x*L+y]==(sum+4)+(spin[x][y]+1)/2, "class of site "+(x*L+y)+" differs from a recount");
+      }
+    }
+    Ising2D copy = new Ising2D();
+    copy.initialize(L, ising.T, ising.H);
+    copy.setSpins(ising.spin);
+    check(Math.abs(copy.E-ising.E)<1e-9, "energy "+ising.E+" differs from a recount "+copy.E);
+    check(copy.M==ising.M, "magnetization "+ising.M+" differs from a recount "+copy.M);
+  }
+
+  static void consistency() {
+    Ising2D ising = new Ising2D();
+    ising.initialize(12, 2.1, 0.3);
+    NFoldWay n = new NFoldWay(ising);
+    n.setSeed(17);
+    for(int k = 0; k<200; k++) {
+      n.advance(0.5);
+      recount(ising, n);
+    }
+    check(n.flips>0, "no flips");
+    ising.setTemperature(1.0); // classes are unchanged but the rates are recomputed
+    n.advance(5);
+    recount(ising, n);
+  }
+
+  static void reproducible() {
+    int[][][] spins = new int[2][][];
+    double[] energy = new double[2];
+    for(int run = 0; run<2; run++) {
+      Ising2D ising = new Ising2D();
+      ising.initialize(10, 2.3, 0);
+      ising.setSeed(5);
+      for(int k = 0; k<50; k++) {
+        ising.doOneNFoldWayStep();
+      }
+      spins[run] = ising.spin;
+      energy[run] = ising.E;
+    }
+    check(Arrays.deepEquals(spins[0], spins[1])&&(energy[0]==energy[1]), "seeded n-fold way runs differ");
+  }
+
+  /**
+   * The n-fold way and Metropolis dynamics sample the same distribution.
+   */
+  static void agreesWithMetropolis() {
+    int mcs = 20000;
+    double[] mean = new double[2];
+    for(int method = 0; method<2; method++) {
+      Ising2D ising = new Ising2D();
+      ising.initialize(8, 2.0, 0);
+      ising.setSeed(23);
+      for(int k = 0; k<1000; k++) {
+        ising.doOneMCStep();
+      }
+      ising.resetData();
+      for(int k = 0; k<mcs; k++) {
+        if(method==0) {
+          ising.doOneMCStep();
+        } else {
+          ising.doOneNFoldWayStep();
+        }
+      }
+      mean[method] = ising.E_acc/(ising.mcs*ising.N);
+    }
+    check(Math.abs(mean[0]-mean[1])<0.02, "mean energy per spin "+mean[1]+" differs from Metropolis "+mean[0]);
+  }
+
+  public static void main(String[] args) {
+    consistency();
+    reproducible();
+    agreesWithMetropolis();
+    System.out.println("NFoldWayTest passed");
+  }
+
+}
+
+/*
+ * Open Source Physics software is free software; you can redistribute
+ * it and/or modify it under the terms of the GNU General Public License (GPL) as
+ * published by the Free Software Foundation; either version 2 of the License,
+ * or(at your option) any later version.
+
+ * Code that uses any portion of the code in the org.opensourcephysics package
+ * or any subpackage (subdirectory) of this package must must also be be released
+ * under the GNU GPL license.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston MA 02111-1307 USA
+ * or view the license online at http://www.gnu.org/copyleft/gpl.html
+ *
+ * Copyright (c) 2007  The Open Source Physics project
+ *                     http://www.opensourcephysics.org
+ */
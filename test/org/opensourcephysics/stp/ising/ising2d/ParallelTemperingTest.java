@@ -0,0 +1,184 @@
+/*
+ * Open Source Physics software is free software as described near the bottom of this code file.
+ *
+ * For additional information and documentation on Open Source Physics please see:
+ * <http://www.opensourcephysics.org/>
+ */
+
+package org.opensourcephysics.stp.ising.ising2d;
+import java.util.Arrays;
+
+/**
+ * Checks the replica exchange bookkeeping, detailed balance of the exchanges, and the
+ * reproducibility of seeded runs. A failed check throws an AssertionError.
+ */
+public class ParallelTemperingTest {
+  /**
+   * A replica with a fixed energy that records its temperature and seed.
+   */
+  static class FixedReplica implements TemperingReplica {
+    double E, T;
+    long seed;
+
+    FixedReplica(double E) {
+      this.E = E;
+    }
+
+    public void doOneMCStep() {}
+
+    public void setTemperature(double _T) {
+      T = _T;
+    }
+
+    public double getEnergy() {
+      return E;
+    }
+
+    public void setSeed(long _seed) {
+      seed = _seed;
+    }
+
+  }
+
+  static void check(boolean condition, String message) {
+    if(!condition) {
+      throw new AssertionError(message);
+    }
+  }
+
+  /**
+   * The fraction of exchange attempts that leave replica 0 at the lowest rung must approach
+   * exp(-b0 E0-b1 E1)/(exp(-b0 E0-b1 E1)+exp(-b0 E1-b1 E0)).
+   */
+  static void detailedBalance() {
+    double[] temperature = {1.0, 2.0};
+    FixedReplica[] replica = {new FixedReplica(-3), new FixedReplica(-1)};
+    ParallelTempering pt = new ParallelTempering(replica, temperature, 11);
+    int attempts = 400000, atBottom = 0;
+    for(int n = 0; n<attempts; n++) {
+      pt.attemptSwaps(0);
+      if(pt.rungOf[0]==0) {
+        atBottom++;
+      }
+    }
+    pt.shutdown();
+    double w0 = Math.exp(-(-3)/1.0-(-1)/2.0), w1 = Math.exp(-(-1)/1.0-(-3)/2.0);
+    double expected = w0/(w0+w1);
+    double observed = (double) atBottom/attempts;
+    double sigma = Math.sqrt(expected*(1-expected)/attempts);
+    // successive states are correlated, so allow a generous multiple of the binomial error
+    check(Math.abs(observed-expected)<10*sigma, "detailed balance: "+observed+" != "+expected);
+    check(pt.swapAttempts[0]==attempts, "attempt count");
+  }
+
+  /**
+   * The rung and replica indices must stay inverse permutations, every replica must carry the
+   * temperature of its rung, and even and odd pairs must be tried on alternate rounds.
+   */
+  static void bookkeeping() {
+    int K = 5, rounds = 101;
+    double[] temperature = {1.8, 2.0, 2.2, 2.4, 2.6};
+    Ising2D[] replica = new Ising2D[K];
+    for(int r = 0; r<K; r++) {
+      replica[r] = new Ising2D();
+      replica[r].initialize(6, temperature[r], 0);
+    }
+    ParallelTempering pt = new ParallelTempering(replica, temperature, 5);
+    pt.swapInterval = 2;
+    for(int n = 0; n<rounds; n++) {
+      pt.doOneRound();
+      for(int k = 0; k<K; k++) {
+        check(pt.rungOf[pt.replicaAt[k]]==k, "rungOf and replicaAt are not inverse");
+        check(replica[pt.replicaAt[k]].T==temperature[k], "replica temperature differs from its rung");
+      }
+    }
+    pt.shutdown();
+    for(int k = 0; k<K-1; k++) {
+      int expected = (k%2==0)
+                     ? (rounds+1)/2
+                     : rounds/2;
+      check(pt.swapAttempts[k]==expected, "attempts at rung "+k+": "+pt.swapAttempts[k]);
+      check(pt.swapAccepts[k]<=pt.swapAttempts[k], "more accepts than attempts at rung "+k);
+    }
+    check(pt.mcs==rounds*pt.swapInterval, "mcs");
+    check(pt.samples==rounds, "samples");
+    for(int r = 0; r<K; r++) {
+      Ising2D recount = new Ising2D();
+      recount.initialize(6, temperature[0], 0);
+      recount.setSpins(replica[r].spin);
+      check(recount.E==replica[r].E, "energy of replica "+r+" differs from a recount");
+      check(recount.M==replica[r].M, "magnetization of replica "+r+" differs from a recount");
+    }
+  }
+
+  /**
+   * Two drivers with the same seed must give the same configurations and exchanges.
+   */
+  static void reproducible() {
+    double[] temperature = {2.0, 2.3, 2.6};
+    FixedReplica[] seeds = {new FixedReplica(0), new FixedReplica(0), new FixedReplica(0)};
+    new ParallelTempering(seeds, temperature, 100).shutdown();
+    for(int r = 0; r<seeds.length; r++) {
+      check(seeds[r].seed==100+r, "replica "+r+" seeded with "+seeds[r].seed);
+    }
+    int[][][] spins = new int[2][][];
+    int[][] rungs = new int[2][];
+    for(int run = 0; run<2; run++) {
+      Ising2D[] replica = new Ising2D[3];
+      for(int r = 0; r<3; r++) {
+        replica[r] = new Ising2D();
+        replica[r].initialize(8, temperature[r], 0);
+      }
+      ParallelTempering pt = new ParallelTempering(replica, temperature, 42);
+      for(int n = 0; n<20; n++) {
+        pt.doOneRound();
+      }
+      pt.shutdown();
+      spins[run] = new int[3][];
+      for(int r = 0; r<3; r++) {
+        int[] flat = new int[64];
+        for(int i = 0; i<8; i++) {
+          System.arraycopy(replica[r].spin[i], 0, flat, 8*i, 8);
+        }
+        spins[run][r] = flat;
+      }
+      rungs[run] = (int[]) pt.rungOf.clone();
+    }
+    for(int r = 0; r<3; r++) {
+      check(Arrays.equals(spins[0][r], spins[1][r]), "replica "+r+" is not reproducible");
+    }
+    check(Arrays.equals(rungs[0], rungs[1]), "exchanges are not reproducible");
+  }
+
+  public static void main(String[] args) {
+    detailedBalance();
+    bookkeeping();
+    reproducible();
+    System.out.println("ParallelTemperingTest passed");
+  }
+
+}
+
+/*
+ * Open Source Physics software is free software; you can redistribute
+ * it and/or modify it under the terms of the GNU General Public License (GPL) as
+ * published by the Free Software Foundation; either version 2 of the License,
+ * or(at your option) any later version.
+
+ * Code that uses any portion of the code in the org.opensourcephysics package
+ * or any subpackage (subdirectory) of this package must must also be be released
+ * under the GNU GPL license.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston MA 02111-1307 USA
+ * or view the license online at http://www.gnu.org/copyleft/gpl.html
+ *
+ * Copyright (c) 2007  The Open Source Physics project
+ *                     http://www.opensourcephysics.org
+ */
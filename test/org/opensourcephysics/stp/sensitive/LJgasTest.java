@@ -0,0 +1,96 @@
+/*
+ * Open Source Physics software is free software as described near the bottom of this code file.
+ *
+ * For additional information and documentation on Open Source Physics please see:
+ * <http://www.opensourcephysics.org/>
+ */
+
+package org.opensourcephysics.stp.sensitive;
+import java.util.Arrays;
+
+/**
+ * Checks the reversal of LJgas: in reversible mode the reversed trajectory retraces the forward one
+ * bit for bit, step by step, and in both modes n steps, a reversal, and n steps return to the
+ * initial positions at t = 0. A failed check throws an AssertionError.
+ */
+public class LJgasTest {
+  static void check(boolean condition, String message) {
+    if(!condition) {
+      throw new AssertionError(message);
+    }
+  }
+
+  static void reversible() {
+    int n = 2000;
+    LJgas gas = new LJgas();
+    gas.reversible = true;
+    gas.initialize();
+    long[][] px = new long[n+1][], py = new long[n+1][];
+    px[0] = gas.px.clone();
+    py[0] = gas.py.clone();
+    for(int k = 1; k<=n; k++) {
+      gas.step();
+      px[k] = gas.px.clone();
+      py[k] = gas.py.clone();
+    }
+    long[] sx = gas.sx.clone();
+    gas.reverse();
+    gas.reverse();
+    check(Arrays.equals(sx, gas.sx), "two reversals do not restore the displacements");
+    gas.reverse();
+    for(int k = n-1; k>=0; k--) {
+      gas.step();
+      check(Arrays.equals(px[k], gas.px)&&Arrays.equals(py[k], gas.py), "reversed step "+(n-k)+" is not at step "+k);
+    }
+    check(Math.abs(gas.t)<1e-9, "reversible run ends at t = "+gas.t);
+  }
+
+  static void floatingPoint() {
+    int n = 200;
+    LJgas gas = new LJgas();
+    gas.initialize();
+    double[] x = gas.x.clone(), y = gas.y.clone();
+    for(int k = 0; k<n; k++) {
+      gas.step();
+    }
+    gas.reverse();
+    for(int k = 0; k<n; k++) {
+      gas.step();
+    }
+    for(int i = 0; i<gas.numberOfParticles; i++) {
+      check((Math.abs(gas.x[i]-x[i])<1e-6)&&(Math.abs(gas.y[i]-y[i])<1e-6), "particle "+i+" did not return");
+    }
+    check(Math.abs(gas.t)<1e-9, "floating point run ends at t = "+gas.t);
+  }
+
+  public static void main(String[] args) {
+    reversible();
+    floatingPoint();
+    System.out.println("LJgasTest passed");
+  }
+
+}
+
+/*
+ * Open Source Physics software is free software; you can redistribute
+ * it and/or modify it under the terms of the GNU General Public License (GPL) as
+ * published by the Free Software Foundation; either version 2 of the License,
+ * or(at your option) any later version.
+
+ * Code that uses any portion of the code in the org.opensourcephysics package
+ * or any subpackage (subdirectory) of this package must must also be be released
+ * under the GNU GPL license.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston MA 02111-1307 USA
+ * or view the license online at http://www.gnu.org/copyleft/gpl.html
+ *
+ * Copyright (c) 2007  The Open Source Physics project
+ *                     http://www.opensourcephysics.org
+ */
@@ -0,0 +1,133 @@
+/*
+ * Open Source Physics software is free software as described near the bottom of this code file.
+ *
+ * For additional information and documentation on Open Source Physics please see:
+ * <http://www.opensourcephysics.org/>
+ */
+
+package org.opensourcephysics.stp.util;
+import java.util.Arrays;
+import org.opensourcephysics.stp.lj.LJfluid3D;
+
+/**
+ * Checks that ParallelPairs gives the serial forces and sums, that repeated calls give the same
+ * bits and reuse their actions, and that LJfluid3D gets the same forces with and without threads.
+ * A failed check throws an AssertionError.
+ */
+public class ParallelPairsTest {
+  static void check(boolean condition, String message) {
+    if(!condition) {
+      throw new AssertionError(message);
+    }
+  }
+
+  static double maximumDifference(double[] a, double[] b) {
+    double d = 0;
+    for(int i = 0; i<a.length; i++) {
+      d = Math.max(d, Math.abs(a[i]-b[i]));
+    }
+    return d;
+  }
+
+  /**
+   * A pair force f = r/(1+r^2) on every pair of n points, with rows of the pair loop as items.
+   */
+  static void pairs() {
+    final int n = 300;
+    final double[] x = new double[n], y = new double[n];
+    FastRandom random = new FastRandom(9);
+    for(int i = 0; i<n; i++) {
+      x[i] = random.nextDouble();
+      y[i] = random.nextDouble();
+    }
+    ParallelPairs.Task task = new ParallelPairs.Task() {
+      public void compute(int first, int last, double[] ax, double[] ay, double[] sums) {
+        for(int i = first; i<last; i++) {
+          for(int j = i+1; j<n; j++) {
+            double dx = x[i]-x[j], dy = y[i]-y[j];
+            double f = 1/(1+dx*dx+dy*dy);
+            ax[i] += f*dx;
+            ay[i] += f*dy;
+            ax[j] -= f*dx;
+            ay[j] -= f*dy;
+            sums[0] += f;
+            sums[1]++;
+          }
+        }
+      }
+
+    };
+    double[] sx = new double[n], sy = new double[n], sums = new double[2];
+    task.compute(0, n, sx, sy, sums);
+    long[] prefix = new long[n+1];
+    for(int i = 0; i<n; i++) {
+      prefix[i+1] = prefix[i]+n-1-i;
+    }
+    ParallelPairs parallel = new ParallelPairs(4);
+    double[] fx = new double[n], fy = new double[n];
+    double[] result = parallel.run(prefix, n, n, 2, task, fx, fy).clone();
+    check(maximumDifference(sx, fx)<1e-12, "x forces differ from the serial forces");
+    check(maximumDifference(sy, fy)<1e-12, "y forces differ from the serial forces");
+    check(Math.abs(result[0]-sums[0])<1e-9, "sum differs from the serial sum");
+    check(result[1]==n*(n-1)/2, "pair count "+result[1]);
+    Object action = parallel.pairs[0];
+    double[] gx = new double[n], gy = new double[n];
+    for(int k = 0; k<3; k++) {
+      double[] again = parallel.run(prefix, n, n, 2, task, gx, gy);
+      check(Arrays.equals(fx, gx)&&Arrays.equals(fy, gy)&&Arrays.equals(result, again), "repeated call differs");
+    }
+    check(parallel.pairs[0]==action, "actions were not reused");
+    parallel.shutdown();
+  }
+
+  static void forces3D() {
+    LJfluid3D md = new LJfluid3D();
+    md.N = 500;
+    md.rho = 0.8;
+    md.initialize();
+    md.step(20);
+    md.computeAcceleration(false);
+    double[] ax = md.ax.clone(), ay = md.ay.clone(), az = md.az.clone();
+    double energy = md.potentialEnergy;
+    md.setNumberOfThreads(3);
+    md.computeAcceleration(false);
+    double[] bx = md.ax.clone();
+    check(maximumDifference(ax, md.ax)<1e-10&&maximumDifference(ay, md.ay)<1e-10&&maximumDifference(az, md.az)<1e-10,
+          "threaded 3D forces differ from the serial forces");
+    check(Math.abs(energy-md.potentialEnergy)<1e-8, "threaded 3D energy differs");
+    md.computeAcceleration(false);
+    check(Arrays.equals(bx, md.ax), "threaded 3D forces are not reproducible");
+    md.shutdown();
+  }
+
+  public static void main(String[] args) {
+    pairs();
+    forces3D();
+    System.out.println("ParallelPairsTest passed");
+  }
+
+}
+
+/*
+ * Open Source Physics software is free software; you can redistribute
+ * it and/or modify it under the terms of the GNU General Public License (GPL) as
+ * published by the Free Software Foundation; either version 2 of the License,
+ * or(at your option) any later version.
+
+ * Code that uses any portion of the code in the org.opensourcephysics package
+ * or any subpackage (subdirectory) of this package must must also be be released
+ * under the GNU GPL license.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston MA 02111-1307 USA
+ * or view the license online at http://www.gnu.org/copyleft/gpl.html
+ *
+ * Copyright (c) 2007  The Open Source Physics project
+ *                     http://www.opensourcephysics.org
+ */
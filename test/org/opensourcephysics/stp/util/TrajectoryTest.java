@@ -0,0 +1,89 @@
+/*
+ * Open Source Physics software is free software as described near the bottom of this code file.
+ *
+ * For additional information and documentation on Open Source Physics please see:
+ * <http://www.opensourcephysics.org/>
+ */
+
+package org.opensourcephysics.stp.util;
+import java.io.File;
+import java.io.IOException;
+
+/**
+ * Checks that trajectory frames are read back with their step, time, positions, velocities, and
+ * particle radius, and that INT16 velocities without a valid scale are rejected.
+ * A failed check throws an AssertionError.
+ */
+public class TrajectoryTest {
+  static void check(boolean condition, String message) {
+    if(!condition) {
+      throw new AssertionError(message);
+    }
+  }
+
+  public static void main(String[] args) throws IOException {
+    File file = File.createTempFile("trajectory", ".stpt");
+    file.deleteOnExit();
+    int n = 5, frames = 300;
+    double L = 10;
+    double[] x = new double[n], y = new double[n], vx = new double[n], vy = new double[n];
+    TrajectoryWriter writer = new TrajectoryWriter(file, n, L, L, true, TrajectoryWriter.INT16, 4);
+    for(int k = 0; k<frames; k++) {
+      for(int i = 0; i<n; i++) {
+        x[i] = (0.37*k+1.1*i)%L;
+        y[i] = (0.53*k+0.7*i)%L;
+        vx[i] = Math.sin(k+i);
+        vy[i] = Math.cos(k-i);
+      }
+      writer.setRadius(0.5*Math.pow(1.001, k)); // a growing disk as in HDMC.compress
+      writer.writeFrame(10*k, 0.5*k, x, y, vx, vy);
+    }
+    writer.close();
+    TrajectoryReader reader = new TrajectoryReader(file);
+    check(reader.getNumberOfFrames()==frames, "frames "+reader.getNumberOfFrames());
+    check(reader.findStep(1230)==123, "findStep");
+    for(int k = 0; k<frames; k += 37) {
+      double time = reader.readFrame(k, x, y, vx, vy);
+      check(time==0.5*k&&reader.getStep(k)==10*k, "time or step of frame "+k);
+      check(reader.getRadius(k)==0.5*Math.pow(1.001, k), "radius of frame "+k);
+      for(int i = 0; i<n; i++) {
+        check(Math.abs(x[i]-(0.37*k+1.1*i)%L)<L/65536.0, "x of frame "+k);
+        check(Math.abs(vy[i]-Math.cos(k-i))<4/32767.0, "vy of frame "+k);
+      }
+    }
+    reader.close();
+    double[] badScales = {0, -1, Double.NaN, Double.POSITIVE_INFINITY};
+    for(int k = 0; k<badScales.length; k++) {
+      try {
+        new TrajectoryWriter(file, n, L, L, true, TrajectoryWriter.INT16, badScales[k]).close();
+        throw new AssertionError("velocity scale "+badScales[k]+" was accepted");
+      } catch(IllegalArgumentException ex) {}
+    }
+    System.out.println("TrajectoryTest passed");
+  }
+
+}
+
+/*
+ * Open Source Physics software is free software; you can redistribute
+ * it and/or modify it under the terms of the GNU General Public License (GPL) as
+ * published by the Free Software Foundation; either version 2 of the License,
+ * or(at your option) any later version.
+
+ * Code that uses any portion of the code in the org.opensourcephysics package
+ * or any subpackage (subdirectory) of this package must must also be be released
+ * under the GNU GPL license.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston MA 02111-1307 USA
+ * or view the license online at http://www.gnu.org/copyleft/gpl.html
+ *
+ * Copyright (c) 2007  The Open Source Physics project
+ *                     http://www.opensourcephysics.org
+ */